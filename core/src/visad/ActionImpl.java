@@ -30,6 +30,9 @@ import java.rmi.RemoteException;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import visad.util.ThreadPool;
 
@@ -46,7 +49,16 @@ call stacks:
   ThingReferenceImpl.incTick() calls
     ThingChangedLink.queueThingChangedEvent('new' ThingChangedEvent e) calls
       Action.thingChanged(e) calls
-        ReferenceActionLink.acknowledgeThingChangedEvent(e.getTick())
+        ReferenceActionLink.acknowledgeThingChangedEvent(e)
+        ActionImpl.notifyAction()
+
+  // ThingChangedLink holds at most one unacknowledged event; a newer
+  // event replaces (and is merged with) the queued one, latest value wins.
+  // Likewise an ActionImpl has at most one run() queued in the ThreadPool
+  // and at most one more pending while run() is active, so notifications
+  // from a fast producer are coalesced rather than piling up as tasks.
+  // If a minimum interval is set, run() is delayed until that long after
+  // the start of the previous run(), and then sees the latest values.
 
   // get queued ThingChangedEvent
   ActionImpl.run() calls
@@ -54,7 +66,7 @@ call stacks:
       ThingReference.acknowledgeThingChanged(Action a) calls
         ThingChangedLink.acknowledgeThingChangedEvent()
     ActionImpl.thingChanged(ThingChangedEvent e) calls
-      ReferenceActionLink.acknowledgeThingChangedEvent(e.getTick())
+      ReferenceActionLink.acknowledgeThingChangedEvent(e)
 
   // peek at queued ThingChangedEvent
   ActionImpl.run() calls
@@ -134,6 +146,39 @@ public abstract class ActionImpl implements Action, Runnable {
   /**           */
   private boolean requeue = false;
 
+  /**
+   * default minimum interval in milliseconds between the starts of
+   * successive run() invocations of each ActionImpl, from the
+   * "visad.actionimpl.mininterval" property; 0 means no limit
+   */
+  public static final long DEFAULT_MIN_INTERVAL =
+    Long.getLong("visad.actionimpl.mininterval", 0L).longValue();
+
+  /** timer for run() requests delayed by a minimum interval */
+  private static ScheduledThreadPoolExecutor delayTimer = null;
+
+  /** lock for queued, running, requeue and the counters below */
+  private Object lockQueue = new Object();
+
+  /** true if run() is queued in the ThreadPool or delay timer */
+  private boolean queued = false;
+
+  /** true while run() is active */
+  private boolean running = false;
+
+  /** minimum interval in milliseconds between starts of run() */
+  private long minInterval = DEFAULT_MIN_INTERVAL;
+
+  /** System.currentTimeMillis() at start of the latest run() */
+  private long lastRun = 0;
+
+  /** counters of notifyAction() calls, of those coalesced with a
+      pending run(), of run() invocations and of delayed run()-s */
+  private long notifyCount = 0;
+  private long coalescedCount = 0;
+  private long runCount = 0;
+  private long delayedCount = 0;
+
   /**
    * construct an ActionImpl
    * @param name - String name, used only for debugging
@@ -377,6 +422,13 @@ public abstract class ActionImpl implements Action, Runnable {
     // thread can be running at a time.
     currentActionThread = Thread.currentThread();
 
+    synchronized (lockQueue) {
+      queued = false;
+      running = true;
+      lastRun = System.currentTimeMillis();
+      runCount++;
+    }
+
     synchronized (lockEnabled) {
 // if (getName() != null) System.out.println("ENABLED = " + enabled + " " + getName());
       if (enabled) {
@@ -468,12 +520,15 @@ public abstract class ActionImpl implements Action, Runnable {
       } // end if (enabled)
 
       // if there's more to do, add this to the end of the task list
-      if (requeue) {
-        if (pool != null) {
+      synchronized (lockQueue) {
+        running = false;
+        if (requeue) {
+          if (pool != null && !queued) {
 // if (getName() != null) System.out.println("requeue " + getName());
-          pool.queue(this);
+            schedule();
+          }
+          requeue = false;
         }
-        requeue = false;
       }
 
     } // end synchronized (lockEnabled)
@@ -504,7 +559,7 @@ public abstract class ActionImpl implements Action, Runnable {
 
     boolean changed = true;
     if (link != null) {
-      link.acknowledgeThingChangedEvent(e.getTick());
+      link.acknowledgeThingChangedEvent(e);
       notifyAction();
       changed = false;
     }
@@ -512,6 +567,26 @@ public abstract class ActionImpl implements Action, Runnable {
     return changed;
   }
 
+  /**
+   * return the sample index ranges of the Data referenced by ref that
+   * changed before the current doAction(), as {start0, end0, start1,
+   * end1, ...} with each end exclusive; for use in doAction() by
+   * Actions that can update only the changed slices of large Fields
+   * @param ref linked ThingReference
+   * @return the changed ranges, an empty array if ref did not change,
+   *         or null if the whole Data object may have changed
+   * @throws VisADException a VisAD error occurred
+   */
+  public int[] getChangedRanges(ThingReference ref)
+         throws VisADException {
+    ReferenceActionLink link = findReference(ref);
+    if (link == null) {
+      throw new ReferenceException("ActionImpl.getChangedRanges: " +
+                                   "reference not linked");
+    }
+    return link.getChangedRanges();
+  }
+
   /**
    * add a link to a ReferenceActionLink (and via it
    * link to a ThingReference)
@@ -541,14 +616,133 @@ public abstract class ActionImpl implements Action, Runnable {
    */
   void notifyAction() {
 // if (getName() != null) DisplayImpl.printStack("notifyAction " + getName());
-    requeue = true;
     if (pool == null) {
       startThreadPool();
     }
     if (TRACE_STACK) {
       stackTrace = visad.util.Util.getStackTrace();
     }
-    pool.queue(this);
+    synchronized (lockQueue) {
+      notifyCount++;
+      if (queued || (running && requeue)) {
+        // a pending run() will see this change
+        coalescedCount++;
+      }
+      else if (running) {
+        // run() again once the active run() is done
+        requeue = true;
+      }
+      else {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * queue run() in the ThreadPool, or in the delay timer if the
+   * minimum interval since the start of the last run() has not
+   * yet passed; must be called with lockQueue held
+   */
+  private void schedule() {
+    queued = true;
+    long wait = (minInterval > 0) ?
+      lastRun + minInterval - System.currentTimeMillis() : 0;
+    if (wait <= 0) {
+      pool.queue(this);
+      return;
+    }
+    delayedCount++;
+    getDelayTimer().schedule(new Runnable() {
+      public void run() {
+        ThreadPool p = pool;
+        if (p != null && !p.isTerminated()) {
+          p.queue(ActionImpl.this);
+        }
+        else {
+          synchronized (lockQueue) {
+            queued = false;
+          }
+        }
+      }
+    }, wait, TimeUnit.MILLISECONDS);
+  }
+
+  /** return the shared timer for delayed run() requests */
+  private static ScheduledThreadPoolExecutor getDelayTimer() {
+    synchronized (poolLock) {
+      if (delayTimer == null) {
+        delayTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ActionDelay");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      }
+      return delayTimer;
+    }
+  }
+
+  /**
+   * set the minimum interval between the starts of successive
+   * doAction() calls of this ActionImpl; changes arriving within
+   * the interval are coalesced and handled together once it has
+   * passed, so a fast producer costs at most one doAction() per
+   * interval and the last change is always seen
+   * @param millis - minimum interval in milliseconds, 0 for none
+   */
+  public void setMinInterval(long millis) {
+    synchronized (lockQueue) {
+      minInterval = (millis < 0) ? 0 : millis;
+    }
+  }
+
+  /**
+   * @return minimum interval in milliseconds between doAction()
+   *         calls of this ActionImpl
+   */
+  public long getMinInterval() {
+    synchronized (lockQueue) {
+      return minInterval;
+    }
+  }
+
+  /**
+   * @return number of requests for activity (notifications of
+   *         changes and enables) received by this ActionImpl
+   */
+  public long getNotifyCount() {
+    synchronized (lockQueue) {
+      return notifyCount;
+    }
+  }
+
+  /**
+   * @return number of requests for activity that were coalesced
+   *         with an already pending run() rather than queued
+   */
+  public long getCoalescedCount() {
+    synchronized (lockQueue) {
+      return coalescedCount;
+    }
+  }
+
+  /**
+   * @return number of run() invocations of this ActionImpl
+   */
+  public long getRunCount() {
+    synchronized (lockQueue) {
+      return runCount;
+    }
+  }
+
+  /**
+   * @return number of run() requests delayed by the minimum interval
+   */
+  public long getDelayedCount() {
+    synchronized (lockQueue) {
+      return delayedCount;
+    }
   }
 
   /**
@@ -797,5 +991,80 @@ public abstract class ActionImpl implements Action, Runnable {
     Name = name;
   }
 
+  /** an ActionImpl that records when each doAction() starts */
+  private static class TimedAction extends ActionImpl {
+
+    private final long work;
+    private final Vector starts = new Vector();
+
+    TimedAction(String name, long work) {
+      super(name);
+      this.work = work;
+    }
+
+    public boolean checkTicks() {
+      return true;
+    }
+
+    public void doAction() {
+      starts.addElement(new Long(System.currentTimeMillis()));
+      try {
+        Thread.sleep(work);
+      }
+      catch (InterruptedException e) {
+      }
+    }
+
+    /** wait until no run() is queued, running or delayed */
+    void settle() throws InterruptedException {
+      ActionImpl action = this;
+      while (true) {
+        synchronized (action.lockQueue) {
+          if (!action.queued && !action.running) return;
+        }
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  /** check that notifyAction() coalesces bursts and honors minInterval */
+  public static void main(String args[]) throws InterruptedException {
+    // a burst during a run() should cause at most one more run()
+    TimedAction action = new TimedAction("burst", 200);
+    action.notifyAction();
+    while (action.starts.size() == 0) Thread.sleep(5);
+    for (int i=0; i<1000; i++) action.notifyAction();
+    action.settle();
+    System.out.println("runs for a burst of 1000 notifications: " +
+                       action.getRunCount() + " (expect 2), coalesced: " +
+                       action.getCoalescedCount() + " (expect 999)");
+
+    // notifications every 5 ms for 1 s should run at most every 100 ms,
+    // with a run after the last notification
+    action = new TimedAction("interval", 0);
+    action.setMinInterval(100);
+    long start = System.currentTimeMillis();
+    long last = 0;
+    while (System.currentTimeMillis() - start < 1000) {
+      last = System.currentTimeMillis();
+      action.notifyAction();
+      Thread.sleep(5);
+    }
+    action.settle();
+    long gap = Long.MAX_VALUE;
+    for (int i=1; i<action.starts.size(); i++) {
+      gap = Math.min(gap, ((Long) action.starts.elementAt(i)).longValue() -
+                          ((Long) action.starts.elementAt(i-1)).longValue());
+    }
+    long final_start =
+      ((Long) action.starts.lastElement()).longValue();
+    System.out.println("runs for 1 s of notifications: " +
+                       action.getRunCount() + " (expect about 10), " +
+                       "shortest interval: " + gap + " ms (expect >= 100), " +
+                       "last run after last notification: " +
+                       (final_start >= last) + " (expect true)");
+    System.exit(0);
+  }
+
 }
 
@@ -587,7 +587,7 @@ public final class BaseUnit extends Unit implements Serializable {
     @Override
     public double[] toThis(final double[] values, final Unit that,
             final boolean copy) throws UnitException {
-        return that.toThat(values, derivedUnit, copy);
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -609,7 +609,7 @@ public final class BaseUnit extends Unit implements Serializable {
     @Override
     public float[] toThis(final float[] values, final Unit that,
             final boolean copy) throws UnitException {
-        return that.toThat(values, derivedUnit, copy);
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -763,7 +763,7 @@ public final class BaseUnit extends Unit implements Serializable {
     @Override
     public double[] toThat(final double[] values, final Unit that,
             final boolean copy) throws UnitException {
-        return that.toThis(values, derivedUnit, copy);
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
@@ -785,7 +785,7 @@ public final class BaseUnit extends Unit implements Serializable {
     @Override
     public float[] toThat(final float[] values, final Unit that,
             final boolean copy) throws UnitException {
-        return that.toThis(values, derivedUnit, copy);
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
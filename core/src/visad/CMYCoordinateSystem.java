@@ -162,6 +162,16 @@ public class CMYCoordinateSystem extends CoordinateSystem {
     return value;
   }
 
+  /**
+   * check whether this CMYCoordinateSystem may be used from several
+   * threads at once
+   * @return true, since each component is just 1 - value and there
+   *         are no instance fields to share
+   */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   /**
    * Indicates whether or not this instance is equal to an object.
    * @param cs - the object in question.
@@ -296,6 +296,19 @@ public class CartesianProductCoordinateSystem extends CoordinateSystem {
     return output;
   }
 
+  /**
+   * Check to see if this CartesianProductCoordinateSystem may be used
+   * from several threads at once.
+   *
+   * @return  true if all the component CoordinateSystems are thread-safe.
+   */
+  public boolean isThreadSafe() {
+    for (int i = 0; i < csArray.length; i++) {
+      if (!csArray[i].isThreadSafe()) return false;
+    }
+    return true;
+  }
+
   /**
    * Check to see if the object in question is equal to this
    * CartesianProductCoordinateSystem.
@@ -248,12 +248,16 @@ public abstract class CoordinateSystem extends Object
    * <p>This implementation uses {@link #transformCoordinatesFreeUnits} to do
    * most of the transformation.</p>
    *
-   * <p>If both {@link RealTupleType}s have a reference coordinate system, then
-   * this implementation <em>always</em> transforms the input domain values by
-   * first transforming them according to the input reference coordinate system
-   * and then inverse transforming them according to the output reference
-   * coordinate system -- even if the input and output {@link RealTupleType}s
-   * are equal.</p>
+   * <p>If <code>errors_out</code> is <code>null</code>, this implementation
+   * uses the cached {@link CoordinateTransformPlan} for the signature, which
+   * composes successive Unit conversions into one pass per component and
+   * skips {@link IdentityCoordinateSystem}s.  Otherwise the transformation
+   * is done step by step.  Either way, if both {@link RealTupleType}s have a
+   * reference coordinate system, then the input domain values are
+   * <em>always</em> transformed by first transforming them according to the
+   * input reference coordinate system and then inverse transforming them
+   * according to the output reference coordinate system -- even if the
+   * input and output {@link RealTupleType}s are equal.</p>
    *
    * @param out              The output {@link RealTupleType}.
    * @param coord_out        The coordinate system transformation associated
@@ -296,12 +300,16 @@ public abstract class CoordinateSystem extends Object
    * <p>This implementation uses {@link #transformCoordinatesFreeUnits} to do
    * most of the transformation.</p>
    *
-   * <p>If both {@link RealTupleType}s have a reference coordinate system, then
-   * this implementation <em>always</em> transforms the input domain values by
-   * first transforming them according to the input reference coordinate system
-   * and then inverse transforming them according to the output reference
-   * coordinate system -- even if the input and output {@link RealTupleType}s
-   * are equal.</p>
+   * <p>If <code>errors_out</code> is <code>null</code>, this implementation
+   * uses the cached {@link CoordinateTransformPlan} for the signature, which
+   * composes successive Unit conversions into one pass per component and
+   * skips {@link IdentityCoordinateSystem}s.  Otherwise the transformation
+   * is done step by step.  Either way, if both {@link RealTupleType}s have a
+   * reference coordinate system, then the input domain values are
+   * <em>always</em> transformed by first transforming them according to the
+   * input reference coordinate system and then inverse transforming them
+   * according to the output reference coordinate system -- even if the
+   * input and output {@link RealTupleType}s are equal.</p>
    *
    * @param out              The output {@link RealTupleType}.
    * @param coord_out        The coordinate system transformation associated
@@ -333,6 +341,11 @@ public abstract class CoordinateSystem extends Object
                         RealTupleType in, CoordinateSystem coord_in,
                         Unit[] units_in, ErrorEstimate[] errors_in,
                         double[][] value, boolean copy) throws VisADException {
+    if (errors_out == null) {
+      return CoordinateTransformPlan.getInstance(out, coord_out, units_out,
+                                                 in, coord_in, units_in)
+                                    .transform(value, copy);
+    }
     int n = out.getDimension();
     Unit[] units_free = new Unit[n];
     double[][] old_value = value;
@@ -532,12 +545,16 @@ public abstract class CoordinateSystem extends Object
    * <p>This implementation uses {@link #transformCoordinatesFreeUnits} to do
    * most of the transformation.</p>
    *
-   * <p>If both {@link RealTupleType}s have a reference coordinate system, then
-   * this implementation <em>always</em> transforms the input domain values by
-   * first transforming them according to the input reference coordinate system
-   * and then inverse transforming them according to the output reference
-   * coordinate system -- even if the input and output {@link RealTupleType}s
-   * are equal.</p>
+   * <p>If <code>errors_out</code> is <code>null</code>, this implementation
+   * uses the cached {@link CoordinateTransformPlan} for the signature, which
+   * composes successive Unit conversions into one pass per component and
+   * skips {@link IdentityCoordinateSystem}s.  Otherwise the transformation
+   * is done step by step.  Either way, if both {@link RealTupleType}s have a
+   * reference coordinate system, then the input domain values are
+   * <em>always</em> transformed by first transforming them according to the
+   * input reference coordinate system and then inverse transforming them
+   * according to the output reference coordinate system -- even if the
+   * input and output {@link RealTupleType}s are equal.</p>
    *
    * @param out              The output {@link RealTupleType}.
    * @param coord_out        The coordinate system transformation associated
@@ -581,12 +598,16 @@ public abstract class CoordinateSystem extends Object
    * <p>This implementation uses {@link #transformCoordinatesFreeUnits} to do
    * most of the transformation.</p>
    *
-   * <p>If both {@link RealTupleType}s have a reference coordinate system, then
-   * this implementation <em>always</em> transforms the input domain values by
-   * first transforming them according to the input reference coordinate system
-   * and then inverse transforming them according to the output reference
-   * coordinate system -- even if the input and output {@link RealTupleType}s
-   * are equal.</p>
+   * <p>If <code>errors_out</code> is <code>null</code>, this implementation
+   * uses the cached {@link CoordinateTransformPlan} for the signature, which
+   * composes successive Unit conversions into one pass per component and
+   * skips {@link IdentityCoordinateSystem}s.  Otherwise the transformation
+   * is done step by step.  Either way, if both {@link RealTupleType}s have a
+   * reference coordinate system, then the input domain values are
+   * <em>always</em> transformed by first transforming them according to the
+   * input reference coordinate system and then inverse transforming them
+   * according to the output reference coordinate system -- even if the
+   * input and output {@link RealTupleType}s are equal.</p>
    *
    * @param out              The output {@link RealTupleType}.
    * @param coord_out        The coordinate system transformation associated
@@ -618,6 +639,11 @@ public abstract class CoordinateSystem extends Object
                         RealTupleType in, CoordinateSystem coord_in,
                         Unit[] units_in, ErrorEstimate[] errors_in,
                         float[][] value, boolean copy) throws VisADException {
+    if (errors_out == null) {
+      return CoordinateTransformPlan.getInstance(out, coord_out, units_out,
+                                                 in, coord_in, units_in)
+                                    .transform(value, copy);
+    }
 
     int n = out.getDimension();
     Unit[] units_free = new Unit[n];
@@ -949,6 +975,20 @@ public abstract class CoordinateSystem extends Object
     return fromReference(value);
   }
 
+  /**
+   * Return true if {@link #toReference(double[][])}, {@link
+   * #fromReference(double[][])} and their float versions may be called
+   * concurrently, and transform each value independently of the others
+   * in the same call, so a call may be split into pieces and run on
+   * several threads with the same results; see {@link
+   * ParallelCoordinateSystem}.  Stateless point-by-point transforms
+   * should override this to return true.
+   * @return false, unless overridden.
+   */
+  public boolean isThreadSafe() {
+    return false;
+  }
+
   /**
    * Indicates whether or not this instance is equal to an object
    * (note must test for cs == null).
@@ -0,0 +1,464 @@
+//
+// CoordinateTransformPlan.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   CoordinateTransformPlan is the compiled form of
+   {@link CoordinateSystem#transformCoordinates} for one signature,
+   i.e. one (in, coord_in, units_in) to (out, coord_out, units_out).<P>
+
+   Planning follows the same path through the reference as
+   transformCoordinates, but only records which CoordinateSystem
+   calls are needed and the Unit conversions between them.  Each run
+   of Unit conversions between two CoordinateSystem calls is composed
+   into a single {@link UnitConverter} per component, so it costs one
+   pass over the values.  An {@link IdentityCoordinateSystem} only
+   relabels Units, so it contributes no call, unless it relabels a
+   component that has a conversion pending; then the call ends that
+   run of conversions, since the next one starts from the new Unit.
+   (A toReference followed
+   by a fromReference of the same CoordinateSystem is still made,
+   since it may normalize values, e.g. angles.)
+   A plan with no CoordinateSystem calls left is just a Unit
+   conversion per component, and is identity or affine if all those
+   conversions are.<P>
+
+   Plans are immutable and cached by signature, with CoordinateSystems
+   compared by identity since their equals methods need not compare
+   Units.<P>
+*/
+public final class CoordinateTransformPlan {
+
+  /** maximum number of cached plans */
+  private static final int MAX_CACHED = 256;
+
+  /** cached plans, least recently used first */
+  private static final Map<Key, CoordinateTransformPlan> cache =
+    new LinkedHashMap<Key, CoordinateTransformPlan>(64, 0.75f, true) {
+      protected boolean removeEldestEntry(
+                   Map.Entry<Key, CoordinateTransformPlan> eldest) {
+        return size() > MAX_CACHED;
+      }
+    };
+
+  private final int dimension;
+
+  /** CoordinateSystem calls, in order */
+  private final CoordinateSystem[] systems;
+
+  /** true for toReference, false for fromReference */
+  private final boolean[] toReference;
+
+  /**
+   * conversions[k][i] converts component i before call k, or after
+   * the last call for k == systems.length; null for none
+   */
+  private final UnitConverter[][] conversions;
+
+  private CoordinateTransformPlan(int dimension, List<CoordinateSystem> systems,
+                                  List<Boolean> toReference,
+                                  List<UnitConverter[]> conversions) {
+    this.dimension = dimension;
+    this.systems = systems.toArray(new CoordinateSystem[systems.size()]);
+    this.toReference = new boolean[this.systems.length];
+    for (int k=0; k<this.toReference.length; k++) {
+      this.toReference[k] = toReference.get(k).booleanValue();
+    }
+    this.conversions =
+      conversions.toArray(new UnitConverter[conversions.size()][]);
+    for (int k=0; k<this.conversions.length; k++) {
+      UnitConverter[] c = this.conversions[k];
+      for (int i=0; i<c.length; i++) {
+        if (c[i] != null && c[i].isIdentity()) c[i] = null;
+      }
+    }
+  }
+
+  /**
+   * return the plan for transforming values from (in, coord_in,
+   * units_in) to (out, coord_out, units_out); arguments are as for
+   * {@link CoordinateSystem#transformCoordinates}
+   * @throws CoordinateSystemException if the RealTupleTypes and
+   *                         CoordinateSystems are inconsistent.
+   * @throws UnitException   if Units are not convertible.
+   * @throws NullPointerException if <code>units_out</code> is
+   *                         <code>null</code>.
+   */
+  public static CoordinateTransformPlan getInstance(
+                        RealTupleType out, CoordinateSystem coord_out,
+                        Unit[] units_out,
+                        RealTupleType in, CoordinateSystem coord_in,
+                        Unit[] units_in) throws VisADException {
+    if (units_out == null) {
+      throw new NullPointerException("units_out may not be null");
+    }
+    // as in transformCoordinatesFreeUnits: include any RealTupleType defaults
+    if (coord_out == null) coord_out = out.getCoordinateSystem();
+    if (coord_in == null) coord_in = in.getCoordinateSystem();
+
+    Key key = new Key(out, coord_out, units_out, in, coord_in, units_in);
+    CoordinateTransformPlan plan;
+    synchronized (cache) {
+      plan = cache.get(key);
+    }
+    if (plan == null) {
+      plan = build(out, coord_out, units_out, in, coord_in, units_in);
+      synchronized (cache) {
+        cache.put(key, plan);
+      }
+    }
+    return plan;
+  }
+
+  private static CoordinateTransformPlan build(
+                        RealTupleType out, CoordinateSystem coord_out,
+                        Unit[] units_out,
+                        RealTupleType in, CoordinateSystem coord_in,
+                        Unit[] units_in) throws VisADException {
+    // choose the CoordinateSystem calls exactly as
+    // transformCoordinatesFreeUnits does
+    CoordinateSystem to_ref = null;
+    CoordinateSystem from_ref = null;
+    if (out.equals(in)) {
+      if (coord_in != null || coord_out != null) {
+        if (coord_in == null || coord_out == null) {
+          throw new CoordinateSystemException(
+            "CoordinateSystem.transformCoordinates: inconsistency");
+        }
+        if (!coord_in.equals(coord_out)) {
+          to_ref = coord_in;
+          from_ref = coord_out;
+        }
+      }
+    }
+    else {
+      RealTupleType ref_out = out;
+      if (coord_out != null) {
+        ref_out = coord_out.getReference();
+        if (out.getCoordinateSystem() == null ||
+            !out.getCoordinateSystem().getReference().equals(ref_out)) {
+          throw new CoordinateSystemException(
+            "CoordinateSystem.transformCoordinates: out References don't match");
+        }
+      }
+      RealTupleType ref_in = in;
+      if (coord_in != null) {
+        ref_in = coord_in.getReference();
+        if (in.getCoordinateSystem() == null ||
+            !in.getCoordinateSystem().getReference().equals(ref_in)) {
+          throw new CoordinateSystemException(
+            "CoordinateSystem.transformCoordinates: in References don't match");
+        }
+      }
+      // otherwise no transform, as in transformCoordinatesFreeUnits
+      if (ref_out.equals(ref_in)) {
+        if (!in.equals(ref_in)) to_ref = coord_in;
+        if (!out.equals(ref_out)) from_ref = coord_out;
+      }
+    }
+
+    Builder builder = new Builder(in.getDimension(), units_in);
+    if (to_ref != null) builder.toReference(to_ref);
+    if (from_ref != null) builder.fromReference(from_ref);
+    // final conversion, as by Unit.transformUnits
+    builder.convert(units_out);
+    return builder.plan(out.getDimension());
+  }
+
+  /** return true if this plan returns values unchanged */
+  public boolean isIdentity() {
+    if (systems.length > 0) return false;
+    UnitConverter[] c = conversions[0];
+    for (int i=0; i<c.length; i++) {
+      if (c[i] != null) return false;
+    }
+    return true;
+  }
+
+  /**
+   * return true if this plan is scale * value + offset for each
+   * component (including the identity)
+   */
+  public boolean isAffine() {
+    if (systems.length > 0) return false;
+    UnitConverter[] c = conversions[0];
+    for (int i=0; i<c.length; i++) {
+      if (c[i] != null && !c[i].isAffine()) return false;
+    }
+    return true;
+  }
+
+  /** return the number of CoordinateSystem calls made by this plan */
+  public int getCoordinateSystemCount() {
+    return systems.length;
+  }
+
+  /**
+   * transform value, whose component arrays may be modified, and
+   * return the result, whose component arrays are new if copy is true
+   */
+  public double[][] transform(double[][] value, boolean copy)
+         throws VisADException {
+    double[][] v = new double[value.length][];
+    System.arraycopy(value, 0, v, 0, value.length);
+    int last = systems.length;
+    for (int k=0; k<last; k++) {
+      UnitConverter[] c = conversions[k];
+      for (int i=0; i<c.length; i++) {
+        if (c[i] != null) v[i] = c[i].convert(v[i], false);
+      }
+      v = toReference[k] ? systems[k].toReference(v) :
+                           systems[k].fromReference(v);
+    }
+    UnitConverter[] c = conversions[last];
+    double[][] result = new double[dimension][];
+    for (int i=0; i<dimension; i++) {
+      if (c[i] != null) {
+        result[i] = c[i].convert(v[i], copy);
+      }
+      else {
+        result[i] = copy ? (double[]) v[i].clone() : v[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * transform value, whose component arrays may be modified, and
+   * return the result, whose component arrays are new if copy is true
+   */
+  public float[][] transform(float[][] value, boolean copy)
+         throws VisADException {
+    float[][] v = new float[value.length][];
+    System.arraycopy(value, 0, v, 0, value.length);
+    int last = systems.length;
+    for (int k=0; k<last; k++) {
+      UnitConverter[] c = conversions[k];
+      for (int i=0; i<c.length; i++) {
+        if (c[i] != null) v[i] = c[i].convert(v[i], false);
+      }
+      v = toReference[k] ? systems[k].toReference(v) :
+                           systems[k].fromReference(v);
+    }
+    UnitConverter[] c = conversions[last];
+    float[][] result = new float[dimension][];
+    for (int i=0; i<dimension; i++) {
+      if (c[i] != null) {
+        result[i] = c[i].convert(v[i], copy);
+      }
+      else {
+        result[i] = copy ? (float[]) v[i].clone() : v[i];
+      }
+    }
+    return result;
+  }
+
+  public String toString() {
+    StringBuffer buf = new StringBuffer("CoordinateTransformPlan[");
+    for (int k=0; k<=systems.length; k++) {
+      UnitConverter[] c = conversions[k];
+      for (int i=0; i<c.length; i++) {
+        if (c[i] != null) buf.append(" ").append(i).append(": ").append(c[i]);
+      }
+      if (k < systems.length) {
+        buf.append(toReference[k] ? " toReference " : " fromReference ");
+        buf.append(systems[k].getClass().getName());
+      }
+    }
+    return buf.append(" ]").toString();
+  }
+
+  /**
+   * Builder follows the Units of the components through the calls
+   * of transformCoordinates, as CoordinateSystem.toReference(value,
+   * units) and fromReference(value, units) change them, composing
+   * the conversions between calls.
+   */
+  private static class Builder {
+
+    private final List<CoordinateSystem> systems =
+      new ArrayList<CoordinateSystem>();
+
+    private final List<Boolean> directions = new ArrayList<Boolean>();
+
+    private final List<UnitConverter[]> conversions =
+      new ArrayList<UnitConverter[]>();
+
+    /** current Units of the components */
+    private Unit[] units;
+
+    /** conversions since the last call */
+    private UnitConverter[] pending;
+
+    Builder(int n, Unit[] units_in) {
+      units = new Unit[n];
+      if (units_in != null) System.arraycopy(units_in, 0, units, 0, n);
+      pending = new UnitConverter[n];
+    }
+
+    /** convert components to us, where both Units are non-null */
+    void convert(Unit[] us) throws UnitException {
+      if (us == null) return;
+      for (int i=0; i<units.length; i++) {
+        if (us[i] != null && units[i] != null && !us[i].equals(units[i])) {
+          Unit from = (pending[i] == null) ? units[i] :
+                                             pending[i].getFromUnit();
+          pending[i] = UnitConverter.getInstance(from, us[i]);
+          units[i] = us[i];
+        }
+      }
+    }
+
+    /**
+     * return true if labelling components with us would change the
+     * Unit of a component with a pending conversion
+     */
+    boolean relabelsPending(Unit[] us) {
+      for (int i=0; i<units.length; i++) {
+        if (pending[i] != null &&
+            (us == null || us[i] == null || !us[i].equals(units[i]))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** label components with us, without converting values */
+    void relabel(Unit[] us) {
+      for (int i=0; i<units.length; i++) {
+        units[i] = (us == null) ? null : us[i];
+      }
+    }
+
+    void toReference(CoordinateSystem cs)
+         throws UnitException {
+      convert(cs.getCoordinateSystemUnits());
+      Unit[] us = cs.getReference().getDefaultUnits();
+      if (cs.getClass() != IdentityCoordinateSystem.class ||
+          relabelsPending(us)) {
+        call(cs, true);
+      }
+      relabel(us);
+    }
+
+    void fromReference(CoordinateSystem cs)
+         throws UnitException {
+      convert(cs.getReference().getDefaultUnits());
+      Unit[] us = cs.getCoordinateSystemUnits();
+      if (cs.getClass() != IdentityCoordinateSystem.class ||
+          relabelsPending(us)) {
+        call(cs, false);
+      }
+      relabel(us);
+    }
+
+    private void call(CoordinateSystem cs, boolean to_reference) {
+      conversions.add(pending);
+      pending = new UnitConverter[units.length];
+      systems.add(cs);
+      directions.add(Boolean.valueOf(to_reference));
+    }
+
+    CoordinateTransformPlan plan(int dimension) {
+      conversions.add(pending);
+      return new CoordinateTransformPlan(dimension, systems, directions,
+                                         conversions);
+    }
+  }
+
+  /** a plan signature, used as a cache key */
+  private static final class Key {
+
+    private final RealTupleType out, in;
+
+    private final CoordinateSystem coord_out, coord_in;
+
+    private final Unit[] units_out, units_in;
+
+    Key(RealTupleType out, CoordinateSystem coord_out, Unit[] units_out,
+        RealTupleType in, CoordinateSystem coord_in, Unit[] units_in) {
+      this.out = out;
+      this.coord_out = coord_out;
+      this.units_out = (units_out == null) ? null : (Unit[]) units_out.clone();
+      this.in = in;
+      this.coord_in = coord_in;
+      this.units_in = (units_in == null) ? null : (Unit[]) units_in.clone();
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) return false;
+      Key that = (Key) obj;
+      return coord_out == that.coord_out && coord_in == that.coord_in &&
+             out.equals(that.out) && in.equals(that.in) &&
+             Arrays.equals(units_out, that.units_out) &&
+             Arrays.equals(units_in, that.units_in);
+    }
+
+    public int hashCode() {
+      return ((out.hashCode() * 31 + in.hashCode()) * 31 +
+              System.identityHashCode(coord_out)) * 31 +
+             System.identityHashCode(coord_in) +
+             Arrays.hashCode(units_out) * 7 + Arrays.hashCode(units_in);
+    }
+  }
+
+  /**
+   * check that a plan matches transformCoordinates where an
+   * IdentityCoordinateSystem relabels a component being converted
+   */
+  public static void main(String[] args) throws VisADException {
+    Unit m = SI.meter;
+    Unit km = m.scale(1000.0);
+    RealType x = RealType.getRealType("PlanX", m);
+    RealType y = RealType.getRealType("PlanY", m);
+    RealTupleType ref = new RealTupleType(x, y);
+    IdentityCoordinateSystem ics =
+      new IdentityCoordinateSystem(ref, new Unit[] {km, km});
+    RealTupleType out =
+      new RealTupleType(new RealType[] {RealType.getRealType("PlanA", km),
+                                        RealType.getRealType("PlanB", km)},
+                        ics, null);
+    Unit[] units_in = {km, m};
+    Unit[] units_out = {m, km};
+
+    // transformCoordinates converts X from km to m for the reference,
+    // relabels it km for ics, then converts km to m: 1 km -> 1e6 m
+    CoordinateTransformPlan plan =
+      getInstance(out, null, units_out, ref, null, units_in);
+    double[][] v = plan.transform(new double[][] {{1.0}, {1.0}}, true);
+    System.out.println(plan);
+    System.out.println("X = " + v[0][0] + " (expect 1000000.0), Y = " +
+                       v[1][0] + " (expect 1.0)");
+  }
+
+}
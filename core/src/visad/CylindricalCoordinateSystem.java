@@ -231,6 +231,17 @@ public class CylindricalCoordinateSystem
         return value;
     }
 
+    /**
+     * Check whether this CoordinateSystem may be used from several
+     * threads at once.
+     *
+     * @return true, since the conversions only read their arguments
+     *         and write arrays they allocate
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /** determine if the CoordinateSystem in question is a Cylindrical one
      *
      * @param cs the CoordinateSystem in question
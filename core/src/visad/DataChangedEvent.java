@@ -0,0 +1,173 @@
+//
+// DataChangedEvent.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.Arrays;
+
+/**
+   DataChangedEvent is the ThingChangedEvent for a change to only
+   some of the samples of a Field, e.g. by setSample(int, Data) or
+   setSamples(int, double[][]).  It carries the changed sample
+   index ranges, so that Actions (local or remote) can update only
+   the changed slices rather than fetching the whole Field.  A
+   plain ThingChangedEvent means that the whole Data object may
+   have changed.<P>
+
+   Ranges are held as pairs of start (inclusive) and end
+   (exclusive) indices, sorted and disjoint.  Events queued for a
+   busy Action are merged; when they hold more than MAX_RANGES
+   ranges, the closest ranges are joined.<P>
+*/
+public class DataChangedEvent extends ThingChangedEvent {
+
+  /** most ranges held by one DataChangedEvent */
+  public static final int MAX_RANGES = 64;
+
+  private static final int[] NO_RANGES = new int[0];
+
+  /** {start0, end0, start1, end1, ...} */
+  private int[] ranges;
+
+  /** ranges are {start0, end0, start1, end1, ...} pairs of sample
+      indices, with each end exclusive, in any order */
+  public DataChangedEvent(long id, long tick, int[] ranges) {
+    super(id, tick);
+    this.ranges = union(ranges, NO_RANGES);
+  }
+
+  /** return {start0, end0, start1, end1, ...} changed index ranges,
+      sorted and disjoint, with each end exclusive */
+  public int[] getRanges() {
+    return (int[]) ranges.clone();
+  }
+
+  /** return the number of changed samples */
+  public int getChangedCount() {
+    int count = 0;
+    for (int i=0; i<ranges.length; i+=2) count += ranges[i + 1] - ranges[i];
+    return count;
+  }
+
+  /** return true if any sample index in [start, end) changed */
+  public boolean intersects(int start, int end) {
+    return intersects(ranges, start, end);
+  }
+
+  /** return true if ranges includes any index in [start, end) */
+  public static boolean intersects(int[] ranges, int start, int end) {
+    for (int i=0; i<ranges.length; i+=2) {
+      if (ranges[i] < end && start < ranges[i + 1]) return true;
+    }
+    return false;
+  }
+
+  /** return ranges covering the sample indices */
+  public static int[] toRanges(int[] indices) {
+    int[] ranges = new int[2 * indices.length];
+    for (int i=0; i<indices.length; i++) {
+      ranges[2 * i] = indices[i];
+      ranges[2 * i + 1] = indices[i] + 1;
+    }
+    return union(ranges, NO_RANGES);
+  }
+
+  /**
+   * return the union of ranges a and b, sorted and disjoint, with
+   * the closest ranges joined until there are at most MAX_RANGES
+   */
+  public static int[] union(int[] a, int[] b) {
+    int n = (a.length + b.length) / 2;
+    long[] pairs = new long[n];
+    int k = 0;
+    for (int i=0; i+1<a.length; i+=2) {
+      if (a[i] < a[i + 1]) pairs[k++] = pack(a[i], a[i + 1]);
+    }
+    for (int i=0; i+1<b.length; i+=2) {
+      if (b[i] < b[i + 1]) pairs[k++] = pack(b[i], b[i + 1]);
+    }
+    Arrays.sort(pairs, 0, k);
+
+    int[] merged = new int[2 * k];
+    int m = 0;
+    for (int i=0; i<k; i++) {
+      int start = (int) (pairs[i] >> 32);
+      int end = (int) pairs[i];
+      if (m > 0 && start <= merged[m - 1]) {
+        if (end > merged[m - 1]) merged[m - 1] = end;
+      }
+      else {
+        merged[m++] = start;
+        merged[m++] = end;
+      }
+    }
+
+    while (m > 2 * MAX_RANGES) {
+      // join the two ranges with the smallest gap between them
+      int best = 1;
+      for (int i=3; i<m; i+=2) {
+        if (merged[i + 1] - merged[i] < merged[best + 1] - merged[best]) {
+          best = i;
+        }
+      }
+      System.arraycopy(merged, best + 2, merged, best, m - best - 2);
+      m -= 2;
+    }
+
+    int[] result = new int[m];
+    System.arraycopy(merged, 0, result, 0, m);
+    return result;
+  }
+
+  /** pack a non-negative start and an end so longs sort by start */
+  private static long pack(int start, int end) {
+    return (((long) start) << 32) | (end & 0xffffffffL);
+  }
+
+  /**
+   * return one event for the changes of older and then newer, with
+   * the id and tick of newer; it is a DataChangedEvent only if both
+   * are
+   */
+  public static ThingChangedEvent merge(ThingChangedEvent older,
+                                        ThingChangedEvent newer) {
+    if (older instanceof DataChangedEvent &&
+        newer instanceof DataChangedEvent) {
+      DataChangedEvent event = new DataChangedEvent(newer.getId(),
+                                                    newer.getTick(), NO_RANGES);
+      event.ranges = union(((DataChangedEvent) older).ranges,
+                           ((DataChangedEvent) newer).ranges);
+      return event;
+    }
+    if (newer instanceof DataChangedEvent) {
+      // older may have changed everything
+      return new ThingChangedEvent(newer.getId(), newer.getTick());
+    }
+    return newer;
+  }
+
+}
+
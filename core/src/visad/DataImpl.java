@@ -111,6 +111,21 @@ public abstract class DataImpl extends ThingImpl
     if (parent != null) parent.notifyReferences();
   }
 
+  /**
+   * notify local DataReferenceImpl-s that only the samples in ranges
+   * have changed; a parent is notified that all may have changed,
+   * since its sample indices differ
+   * @param ranges {start0, end0, start1, end1, ...} sample index
+   *               ranges, with each end exclusive
+   * @throws VisADException  a VisAD error occurred
+   * @throws RemoteException  an RMI error occurred
+   */
+  protected void notifyReferences(int[] ranges)
+         throws VisADException, RemoteException {
+    super.notifyReferences(ranges);
+    if (parent != null) parent.notifyReferences();
+  }
+
   /**
    * Pointwise binary operation between this and data. Applies
    * to Reals, Tuples (recursively to components), and to Field 
@@ -1638,6 +1653,24 @@ public abstract class DataImpl extends ThingImpl
     for (int i=0; i<ranges.length; i++) {
       System.out.println(types[i] + ": " + ranges[i][0] + " to " + ranges[i][1]);
     }
+    System.out.println(" ");
+
+    // a change to a sample of a FieldImpl should tick its reference once
+    RealType index = RealType.getRealType("index");
+    FieldImpl sequence =
+      new FieldImpl(new FunctionType(index, func), new Integer1DSet(index, 2));
+    sequence.setSample(0, ff, false);
+    FlatField sample = (FlatField) sequence.getSample(0);
+    DataReferenceImpl ref = new DataReferenceImpl("sequence");
+    ref.setData(sequence);
+    long tick = ref.getTick();
+    sample.setSamples(new float[][] {{3.0f, 2.0f, 1.0f, 0.0f}});
+    System.out.println("ticks for a whole sample change: " +
+                       (ref.getTick() - tick) + " (expect 1)");
+    tick = ref.getTick();
+    sample.setSample(1, new Real(RealType.Time, 5.0));
+    System.out.println("ticks for a partial sample change: " +
+                       (ref.getTick() - tick) + " (expect 1)");
     System.exit(0);
   }
 
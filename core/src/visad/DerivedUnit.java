@@ -805,15 +805,7 @@ public final class DerivedUnit extends Unit implements Serializable {
 	@Override
 	public double[] toThis(final double[] values, final Unit that,
 			final boolean copy) throws UnitException {
-		if (that instanceof PromiscuousUnit) {
-			final double[] newValues = (copy)
-					? (double[]) values.clone()
-					: values;
-			return newValues;
-		}
-		return that instanceof DerivedUnit
-				? toThis(values, (DerivedUnit) that, copy)
-				: that.toThat(values, this);
+		return getConverterFrom(that).convert(values, copy);
 	}
 
 	/**
@@ -835,15 +827,7 @@ public final class DerivedUnit extends Unit implements Serializable {
 	@Override
 	public float[] toThis(final float[] values, final Unit that,
 			final boolean copy) throws UnitException {
-		if (that instanceof PromiscuousUnit) {
-			final float[] newValues = (copy)
-					? (float[]) values.clone()
-					: values;
-			return newValues;
-		}
-		return that instanceof DerivedUnit
-				? toThis(values, (DerivedUnit) that, copy)
-				: that.toThat(values, this);
+		return getConverterFrom(that).convert(values, copy);
 	}
 
 	/**
@@ -1071,15 +1055,7 @@ public final class DerivedUnit extends Unit implements Serializable {
 	@Override
 	public double[] toThat(final double values[], final Unit that,
 			final boolean copy) throws UnitException {
-		if (that instanceof PromiscuousUnit) {
-			final double[] newValues = (copy)
-					? (double[]) values.clone()
-					: values;
-			return newValues;
-		}
-		return that instanceof DerivedUnit
-				? toThat(values, (DerivedUnit) that, copy)
-				: that.toThis(values, this, copy);
+		return that.getConverterFrom(this).convert(values, copy);
 	}
 
 	/**
@@ -1101,15 +1077,7 @@ public final class DerivedUnit extends Unit implements Serializable {
 	@Override
 	public float[] toThat(final float values[], final Unit that,
 			final boolean copy) throws UnitException {
-		if (that instanceof PromiscuousUnit) {
-			final float[] newValues = (copy)
-					? (float[]) values.clone()
-					: values;
-			return newValues;
-		}
-		return that instanceof DerivedUnit
-				? toThat(values, (DerivedUnit) that, copy)
-				: that.toThis(values, this, copy);
+		return that.getConverterFrom(this).convert(values, copy);
 	}
 
 	/**
@@ -0,0 +1,950 @@
+//
+// FieldExpression.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.util.ThreadManager;
+
+/**
+ * FieldExpression is a lazily evaluated expression over FlatFields and
+ * Reals, such as <CODE>(a - b) * c + d</CODE>.  Building an expression
+ * only records the operations; evaluate() computes it.<P>
+ *
+ * Where the whole expression can be fused, i.e. its FlatFields share
+ * a domain Set, have no range CoordinateSystems and are not missing,
+ * evaluate() computes it in one pass over chunks of samples, on
+ * several threads, and only allocates the result.  Applying the
+ * operations one at a time with Data.binary and Data.unary instead
+ * would unpack every operand and pack every intermediate result over
+ * the whole field.  Units are handled just as by FlatField.binary and
+ * FlatField.unary (with Data.NO_ERRORS), missing values propagate as
+ * NaN, and the result is stored as doubles only if all FlatFields
+ * store doubles; intermediate values are kept in double precision.<P>
+ *
+ * Any other expression, or one using unary operations other than
+ * ABS, CEIL, FLOOR, RINT, NEGATE, NOP, EXP, LOG and SQRT, is evaluated
+ * one operation at a time, exactly as the corresponding Data methods
+ * would evaluate it.  The number of threads and the number of samples
+ * per chunk are set by the visad.expression.threads and
+ * visad.expression.chunkSize system properties.<P>
+ */
+public class FieldExpression {
+
+  /** system property with the number of threads for fused evaluation */
+  public static final String PROP_THREADS = "visad.expression.threads";
+
+  /** system property with the number of samples per chunk */
+  public static final String PROP_CHUNK_SIZE = "visad.expression.chunkSize";
+
+  private static final int DEFAULT_CHUNK_SIZE = 16384;
+
+  private static final int LEAF = 0;
+  private static final int UNARY = 1;
+  private static final int BINARY = 2;
+
+  private final int kind;
+
+  /** Data operation of a UNARY or BINARY node */
+  private final int op;
+
+  private final FieldExpression left, right;
+
+  /** Data of a LEAF node */
+  private final Data data;
+
+  /** MathType of the value of this expression */
+  private final MathType type;
+
+  /** true if the value of this expression is a Field */
+  private final boolean field;
+
+  private FieldExpression(Data data)
+          throws VisADException, RemoteException {
+    if (data == null) {
+      throw new VisADException("FieldExpression: data cannot be null");
+    }
+    kind = LEAF;
+    op = Data.NOP;
+    left = null;
+    right = null;
+    this.data = data;
+    type = data.getType();
+    field = (type instanceof FunctionType);
+  }
+
+  private FieldExpression(int op, FieldExpression operand)
+          throws VisADException {
+    kind = UNARY;
+    this.op = op;
+    left = operand;
+    right = null;
+    data = null;
+    type = operand.type.unary(op, new Vector());
+    field = operand.field;
+  }
+
+  private FieldExpression(int op, FieldExpression left, FieldExpression right)
+          throws VisADException {
+    kind = BINARY;
+    this.op = op;
+    this.left = left;
+    this.right = right;
+    data = null;
+    type = left.type.binary(right.type, op, new Vector());
+    field = left.field || right.field;
+  }
+
+  /** return an expression whose value is data */
+  public static FieldExpression of(Data data)
+         throws VisADException, RemoteException {
+    return new FieldExpression(data);
+  }
+
+  /** return an expression whose value is a dimensionless Real */
+  public static FieldExpression of(double value)
+         throws VisADException, RemoteException {
+    return new FieldExpression(new Real(value));
+  }
+
+  /**
+   * return operand as an expression; operand may be a FieldExpression,
+   * a Data object or a Number (as passed from JPython)
+   */
+  public static FieldExpression of(Object operand)
+         throws VisADException, RemoteException {
+    if (operand instanceof FieldExpression) return (FieldExpression) operand;
+    if (operand instanceof Data) return new FieldExpression((Data) operand);
+    if (operand instanceof Number) {
+      return of(((Number) operand).doubleValue());
+    }
+    throw new VisADException("FieldExpression: can't use " +
+                             (operand == null ? null : operand.getClass()));
+  }
+
+  /** return the expression for Data.binary operation op of this and that */
+  public FieldExpression binary(FieldExpression that, int op)
+         throws VisADException {
+    if (op < Data.ADD || op > Data.INV_REMAINDER) {
+      throw new VisADException("FieldExpression.binary: bad operation " + op);
+    }
+    return new FieldExpression(op, this, that);
+  }
+
+  /** return the expression for Data.unary operation op of this */
+  public FieldExpression unary(int op) throws VisADException {
+    if (op < Data.ABS || op > Data.NOP) {
+      throw new VisADException("FieldExpression.unary: bad operation " + op);
+    }
+    return new FieldExpression(op, this);
+  }
+
+  public FieldExpression add(FieldExpression that) throws VisADException {
+    return binary(that, Data.ADD);
+  }
+
+  public FieldExpression subtract(FieldExpression that) throws VisADException {
+    return binary(that, Data.SUBTRACT);
+  }
+
+  public FieldExpression multiply(FieldExpression that) throws VisADException {
+    return binary(that, Data.MULTIPLY);
+  }
+
+  public FieldExpression divide(FieldExpression that) throws VisADException {
+    return binary(that, Data.DIVIDE);
+  }
+
+  public FieldExpression pow(FieldExpression that) throws VisADException {
+    return binary(that, Data.POW);
+  }
+
+  public FieldExpression remainder(FieldExpression that) throws VisADException {
+    return binary(that, Data.REMAINDER);
+  }
+
+  public FieldExpression max(FieldExpression that) throws VisADException {
+    return binary(that, Data.MAX);
+  }
+
+  public FieldExpression min(FieldExpression that) throws VisADException {
+    return binary(that, Data.MIN);
+  }
+
+  public FieldExpression negate() throws VisADException {
+    return unary(Data.NEGATE);
+  }
+
+  public FieldExpression abs() throws VisADException {
+    return unary(Data.ABS);
+  }
+
+  public FieldExpression sqrt() throws VisADException {
+    return unary(Data.SQRT);
+  }
+
+  public FieldExpression exp() throws VisADException {
+    return unary(Data.EXP);
+  }
+
+  public FieldExpression log() throws VisADException {
+    return unary(Data.LOG);
+  }
+
+  /** JPython operators; operands as for of(Object) */
+  public FieldExpression __add__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.ADD);
+  }
+
+  public FieldExpression __radd__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.ADD);
+  }
+
+  public FieldExpression __sub__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.SUBTRACT);
+  }
+
+  public FieldExpression __rsub__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.SUBTRACT);
+  }
+
+  public FieldExpression __mul__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.MULTIPLY);
+  }
+
+  public FieldExpression __rmul__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.MULTIPLY);
+  }
+
+  public FieldExpression __div__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.DIVIDE);
+  }
+
+  public FieldExpression __rdiv__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.DIVIDE);
+  }
+
+  public FieldExpression __pow__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.POW);
+  }
+
+  public FieldExpression __rpow__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.POW);
+  }
+
+  public FieldExpression __mod__(Object that)
+         throws VisADException, RemoteException {
+    return binary(of(that), Data.REMAINDER);
+  }
+
+  public FieldExpression __rmod__(Object that)
+         throws VisADException, RemoteException {
+    return of(that).binary(this, Data.REMAINDER);
+  }
+
+  public FieldExpression __neg__() throws VisADException {
+    return unary(Data.NEGATE);
+  }
+
+  /** return the MathType of the value of this expression */
+  public MathType getType() {
+    return type;
+  }
+
+  /**
+   * return the Data operation of a Method of Data, such as Data.ADD
+   * for Data.add(Data) or Data.SQRT for Data.sqrt(), or -1 if m is
+   * not such a Method; used to build expressions for formulas
+   */
+  public static int getOperation(Method m) {
+    if (!Data.class.isAssignableFrom(m.getDeclaringClass())) return -1;
+    Class[] params = m.getParameterTypes();
+    String name = m.getName();
+    if (params.length == 1 && params[0] == Data.class) {
+      for (int i=0; i<BINARY_NAMES.length; i++) {
+        if (BINARY_NAMES[i].equals(name)) return BINARY_OPS[i];
+      }
+    }
+    else if (params.length == 0) {
+      for (int i=0; i<UNARY_NAMES.length; i++) {
+        if (UNARY_NAMES[i].equals(name)) return UNARY_OPS[i];
+      }
+    }
+    return -1;
+  }
+
+  private static final String[] BINARY_NAMES = {"add", "subtract",
+    "multiply", "divide", "pow", "max", "min", "atan2", "atan2Degrees",
+    "remainder"};
+
+  private static final int[] BINARY_OPS = {Data.ADD, Data.SUBTRACT,
+    Data.MULTIPLY, Data.DIVIDE, Data.POW, Data.MAX, Data.MIN, Data.ATAN2,
+    Data.ATAN2_DEGREES, Data.REMAINDER};
+
+  private static final String[] UNARY_NAMES = {"abs", "ceil", "floor",
+    "rint", "negate", "exp", "log", "sqrt"};
+
+  private static final int[] UNARY_OPS = {Data.ABS, Data.CEIL, Data.FLOOR,
+    Data.RINT, Data.NEGATE, Data.EXP, Data.LOG, Data.SQRT};
+
+  /** return true if op is a unary operation that can be fused */
+  private static boolean isFusedUnary(int op) {
+    switch (op) {
+      case Data.ABS:
+      case Data.CEIL:
+      case Data.FLOOR:
+      case Data.RINT:
+      case Data.NEGATE:
+      case Data.NOP:
+      case Data.EXP:
+      case Data.LOG:
+      case Data.SQRT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /** return true if evaluate() will compute this expression in one pass */
+  public boolean isFused() throws VisADException, RemoteException {
+    return field && compile() != null;
+  }
+
+  /** compute the value of this expression */
+  public Data evaluate() throws VisADException, RemoteException {
+    if (field) {
+      Plan plan = compile();
+      if (plan != null) return plan.run();
+    }
+    return evaluateEach();
+  }
+
+  /** compute the value of this expression one operation at a time */
+  private Data evaluateEach() throws VisADException, RemoteException {
+    switch (kind) {
+      case UNARY:
+        return left.evaluateEach().unary(op, Data.NEAREST_NEIGHBOR,
+                                         Data.NO_ERRORS);
+      case BINARY:
+        return left.evaluateEach().binary(right.evaluateEach(), op,
+                 Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+      default:
+        return data;
+    }
+  }
+
+  /** return the plan for a fused evaluation, or null if there is none */
+  private Plan compile() throws VisADException, RemoteException {
+    Plan plan = new Plan(this, anchor());
+    try {
+      plan.root = plan.compile(this);
+    }
+    catch (UnitException e) {
+      // let evaluateEach report it
+      return null;
+    }
+    return (plan.root == null) ? null : plan;
+  }
+
+  /**
+   * return the FlatField whose domain the value of this expression is
+   * on, i.e. the Field operand that FlatField.binary or unary would be
+   * invoked on, or null if that is not a FlatField
+   */
+  private FlatField anchor() throws VisADException, RemoteException {
+    switch (kind) {
+      case UNARY:
+        return left.anchor();
+      case BINARY:
+        return left.field ? left.anchor() : right.anchor();
+      default:
+        return (data instanceof FlatField) ? (FlatField) data : null;
+    }
+  }
+
+  /** a compiled fused evaluation */
+  private static class Plan {
+
+    private final FieldExpression expression;
+
+    private final FlatField anchor;
+
+    private Kernel root = null;
+
+    private int dimension;
+
+    private int length;
+
+    private boolean allDouble = true;
+
+    Plan(FieldExpression expression, FlatField anchor) {
+      this.expression = expression;
+      this.anchor = anchor;
+      if (anchor != null) {
+        dimension = anchor.TupleDimension;
+        length = anchor.getLength();
+      }
+    }
+
+    /** return a Kernel for e, or null if it can't be fused */
+    Kernel compile(FieldExpression e)
+           throws VisADException, RemoteException {
+      if (anchor == null) return null;
+      if (!e.field) {
+        // constant sub-expression: evaluate it now
+        Data value = e.evaluateEach();
+        if (!(value instanceof Real) || value.isMissing()) return null;
+        Real real = (Real) value;
+        double[] values = new double[dimension];
+        Unit[] units = new Unit[dimension];
+        for (int j=0; j<dimension; j++) {
+          values[j] = real.getValue();
+          units[j] = real.getUnit();
+        }
+        return new Kernel(values, units);
+      }
+      switch (e.kind) {
+        case LEAF:
+          return compileLeaf(e.data);
+        case UNARY:
+          return isFusedUnary(e.op) ? compileUnary(e) : null;
+        default:
+          return compileBinary(e);
+      }
+    }
+
+    private Kernel compileLeaf(Data data)
+            throws VisADException, RemoteException {
+      if (!(data instanceof FlatField)) return null;
+      FlatField f = (FlatField) data;
+      if (f.isMissing() || f.RangeCoordinateSystem != null ||
+          f.RangeCoordinateSystems != null || f.getLength() != length ||
+          f.TupleDimension != dimension) {
+        return null;
+      }
+      if (f != anchor && !f.getDomainSet().equals(anchor.getDomainSet())) {
+        return null;
+      }
+      Kernel k = new Kernel(f);
+      if (k.doubles == null) allDouble = false;
+      return k;
+    }
+
+    /** mirror the Unit handling of FlatField.unary */
+    private Kernel compileUnary(FieldExpression e)
+            throws VisADException, RemoteException {
+      Kernel operand = compile(e.left);
+      if (operand == null) return null;
+      Unit[] units_in = (Unit[]) operand.units.clone();
+      Unit[] from = new Unit[dimension];
+      Unit[] to = new Unit[dimension];
+      Unit[] units_out = new Unit[dimension];
+      for (int j=0; j<dimension; j++) {
+        // makeRational
+        Unit in = units_in[j];
+        if (in != null && !(in instanceof PromiscuousUnit)) {
+          Unit out = in.getAbsoluteUnit();
+          if (Unit.canConvert(out, CommonUnit.dimensionless)) {
+            out = CommonUnit.dimensionless;
+          }
+          if (!out.equals(in)) {
+            from[j] = in;
+            to[j] = out;
+            units_in[j] = out;
+          }
+        }
+        switch (e.op) {
+          case Data.EXP:
+          case Data.LOG:
+            units_out[j] = CommonUnit.dimensionless.equals(units_in[j]) ?
+                           units_in[j] : null;
+            break;
+          case Data.SQRT:
+            units_out[j] = null;
+            if (units_in[j] != null) {
+              try {
+                units_out[j] = units_in[j].sqrt();
+              }
+              catch (IllegalArgumentException exc) {
+              }
+              catch (UnitException exc) {
+              }
+            }
+            break;
+          default:
+            units_out[j] = units_in[j];
+            break;
+        }
+      }
+      return new Kernel(e.op, operand, from, to, null, null, null, units_out);
+    }
+
+    /** mirror the Unit handling of FlatField.binary */
+    private Kernel compileBinary(FieldExpression e)
+            throws VisADException, RemoteException {
+      // as in Real.binary, a Field right operand becomes 'this'
+      int op = e.op;
+      FieldExpression this_e = e.left;
+      FieldExpression that_e = e.right;
+      if (!this_e.field) {
+        this_e = e.right;
+        that_e = e.left;
+        op = DataImpl.invertOp(op);
+      }
+      if (!this_e.type.equalsExceptName(e.type)) return null;
+      if (that_e.field && !this_e.type.equalsExceptName(that_e.type)) {
+        return null;
+      }
+      Kernel a = compile(this_e);
+      if (a == null) return null;
+      Kernel b = compile(that_e);
+      if (b == null) return null;
+
+      Unit[] thisUnits = (Unit[]) a.units.clone();
+      Unit[] thatUnits = (Unit[]) b.units.clone();
+      Unit[] thisFrom = new Unit[dimension];
+      Unit[] thisTo = new Unit[dimension];
+      Unit[] thatFrom = new Unit[dimension];
+      Unit[] thatTo = new Unit[dimension];
+      Unit[] outUnits = new Unit[dimension];
+
+      for (int j=0; j<dimension; j++) {
+        switch (op) {
+          case Data.ADD:
+          case Data.SUBTRACT:
+          case Data.INV_SUBTRACT:
+          case Data.MAX:
+          case Data.MIN:
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              outUnits[j] = null;
+            }
+            else if (thisUnits[j] == CommonUnit.promiscuous) {
+              outUnits[j] = thatUnits[j].getAbsoluteUnit();
+            }
+            else if (thatUnits[j] == CommonUnit.promiscuous) {
+              outUnits[j] = thisUnits[j].getAbsoluteUnit();
+            }
+            else {
+              Unit out = thisUnits[j].getAbsoluteUnit();
+              // FlatField.binary gives up (null Unit) at the first
+              // inconvertible operand, keeping earlier conversions
+              if (!out.equals(thisUnits[j])) {
+                if (!Unit.canConvert(out, thisUnits[j])) continue;
+                thisFrom[j] = thisUnits[j];
+                thisTo[j] = out;
+              }
+              if (!out.equals(thatUnits[j])) {
+                if (!Unit.canConvert(out, thatUnits[j])) continue;
+                thatFrom[j] = thatUnits[j];
+                thatTo[j] = out;
+              }
+              outUnits[j] = out;
+            }
+            break;
+
+          case Data.MULTIPLY:
+          case Data.DIVIDE:
+          case Data.INV_DIVIDE:
+            if (thisUnits[j] != null) {
+              Unit abs = thisUnits[j].getAbsoluteUnit();
+              if (!abs.equals(thisUnits[j])) {
+                thisFrom[j] = thisUnits[j];
+                thisTo[j] = abs;
+                thisUnits[j] = abs;
+              }
+            }
+            if (thatUnits[j] != null) {
+              Unit abs = thatUnits[j].getAbsoluteUnit();
+              if (!abs.equals(thatUnits[j])) {
+                thatFrom[j] = thatUnits[j];
+                thatTo[j] = abs;
+                thatUnits[j] = abs;
+              }
+            }
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              outUnits[j] = null;
+            }
+            else if (op == Data.MULTIPLY) {
+              outUnits[j] =
+                thisUnits[j].equals(CommonUnit.promiscuous) ? thatUnits[j] :
+                thatUnits[j].equals(CommonUnit.promiscuous) ? thisUnits[j] :
+                thisUnits[j].multiply(thatUnits[j]);
+            }
+            else if (op == Data.DIVIDE) {
+              outUnits[j] = thatUnits[j].equals(CommonUnit.promiscuous) ?
+                thisUnits[j] : thisUnits[j].divide(thatUnits[j]);
+            }
+            else {
+              outUnits[j] = thisUnits[j].equals(CommonUnit.promiscuous) ?
+                thatUnits[j] : thatUnits[j].divide(thisUnits[j]);
+            }
+            break;
+
+          case Data.POW:
+          case Data.INV_POW:
+            // the base is made absolute; the exponent too, unless promiscuous
+            boolean pow = (op == Data.POW);
+            Unit base = pow ? thisUnits[j] : thatUnits[j];
+            Unit exponent = pow ? thatUnits[j] : thisUnits[j];
+            Unit[] baseFrom = pow ? thisFrom : thatFrom;
+            Unit[] baseTo = pow ? thisTo : thatTo;
+            Unit[] expFrom = pow ? thatFrom : thisFrom;
+            Unit[] expTo = pow ? thatTo : thisTo;
+            if (base != null) {
+              Unit abs = base.getAbsoluteUnit();
+              if (!abs.equals(base)) {
+                baseFrom[j] = base;
+                baseTo[j] = abs;
+                base = abs;
+              }
+            }
+            if (exponent != null &&
+                !CommonUnit.promiscuous.equals(exponent)) {
+              Unit abs = exponent.getAbsoluteUnit();
+              if (!abs.equals(exponent)) {
+                expFrom[j] = exponent;
+                expTo[j] = abs;
+              }
+            }
+            outUnits[j] = (base != null &&
+                           (base.equals(CommonUnit.promiscuous) ||
+                            base.equals(CommonUnit.dimensionless))) ?
+                          base : null;
+            break;
+
+          default: // ATAN2, ATAN2_DEGREES, REMAINDER and their inverses
+            if (thisUnits[j] != null && thatUnits[j] != null) {
+              Unit abs = thisUnits[j].getAbsoluteUnit();
+              if (!abs.equals(thisUnits[j])) {
+                thisFrom[j] = thisUnits[j];
+                thisTo[j] = abs;
+                thisUnits[j] = abs;
+              }
+              if (!abs.equals(thatUnits[j])) {
+                if (!Unit.canConvert(abs, thatUnits[j])) return null;
+                thatFrom[j] = thatUnits[j];
+                thatTo[j] = abs;
+                thatUnits[j] = abs;
+              }
+            }
+            switch (op) {
+              case Data.ATAN2:
+              case Data.INV_ATAN2:
+                outUnits[j] = CommonUnit.radian;
+                break;
+              case Data.ATAN2_DEGREES:
+              case Data.INV_ATAN2_DEGREES:
+                outUnits[j] = CommonUnit.degree;
+                break;
+              case Data.REMAINDER:
+                outUnits[j] = thisUnits[j];
+                break;
+              default:
+                outUnits[j] = thatUnits[j];
+                break;
+            }
+            break;
+        }
+      }
+
+      if (b.constants != null) {
+        // convert the constant operand once, rather than per chunk
+        double[] values = (double[]) b.constants.clone();
+        for (int j=0; j<dimension; j++) {
+          if (thatTo[j] != null) {
+            values[j] = thatTo[j].toThis(values[j], thatFrom[j]);
+            thatTo[j] = null;
+          }
+        }
+        b = new Kernel(values, b.units);
+      }
+      return new Kernel(op, a, thisFrom, thisTo, b, thatFrom, thatTo,
+                        outUnits);
+    }
+
+    /** evaluate root over all samples */
+    Data run() throws VisADException, RemoteException {
+      final double[][] valuesD = allDouble ? new double[dimension][length] : null;
+      final float[][] valuesF = allDouble ? null : new float[dimension][length];
+      final int chunk = Math.max(1, Integer.getInteger(PROP_CHUNK_SIZE,
+                                   DEFAULT_CHUNK_SIZE).intValue());
+      final int nchunks = (length + chunk - 1) / chunk;
+      int threads = Integer.getInteger(PROP_THREADS,
+                      Runtime.getRuntime().availableProcessors()).intValue();
+      threads = Math.max(1, Math.min(threads, nchunks));
+
+      final AtomicInteger next = new AtomicInteger();
+      ThreadManager manager = new ThreadManager("FieldExpression");
+      for (int t=0; t<threads; t++) {
+        manager.addRunnable(new ThreadManager.MyRunnable() {
+          public void run() throws Exception {
+            int c;
+            while ((c = next.getAndIncrement()) < nchunks) {
+              int start = c * chunk;
+              int len = Math.min(chunk, length - start);
+              double[][] v = root.evaluate(start, len);
+              for (int j=0; j<dimension; j++) {
+                if (valuesD != null) {
+                  System.arraycopy(v[j], 0, valuesD[j], start, len);
+                }
+                else {
+                  float[] out = valuesF[j];
+                  double[] vj = v[j];
+                  for (int i=0; i<len; i++) out[start + i] = (float) vj[i];
+                }
+              }
+            }
+          }
+        });
+      }
+      manager.runInParallel(threads);
+
+      ErrorEstimate[] errors = new ErrorEstimate[dimension];
+      FlatField result = allDouble ?
+        anchor.cloneDouble(expression.type, root.units, errors, valuesD) :
+        anchor.cloneFloat(expression.type, root.units, errors, valuesF);
+      result.clearMissing();
+      return result;
+    }
+  }
+
+  /** computes chunks of samples of one node of a fused expression */
+  private static class Kernel {
+
+    /** Units of the values computed by this Kernel */
+    final Unit[] units;
+
+    /** values of a leaf, as stored by its FlatField */
+    final double[][] doubles;
+    final float[][] floats;
+
+    /** values of a constant, or null */
+    final double[] constants;
+
+    /** Data operation of a unary or binary node */
+    final int op;
+
+    /** operands, with the Unit conversions applied to them */
+    final Kernel a, b;
+    final Unit[] aFrom, aTo, bFrom, bTo;
+
+    /** a leaf Kernel for f */
+    Kernel(FlatField f) throws VisADException {
+      units = (Unit[]) f.RangeUnits.clone();
+      if (f.shouldBeDouble()) {
+        doubles = f.unpackValues(false);
+        floats = null;
+      }
+      else {
+        doubles = null;
+        floats = f.unpackFloats(false);
+      }
+      constants = null;
+      op = Data.NOP;
+      a = b = null;
+      aFrom = aTo = bFrom = bTo = null;
+    }
+
+    /** a constant Kernel */
+    Kernel(double[] values, Unit[] units) {
+      this.units = units;
+      doubles = null;
+      floats = null;
+      constants = values;
+      op = Data.NOP;
+      a = b = null;
+      aFrom = aTo = bFrom = bTo = null;
+    }
+
+    /** an operation Kernel; b is null for unary operations */
+    Kernel(int op, Kernel a, Unit[] aFrom, Unit[] aTo, Kernel b,
+           Unit[] bFrom, Unit[] bTo, Unit[] units) {
+      this.units = units;
+      doubles = null;
+      floats = null;
+      constants = null;
+      this.op = op;
+      this.a = a;
+      this.aFrom = aFrom;
+      this.aTo = aTo;
+      this.b = b;
+      this.bFrom = bFrom;
+      this.bTo = bTo;
+    }
+
+    /** return new arrays of the len values from sample start */
+    double[][] evaluate(int start, int len) throws VisADException {
+      int n = units.length;
+      if (doubles != null || floats != null) {
+        double[][] v = new double[n][len];
+        for (int j=0; j<n; j++) {
+          if (doubles != null) {
+            System.arraycopy(doubles[j], start, v[j], 0, len);
+          }
+          else {
+            float[] f = floats[j];
+            double[] vj = v[j];
+            for (int i=0; i<len; i++) vj[i] = f[start + i];
+          }
+        }
+        return v;
+      }
+
+      double[][] x = a.evaluate(start, len);
+      convert(x, aFrom, aTo);
+      if (b == null) {
+        for (int j=0; j<n; j++) unary(op, x[j]);
+        return x;
+      }
+      if (b.constants != null) {
+        for (int j=0; j<n; j++) binary(op, x[j], null, b.constants[j]);
+      }
+      else {
+        double[][] y = b.evaluate(start, len);
+        convert(y, bFrom, bTo);
+        for (int j=0; j<n; j++) binary(op, x[j], y[j], 0.0);
+      }
+      return x;
+    }
+
+    private static void convert(double[][] v, Unit[] from, Unit[] to)
+            throws VisADException {
+      for (int j=0; j<v.length; j++) {
+        if (to[j] != null) v[j] = to[j].toThis(v[j], from[j], false);
+      }
+    }
+
+    private static void unary(int op, double[] x) {
+      int len = x.length;
+      switch (op) {
+        case Data.ABS:
+          for (int i=0; i<len; i++) x[i] = Math.abs(x[i]);
+          break;
+        case Data.CEIL:
+          for (int i=0; i<len; i++) x[i] = Math.ceil(x[i]);
+          break;
+        case Data.FLOOR:
+          for (int i=0; i<len; i++) x[i] = Math.floor(x[i]);
+          break;
+        case Data.RINT:
+          for (int i=0; i<len; i++) x[i] = Math.rint(x[i]);
+          break;
+        case Data.NEGATE:
+          for (int i=0; i<len; i++) x[i] = -x[i];
+          break;
+        case Data.EXP:
+          for (int i=0; i<len; i++) x[i] = Math.exp(x[i]);
+          break;
+        case Data.LOG:
+          for (int i=0; i<len; i++) x[i] = Math.log(x[i]);
+          break;
+        case Data.SQRT:
+          for (int i=0; i<len; i++) x[i] = Math.sqrt(x[i]);
+          break;
+      }
+    }
+
+    /** x = x op y, or x op c if y is null */
+    private static void binary(int op, double[] x, double[] y, double c) {
+      int len = x.length;
+      if (y == null) {
+        y = new double[len];
+        Arrays.fill(y, c);
+      }
+      switch (op) {
+        case Data.ADD:
+          for (int i=0; i<len; i++) x[i] += y[i];
+          break;
+        case Data.SUBTRACT:
+          for (int i=0; i<len; i++) x[i] -= y[i];
+          break;
+        case Data.INV_SUBTRACT:
+          for (int i=0; i<len; i++) x[i] = y[i] - x[i];
+          break;
+        case Data.MULTIPLY:
+          for (int i=0; i<len; i++) x[i] *= y[i];
+          break;
+        case Data.DIVIDE:
+          for (int i=0; i<len; i++) x[i] /= y[i];
+          break;
+        case Data.INV_DIVIDE:
+          for (int i=0; i<len; i++) x[i] = y[i] / x[i];
+          break;
+        case Data.POW:
+          for (int i=0; i<len; i++) x[i] = Math.pow(x[i], y[i]);
+          break;
+        case Data.INV_POW:
+          for (int i=0; i<len; i++) x[i] = Math.pow(y[i], x[i]);
+          break;
+        case Data.MAX:
+          for (int i=0; i<len; i++) x[i] = Math.max(x[i], y[i]);
+          break;
+        case Data.MIN:
+          for (int i=0; i<len; i++) x[i] = Math.min(x[i], y[i]);
+          break;
+        case Data.ATAN2:
+          for (int i=0; i<len; i++) x[i] = Math.atan2(x[i], y[i]);
+          break;
+        case Data.ATAN2_DEGREES:
+          for (int i=0; i<len; i++) {
+            x[i] = Data.RADIANS_TO_DEGREES * Math.atan2(x[i], y[i]);
+          }
+          break;
+        case Data.INV_ATAN2:
+          for (int i=0; i<len; i++) x[i] = Math.atan2(y[i], x[i]);
+          break;
+        case Data.INV_ATAN2_DEGREES:
+          for (int i=0; i<len; i++) {
+            x[i] = Data.RADIANS_TO_DEGREES * Math.atan2(y[i], x[i]);
+          }
+          break;
+        case Data.REMAINDER:
+          for (int i=0; i<len; i++) x[i] %= y[i];
+          break;
+        case Data.INV_REMAINDER:
+          for (int i=0; i<len; i++) x[i] = y[i] % x[i];
+          break;
+      }
+    }
+  }
+
+}
+
@@ -350,6 +350,48 @@ public class FieldImpl extends FunctionImpl implements Field {
     return Set.doubleToFloat(getValues(copy));
   }
 
+  /** get the range values at samples start through start + count - 1,
+      as getSample() would return them; RemoteFieldImpl returns them
+      all in one remote call */
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    if (count < 0) {
+      throw new FieldException("FieldImpl.getSamples: count must be >= 0");
+    }
+    Data[] samples = new Data[count];
+    for (int i=0; i<count; i++) samples[i] = getSample(start + i);
+    return samples;
+  }
+
+  /** get range values for 'Flat' components in their default range
+      Units at the given sample indices, dimensioned
+      float[number_of_range_components][indices.length]; values at
+      indices outside the Field are missing (NaN) */
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    RealType[] realComponents = ((FunctionType) Type).getRealComponents();
+    if (realComponents == null) return null;
+    int n = realComponents.length;
+    Unit[] units = getDefaultRangeUnits();
+    int len = getLength();
+    boolean missing = isMissing();
+    MathType RangeType = ((FunctionType) Type).getRange();
+    // fetch only the requested samples, in rows of one sample
+    double[][] value = new double[n][1];
+    float[][] result = new float[n][indices.length];
+
+    synchronized (RangeLock) {
+      for (int i=0; i<indices.length; i++) {
+        int index = indices[i];
+        Data range = (missing || MyRange == null || index < 0 ||
+                      index >= len) ? null : MyRange[index];
+        getRangeValues(range, RangeType, units, value, 0);
+        for (int k=0; k<n; k++) result[k][i] = (float) value[k][0];
+      }
+    }
+    return result;
+  }
+
   public double[][] getValues()
          throws VisADException, RemoteException {
     return getValues(true);
@@ -381,35 +423,44 @@ public class FieldImpl extends FunctionImpl implements Field {
     synchronized (RangeLock) {
       for (int i=0; i<len; i++) {
         Data range = (MyRange == null? null: MyRange[i]);
-        if (range == null || range.isMissing()) {
-          for (int k=0; k<n; k++) values[k][i] = Double.NaN;
-        }
-        else {
-          if (RangeType instanceof RealType) {
-            values[0][i] = ((Real) range).getValue(units[0]);
-          }
-          else if (RangeType instanceof TupleType) {
-            int k = 0;
-            for (int j=0; j<((TupleType) RangeType).getDimension(); j++) {
-              MathType component_type = ((TupleType) RangeType).getComponent(j);
-              Data component = ((TupleIface) range).getComponent(j);
-              if (component_type instanceof RealType) {
-                values[k][i] = ((Real) component).getValue(units[k]);
-                k++;
-              }
-              else if (component_type instanceof RealTupleType) {
-                for (int m=0; m<((TupleType) component_type).getDimension(); m++) {
-                  Data comp_comp = ((TupleIface) component).getComponent(m);
-                  values[k][i] = ((Real) comp_comp).getValue(units[k]);
-                  k++;
-                }
-              }
+        getRangeValues(range, RangeType, units, values, i);
+      } // end for (int i=0; i<len; i++)
+    }
+    return values;
+  }
+
+  /** set values[k][i] to the 'Flat' components of range, in units[k],
+      or to NaN if range is null or missing */
+  private static void getRangeValues(Data range, MathType RangeType,
+                                     Unit[] units, double[][] values, int i)
+          throws VisADException, RemoteException {
+    int n = values.length;
+    if (range == null || range.isMissing()) {
+      for (int k=0; k<n; k++) values[k][i] = Double.NaN;
+    }
+    else {
+      if (RangeType instanceof RealType) {
+        values[0][i] = ((Real) range).getValue(units[0]);
+      }
+      else if (RangeType instanceof TupleType) {
+        int k = 0;
+        for (int j=0; j<((TupleType) RangeType).getDimension(); j++) {
+          MathType component_type = ((TupleType) RangeType).getComponent(j);
+          Data component = ((TupleIface) range).getComponent(j);
+          if (component_type instanceof RealType) {
+            values[k][i] = ((Real) component).getValue(units[k]);
+            k++;
+          }
+          else if (component_type instanceof RealTupleType) {
+            for (int m=0; m<((TupleType) component_type).getDimension(); m++) {
+              Data comp_comp = ((TupleIface) component).getComponent(m);
+              values[k][i] = ((Real) comp_comp).getValue(units[k]);
+              k++;
             }
           }
         }
-      } // end for (int i=0; i<len; i++)
+      }
     }
-    return values;
   }
 
   /** set range array as range values of this FieldImpl;
@@ -758,6 +809,8 @@ public class FieldImpl extends FunctionImpl implements Field {
           Range[index] = null;
         }
       }
+      notifyReferences(new int[] {index, index + 1});
+      return;
     }
     notifyReferences();
   }
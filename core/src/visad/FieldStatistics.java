@@ -0,0 +1,355 @@
+//
+// FieldStatistics.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.math.Statistics;
+import visad.util.ThreadManager;
+
+/**
+   FieldStatistics computes {@link Statistics} (count, extremes,
+   moments, approximate quantiles and optional histograms) of the range
+   components of a Field in a single pass.<P>
+
+   A FlatField is read directly from its range storage: float and double
+   components chunk by chunk, with the chunks divided among threads, and
+   components packed as byte or short indices into their range Set by
+   counting each index, so each distinct value is unpacked just once.  A
+   FieldImpl whose range is a Field (e.g. a time sequence of images,
+   possibly FileFlatFields) is processed one sample at a time, so the
+   samples need not all be in memory at once.<P>
+
+   Values are in the default Units of the range RealTypes, as returned
+   by {@link Field#getFloats}.  Because Statistics may be merged,
+   separate Fields (e.g. partitions of a data set read at different
+   times) may be accumulated into the same Statistics with {@link
+   #accumulate}.<P>
+*/
+public final class FieldStatistics {
+
+  /** system property giving the maximum number of threads */
+  public static final String PROP_THREADS = "visad.statistics.threads";
+
+  /** number of samples per chunk */
+  private static final int CHUNK = 1 << 16;
+
+  private FieldStatistics() {
+  }
+
+  /**
+   * return Statistics, with quantiles but without histograms, of each
+   * range component
+   */
+  public static Statistics[] compute(Field field)
+         throws VisADException, RemoteException {
+    return compute(field, null, null, 0, true);
+  }
+
+  /**
+   * return Statistics, without histograms, of each range component;
+   * leaving out quantiles makes the pass several times faster
+   */
+  public static Statistics[] compute(Field field, boolean quantiles)
+         throws VisADException, RemoteException {
+    return compute(field, null, null, 0, quantiles);
+  }
+
+  /**
+   * return Statistics of each range component, including a histogram
+   * of nbins equal bins from low[i] to high[i] for component i, and
+   * quantiles if quantiles is true
+   */
+  public static Statistics[] compute(Field field, double[] low, double[] high,
+                                     int nbins, boolean quantiles)
+         throws VisADException, RemoteException {
+    Statistics[] statistics =
+      new Statistics[getRangeDimension((FunctionType) field.getType())];
+    if (low != null && (low.length != statistics.length ||
+                        high == null || high.length != statistics.length)) {
+      throw new FieldException("FieldStatistics.compute: need histogram " +
+                               "limits for " + statistics.length +
+                               " components");
+    }
+    for (int i=0; i<statistics.length; i++) {
+      statistics[i] = (low == null) ? new Statistics(quantiles) :
+        new Statistics(low[i], high[i], nbins, quantiles);
+    }
+    accumulate(field, statistics);
+    return statistics;
+  }
+
+  /**
+   * add the range values of field to statistics, which has an element
+   * for each (flat) range component
+   */
+  public static void accumulate(Field field, Statistics[] statistics)
+         throws VisADException, RemoteException {
+    FunctionType type = (FunctionType) field.getType();
+    if (statistics.length != getRangeDimension(type)) {
+      throw new FieldException("FieldStatistics.accumulate: need " +
+                               getRangeDimension(type) + " Statistics");
+    }
+    if (field.isMissing()) return;
+    if (field.getClass() == FlatField.class) {
+      FlatField flat = (FlatField) field;
+      Set[] sets = flat.getRangeSets();
+      Unit[][] units = flat.getRangeUnits();
+      Unit[] defaults = type.getFlatRange().getDefaultUnits();
+      for (int i=0; i<statistics.length; i++) {
+        UnitConverter converter = null;
+        if (units[i][0] != null && defaults[i] != null &&
+            !units[i][0].equals(defaults[i])) {
+          converter = defaults[i].getConverterFrom(units[i][0]);
+          if (converter.isIdentity()) converter = null;
+        }
+        Object range = flat.getPackedRange(i);
+        if (range == null) {
+          statistics[i].addMissing(flat.getLength());
+        }
+        else {
+          accumulatePacked(range, flat.getPackedOffset(i), sets[i],
+                           converter, statistics[i]);
+        }
+      }
+    }
+    else if (type.getRange() instanceof FunctionType) {
+      // one sample at a time, so e.g. FileFlatFields load one by one
+      int length = field.getLength();
+      for (int j=0; j<length; j++) {
+        Data sample = field.getSample(j);
+        if (sample instanceof Field) accumulate((Field) sample, statistics);
+      }
+    }
+    else {
+      float[][] values = field.getFloats(false);
+      for (int i=0; i<statistics.length; i++) {
+        accumulate(values[i], null, statistics[i]);
+      }
+    }
+  }
+
+  /**
+   * return the number of Statistics for a Field of type, i.e. the
+   * dimension of its flat range, or of the range of its range Fields
+   */
+  private static int getRangeDimension(FunctionType type)
+          throws FieldException {
+    MathType range = type.getRange();
+    if (range instanceof FunctionType) {
+      return getRangeDimension((FunctionType) range);
+    }
+    RealTupleType flat = type.getFlatRange();
+    if (flat == null) {
+      throw new FieldException("FieldStatistics: range must be Real " +
+                               "values or Fields: " + type);
+    }
+    return flat.getDimension();
+  }
+
+  private static void accumulatePacked(Object range, int offset, Set set,
+                                       UnitConverter converter,
+                                       Statistics statistics)
+          throws VisADException {
+    if (range instanceof float[]) {
+      accumulate((float[]) range, converter, statistics);
+    }
+    else if (range instanceof double[]) {
+      accumulate((double[]) range, converter, statistics);
+    }
+    else if (range instanceof int[]) {
+      accumulateIndices((int[]) range, offset, set, converter, statistics);
+    }
+    else {
+      // byte or short: count each index, then unpack each one once
+      long[] counts = countIndices(range, offset, set.getLength());
+      int[] indices = new int[counts.length - 1];
+      for (int k=0; k<indices.length; k++) indices[k] = k;
+      float[] values = set.indexToValue(indices)[0];
+      if (converter != null) converter.convert(values, false);
+      statistics.addMissing(counts[0]);
+      for (int k=0; k<values.length; k++) {
+        statistics.add(values[k], counts[k + 1]);
+      }
+    }
+  }
+
+  /** add values, converted by converter if non-null, to statistics */
+  private static void accumulate(final float[] values,
+                                 final UnitConverter converter,
+                                 Statistics statistics)
+          throws VisADException {
+    final int n = values.length;
+    final Statistics[] parts = newParts(statistics, chunks(n));
+    run(parts.length, n, new Chunker() {
+      public void chunk(int worker, int first, int last) {
+        if (converter == null) {
+          parts[worker].add(values, first, last);
+        }
+        else {
+          float[] scratch = new float[last - first];
+          System.arraycopy(values, first, scratch, 0, scratch.length);
+          parts[worker].add(converter.convert(scratch, false));
+        }
+      }
+    });
+    merge(parts, statistics);
+  }
+
+  /** add values, converted by converter if non-null, to statistics */
+  private static void accumulate(final double[] values,
+                                 final UnitConverter converter,
+                                 Statistics statistics)
+          throws VisADException {
+    final int n = values.length;
+    final Statistics[] parts = newParts(statistics, chunks(n));
+    run(parts.length, n, new Chunker() {
+      public void chunk(int worker, int first, int last) {
+        if (converter == null) {
+          parts[worker].add(values, first, last);
+        }
+        else {
+          double[] scratch = new double[last - first];
+          System.arraycopy(values, first, scratch, 0, scratch.length);
+          parts[worker].add(converter.convert(scratch, false));
+        }
+      }
+    });
+    merge(parts, statistics);
+  }
+
+  /** add the values of set at packed int indices to statistics */
+  private static void accumulateIndices(final int[] packed, final int offset,
+                                        final Set set,
+                                        final UnitConverter converter,
+                                        Statistics statistics)
+          throws VisADException {
+    final int n = packed.length;
+    final Statistics[] parts = newParts(statistics, chunks(n));
+    run(parts.length, n, new Chunker() {
+      public void chunk(int worker, int first, int last)
+             throws VisADException {
+        int[] indices = new int[last - first];
+        for (int j=first; j<last; j++) indices[j - first] = packed[j] - offset;
+        // indexToValue gives NaN for the missing index -1
+        float[] values = set.indexToValue(indices)[0];
+        if (converter != null) converter.convert(values, false);
+        parts[worker].add(values);
+      }
+    });
+    merge(parts, statistics);
+  }
+
+  /**
+   * return the number of each index in a byte[] or short[] of packed
+   * indices; element 0 counts missing values, element k + 1 index k
+   */
+  private static long[] countIndices(final Object range, final int offset,
+                                     int length)
+          throws VisADException {
+    final int n = (range instanceof byte[]) ? ((byte[]) range).length :
+                                              ((short[]) range).length;
+    final int[][] counts = new int[threads(chunks(n))][length + 1];
+    run(counts.length, n, new Chunker() {
+      public void chunk(int worker, int first, int last) {
+        int[] c = counts[worker];
+        // index k is stored as k + offset; missing as offset - 1
+        int shift = 1 - offset;
+        if (range instanceof byte[]) {
+          byte[] b = (byte[]) range;
+          for (int j=first; j<last; j++) c[b[j] + shift]++;
+        }
+        else {
+          short[] s = (short[]) range;
+          for (int j=first; j<last; j++) c[s[j] + shift]++;
+        }
+      }
+    });
+    long[] total = new long[length + 1];
+    for (int t=0; t<counts.length; t++) {
+      for (int k=0; k<=length; k++) total[k] += counts[t][k];
+    }
+    return total;
+  }
+
+  /** a piece of work over samples first through last - 1 */
+  private interface Chunker {
+    void chunk(int worker, int first, int last) throws Exception;
+  }
+
+  private static int chunks(int n) {
+    return (n + CHUNK - 1) / CHUNK;
+  }
+
+  private static int threads(int nchunks) {
+    int threads = Integer.getInteger(PROP_THREADS,
+                    Runtime.getRuntime().availableProcessors()).intValue();
+    return Math.max(1, Math.min(threads, nchunks));
+  }
+
+  private static Statistics[] newParts(Statistics statistics, int nchunks) {
+    Statistics[] parts = new Statistics[threads(nchunks)];
+    for (int t=0; t<parts.length; t++) parts[t] = statistics.newInstance();
+    return parts;
+  }
+
+  private static void merge(Statistics[] parts, Statistics statistics)
+          throws VisADException {
+    for (int t=0; t<parts.length; t++) statistics.merge(parts[t]);
+  }
+
+  /**
+   * run chunker over n samples in chunks of CHUNK (the last possibly
+   * shorter), on threads workers that claim chunks in turn
+   */
+  private static void run(int threads, final int n, final Chunker chunker)
+          throws VisADException {
+    final int nchunks = chunks(n);
+    if (nchunks == 0) return;
+    final AtomicInteger next = new AtomicInteger();
+    ThreadManager manager = new ThreadManager("FieldStatistics");
+    for (int t=0; t<threads; t++) {
+      final int worker = t;
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          int k;
+          while ((k = next.getAndIncrement()) < nchunks) {
+            chunker.chunk(worker, k * CHUNK, Math.min((k + 1) * CHUNK, n));
+          }
+        }
+      });
+    }
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("FieldStatistics: " + e.getMessage());
+    }
+  }
+
+}
@@ -122,6 +122,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   private static final int SHORT = 5;
   private static final int BYTE = 6;
 
+  /**
+   * System property giving the number of threads used by unary; defaults
+   * to the number of available processors.
+   */
+  public static final String PROP_UNARY_THREADS =
+    "visad.flatfield.unary.threads";
+
   /**
    * Constructs a FlatField from a function type.  The domain Set is the
    * default Set of the function domain.
@@ -720,7 +727,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
        so in operations (e.g., unary, binary) that deal with the data we try
        to keep it to be floats if we can (for size efficiency).
      **/
-    private boolean  shouldBeDouble () {
+    boolean shouldBeDouble () {
       for (int i=0; i<TupleDimension; i++) {
           if (RangeMode[i] == DOUBLE) {
               return true;
@@ -729,6 +736,41 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       return false;
     }
 
+    /**
+       Return the storage array of range component comp: a double[] or
+       float[] of values, or an int[], short[] or byte[] of indices into
+       the component's RangeSet, offset by getPackedOffset(comp) (the
+       least value of the type marks a missing sample).  Returns null if
+       the range is missing.  This lets FieldStatistics read values
+       without unpacking them.
+     **/
+    Object getPackedRange(int comp) {
+      synchronized (FloatRange) {
+        if (isMissing()) return null;
+        switch (RangeMode[comp]) {
+          case DOUBLE: return DoubleRange[comp];
+          case FLOAT: return FloatRange[comp];
+          case INT: return IntRange[comp];
+          case SHORT: return ShortRange[comp];
+          case BYTE: return ByteRange[comp];
+          default: return null;
+        }
+      }
+    }
+
+    /**
+       Return the amount to subtract from the packed values of range
+       component comp to get RangeSet indices; 0 if values are not packed.
+     **/
+    int getPackedOffset(int comp) {
+      switch (RangeMode[comp]) {
+        case INT: return MISSING4 + 1;
+        case SHORT: return MISSING2 + 1;
+        case BYTE: return MISSING1 + 1;
+        default: return 0;
+      }
+    }
+
 
   /** update a subset of a FlatField's range samples, where
       start is the index of the first sample to update and
@@ -818,7 +860,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   //-- End packValues
 
     setRangeErrors(null);
-    notifyReferences();
+    notifyReferences(new int[] {start, start + length});
   }
 
   public void setSamples(int[] indices, double[][] range)
@@ -914,7 +956,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   //-- End packValues
 
     setRangeErrors(null);
-    notifyReferences();
+    notifyReferences(DataChangedEvent.toRanges(indices));
   }
 
   /** set the range values of the function including ErrorEstimate-s;
@@ -1573,10 +1615,92 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       return values;
   }
 
+  /**
+   * Returns the range values in their default units as floats at the given
+   * sample indices; only those samples are unpacked.
+   *
+   * @param indices             The sample indices.
+   * @return                    The range values in their default units.
+   *                            Element <code>[i][j]</code> is the value of
+   *                            the <code>i</code>th component of the range
+   *                            at sample <code>indices[j]</code>, or NaN if
+   *                            that index is outside this FlatField.
+   * @throws VisADException     if a VisAD object couldn't be created.
+   */
+  public float[][] getFloats(int[] indices) throws VisADException {
+    int len = getLength();
+    int n = indices.length;
+    float[][] values = new float[TupleDimension][];
+    synchronized (DoubleRange) {
+      for (int i=0; i<TupleDimension; i++) {
+        float[] v = new float[n];
+        values[i] = v;
+        if (isMissing()) {
+          for (int j=0; j<n; j++) v[j] = Float.NaN;
+          continue;
+        }
+        int[] index = null;
+        switch (RangeMode[i]) {
+          case DOUBLE:
+            double[] DoubleRangeI = DoubleRange[i];
+            for (int j=0; j<n; j++) {
+              int k = indices[j];
+              v[j] = (k < 0 || k >= len) ? Float.NaN : (float) DoubleRangeI[k];
+            }
+            break;
+          case FLOAT:
+            float[] FloatRangeI = FloatRange[i];
+            for (int j=0; j<n; j++) {
+              int k = indices[j];
+              v[j] = (k < 0 || k >= len) ? Float.NaN : FloatRangeI[k];
+            }
+            break;
+          case BYTE:
+            index = new int[n];
+            byte[] ByteRangeI = ByteRange[i];
+            for (int j=0; j<n; j++) {
+              int k = indices[j];
+              index[j] = (k < 0 || k >= len) ? -1 :
+                         ((int) ByteRangeI[k]) - MISSING1 - 1;
+            }
+            break;
+          case SHORT:
+            index = new int[n];
+            short[] ShortRangeI = ShortRange[i];
+            for (int j=0; j<n; j++) {
+              int k = indices[j];
+              index[j] = (k < 0 || k >= len) ? -1 :
+                         ((int) ShortRangeI[k]) - MISSING2 - 1;
+            }
+            break;
+          case INT:
+            index = new int[n];
+            int[] IntRangeI = IntRange[i];
+            for (int j=0; j<n; j++) {
+              int k = indices[j];
+              index[j] = (k < 0 || k >= len) ? -1 :
+                         ((int) IntRangeI[k]) - MISSING4 - 1;
+            }
+            break;
+          default:
+            throw new SetException("FlatField.getFloats: bad RangeMode");
+        }
+        // index -1 unpacks as missing
+        if (index != null) values[i] = RangeSet[i].indexToValue(index)[0];
+      }
+    }
+
+    Unit[] units_out =  ((FunctionType) Type).getFlatRange().getDefaultUnits();
+    if (!Arrays.equals (units_out, RangeUnits)) {
+      values =  Unit.convertTuple(values, RangeUnits, units_out);
+    }
+    return values;
+  }
+
   /**
    * Returns the range values in their default units as doubles.
    *
-   * @return                    The range values in their default units
+   * @return                   The range values in their default units
    *                            as determined by the {@link MathType} of
    *                            the range.  Element <code>[i][j]</code> is
    *                            the <code>j</code>th sample value of the
@@ -1952,7 +2076,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       }
     }
     clearMissing();
-    notifyReferences();
+    notifyReferences(new int[] {index, index + 1});
   }
 
   /**
@@ -3187,419 +3311,69 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         ErrorEstimate[] errors_in = (ErrorEstimate[])RangeErrors.clone();;
 
 
-        double[][] valuesD = null;
-        float [][] valuesF = null;
-
-        if (shouldBeDouble ()) {
-            valuesD = unpackValues ();
-            makeRational (valuesD, units_in, errors_in);
-        } else {
-            valuesF = unpackFloats ();
-            makeRational (valuesF, units_in, errors_in);
-        }
-
+        /*
+         * The values are converted to rational units and operated on in one
+         * pass by UnaryKernel, without unpacking them first; here we only
+         * work out the units and which angles are in degrees.
+         */
+        UnitConverter[] converters = rationalConverters (units_in, errors_in);
+        boolean[] degrees = new boolean[TupleDimension];
 
-        int i, j; // loop indices
-        double[] valuesDJ;
-        float[] valuesFJ;
+        int j; // loop index
 
         switch (op) {
         case ABS:
+        case CEIL:
+        case FLOOR:
+        case RINT:
+        case ROUND:
+        case NEGATE:
+        case NOP:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = Math.abs(valuesDJ[i]);
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = Math.abs(valuesFJ[i]);
-                    }
-                }
                 units_out[j] = units_in[j];
             }
             break;
         case ACOS:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.acos(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.acos(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = CommonUnit.radian;
-            }
-            break;
-        case ACOS_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.acos(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.acos(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = CommonUnit.degree;
-            }
-            break;
         case ASIN:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.asin(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.asin(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = CommonUnit.radian;
-            }
-            break;
-        case ASIN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.asin(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.asin(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = CommonUnit.degree;
-            }
-            break;
         case ATAN:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.atan(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.atan(valuesFJ[i]));
-                    }
-                }
-
                 units_out[j] = CommonUnit.radian;
             }
             break;
+        case ACOS_DEGREES:
+        case ASIN_DEGREES:
         case ATAN_DEGREES:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.atan(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.atan(valuesFJ[i]));
-                    }
-                }
                 units_out[j] = CommonUnit.degree;
             }
             break;
-        case CEIL:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.ceil(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.ceil(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = units_in[j];
-            }
-            break;
         case COS:
-            // do cos in degrees, unless unit is radians
-            for (j=0; j<TupleDimension; j++) {
-                if (CommonUnit.degree.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.cos(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.cos(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.cos(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.cos(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                units_out[j] = CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
-            }
-            break;
-        case COS_DEGREES:
+        case SIN:
+        case TAN:
             for (j=0; j<TupleDimension; j++) {
-
-
-                if (CommonUnit.radian.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.cos(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.cos(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.cos(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.cos(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
-
-                }
+                degrees[j] = CommonUnit.degree.equals(units_in[j]);
                 units_out[j] =
                     CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
             }
             break;
-        case EXP:
+        case COS_DEGREES:
+        case SIN_DEGREES:
+        case TAN_DEGREES:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.exp(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.exp(valuesFJ[i]));
-                    }
-                }
-
+                degrees[j] = !CommonUnit.radian.equals(units_in[j]);
                 units_out[j] =
                     CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
             }
             break;
-        case FLOOR:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.floor(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.floor(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = units_in[j];
-            }
-            break;
+        case EXP:
         case LOG:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.log(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.log(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] =
-                    CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
-            }
-            break;
-        case RINT:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.rint(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.rint(valuesFJ[i]));
-                    }
-                }
-
-                units_out[j] = units_in[j];
-            }
-            break;
-        case ROUND:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = Math.round(valuesDJ[i]);
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = Math.round(valuesFJ[i]);
-                    }
-                }
-
-                units_out[j] = units_in[j];
-            }
-            break;
-        case SIN:
-            for (j=0; j<TupleDimension; j++) {
-                if (CommonUnit.degree.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.sin(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.sin(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.sin(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.sin(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                units_out[j] =
-                    CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
-            }
-            break;
-        case SIN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
-
-                if (CommonUnit.radian.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.sin(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.sin(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.sin(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.sin(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
-
-                }
                 units_out[j] =
                     CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
             }
             break;
         case SQRT:
             for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = (double)(Math.sqrt(valuesDJ[i]));
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = (float)(Math.sqrt(valuesFJ[i]));
-                    }
-                }
-
                 // WLH 26 Nov 2001
                 // units_out[j] =
                 //   CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
@@ -3619,101 +3393,15 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 }
             }
             break;
-        case TAN:
-            for (j=0; j<TupleDimension; j++) {
-                if (CommonUnit.degree.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.tan(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.tan(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.tan(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.tan(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                units_out[j] =
-                    CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
-            }
-            break;
-        case TAN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
-                if (CommonUnit.radian.equals(units_in[j])) {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.tan(valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.tan(valuesFJ[i]));
-                        }
-                    }
-
-                }
-                else {
-                    if (valuesD != null) {
-                        valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesDJ[i] = (double)(Math.tan(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
-                        }
-                    }
-                    if (valuesF != null) {
-                        valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
-                            valuesFJ[i] = (float)(Math.tan(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
-                        }
-                    }
+        }
 
-                }
-                units_out[j] =
-                    CommonUnit.dimensionless.equals(units_in[j]) ? units_in[j] : null;
-            }
-            break;
-        case NEGATE:
-            for (j=0; j<TupleDimension; j++) {
-                if (valuesD != null) {
-                    valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesDJ[i] = -valuesDJ[i];
-                    }
-                }
-                if (valuesF != null) {
-                    valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
-                        valuesFJ[i] = -valuesFJ[i];
-                    }
-                }
+        double[][] valuesD = null;
+        float [][] valuesF = null;
 
-                units_out[j] = units_in[j];
-            }
-            break;
-        case NOP:
-            for (j=0; j<TupleDimension; j++) {
-                units_out[j] = units_in[j];
-            }
-            break;
+        if (shouldBeDouble ()) {
+            valuesD = UnaryKernel.applyDouble (this, op, converters, degrees);
+        } else {
+            valuesF = UnaryKernel.applyFloat (this, op, converters, degrees);
         }
 
         // compute ErrorEstimates for result
@@ -3834,6 +3522,46 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         }
     }
 
+    /**
+     * Like makeRational, but rather than converting values, returns the
+     * converters that would do it (null where no conversion is needed),
+     * so the values can be converted as they are read.  Units and error
+     * estimates are replaced in-place as by makeRational.
+     *
+     * @param units               The units for the values and error estimates.
+     * @param errors              The error estimates.
+     * @return                    The converter of each component, or null.
+     * @throws UnitException      Unit conversion error.
+     */
+    static UnitConverter[] rationalConverters(Unit[] units,
+                                              ErrorEstimate[] errors)
+           throws UnitException
+    {
+        UnitConverter[] converters = new UnitConverter[units.length];
+        for (int j=0; j<units.length; j++) {
+            Unit        inputUnit = units[j];
+            if (inputUnit != null && !(inputUnit instanceof PromiscuousUnit)) {
+                Unit    outputUnit = inputUnit.getAbsoluteUnit();
+
+                if (Unit.canConvert (outputUnit, CommonUnit.dimensionless)) {
+                    outputUnit = CommonUnit.dimensionless;
+                }
+                if (!outputUnit.equals(inputUnit)) {
+                    converters[j] = outputUnit.getConverterFrom(inputUnit);
+                    if (errors[j] != null) {
+                        errors[j] =
+                            new ErrorEstimate(
+                                              outputUnit.toThis(errors[j].getMean(), inputUnit),
+                                              errors[j].getErrorValue(),
+                                              outputUnit);
+                    }
+                    units[j] = outputUnit;
+                }
+            }
+        }
+        return converters;
+    }
+
   /** extract field from this[].component;
       this is OK, when we get around to it */
   public Field extract(int component)
@@ -4134,7 +3862,10 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     ErrorEstimate[][] rangeErrors_out = new ErrorEstimate[ n_partials ][ TupleDimension ];
     if ( thisDomainFlag )
     {
-      p_derivatives = new double[ n_partials ][ TupleDimension ][ n_samples ];
+      //- GridGradient allocates its own result  -*
+      if ( !GridGradient.isSupported(domainSet) ) {
+        p_derivatives = new double[ n_partials ][ TupleDimension ][ n_samples ];
+      }
       for ( ii = 0; ii < n_partials; ii++ ) {
         datums[ii] = (DataImpl) cloneDouble( derivType_s[ii], derivUnits[ii], null );
       }
@@ -4171,70 +3902,45 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     double[][] rangeValues = null;
     int[][] neighbors = null;
     int n_points;
-    int n_index;
-    int m_index;
-    int index;
-    float distance;
-    float step;
     float f_sum;
     double d_sum;
     ErrorEstimate[] domainErrors = domainSet.getSetErrors();
 
 
-  //- Handle LinearSet case separately for efficiency   -*
-    if(( domainSet instanceof LinearSet )&&( thisDomainFlag ))
+  //- Handle GriddedSet (including LinearSet) case with GridGradient,
+  //- all partials in one pass  -*
+    if(( thisDomainFlag )&&( GridGradient.isSupported(domainSet) ))
     {
-      rangeValues = getValues();
-
-      //- each partial derivative   -*
-      for ( kk = 0; kk < n_partials; kk++ )
+      rangeValues = getValues(false);
+      GridGradient gradient;
+      if ( transform )
       {
-        //- get manifoldDimension index for this real axis ( LinearSet only )  -*
-        m_index = u_index[kk];
-
-        //- get neigbors and separation along this axis   -*
-        neighbors = domainSet.getNeighbors( m_index );
-        step = (float) (((LinearSet)domainSet).getLinear1DComponent(m_index)).getStep();
-
-        //- compute derivative for each sample and each range component   -*
-        for ( ii = 0; ii < n_samples; ii++ )
-        {
-          if ( neighbors[ii][0] == -1) {
-            distance = step;
-            n_index = neighbors[ii][1];
-            index = ii;
-          }
-          else if ( neighbors[ii][1] == -1 ) {
-            distance = step;
-            n_index = ii;
-            index = neighbors[ii][0];
-          }
-          else {
-            distance = 2.f*step;
-            n_index = neighbors[ii][1];
-            index = neighbors[ii][0];
-          }
-
-          for ( rr = 0; rr < TupleDimension; rr++ )
-          {
-            p_derivatives[kk][rr][ii] = ( rangeValues[rr][ n_index ] -
-                                          rangeValues[rr][ index ] )/distance;
-          }
-        }
+        float[][] locations = domainSet.getSamples(true);
+        locations =
+        CoordinateSystem.transformCoordinates( d_reference, null, D_units, null,
+                         domainType, d_coordsys, domainSet.getSetUnits(), null,
+                         locations );
+        gradient = new GridGradient( (GriddedSet) domainSet, locations );
+      }
+      else
+      {
+        gradient = new GridGradient( (GriddedSet) domainSet );
+      }
+      p_derivatives = gradient.gradient( rangeValues, u_index );
 
-        if ( error_mode != Data.NO_ERRORS )
-        {
+      if ( error_mode != Data.NO_ERRORS )
+      {
+        for ( kk = 0; kk < n_partials; kk++ ) {
           for ( rr = 0; rr < TupleDimension; rr++ ) {
             double[] d_values = p_derivatives[kk][rr];
             rangeErrors_out[kk][rr] = new ErrorEstimate( d_values, derivUnits[kk][rr],
                                                      Data.DIVIDE, RangeErrors[rr],
-                                                     domainErrors[m_index],
+                                                     domainErrors[u_index[kk]],
                                                      error_mode );
           }
         }
       }
 
-      neighbors = null;
       rangeValues = null;
     }
     else  //- GriddedSet, IrregularSet    --*
@@ -4257,8 +3963,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
           Samples = domainSet.getSamples(true);
 
           Samples =
-          CoordinateSystem.transformCoordinates( d_reference, null, null, null,
-                           domainType, d_coordsys, null, null, Samples );
+          CoordinateSystem.transformCoordinates( d_reference, null, D_units, null,
+                           domainType, d_coordsys, domainSet.getSetUnits(), null,
+                           Samples );
         }
         else
         {
@@ -4320,8 +4027,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         if ( transform )
         {
           Samples =
-          CoordinateSystem.transformCoordinates( d_reference, null, null, null,
-                           domainType, d_coordsys, null, null, Samples );
+          CoordinateSystem.transformCoordinates( d_reference, null, D_units, null,
+                           domainType, d_coordsys, domainSet.getSetUnits(), null,
+                           Samples );
         }
       }
 
@@ -4390,7 +4098,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       s_samples = p_derivatives[pp];
       if ( thisDomainFlag )
       {
-        ((FlatField)datums[pp]).setSamples( s_samples );
+        ((FlatField)datums[pp]).setSamples( s_samples, false );
         ((FlatField)datums[pp]).setRangeErrors( rangeErrors_out[pp] );
       }
       else
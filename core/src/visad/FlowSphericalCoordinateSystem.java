@@ -146,6 +146,12 @@ public class FlowSphericalCoordinateSystem extends CoordinateSystem {
     return value;
   }
 
+  /** return true: like SphericalCoordinateSystem, this keeps no
+      state beyond its reference and its static Units */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof FlowSphericalCoordinateSystem);
   }
@@ -0,0 +1,283 @@
+//
+// GridGradient.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.util.ThreadManager;
+
+/**
+   GridGradient computes partial derivatives of values sampled on a
+   GriddedSet, all of the requested partials of all of the components
+   in a single pass over the grid.<P>
+
+   Derivatives along each grid axis are taken by centered differences
+   in the interior of the grid and by one sided differences at its
+   edges.  For a LinearSet those are divided by the spacing along the
+   axis.  Otherwise they are combined through the inverse of the
+   Jacobian of the grid locations with respect to grid indices (the map
+   factors), also computed by differences, so curvilinear grids (e.g.
+   satellite or model grids with latitude and longitude samples) and
+   derivatives with respect to the reference of the domain's
+   CoordinateSystem are handled.  Chunks of samples are divided among
+   threads.<P>
+
+   A GridGradient keeps no per-call state, so one may be used for any
+   number of Fields with the same domain (e.g. for the vorticity,
+   divergence and advection of the wind on a model grid).<P>
+*/
+public final class GridGradient {
+
+  /** system property giving the maximum number of threads */
+  public static final String PROP_THREADS = "visad.gradient.threads";
+
+  /** number of samples per chunk */
+  private static final int CHUNK = 1 << 14;
+
+  private final int dim;
+
+  private final int length;
+
+  /** number of samples along each axis */
+  private final int[] lengths;
+
+  /** distance between neighbors in the sample array along each axis */
+  private final int[] strides;
+
+  /** spacing along each axis of a LinearSet, or null */
+  private final float[] steps;
+
+  /** sample locations, if not a LinearSet */
+  private final float[][] locations;
+
+  /**
+   * construct a GridGradient for derivatives with respect to the
+   * coordinates of set
+   */
+  public GridGradient(GriddedSet set) throws VisADException {
+    this(set, null);
+  }
+
+  /**
+   * construct a GridGradient for derivatives with respect to the given
+   * locations of the samples of set (e.g. set's samples transformed to
+   * the reference of its CoordinateSystem); if locations is null, the
+   * coordinates of set are used
+   */
+  public GridGradient(GriddedSet set, float[][] locations)
+         throws VisADException {
+    if (!isSupported(set)) {
+      throw new SetException("GridGradient: set must be a GriddedSet " +
+                             "of 1 to 3 dimensions with at least two " +
+                             "samples along each");
+    }
+    dim = set.getDimension();
+    length = set.getLength();
+    lengths = set.getLengths();
+    strides = new int[dim];
+    int stride = 1;
+    for (int a=0; a<dim; a++) {
+      strides[a] = stride;
+      stride *= lengths[a];
+    }
+    if (locations == null && set instanceof LinearSet) {
+      steps = new float[dim];
+      for (int a=0; a<dim; a++) {
+        steps[a] = (float)
+          ((LinearSet) set).getLinear1DComponent(a).getStep();
+      }
+      this.locations = null;
+    }
+    else {
+      if (locations == null) locations = set.getSamples(false);
+      if (locations.length != dim || locations[0].length != length) {
+        throw new SetException("GridGradient: locations must match set");
+      }
+      steps = null;
+      this.locations = locations;
+    }
+  }
+
+  /**
+   * return true if set is a GriddedSet whose manifold dimension equals
+   * its dimension, which is 1, 2 or 3, with at least two samples along
+   * each axis
+   */
+  public static boolean isSupported(Set set) {
+    if (!(set instanceof GriddedSet)) return false;
+    int dim = set.getDimension();
+    if (dim < 1 || dim > 3 || set.getManifoldDimension() != dim) return false;
+    int[] lengths = ((GriddedSet) set).getLengths();
+    for (int a=0; a<dim; a++) {
+      if (lengths[a] < 2) return false;
+    }
+    return true;
+  }
+
+  /**
+   * return the partial derivatives of values (indexed by component and
+   * sample) with respect to the coordinates with the given indices,
+   * indexed by partial, component and sample
+   */
+  public double[][][] gradient(final double[][] values, final int[] partials)
+         throws VisADException {
+    for (int k=0; k<partials.length; k++) {
+      if (partials[k] < 0 || partials[k] >= dim) {
+        throw new SetException("GridGradient: bad partial " + partials[k]);
+      }
+    }
+    for (int c=0; c<values.length; c++) {
+      if (values[c].length != length) {
+        throw new SetException("GridGradient: values must match set");
+      }
+    }
+    final double[][][] result =
+      new double[partials.length][values.length][length];
+    final int nchunks = (length + CHUNK - 1) / CHUNK;
+    int threads = Integer.getInteger(PROP_THREADS,
+                    Runtime.getRuntime().availableProcessors()).intValue();
+    threads = Math.min(threads, nchunks);
+    if (threads <= 1) {
+      for (int k=0; k<nchunks; k++) chunk(values, partials, result, k);
+      return result;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    ThreadManager manager = new ThreadManager("GridGradient");
+    for (int t=0; t<threads; t++) {
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          int k;
+          while ((k = next.getAndIncrement()) < nchunks) {
+            chunk(values, partials, result, k);
+          }
+        }
+      });
+    }
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("GridGradient: " + e.getMessage());
+    }
+    return result;
+  }
+
+  /** compute the derivatives at the samples of chunk k */
+  private void chunk(double[][] values, int[] partials, double[][][] result,
+                     int k) {
+    int first = k * CHUNK;
+    int last = Math.min(first + CHUNK, length);
+    int ncomps = values.length;
+    int npartials = partials.length;
+    int[] low = new int[dim];
+    int[] high = new int[dim];
+    // derivatives with respect to grid index along each axis
+    double[] along = new double[dim];
+    // inverse Jacobian, by grid axis and coordinate
+    double[][] inverse = new double[dim][dim];
+    double[][] jacobian = new double[dim][dim];
+    for (int i=first; i<last; i++) {
+      for (int a=0; a<dim; a++) {
+        int index = (i / strides[a]) % lengths[a];
+        low[a] = (index == 0) ? i : i - strides[a];
+        high[a] = (index == lengths[a] - 1) ? i : i + strides[a];
+      }
+      if (steps != null) {
+        for (int c=0; c<ncomps; c++) {
+          double[] v = values[c];
+          for (int p=0; p<npartials; p++) {
+            int a = partials[p];
+            float distance = (high[a] - low[a] == strides[a]) ?
+                             steps[a] : 2.f*steps[a];
+            result[p][c][i] = (v[high[a]] - v[low[a]]) / distance;
+          }
+        }
+        continue;
+      }
+      for (int a=0; a<dim; a++) {
+        double scale = (high[a] - low[a] == strides[a]) ? 1.0 : 0.5;
+        for (int r=0; r<dim; r++) {
+          float[] x = locations[r];
+          jacobian[r][a] = scale * ((double) x[high[a]] - (double) x[low[a]]);
+        }
+      }
+      invert(jacobian, inverse);
+      for (int c=0; c<ncomps; c++) {
+        double[] v = values[c];
+        for (int a=0; a<dim; a++) {
+          double scale = (high[a] - low[a] == strides[a]) ? 1.0 : 0.5;
+          along[a] = scale * (v[high[a]] - v[low[a]]);
+        }
+        for (int p=0; p<npartials; p++) {
+          int r = partials[p];
+          double sum = 0.0;
+          for (int a=0; a<dim; a++) sum += along[a] * inverse[a][r];
+          result[p][c][i] = sum;
+        }
+      }
+    }
+  }
+
+  /**
+   * set inverse to the inverse of matrix, of dimension 1, 2 or 3;
+   * a singular matrix gives infinite or NaN elements
+   */
+  private static void invert(double[][] m, double[][] inverse) {
+    switch (m.length) {
+    case 1:
+      inverse[0][0] = 1.0 / m[0][0];
+      break;
+    case 2: {
+      double det = m[0][0] * m[1][1] - m[0][1] * m[1][0];
+      inverse[0][0] = m[1][1] / det;
+      inverse[0][1] = -m[0][1] / det;
+      inverse[1][0] = -m[1][0] / det;
+      inverse[1][1] = m[0][0] / det;
+      break;
+    }
+    default: {
+      double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+      double c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+      double c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+      double det = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+      inverse[0][0] = c00 / det;
+      inverse[1][0] = c01 / det;
+      inverse[2][0] = c02 / det;
+      inverse[0][1] = (m[0][2] * m[2][1] - m[0][1] * m[2][2]) / det;
+      inverse[1][1] = (m[0][0] * m[2][2] - m[0][2] * m[2][0]) / det;
+      inverse[2][1] = (m[0][1] * m[2][0] - m[0][0] * m[2][1]) / det;
+      inverse[0][2] = (m[0][1] * m[1][2] - m[0][2] * m[1][1]) / det;
+      inverse[1][2] = (m[0][2] * m[1][0] - m[0][0] * m[1][2]) / det;
+      inverse[2][2] = (m[0][0] * m[1][1] - m[0][1] * m[1][0]) / det;
+      break;
+    }
+    }
+  }
+
+}
+
@@ -29,6 +29,8 @@ package visad;
 import java.io.InputStreamReader;
 import java.util.Enumeration;
 
+import visad.util.ThreadManager;
+
 /**
  * Gridded3DSet represents a finite set of samples of R^3.
  * <P>
@@ -40,6 +42,17 @@ public class Gridded3DSet extends GriddedSet {
 
   int LengthX, LengthY, LengthZ;
 
+  /**
+   * if true, makeIsoSurface builds an IsoSurfaceIndex over each new
+   * fieldValues array and reuses it while the same, unchanged array is
+   * contoured at other iso-levels
+   */
+  public static boolean USE_ISOSURFACE_INDEX =
+    Boolean.parseBoolean(System.getProperty("visad.isosurface.index", "false"));
+
+  /** index over the most recently contoured fieldValues */
+  private transient IsoSurfaceIndex isoIndex = null;
+
   float LowX, HiX, LowY, HiY, LowZ, HiZ;
 
   /**
@@ -2963,6 +2976,34 @@ public class Gridded3DSet extends GriddedSet {
 
   public VisADGeometryArray makeIsoSurface(float isolevel, float[] fieldValues,
       byte[][] color_values, boolean indexed) throws VisADException {
+    return makeIsoSurface(isolevel, fieldValues, color_values, indexed,
+        USE_ISOSURFACE_INDEX ? getIsoSurfaceIndex(fieldValues) : null);
+  }
+
+  /**
+   * return an IsoSurfaceIndex over fieldValues on this grid, reusing the
+   * last one built if it was built over the same array and its values
+   * have not changed since
+   */
+  public IsoSurfaceIndex getIsoSurfaceIndex(float[] fieldValues)
+      throws VisADException {
+    IsoSurfaceIndex index = isoIndex;
+    if (index == null
+        || !index.matches(fieldValues, LengthX, LengthY, LengthZ)) {
+      index = new IsoSurfaceIndex(fieldValues, LengthX, LengthY, LengthZ);
+      isoIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * same as makeIsoSurface(isolevel, fieldValues, color_values, indexed),
+   * except that the cells of bricks in index whose value range does not
+   * straddle isolevel are skipped; index may be null
+   */
+  public VisADGeometryArray makeIsoSurface(float isolevel, float[] fieldValues,
+      byte[][] color_values, boolean indexed, IsoSurfaceIndex index)
+      throws VisADException {
     boolean debug = false;
 
     int i;
@@ -2991,12 +3032,14 @@ public class Gridded3DSet extends GriddedSet {
 
     int[] ptFLAG = new int[num_cubes];
     int[] ptAUX = new int[xdim_x_ydim_x_zdim];
-    int[] pcube = new int[num_cubes + 1];
+    // pcube is only needed when flags visits every cube
+    int[] pcube = (index == null) ? new int[num_cubes + 1] : null;
 
     // System.out.println("pre-flags: isolevel = " + isolevel +
     // " xdim, ydim, zdim = " + xdim + " " + ydim + " " + zdim);
 
-    npolygons = flags(isolevel, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim);
+    npolygons = flags(isolevel, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim,
+        index);
 
     if (debug)
       System.out.println("npolygons= " + npolygons);
@@ -3543,6 +3586,128 @@ public class Gridded3DSet extends GriddedSet {
     }
     /* After this Point it is not more used pcube */
 
+    return flagSpecialCases(ptFLAG, xdim, ydim, zdim);
+  }
+
+  /**
+   * same as flags(isovalue, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim),
+   * except that the FLAG values of cubes in bricks of index whose value
+   * range does not straddle isovalue are set directly, without visiting
+   * their grid points; the remaining bricks are processed in parallel,
+   * up to ThreadManager's thread limit.  pcube is not used; index must
+   * be built over ptGRID with lengths (ydim, xdim, zdim), since xdim and
+   * ydim are swapped here relative to Gridded3DSet
+   */
+  public static int flags(final float isovalue, final int[] ptFLAG,
+      final int[] ptAUX, int[] pcube, final float[] ptGRID, final int xdim,
+      final int ydim, final int zdim, final IsoSurfaceIndex index)
+      throws VisADException {
+    if (index == null) {
+      return flags(isovalue, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim);
+    }
+    if (!index.matches(ptGRID, ydim, xdim, zdim)) {
+      throw new SetException("Gridded3DSet.flags: index does not match grid");
+    }
+
+    final int[] nbricks = index.getBrickCounts();
+    ThreadManager threadManager = new ThreadManager("isosurface flags");
+    // one task per Z slab of bricks; slabs only share grid points on
+    // their boundary faces, to which they write identical ptAUX values
+    for (int bk = 0; bk < nbricks[2]; bk++) {
+      final int brick_offset = bk * nbricks[0] * nbricks[1];
+      threadManager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          int nb = nbricks[0] * nbricks[1];
+          for (int b = brick_offset; b < brick_offset + nb; b++) {
+            flagBrick(isovalue, ptFLAG, ptAUX, ptGRID, xdim, ydim, zdim,
+                index, b);
+          }
+        }
+      });
+    }
+    try {
+      threadManager.runInParallel();
+    } catch (java.rmi.RemoteException re) {
+      throw new VisADException("Gridded3DSet.flags: " + re.getMessage());
+    }
+
+    return flagSpecialCases(ptFLAG, xdim, ydim, zdim);
+  }
+
+  /** compute the FLAG values of the cubes of one brick of index */
+  private static void flagBrick(float isovalue, int[] ptFLAG, int[] ptAUX,
+      float[] ptGRID, int xdim, int ydim, int zdim, IsoSurfaceIndex index,
+      int brick) {
+    int xdim_x_ydim = xdim * ydim;
+    int num_cubes_y = ydim - 1;
+    int num_cubes_xy = (xdim - 1) * num_cubes_y;
+    // bounds are in natural order, so index X is iy here and Y is ix
+    int[] bounds = index.getCellBounds(brick);
+    int ylo = bounds[0], yhi = bounds[1];
+    int xlo = bounds[2], xhi = bounds[3];
+    int zlo = bounds[4], zhi = bounds[5];
+
+    if (!index.isActive(brick, isovalue)) {
+      int flag = index.isAbove(brick, isovalue) ? 0xFF : 0;
+      for (int iz = zlo; iz < zhi; iz++) {
+        for (int ix = xlo; ix < xhi; ix++) {
+          int ii = iz * num_cubes_xy + ix * num_cubes_y;
+          for (int iy = ylo; iy < yhi; iy++) {
+            ptFLAG[ii + iy] = flag;
+          }
+        }
+      }
+      return;
+    }
+
+    for (int iz = zlo; iz <= zhi; iz++) {
+      for (int ix = xlo; ix <= xhi; ix++) {
+        int pt = iz * xdim_x_ydim + ix * ydim;
+        for (int iy = ylo; iy <= yhi; iy++) {
+          float v = ptGRID[pt + iy];
+          // test for missing
+          if (v != v)
+            ptAUX[pt + iy] = 0x1001;
+          else if (v >= isovalue)
+            ptAUX[pt + iy] = 1;
+          else
+            ptAUX[pt + iy] = 0;
+        }
+      }
+    }
+
+    for (int iz = zlo; iz < zhi; iz++) {
+      for (int ix = xlo; ix < xhi; ix++) {
+        int ii = iz * num_cubes_xy + ix * num_cubes_y;
+        int pt = iz * xdim_x_ydim + ix * ydim;
+        for (int iy = ylo; iy < yhi; iy++) {
+          int p = pt + iy;
+          ptFLAG[ii + iy] = ((ptAUX[p]) | (ptAUX[p + ydim] << 1)
+              | (ptAUX[p + 1] << 2) | (ptAUX[p + ydim + 1] << 3)
+              | (ptAUX[p + xdim_x_ydim] << 4)
+              | (ptAUX[p + ydim + xdim_x_ydim] << 5)
+              | (ptAUX[p + 1 + xdim_x_ydim] << 6) | (ptAUX[p + 1
+              + ydim + xdim_x_ydim] << 7));
+        }
+      }
+    }
+  }
+
+  /**
+   * resolve the ambiguous cases in ptFLAG and return the number of
+   * polygons that will be generated
+   */
+  private static int flagSpecialCases(int[] ptFLAG, int xdim, int ydim,
+      int zdim) {
+    int ii, jj, ix, iy, iz, cb, SF, bcase;
+    int num_cubes, num_cubes_xy, num_cubes_y;
+    int npolygons;
+
+    num_cubes_y = ydim - 1;
+    num_cubes_xy = (xdim - 1) * num_cubes_y;
+    num_cubes = (zdim - 1) * num_cubes_xy;
+    cb = 0;
+
     /* Analyse Special Cases in FLAG */
     ii = npolygons = 0;
     while (TRUE) {
@@ -248,6 +248,12 @@ public class HSVCoordinateSystem extends CoordinateSystem {
     return value;
   }
 
+  /** return true: the Foley and van Dam conversion keeps all its
+      intermediate values (f, p, q, t) in locals */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof HSVCoordinateSystem);
   }
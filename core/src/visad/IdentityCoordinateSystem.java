@@ -114,6 +114,14 @@ public class IdentityCoordinateSystem extends CoordinateSystem
         return values;
     }
 
+    /**
+     * Simple implementation of thread safety check.  Returns true, as
+     * the transforms return their input values without modification.
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /**
      * Check to see if the object in question is equal to this.
      * @param  o  object in question
@@ -92,6 +92,11 @@ public class InverseCoordinateSystem extends CoordinateSystem {
     return inverse.toReference(tuples);
   }
 
+  /** return true if the inverted CoordinateSystem is thread-safe */
+  public boolean isThreadSafe() {
+    return inverse.isThreadSafe();
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof InverseCoordinateSystem &&
             inverse.equals(((InverseCoordinateSystem) cs).inverse));
@@ -0,0 +1,240 @@
+//
+// IsoSurfaceIndex.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * IsoSurfaceIndex is a min/max brick index over the values of a
+ * field sampled on a 3-D grid.  The grid cells are grouped into
+ * bricks of brickSize x brickSize x brickSize cells, and the minimum
+ * and maximum value over the grid points of each brick (including
+ * the shared points on the brick's upper faces) are recorded.  A
+ * brick can only contribute to an iso-surface if its value range
+ * straddles the iso-level, so Gridded3DSet.makeIsoSurface uses the
+ * index to skip the cells of all other bricks.<P>
+ *
+ * The index is built once for a given values array and may be reused
+ * for any number of iso-levels.  It only holds a weak reference to
+ * the values array, so a cached index does not keep the array alive,
+ * and a checksum of its contents, so that matches() notices values
+ * changed in place (e.g. by FlatField.setSamples without copying).
+ * Values are indexed in the usual VisAD order, with the X index
+ * varying fastest.<P>
+ */
+public class IsoSurfaceIndex {
+
+  /** default number of cells along each edge of a brick */
+  public static final int DEFAULT_BRICK_SIZE = 8;
+
+  private final WeakReference<float[]> values;
+
+  /** checksum of values when the index was built */
+  private final long checksum;
+
+  private final int lengthX, lengthY, lengthZ;
+
+  private final int brickSize;
+
+  private final int bricksX, bricksY, bricksZ;
+
+  /** value range of each brick; NaN range for all-missing bricks */
+  private final float[] brickMin, brickMax;
+
+  /** true for bricks containing at least one missing value */
+  private final boolean[] brickMissing;
+
+  /**
+   * construct an index with DEFAULT_BRICK_SIZE bricks over values
+   * sampled on a lengthX x lengthY x lengthZ grid
+   */
+  public IsoSurfaceIndex(float[] values, int lengthX, int lengthY,
+                         int lengthZ) throws VisADException {
+    this(values, lengthX, lengthY, lengthZ, DEFAULT_BRICK_SIZE);
+  }
+
+  /**
+   * construct an index with brickSize bricks over values sampled on a
+   * lengthX x lengthY x lengthZ grid
+   */
+  public IsoSurfaceIndex(float[] values, int lengthX, int lengthY,
+                         int lengthZ, int brickSize) throws VisADException {
+    if (values == null) {
+      throw new SetException("IsoSurfaceIndex: values cannot be null");
+    }
+    if (lengthX < 2 || lengthY < 2 || lengthZ < 2) {
+      throw new SetException("IsoSurfaceIndex: grid lengths must be > 1");
+    }
+    if (values.length != lengthX * lengthY * lengthZ) {
+      throw new SetException("IsoSurfaceIndex: values length " +
+                             values.length + " doesn't match grid");
+    }
+    if (brickSize < 1) {
+      throw new SetException("IsoSurfaceIndex: brickSize must be > 0");
+    }
+    this.values = new WeakReference<float[]>(values);
+    checksum = checksum(values);
+    this.lengthX = lengthX;
+    this.lengthY = lengthY;
+    this.lengthZ = lengthZ;
+    this.brickSize = brickSize;
+    bricksX = (lengthX - 2) / brickSize + 1;
+    bricksY = (lengthY - 2) / brickSize + 1;
+    bricksZ = (lengthZ - 2) / brickSize + 1;
+
+    int nbricks = bricksX * bricksY * bricksZ;
+    brickMin = new float[nbricks];
+    brickMax = new float[nbricks];
+    brickMissing = new boolean[nbricks];
+    for (int b=0; b<nbricks; b++) {
+      brickMin[b] = Float.NaN;
+      brickMax[b] = Float.NaN;
+    }
+
+    int lengthXY = lengthX * lengthY;
+    for (int k=0; k<lengthZ; k++) {
+      int bk0 = brickLow(k, bricksZ);
+      int bk1 = brickHigh(k, bricksZ);
+      for (int j=0; j<lengthY; j++) {
+        int bj0 = brickLow(j, bricksY);
+        int bj1 = brickHigh(j, bricksY);
+        int base = k * lengthXY + j * lengthX;
+        for (int i=0; i<lengthX; i++) {
+          float v = values[base + i];
+          int bi0 = brickLow(i, bricksX);
+          int bi1 = brickHigh(i, bricksX);
+          // a grid point on a brick face belongs to up to 8 bricks
+          for (int bk=bk0; bk<=bk1; bk++) {
+            for (int bj=bj0; bj<=bj1; bj++) {
+              for (int bi=bi0; bi<=bi1; bi++) {
+                int b = bi + bricksX * (bj + bricksY * bk);
+                if (v != v) {
+                  brickMissing[b] = true;
+                }
+                else {
+                  if (!(v >= brickMin[b])) brickMin[b] = v;
+                  if (!(v <= brickMax[b])) brickMax[b] = v;
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** lowest brick index containing grid index n along one axis */
+  private int brickLow(int n, int nbricks) {
+    int b = (n - 1) / brickSize;
+    if (n == 0) b = 0;
+    return (b < nbricks) ? b : nbricks - 1;
+  }
+
+  /** highest brick index containing grid index n along one axis */
+  private int brickHigh(int n, int nbricks) {
+    int b = n / brickSize;
+    return (b < nbricks) ? b : nbricks - 1;
+  }
+
+  /**
+   * return true if this index was built over values on the given
+   * grid, and values have not changed since
+   */
+  public boolean matches(float[] values, int lengthX, int lengthY,
+                         int lengthZ) {
+    return this.values.get() == values && this.lengthX == lengthX &&
+           this.lengthY == lengthY && this.lengthZ == lengthZ &&
+           checksum(values) == checksum;
+  }
+
+  /**
+   * return a 64-bit FNV-1a style hash of the bits of values; one pass
+   * over the array is much cheaper than rebuilding the index
+   */
+  private static long checksum(float[] values) {
+    long h = 0xcbf29ce484222325L;
+    for (int i=0; i<values.length; i++) {
+      h = (h ^ Float.floatToRawIntBits(values[i])) * 0x100000001b3L;
+    }
+    return h;
+  }
+
+  public int getBrickSize() {
+    return brickSize;
+  }
+
+  /** return number of bricks along X, Y and Z */
+  public int[] getBrickCounts() {
+    return new int[] {bricksX, bricksY, bricksZ};
+  }
+
+  public int getBrickCount() {
+    return brickMin.length;
+  }
+
+  /**
+   * return true if brick may intersect the iso-surface at isovalue;
+   * bricks containing missing values are always active, since the
+   * iso-surface algorithm treats missing grid points specially
+   */
+  public boolean isActive(int brick, float isovalue) {
+    return brickMissing[brick] ||
+           (brickMin[brick] < isovalue && brickMax[brick] >= isovalue);
+  }
+
+  /**
+   * return true if all grid points of an inactive brick are
+   * >= isovalue (i.e., its cells are entirely inside the surface)
+   */
+  public boolean isAbove(int brick, float isovalue) {
+    return brickMin[brick] >= isovalue;
+  }
+
+  /** return the number of bricks that may intersect isovalue */
+  public int getActiveBrickCount(float isovalue) {
+    int count = 0;
+    for (int b=0; b<brickMin.length; b++) {
+      if (isActive(b, isovalue)) count++;
+    }
+    return count;
+  }
+
+  /**
+   * return {lowX, hiX, lowY, hiY, lowZ, hiZ} cell index bounds of brick,
+   * with the hi bounds exclusive
+   */
+  public int[] getCellBounds(int brick) {
+    int bi = brick % bricksX;
+    int bj = (brick / bricksX) % bricksY;
+    int bk = brick / (bricksX * bricksY);
+    return new int[] {bi * brickSize, Math.min((bi + 1) * brickSize, lengthX - 1),
+                      bj * brickSize, Math.min((bj + 1) * brickSize, lengthY - 1),
+                      bk * brickSize, Math.min((bk + 1) * brickSize, lengthZ - 1)};
+  }
+
+}
+
@@ -541,13 +541,15 @@ public class Linear3DSet extends Gridded3DSet
 
     int[]  ptFLAG = new int[ num_cubes ];
     int[]  ptAUX  = new int[ xdim_x_ydim_x_zdim ];
-    int[]  pcube  = new int[ num_cubes+1 ];
+    IsoSurfaceIndex index =
+      USE_ISOSURFACE_INDEX ? getIsoSurfaceIndex(fieldValues) : null;
+    int[]  pcube  = (index == null) ? new int[ num_cubes+1 ] : null;
 
     // System.out.println("pre-flags: isolevel = " + isolevel +
     //                    " xdim, ydim, zdim = " + xdim + " " + ydim + " " + zdim);
 
     npolygons = flags( isolevel, ptFLAG, ptAUX, pcube,
-                       ptGRID, xdim, ydim, zdim );
+                       ptGRID, xdim, ydim, zdim, index );
 
     if (debug) System.out.println("npolygons= "+npolygons);
 
@@ -131,6 +131,15 @@ public class LogCoordinateSystem extends CoordinateSystem {
     return base;
   }
 
+  /**
+   * Check whether this LogCoordinateSystem may be used from several
+   * threads at once.
+   * @return true, since base is only set by the constructors
+   */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   /**
    * See if the Object in question is equal to this LogCoordinateSystem
    * @param cs  Object in question
@@ -45,13 +45,13 @@ public final class LogarithmicUnit extends Unit implements Serializable {
      * 
      * @serial
      */
-    private final Unit              reference;
+    final Unit                      reference;
     /**
      * The logarithmic base.
      * 
      * @serial
      */
-    private final double            base;
+    final double                    base;
     /**
      * The natural logarithm of the base (for computational efficiency).
      */
@@ -375,19 +375,7 @@ public final class LogarithmicUnit extends Unit implements Serializable {
     @Override
     public double[] toThis(final double[] values, final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (double[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, reference, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] = Math.log(newValues[i]) / lnBase;
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -408,19 +396,7 @@ public final class LogarithmicUnit extends Unit implements Serializable {
     @Override
     public float[] toThis(final float[] values, final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (float[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, reference, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] = (float) (Math.log(newValues[i]) / lnBase);
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -480,16 +456,7 @@ public final class LogarithmicUnit extends Unit implements Serializable {
     @Override
     public double[] toThat(final double values[], final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues = (copy)
-                ? (double[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] = Math.exp(newValues[i] * lnBase);
-            }
-            newValues = that.toThis(newValues, reference, copy);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
@@ -511,16 +478,7 @@ public final class LogarithmicUnit extends Unit implements Serializable {
     @Override
     public float[] toThat(final float values[], final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues = (copy)
-                ? (float[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] = (float) Math.exp(newValues[i] * lnBase);
-            }
-            newValues = that.toThis(newValues, reference, copy);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
@@ -416,21 +416,7 @@ public final class OffsetUnit extends Unit implements Serializable {
     @Override
     public double[] toThis(final double[] values, final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (double[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, underUnit, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] -= offset;
-                }
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -451,21 +437,7 @@ public final class OffsetUnit extends Unit implements Serializable {
     @Override
     public float[] toThis(final float[] values, final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (float[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, underUnit, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] -= offset;
-                }
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -525,18 +497,7 @@ public final class OffsetUnit extends Unit implements Serializable {
     @Override
     public double[] toThat(final double values[], final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues = (copy)
-                ? (double[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] += offset;
-                }
-            }
-            newValues = that.toThis(newValues, underUnit, copy);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
@@ -558,18 +519,7 @@ public final class OffsetUnit extends Unit implements Serializable {
     @Override
     public float[] toThat(final float values[], final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues = (copy)
-                ? (float[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] += offset;
-                }
-            }
-            newValues = that.toThis(newValues, underUnit, copy);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
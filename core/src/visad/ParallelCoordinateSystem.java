@@ -0,0 +1,383 @@
+//
+// ParallelCoordinateSystem.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import visad.util.ThreadManager;
+
+/**
+ * A wrapper class for CoordinateSystems that splits large toReference
+ * and fromReference calls into chunks and transforms the chunks on
+ * several threads.  Only CoordinateSystems whose {@link
+ * CoordinateSystem#isThreadSafe} returns true are split; calls on any
+ * other CoordinateSystem, and calls with fewer than two chunks of
+ * values, are passed straight through.<P>
+ *
+ * Each thread copies its chunks into scratch arrays that it reuses
+ * from chunk to chunk, so the wrapped CoordinateSystem may transform
+ * them in place.  The number of threads defaults to the number of
+ * processors and may be set with the {@link #PROP_THREADS} system
+ * property.<P>
+ *
+ * The wrapper counts calls, values and time spent, so the throughput
+ * of the wrapped CoordinateSystem can be monitored.
+ */
+public class ParallelCoordinateSystem extends CoordinateSystem {
+
+  /** system property giving the maximum number of threads per call */
+  public static final String PROP_THREADS = "visad.coordinatesystem.threads";
+
+  /** default number of values per chunk */
+  public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+  /** The coordinate system I wrap */
+  private final CoordinateSystem myCS;
+
+  private final int chunkSize;
+
+  private final AtomicLong calls = new AtomicLong();
+
+  private final AtomicLong parallelCalls = new AtomicLong();
+
+  private final AtomicLong values = new AtomicLong();
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  /**
+   * Construct a new ParallelCoordinateSystem that wraps around the
+   * input, using chunks of {@link #DEFAULT_CHUNK_SIZE} values.
+   * @param cs CoordinateSystem to wrap
+   *
+   * @throws VisADException 
+   */
+  public ParallelCoordinateSystem(CoordinateSystem cs) throws VisADException {
+    this(cs, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Construct a new ParallelCoordinateSystem that wraps around the
+   * input.
+   * @param cs CoordinateSystem to wrap
+   * @param chunkSize number of values transformed per chunk
+   *
+   * @throws VisADException 
+   */
+  public ParallelCoordinateSystem(CoordinateSystem cs, int chunkSize)
+         throws VisADException {
+    super(cs.getReference(), cs.getCoordinateSystemUnits());
+    if (chunkSize < 1) {
+      throw new CoordinateSystemException(
+        "ParallelCoordinateSystem: chunkSize must be positive");
+    }
+    myCS = cs;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Wrapper around the toReference method of the input CoordinateSystem.
+   *
+   * @param   inputs  values to transform
+   * @return  transformed input values.
+   * @throws  VisADException  when wrapped CS does
+   */
+  public double[][] toReference(double[][] inputs) throws VisADException {
+    return transform(inputs, true);
+  }
+
+  /**
+   * Wrapper around the fromReference method of the input CoordinateSystem.
+   *
+   * @param   inputs  values to transform
+   * @return  transformed input values.
+   * @throws  VisADException  when wrapped CS does
+   */
+  public double[][] fromReference(double[][] inputs) throws VisADException {
+    return transform(inputs, false);
+  }
+
+  /**
+   * Wrapper around the toReference method of the input CoordinateSystem.
+   *
+   * @param   inputs  values to transform
+   * @return  transformed input values.
+   * @throws  VisADException  when wrapped CS does
+   */
+  public float[][] toReference(float[][] inputs) throws VisADException {
+    return transform(inputs, true);
+  }
+
+  /**
+   * Wrapper around the fromReference method of the input CoordinateSystem.
+   *
+   * @param   inputs  values to transform
+   * @return  transformed input values.
+   * @throws  VisADException  when wrapped CS does
+   */
+  public float[][] fromReference(float[][] inputs) throws VisADException {
+    return transform(inputs, false);
+  }
+
+  private double[][] transform(final double[][] inputs,
+                               final boolean to_reference)
+          throws VisADException {
+    long start = System.nanoTime();
+    final int n = length(inputs);
+    int threads = threads(n);
+    double[][] outputs;
+    if (threads < 2) {
+      outputs = to_reference ? myCS.toReference(inputs) :
+                               myCS.fromReference(inputs);
+    }
+    else {
+      final int dim = inputs.length;
+      final int nchunks = (n + chunkSize - 1) / chunkSize;
+      final double[][] results = new double[dim][n];
+      final AtomicInteger next = new AtomicInteger();
+      ThreadManager manager = new ThreadManager("ParallelCoordinateSystem");
+      for (int t=0; t<threads; t++) {
+        manager.addRunnable(new ThreadManager.MyRunnable() {
+          public void run() throws Exception {
+            double[][] scratch = null;
+            int k;
+            while ((k = next.getAndIncrement()) < nchunks) {
+              int first = k * chunkSize;
+              int len = Math.min(chunkSize, n - first);
+              double[][] chunk;
+              if (len == chunkSize) {
+                if (scratch == null) scratch = new double[dim][chunkSize];
+                chunk = scratch;
+              }
+              else {
+                chunk = new double[dim][len];
+              }
+              for (int i=0; i<dim; i++) {
+                System.arraycopy(inputs[i], first, chunk[i], 0, len);
+              }
+              double[][] out = to_reference ? myCS.toReference(chunk) :
+                                              myCS.fromReference(chunk);
+              for (int i=0; i<dim; i++) {
+                System.arraycopy(out[i], 0, results[i], first, len);
+              }
+            }
+          }
+        });
+      }
+      run(manager, threads);
+      outputs = results;
+    }
+    count(n, threads, start);
+    return outputs;
+  }
+
+  private float[][] transform(final float[][] inputs,
+                              final boolean to_reference)
+          throws VisADException {
+    long start = System.nanoTime();
+    final int n = length(inputs);
+    int threads = threads(n);
+    float[][] outputs;
+    if (threads < 2) {
+      outputs = to_reference ? myCS.toReference(inputs) :
+                               myCS.fromReference(inputs);
+    }
+    else {
+      final int dim = inputs.length;
+      final int nchunks = (n + chunkSize - 1) / chunkSize;
+      final float[][] results = new float[dim][n];
+      final AtomicInteger next = new AtomicInteger();
+      ThreadManager manager = new ThreadManager("ParallelCoordinateSystem");
+      for (int t=0; t<threads; t++) {
+        manager.addRunnable(new ThreadManager.MyRunnable() {
+          public void run() throws Exception {
+            float[][] scratch = null;
+            int k;
+            while ((k = next.getAndIncrement()) < nchunks) {
+              int first = k * chunkSize;
+              int len = Math.min(chunkSize, n - first);
+              float[][] chunk;
+              if (len == chunkSize) {
+                if (scratch == null) scratch = new float[dim][chunkSize];
+                chunk = scratch;
+              }
+              else {
+                chunk = new float[dim][len];
+              }
+              for (int i=0; i<dim; i++) {
+                System.arraycopy(inputs[i], first, chunk[i], 0, len);
+              }
+              float[][] out = to_reference ? myCS.toReference(chunk) :
+                                             myCS.fromReference(chunk);
+              for (int i=0; i<dim; i++) {
+                System.arraycopy(out[i], 0, results[i], first, len);
+              }
+            }
+          }
+        });
+      }
+      run(manager, threads);
+      outputs = results;
+    }
+    count(n, threads, start);
+    return outputs;
+  }
+
+  /** return the number of values in inputs, or 0 if there are none */
+  private static int length(double[][] inputs) {
+    if (inputs == null || inputs.length == 0 || inputs[0] == null) return 0;
+    return inputs[0].length;
+  }
+
+  /** return the number of values in inputs, or 0 if there are none */
+  private static int length(float[][] inputs) {
+    if (inputs == null || inputs.length == 0 || inputs[0] == null) return 0;
+    return inputs[0].length;
+  }
+
+  /** return the number of threads to use for n values */
+  private int threads(int n) {
+    if (!myCS.isThreadSafe() || n < 2 * chunkSize) return 1;
+    int threads = Integer.getInteger(PROP_THREADS,
+                    Runtime.getRuntime().availableProcessors()).intValue();
+    return Math.max(1, Math.min(threads, (n + chunkSize - 1) / chunkSize));
+  }
+
+  private static void run(ThreadManager manager, int threads)
+          throws VisADException {
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("ParallelCoordinateSystem: " + e.getMessage());
+    }
+  }
+
+  private void count(int n, int threads, long start) {
+    nanos.addAndGet(System.nanoTime() - start);
+    calls.incrementAndGet();
+    if (threads > 1) parallelCalls.incrementAndGet();
+    values.addAndGet(n);
+  }
+
+  /**
+   * Get the number of toReference and fromReference calls so far.
+   * @return the number of calls
+   */
+  public long getCallCount() {
+    return calls.get();
+  }
+
+  /**
+   * Get the number of calls so far that were split across threads.
+   * @return the number of parallel calls
+   */
+  public long getParallelCallCount() {
+    return parallelCalls.get();
+  }
+
+  /**
+   * Get the number of values (tuples) transformed so far.
+   * @return the number of values
+   */
+  public long getValueCount() {
+    return values.get();
+  }
+
+  /**
+   * Get the total time spent in calls so far.
+   * @return elapsed time in milliseconds
+   */
+  public double getTransformTime() {
+    return nanos.get() / 1.0e6;
+  }
+
+  /**
+   * Get the average throughput so far.
+   * @return values transformed per second, or 0 if there have been none
+   */
+  public double getThroughput() {
+    long t = nanos.get();
+    return (t == 0) ? 0.0 : values.get() * 1.0e9 / t;
+  }
+
+  /** Reset the call, value and time counters to zero. */
+  public void resetCounters() {
+    calls.set(0);
+    parallelCalls.set(0);
+    values.set(0);
+    nanos.set(0);
+  }
+
+  /**
+   * Check whether the wrapped CS is thread-safe.
+   * @return  the wrapped CS's {@link CoordinateSystem#isThreadSafe}
+   */
+  public boolean isThreadSafe() {
+    return myCS.isThreadSafe();
+  }
+
+  /**
+   * Check for equality of CoordinateSystem objects
+   * @param  obj  other object in question
+   * @return  true if the object in question is a ParallelCoordinateSystem
+   *          and it's CS is equal this object's CS
+   */
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ParallelCoordinateSystem)) return false;
+    ParallelCoordinateSystem that = (ParallelCoordinateSystem)obj;
+    return that.myCS.equals(myCS);
+  }
+
+  /**
+   * Get the hash code of this CS, consistent with equals
+   * @return  the wrapped CS's hash code
+   */
+  public int hashCode() {
+    return myCS.hashCode();
+  }
+
+  /**
+   * Access to the wrapped CS
+   * @return  wrapped CoordinateSystem
+   */
+  public CoordinateSystem getWrappedCoordinateSystem() {
+    return myCS;
+  }
+
+  /**
+   * A descriptive string of this CS.
+   * @return a descriptive String
+   */
+  public String toString() {
+    return "Parallel CS: " + myCS.toString() + " (" + getValueCount() +
+           " values in " + getCallCount() + " calls, " +
+           Math.round(getThroughput()) + " values/s)";
+  }
+
+}
@@ -126,6 +126,12 @@ public class PolarCoordinateSystem extends CoordinateSystem {
     return value;
   }
 
+  /** return true: PolarCoordinateSystem has no fields of its own,
+      and each call allocates its own result arrays */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof PolarCoordinateSystem);
   }
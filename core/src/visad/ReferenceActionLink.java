@@ -51,6 +51,14 @@ public class ReferenceActionLink {
   /** set by setTicks if OldTick < NewTick; cleared by resetTicks */
   private boolean tickFlag;
 
+  private static final int[] NO_RANGES = new int[0];
+
+  /** sample index ranges changed since the last setTicks() call, as
+      merged from DataChangedEvents; null if all may have changed */
+  private int[] pendingRanges = NO_RANGES;
+  /** ranges changed before the last setTicks() call that set tickFlag */
+  private int[] changedRanges = null;
+
   /** Ball describes state of protocol between this ReferenceActionLink
       and ThingReference ref;
       false when this is waiting for a ThingChangedEvent;
@@ -114,6 +122,15 @@ if (OldTick < NewTick || (NewTick < 0 && 0 < OldTick)) {
   public synchronized void setTicks() {
     tickFlag = (OldTick < NewTick || (NewTick < 0 && 0 < OldTick));
     OldTick = NewTick;
+    if (tickFlag) {
+      // a change with no event seen (e.g. a new link) may be anything
+      changedRanges = (pendingRanges == null || pendingRanges.length == 0) ?
+                      null : pendingRanges;
+      pendingRanges = NO_RANGES;
+    }
+    else {
+      changedRanges = NO_RANGES;
+    }
 /*
 if (tickFlag) {
   try {
@@ -185,6 +202,27 @@ System.out.println("ReferenceActionLink.getThingChangedEvent Ball = false " +
     return event;
   }
 
+  /** return the sample index ranges changed before the last
+      setTicks(); empty if none, null if all may have changed */
+  synchronized int[] getChangedRanges() {
+    return (changedRanges == null) ? null : (int[]) changedRanges.clone();
+  }
+
+  /** acknowledge e, remembering the sample index ranges it changed */
+  synchronized void acknowledgeThingChangedEvent(ThingChangedEvent e) {
+    if (e instanceof DataChangedEvent) {
+      if (pendingRanges != null) {
+        pendingRanges =
+          DataChangedEvent.union(pendingRanges,
+                                 ((DataChangedEvent) e).getRanges());
+      }
+    }
+    else {
+      pendingRanges = null;
+    }
+    acknowledgeThingChangedEvent(e.getTick());
+  }
+
   void acknowledgeThingChangedEvent(long actionTick) {
     NewTick = actionTick;
     Ball = true;
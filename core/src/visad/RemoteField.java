@@ -33,5 +33,16 @@ import java.rmi.*;
 */
 public interface RemoteField extends Remote, Field {
 
+  /** return the range values at samples start through
+      start + count - 1, in one remote call */
+  Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException;
+
+  /** return range values for 'Flat' components at the given sample
+      indices, dimensioned float[number_of_range_components][indices.length],
+      in one remote call */
+  float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException;
+
 }
 
@@ -0,0 +1,370 @@
+//
+// RemoteFieldCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+   RemoteFieldCache is a client-side cache of the samples of a
+   RemoteField, for code that loops over getSample(i) and would
+   otherwise make a remote call per sample.  Samples are fetched in
+   blocks of getBlockSize() with the bulk RemoteField.getSamples and
+   getFloats(int[]) calls; when access is sequential, each miss
+   fetches twice as many blocks ahead as the last one did, up to
+   MAX_READ_AHEAD blocks.  The least recently used blocks are
+   dropped beyond getMaxBlocks().<P>
+
+   A cache constructed from a RemoteDataReference follows changes
+   to it: a DataChangedEvent drops only the blocks that overlap
+   its changed ranges, and any other change drops all blocks and
+   fetches the referenced Field again.  A cache constructed from a
+   bare RemoteField cannot be told of changes, so its owner must
+   call invalidate().<P>
+
+   Data returned by getSample() are shared by later calls, so
+   callers must not modify them.  Call stop() when done, to stop
+   listening for changes.<P>
+*/
+public class RemoteFieldCache {
+
+  /** default number of samples fetched per block */
+  public static final int DEFAULT_BLOCK_SIZE = 64;
+
+  /** default number of blocks of each kind kept */
+  public static final int DEFAULT_MAX_BLOCKS = 64;
+
+  /** most blocks fetched by one remote call */
+  public static final int MAX_READ_AHEAD = 16;
+
+  /** the cached Field, or null until fetched from ref */
+  private RemoteField field;
+
+  /** reference to the cached Field, or null */
+  private final RemoteDataReference ref;
+
+  private final int blockSize;
+
+  private final int maxBlocks;
+
+  /** length of field, or -1 if not known */
+  private int length = -1;
+
+  /** blocks of samples and of range values, keyed by first index */
+  private final Map<Integer, Data[]> sampleBlocks;
+  private final Map<Integer, float[][]> floatBlocks;
+
+  /** last index and read ahead of getSample() and getFloats() */
+  private int lastSample = -2;
+  private int sampleAhead = 1;
+  private int lastFloat = -2;
+  private int floatAhead = 1;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long remoteCalls = 0;
+  private long invalidations = 0;
+  private long rangeInvalidations = 0;
+
+  /** listens for changes to ref */
+  private final CellImpl cell;
+  private final RemoteCellImpl remoteCell;
+
+  /** construct a cache with DEFAULT_BLOCK_SIZE and DEFAULT_MAX_BLOCKS */
+  public RemoteFieldCache(RemoteField field)
+         throws VisADException, RemoteException {
+    this(field, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * construct a cache of field that fetches samples in blocks of
+   * blockSize and keeps at most maxBlocks blocks of each kind
+   */
+  public RemoteFieldCache(RemoteField field, int blockSize, int maxBlocks)
+         throws VisADException, RemoteException {
+    this(field, null, blockSize, maxBlocks);
+  }
+
+  /**
+   * construct a cache with DEFAULT_BLOCK_SIZE and DEFAULT_MAX_BLOCKS
+   * of the Field referenced by ref, following changes to it
+   */
+  public RemoteFieldCache(RemoteDataReference ref)
+         throws VisADException, RemoteException {
+    this(null, ref, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * construct a cache of the Field referenced by ref, following
+   * changes to it, that fetches samples in blocks of blockSize and
+   * keeps at most maxBlocks blocks of each kind
+   */
+  public RemoteFieldCache(RemoteDataReference ref, int blockSize,
+                          int maxBlocks)
+         throws VisADException, RemoteException {
+    this(null, ref, blockSize, maxBlocks);
+  }
+
+  private RemoteFieldCache(RemoteField field, RemoteDataReference ref,
+                           int blockSize, int maxBlocks)
+          throws VisADException, RemoteException {
+    if (field == null && ref == null) {
+      throw new FieldException("RemoteFieldCache: field cannot be null");
+    }
+    if (blockSize < 1 || maxBlocks < 1) {
+      throw new FieldException("RemoteFieldCache: blockSize and maxBlocks " +
+                               "must be > 0");
+    }
+    this.field = field;
+    this.ref = ref;
+    this.blockSize = blockSize;
+    this.maxBlocks = maxBlocks;
+    sampleBlocks = new LinkedHashMap<Integer, Data[]>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Integer, Data[]> eldest) {
+        return size() > RemoteFieldCache.this.maxBlocks;
+      }
+    };
+    floatBlocks = new LinkedHashMap<Integer, float[][]>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Integer, float[][]> e) {
+        return size() > RemoteFieldCache.this.maxBlocks;
+      }
+    };
+
+    if (ref == null) {
+      cell = null;
+      remoteCell = null;
+    }
+    else {
+      // events from ref reach cell through remoteCell
+      cell = new CellImpl() {
+        public void doAction() throws VisADException, RemoteException {
+          changed(getChangedRanges(RemoteFieldCache.this.ref));
+        }
+      };
+      remoteCell = new RemoteCellImpl(cell);
+      remoteCell.addReference(ref);
+    }
+  }
+
+  /** return the cached RemoteField */
+  public synchronized RemoteField getField()
+         throws VisADException, RemoteException {
+    if (field == null) {
+      Data data = ref.getData();
+      if (!(data instanceof RemoteField)) {
+        throw new FieldException("RemoteFieldCache: reference must be " +
+                                 "to a remote Field");
+      }
+      field = (RemoteField) data;
+    }
+    return field;
+  }
+
+  /** return the reference this follows, or null */
+  public RemoteDataReference getReference() {
+    return ref;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getMaxBlocks() {
+    return maxBlocks;
+  }
+
+  /** return the number of samples of the RemoteField */
+  public synchronized int getLength()
+         throws VisADException, RemoteException {
+    if (length < 0) {
+      length = getField().getLength();
+      remoteCalls++;
+    }
+    return length;
+  }
+
+  /** return the range value at sample index, as getSample() on the
+      RemoteField would */
+  public synchronized Data getSample(int index)
+         throws VisADException, RemoteException {
+    int len = getLength();
+    if (index < 0 || index >= len) {
+      remoteCalls++;
+      return field.getSample(index);
+    }
+    Integer key = new Integer(index - index % blockSize);
+    Data[] block = sampleBlocks.get(key);
+    if (block != null) {
+      hits++;
+    }
+    else {
+      misses++;
+      sampleAhead = nextAhead(index, lastSample, sampleAhead);
+      int start = key.intValue();
+      int count = Math.min(sampleAhead * blockSize, len - start);
+      Data[] samples = field.getSamples(start, count);
+      remoteCalls++;
+      for (int s=0; s<count; s+=blockSize) {
+        Data[] b = new Data[Math.min(blockSize, count - s)];
+        System.arraycopy(samples, s, b, 0, b.length);
+        sampleBlocks.put(new Integer(start + s), b);
+      }
+      block = sampleBlocks.get(key);
+    }
+    lastSample = index;
+    return block[index - key.intValue()];
+  }
+
+  /** return the range values for 'Flat' components at sample index,
+      as a column of getFloats() on the RemoteField; NaN outside it */
+  public synchronized float[] getFloats(int index)
+         throws VisADException, RemoteException {
+    int len = getLength();
+    if (index < 0 || index >= len) {
+      remoteCalls++;
+      float[][] values = field.getFloats(new int[] {index});
+      return (values == null) ? null : column(values, 0);
+    }
+    Integer key = new Integer(index - index % blockSize);
+    float[][] block = floatBlocks.get(key);
+    if (block != null) {
+      hits++;
+    }
+    else {
+      misses++;
+      floatAhead = nextAhead(index, lastFloat, floatAhead);
+      int start = key.intValue();
+      int count = Math.min(floatAhead * blockSize, len - start);
+      int[] indices = new int[count];
+      for (int i=0; i<count; i++) indices[i] = start + i;
+      float[][] values = field.getFloats(indices);
+      remoteCalls++;
+      if (values == null) return null;
+      for (int s=0; s<count; s+=blockSize) {
+        float[][] b = new float[values.length][Math.min(blockSize, count - s)];
+        for (int k=0; k<values.length; k++) {
+          System.arraycopy(values[k], s, b[k], 0, b[k].length);
+        }
+        floatBlocks.put(new Integer(start + s), b);
+      }
+      block = floatBlocks.get(key);
+    }
+    lastFloat = index;
+    return column(block, index - key.intValue());
+  }
+
+  /** return the read ahead for a miss at index after one at last */
+  private static int nextAhead(int index, int last, int ahead) {
+    if (index == last + 1) {
+      // sequential, so fetch further ahead
+      return Math.min(2 * ahead, MAX_READ_AHEAD);
+    }
+    return 1;
+  }
+
+  private static float[] column(float[][] values, int i) {
+    float[] column = new float[values.length];
+    for (int k=0; k<values.length; k++) column[k] = values[k][i];
+    return column;
+  }
+
+  /** drop the cached samples in ranges ({start0, end0, start1, end1,
+      ...}, ends exclusive), or drop everything and fetch the Field
+      again if ranges is null */
+  private synchronized void changed(int[] ranges) {
+    if (ranges == null) {
+      invalidate();
+      if (ref != null) field = null;
+    }
+    else if (ranges.length > 0) {
+      drop(sampleBlocks, ranges);
+      drop(floatBlocks, ranges);
+      rangeInvalidations++;
+    }
+  }
+
+  private void drop(Map<Integer, ?> blocks, int[] ranges) {
+    Iterator<Integer> keys = blocks.keySet().iterator();
+    while (keys.hasNext()) {
+      int start = keys.next().intValue();
+      if (DataChangedEvent.intersects(ranges, start, start + blockSize)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /** drop all cached samples */
+  public synchronized void invalidate() {
+    sampleBlocks.clear();
+    floatBlocks.clear();
+    length = -1;
+    lastSample = -2;
+    lastFloat = -2;
+    sampleAhead = 1;
+    floatAhead = 1;
+    invalidations++;
+  }
+
+  /** stop listening for changes */
+  public void stop() throws VisADException, RemoteException {
+    if (remoteCell != null) {
+      remoteCell.removeReference(ref);
+      cell.stop();
+    }
+  }
+
+  /** return the number of getSample() and getFloats() calls
+      answered from the cache */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** return the number of getSample() and getFloats() calls that
+      fetched blocks */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** return the number of remote calls made */
+  public synchronized long getRemoteCalls() {
+    return remoteCalls;
+  }
+
+  /** return the number of times the whole cache was dropped */
+  public synchronized long getInvalidations() {
+    return invalidations;
+  }
+
+  /** return the number of changes that dropped only the blocks
+      overlapping their DataChangedEvent ranges */
+  public synchronized long getRangeInvalidations() {
+    return rangeInvalidations;
+  }
+
+}
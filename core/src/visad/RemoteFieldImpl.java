@@ -111,6 +111,15 @@ public class RemoteFieldImpl extends RemoteFunctionImpl
     return ((FieldImpl) AdaptedData).getSample(index);
   }
 
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    if (AdaptedData == null) {
+      throw new RemoteVisADException("RemoteFieldImpl.getSamples: " +
+                                     "AdaptedData is null");
+    }
+    return ((FieldImpl) AdaptedData).getSamples(start, count);
+  }
+
   public void setSample(RealTuple domain, Data range)
          throws VisADException, RemoteException {
     if (AdaptedData == null) {
@@ -205,6 +214,15 @@ public class RemoteFieldImpl extends RemoteFunctionImpl
     return ((FieldImpl) AdaptedData).getFloats(copy);
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    if (AdaptedData == null) {
+      throw new RemoteVisADException("RemoteFieldImpl.getFloats: " +
+                                     "AdaptedData is null");
+    }
+    return ((FieldImpl) AdaptedData).getFloats(indices);
+  }
+
   public double[][] getValues()
          throws VisADException, RemoteException {
     if (AdaptedData == null) {
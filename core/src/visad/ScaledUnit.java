@@ -423,21 +423,7 @@ public final class ScaledUnit extends Unit implements Serializable {
     @Override
     public double[] toThis(final double[] values, final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (double[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, underUnit, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] /= amount;
-                }
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -459,21 +445,7 @@ public final class ScaledUnit extends Unit implements Serializable {
     @Override
     public float[] toThis(final float[] values, final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues;
-        if (equals(that) || that instanceof PromiscuousUnit) {
-            newValues = (copy)
-                    ? (float[]) values.clone()
-                    : values;
-        }
-        else {
-            newValues = that.toThat(values, underUnit, copy);
-            for (int i = 0; i < newValues.length; ++i) {
-                if (newValues[i] == newValues[i]) {
-                    newValues[i] /= amount;
-                }
-            }
-        }
-        return newValues;
+        return getConverterFrom(that).convert(values, copy);
     }
 
     /**
@@ -533,16 +505,7 @@ public final class ScaledUnit extends Unit implements Serializable {
     @Override
     public double[] toThat(final double values[], final Unit that,
             final boolean copy) throws UnitException {
-        double[] newValues = (copy)
-                ? (double[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] *= amount;
-            }
-            newValues = that.toThis(newValues, underUnit);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
@@ -564,16 +527,7 @@ public final class ScaledUnit extends Unit implements Serializable {
     @Override
     public float[] toThat(final float values[], final Unit that,
             final boolean copy) throws UnitException {
-        float[] newValues = (copy)
-                ? (float[]) values.clone()
-                : values;
-        if (!(equals(that) || that instanceof PromiscuousUnit)) {
-            for (int i = 0; i < newValues.length; ++i) {
-                newValues[i] *= amount;
-            }
-            newValues = that.toThis(newValues, underUnit);
-        }
-        return newValues;
+        return that.getConverterFrom(this).convert(values, copy);
     }
 
     /**
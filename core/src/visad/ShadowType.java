@@ -3773,6 +3773,15 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
     domain_reference = Domain.getReference();
     boolean singleValueAsTexture = Boolean.parseBoolean(System.getProperty(PROP_CONTOURFILL_SINGLE_VALUE_AS_TEXTURE, "false"));
 
+    // indexed iso-surfaces store shared vertices once, but only the
+    // strip form knows how to cut triangles along projection seams
+    boolean isoIndexed = indexed;
+    if (!isoIndexed && shadow_api.wantIndexedIsoSurface()) {
+      CoordinateSystem display_cs = renderer.getDisplayCoordinateSystem();
+      isoIndexed = !getAdjustProjectionSeam() || display_cs == null
+          || display_cs instanceof SphericalCoordinateSystem;
+    }
+
     for (int i = 0; i < valueArrayLength; i++) {
       int displayScalarIndex = valueToScalar[i];
       DisplayRealType real = display.getDisplayScalar(displayScalarIndex);
@@ -3821,11 +3830,11 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
               if (spatial_set != null) {
                 if (isLinearContour3D) {
                   array = ((Linear3DSet) spatial_set).makeLinearIsoSurface(
-                      isoLvl, display_values[i], color_values, indexed,
+                      isoLvl, display_values[i], color_values, isoIndexed,
                       spatial_maps, permute);
                 } else {
                   array = spatial_set.makeIsoSurface(isoLvl, display_values[i],
-                      color_values, indexed);
+                      color_values, isoIndexed);
                 }
 
                 // WLH 4 May 2001
@@ -3845,7 +3854,7 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
                                               // of transform (coord_sys)
                 array = ((Gridded3DSet) domain_set)
                     .makeIsoSurfaceMissingSpatial(isoLvl, display_values[i],
-                        color_values, indexed, Domain, domain_reference,
+                        color_values, isoIndexed, Domain, domain_reference,
                         domain_units, dataCoordinateSystem, coord_sys,
                         DomainReferenceComponents, spatialTuple,
                         spatial_offset_values);
@@ -4164,6 +4173,15 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
     return false;
   }
 
+  /**
+   * @return true if iso-surfaces should be built as indexed geometry
+   *         (each vertex shared by neighboring triangles stored once),
+   *         even when wantIndexed() is false
+   */
+  public boolean wantIndexedIsoSurface() {
+    return wantIndexed();
+  }
+
   public TextControl getParentTextControl() {
     return null;
   }
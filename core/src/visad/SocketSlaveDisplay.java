@@ -38,7 +38,19 @@ import visad.browser.*;
     for stand-alone remote displays (i.e., not dependent on the VisAD packages)
     that communicate with the server using sockets. For an example, see
     examples/Test68.java together with the stand-alone VisAD applet
-    visad.browser.VisADApplet, usable from within a web browser. */
+    visad.browser.VisADApplet, usable from within a web browser.<P>
+
+    Display images are encoded on a separate thread, once per frame, and
+    the result is shared by all clients. Clients that ask for it (with
+    VisADApplet.TILE_FRAMES) are sent only the tiles that changed since
+    the frame they last received, deflated (see visad.browser.TileCodec);
+    other clients are sent the whole image, as before.<P>
+
+    Each client is written to by its own thread, from a bounded queue of
+    images and messages, so a slow client never holds up the others or
+    the encoding of new frames. Requests to send a client the latest
+    image are merged while they wait, and a queued control state is
+    replaced by a newer state of the same control. */
 public class SocketSlaveDisplay implements RemoteSlaveDisplay {
 
   /** debugging flag */
@@ -52,6 +64,24 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
     GraphicsModeControl.class, ContourControl.class
   };
 
+  /** client frame state of clients that are sent whole images */
+  private static final int WHOLE_IMAGES = -2;
+
+  /** client frame state of tile clients that have no frame */
+  private static final int NO_FRAME = -1;
+
+  /** most messages waiting to be sent to one client */
+  private static final int MAX_QUEUED_MESSAGES = 64;
+
+  /** queue entry: send the client the latest image */
+  private static final Object IMAGE = new Object();
+
+  /** queue entry: send the client the latest image as a key frame */
+  private static final Object KEY_IMAGE = new Object();
+
+  /** queue entry: switch the client to TileCodec frames */
+  private static final Object TILES = new Object();
+
   /** the port at which the server communicates with clients */
   private int port;
 
@@ -85,6 +115,30 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
   /** vector of client socket ids */
   private Vector clientIds = new Vector();
 
+  /** vector of client writers */
+  private Vector clientWriters = new Vector();
+
+  /** thread encoding display images */
+  private Thread encodeThread = null;
+
+  /** latest RLE encoded image from the display, not yet encoded */
+  private int[] pending = null;
+
+  /** width and height of pending */
+  private int pendingW, pendingH;
+
+  /** pixels of the current frame */
+  private int[] framePixels = null;
+
+  /** number of the current frame */
+  private int frameNumber = -1;
+
+  /** current frame encoded as changed tiles of the previous frame */
+  private byte[] frameDelta = null;
+
+  /** current frame encoded as a key frame, built when first needed */
+  private byte[] frameKey = null;
+
   /** thread monitoring incoming clients */
   private Thread connectThread = null;
 
@@ -124,6 +178,10 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
               // assign client an ID number
               out.writeInt(++clientID);
               clientIds.add(new Integer(clientID));
+              ClientWriter writer = new ClientWriter(socket, in, out);
+              clientWriters.add(writer);
+              new Thread(writer, "SocketSlaveDisplay-Writer-" +
+                display.getName() + "-" + clientID).start();
             }
           }
         }
@@ -139,17 +197,19 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
     public void run() {
       while (alive) {
         boolean silence = true;
-        Object[] sockets, inputs, outputs, cids;
+        Object[] sockets, inputs, outputs, cids, writers;
         synchronized (clientSockets) {
           sockets = clientSockets.toArray();
           inputs = clientInputs.toArray();
           outputs = clientOutputs.toArray();
           cids = clientIds.toArray();
+          writers = clientWriters.toArray();
         }
         for (int i=0; i<sockets.length; i++) {
           Socket socket = (Socket) sockets[i];
           DataInputStream in = (DataInputStream) inputs[i];
           DataOutputStream out = (DataOutputStream) outputs[i];
+          ClientWriter writer = (ClientWriter) writers[i];
           int cid = ((Integer) cids[i]).intValue();
 
           // check for client requests in the form of MouseEvent data
@@ -164,9 +224,13 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
               }
               int eventType = in.readInt();
 
-              if (eventType == VisADApplet.REFRESH) {
-                // send latest display image to the client
-                updateClient(socket, in, out);
+              if (eventType == VisADApplet.TILE_FRAMES) {
+                // client understands TileCodec frames
+                writer.queue(TILES);
+              }
+              else if (eventType == VisADApplet.REFRESH) {
+                // send latest display image to the client, as a key frame
+                writer.queue(KEY_IMAGE);
 
                 // send latest supported control states to the client
                 for (int j=0; j<supportedControls.length; j++) {
@@ -178,7 +242,7 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
                     Control control = (Control) v.elementAt(k);
                     String message = c.getName() + "\n" +
                       k + "\n" + control.getSaveString();
-                    updateClient(message, socket, in, out);
+                    writer.queue(message);
                   }
                 }
 
@@ -192,7 +256,7 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
                   String message = "visad.ScalarMap\n" +
                     scalar.getName() + " " + displayScalar.getName() + " " +
                     range[0] + " " + range[1];
-                  updateClient(message, socket, in, out);
+                  writer.queue(message);
                 }
               }
               else if (eventType == VisADApplet.MOUSE_EVENT) {
@@ -245,11 +309,7 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
                           // skip event source client
                           int kid = ((Integer) cids[k]).intValue();
                           if (kid != cid) {
-                            Socket ksocket = (Socket) sockets[k];
-                            DataInputStream kin = (DataInputStream) inputs[k];
-                            DataOutputStream kout =
-                              (DataOutputStream) outputs[k];
-                            updateClient(message, ksocket, kin, kout);
+                            ((ClientWriter) writers[k]).queue(message);
                           }
                         }
                       }
@@ -316,6 +376,11 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
       "SocketSlaveDisplay-Comm-" + display.getName());
     commThread.start();
 
+    // create a thread that encodes and sends display images
+    encodeThread = new Thread(encode,
+      "SocketSlaveDisplay-Encode-" + display.getName());
+    encodeThread.start();
+
     // register socket server as a slaved display
     display.addSlave(this);
   }
@@ -327,27 +392,78 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
 
   /** send the latest display image to the given socket */
   private void updateClient(Socket socket, DataInputStream in,
-    DataOutputStream out)
+    DataOutputStream out, int[] frame)
   {
-    if (pix != null) {
-      try {
-        // send image width, height and array length to the output stream
-        out.writeInt(w);
-        out.writeInt(h);
-        out.writeInt(pix.length);
-
-        // send pixel data to the output stream
-        out.write(pix);
-      }
-      catch (SocketException exc) {
-        // there is a problem with this socket, so kill it
-        killSocket(socket, in, out);
-      }
-      catch (IOException exc) {
-        if (DEBUG) exc.printStackTrace();
+    try {
+      synchronized (out) {
+        if (frame[0] == WHOLE_IMAGES) {
+          byte[] p;
+          int width, height;
+          synchronized (this) {
+            p = pix;
+            width = w;
+            height = h;
+          }
+          if (p == null) {
+            if (DEBUG) System.err.println("Null pixels!");
+            return;
+          }
+          // send image width, height and array length to the output stream
+          out.writeInt(width);
+          out.writeInt(height);
+          out.writeInt(p.length);
+
+          // send pixel data to the output stream
+          out.write(p);
+        }
+        else {
+          byte[] bytes = null;
+          int number;
+          synchronized (this) {
+            number = frameNumber;
+            if (number < 0 || frame[0] == number) return;
+            if (frame[0] == number - 1 && frameDelta != null) {
+              bytes = frameDelta;
+            }
+          }
+          // a client that missed frames needs a key frame
+          if (bytes == null) bytes = getKeyFrame(number);
+          if (bytes == null) return; // superseded by a newer frame
+          out.write(bytes);
+          frame[0] = number;
+        }
       }
     }
-    else if (DEBUG) System.err.println("Null pixels!");
+    catch (SocketException exc) {
+      // there is a problem with this socket, so kill it
+      killSocket(socket, in, out);
+    }
+    catch (IOException exc) {
+      if (DEBUG) exc.printStackTrace();
+    }
+  }
+
+  /**
+   * return the key frame for frame number, or null if it is no longer
+   * the current frame
+   */
+  private byte[] getKeyFrame(int number) throws IOException {
+    int[] pixels;
+    int width, height;
+    synchronized (this) {
+      if (number != frameNumber) return null;
+      if (frameKey != null) return frameKey;
+      pixels = framePixels;
+      width = w;
+      height = h;
+    }
+    byte[] key = TileCodec.encode(null, pixels, width, height,
+      TileCodec.DEFAULT_TILE_SIZE);
+    synchronized (this) {
+      if (number != frameNumber) return null;
+      frameKey = key;
+    }
+    return key;
   }
 
   /** send a message to the given client */
@@ -355,10 +471,12 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
     DataInputStream in, DataOutputStream out)
   {
     try {
-      // send message to the output stream
-      out.writeInt(-1); // special code of width -1 indicates message
-      out.writeInt(message.length());
-      out.writeChars(message);
+      synchronized (out) {
+        // send message to the output stream
+        out.writeInt(-1); // special code of width -1 indicates message
+        out.writeInt(message.length());
+        out.writeChars(message);
+      }
     }
     catch (SocketException exc) {
       // there is a problem with this socket, so kill it
@@ -369,40 +487,201 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
     }
   }
 
+  /**
+   * writes queued images and messages to one client on its own thread;
+   * it alone writes to the client once the client has its ID number
+   */
+  private class ClientWriter implements Runnable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * frame state: the number of the last frame sent to a tile client,
+     * NO_FRAME or WHOLE_IMAGES
+     */
+    private final int[] frame = {WHOLE_IMAGES};
+
+    /** images, messages and TILES waiting to be sent, oldest first */
+    private final LinkedList queue = new LinkedList();
+
+    /** number of messages in queue */
+    private int messages = 0;
+
+    private boolean closed = false;
+
+    ClientWriter(Socket socket, DataInputStream in, DataOutputStream out) {
+      this.socket = socket;
+      this.in = in;
+      this.out = out;
+    }
+
+    /**
+     * add entry (IMAGE, KEY_IMAGE, TILES or a message) to the queue;
+     * a queued image request covers any later ones, a control state
+     * replaces a queued state of the same control, and the oldest
+     * message is dropped when MAX_QUEUED_MESSAGES are waiting
+     */
+    synchronized void queue(Object entry) {
+      if (entry == IMAGE) {
+        if (queue.contains(IMAGE) || queue.contains(KEY_IMAGE)) return;
+      }
+      else if (entry instanceof String) {
+        String key = controlKey((String) entry);
+        for (Iterator i=queue.iterator(); i.hasNext(); ) {
+          Object e = i.next();
+          if (e instanceof String &&
+              (e.equals(entry) ||
+               (key != null && key.equals(controlKey((String) e))))) {
+            i.remove();
+            messages--;
+          }
+        }
+        if (messages >= MAX_QUEUED_MESSAGES) {
+          for (Iterator i=queue.iterator(); i.hasNext(); ) {
+            if (i.next() instanceof String) {
+              i.remove();
+              messages--;
+              if (DEBUG) System.err.println("Warning: dropped a message " +
+                "to a slow client");
+              break;
+            }
+          }
+        }
+        messages++;
+      }
+      queue.addLast(entry);
+      notifyAll();
+    }
+
+    /** stop writing to the client */
+    synchronized void close() {
+      closed = true;
+      queue.clear();
+      notifyAll();
+    }
+
+    public void run() {
+      while (true) {
+        Object entry;
+        synchronized (this) {
+          while (!closed && queue.isEmpty()) {
+            try {
+              wait();
+            }
+            catch (InterruptedException exc) { }
+          }
+          if (closed) break;
+          entry = queue.removeFirst();
+          if (entry instanceof String) messages--;
+        }
+        if (entry == TILES) {
+          frame[0] = NO_FRAME;
+        }
+        else if (entry == KEY_IMAGE) {
+          if (frame[0] != WHOLE_IMAGES) frame[0] = NO_FRAME;
+          updateClient(socket, in, out, frame);
+        }
+        else if (entry == IMAGE) {
+          updateClient(socket, in, out, frame);
+        }
+        else {
+          updateClient((String) entry, socket, in, out);
+        }
+      }
+    }
+  }
+
+  /**
+   * return the class and index lines of a control state message, or
+   * null if message is not one
+   */
+  private static String controlKey(String message) {
+    int first = message.indexOf('\n');
+    int second = (first < 0) ? -1 : message.indexOf('\n', first + 1);
+    return (second < 0) ? null : message.substring(0, second);
+  }
+
+  /** contains the code for encoding and sending display images */
+  private Runnable encode = new Runnable() {
+    public void run() {
+      while (alive) {
+        int[] rle;
+        int width, height;
+        synchronized (socketSlave) {
+          while (alive && pending == null) {
+            try {
+              socketSlave.wait();
+            }
+            catch (InterruptedException exc) { }
+          }
+          if (!alive) break;
+          rle = pending;
+          width = pendingW;
+          height = pendingH;
+          pending = null;
+        }
+
+        // encode the frame once for all clients
+        byte[] bytes = Convert.intToBytes(rle);
+        int[] pixels = Convert.decodeRLE(rle);
+        byte[] delta = null;
+        int[] previous;
+        synchronized (socketSlave) {
+          previous = (width == w && height == h) ? framePixels : null;
+        }
+        if (previous != null) {
+          try {
+            delta = TileCodec.encode(previous, pixels, width, height,
+              TileCodec.DEFAULT_TILE_SIZE);
+          }
+          catch (IOException exc) {
+            if (DEBUG) exc.printStackTrace();
+          }
+        }
+        synchronized (socketSlave) {
+          pix = bytes;
+          w = width;
+          h = height;
+          framePixels = pixels;
+          frameNumber++;
+          frameDelta = delta;
+          frameKey = null;
+        }
+
+        // have the writers of all clients send the new image
+        Object[] writers;
+        synchronized (clientSockets) {
+          writers = clientWriters.toArray();
+        }
+        for (int i=0; i<writers.length; i++) {
+          ((ClientWriter) writers[i]).queue(IMAGE);
+        }
+      }
+    }
+  };
+
   /** display automatically calls sendImage when its content changes */
   public synchronized void sendImage(int[] pixels, int width, int height,
     int type) throws RemoteException
   {
-    // convert pixels to byte array
-    pix = Convert.intToBytes(pixels);
-    w = width;
-    h = height;
-
-    // update all clients with the new image
-    int numSockets;
-    Object[] sockets, inputs, outputs;
-    synchronized (clientSockets) {
-      sockets = clientSockets.toArray();
-      inputs = clientInputs.toArray();
-      outputs = clientOutputs.toArray();
-    }
-    for (int i=0; i<sockets.length; i++) {
-      updateClient((Socket) sockets[i], (DataInputStream) inputs[i],
-        (DataOutputStream) outputs[i]);
-    }
+    // hand the image to the encode thread; an image it has not yet
+    // started on is simply replaced
+    pending = pixels;
+    pendingW = width;
+    pendingH = height;
+    notifyAll();
   }
 
   /** send the given message to this slave display */
   public synchronized void sendMessage(String message) throws RemoteException {
-    Object[] sockets, inputs, outputs;
+    Object[] writers;
     synchronized (clientSockets) {
-      sockets = clientSockets.toArray();
-      inputs = clientInputs.toArray();
-      outputs = clientOutputs.toArray();
+      writers = clientWriters.toArray();
     }
-    for (int i=0; i<sockets.length; i++) {
-      updateClient(message, (Socket) sockets[i],
-        (DataInputStream) inputs[i], (DataOutputStream) outputs[i]);
+    for (int i=0; i<writers.length; i++) {
+      ((ClientWriter) writers[i]).queue(message);
     }
   }
 
@@ -434,20 +713,28 @@ public class SocketSlaveDisplay implements RemoteSlaveDisplay {
       if (DEBUG) exc.printStackTrace();
     }
 
-    // remove socket from socket vectors
+    // remove socket from socket vectors, and stop its writer
+    ClientWriter writer;
     synchronized (clientSockets) {
       int index = clientSockets.indexOf(socket);
+      if (index < 0) return; // already removed
+      writer = (ClientWriter) clientWriters.elementAt(index);
       clientSockets.removeElementAt(index);
       clientInputs.removeElementAt(index);
       clientOutputs.removeElementAt(index);
       clientIds.removeElementAt(index);
+      clientWriters.removeElementAt(index);
     }
+    writer.close();
   }
 
   /** destroy this server and kills all associated threads */
   public void killServer() {
     // set flag to cause server's threads to stop running
     alive = false;
+    synchronized (this) {
+      notifyAll();
+    }
 
     // shut down all client sockets
     while (true) {
@@ -173,6 +173,13 @@ public class SphericalCoordinateSystem extends CoordinateSystem {
   }
 
 
+  /** return true: SphericalCoordinateSystem has no fields of its
+      own, so the instance shared as Display.DisplaySphericalCoordSys
+      may be used by several renderers at once */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof SphericalCoordinateSystem);
   }
@@ -103,11 +103,13 @@ else {
 
   /** either deliver the event to the corresponding Action object
    *  or, if the Action isn't ready yet, queue the event for
-   *  later delivery
+   *  later delivery; at most one event is queued, so a newer event
+   *  replaces any queued one (latest value wins)
+   *  @return true if e was coalesced with an already queued event
    */
 /* WLH 27 July 99 synchronized helps but does not fix */
   // public void queueThingChangedEvent(ThingChangedEvent e)
-  public synchronized void queueThingChangedEvent(ThingChangedEvent e)
+  public synchronized boolean queueThingChangedEvent(ThingChangedEvent e)
         throws RemoteException, VisADException
   {
     if (Ball) {
@@ -129,9 +131,13 @@ else {
 */
     }
     else {
-      // Action hasn't acknowledged previous event, queue this one
-      event = e;
+      // Action hasn't acknowledged previous event, queue this one,
+      // keeping the changed ranges of any event it replaces
+      boolean coalesced = (event != null);
+      event = coalesced ? DataChangedEvent.merge(event, e) : e;
+      return coalesced;
     }
+    return false;
   }
 
 }
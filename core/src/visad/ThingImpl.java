@@ -169,6 +169,24 @@ public class ThingImpl
       'public' because it is defined in the Thing interface */
   public void notifyReferences()
          throws VisADException, RemoteException {
+    // not notifyReferences(null), which subclasses override to notify
+    // parents that their notifyReferences() already notifies
+    incTicks(null);
+  }
+
+  /** notify local ThingReferenceImpl-s that only the samples in
+      ranges ({start0, end0, start1, end1, ...}, ends exclusive)
+      have changed, or that all may have changed if ranges is null;
+      they send DataChangedEvent-s to their Action-s */
+  protected void notifyReferences(int[] ranges)
+         throws VisADException, RemoteException {
+    incTicks(ranges);
+  }
+
+  /** incTick local ThingReferenceImpl-s with ranges, and
+      RemoteThingImpl-s for RemoteThingReferenceImpl-s */
+  private void incTicks(int[] ranges)
+         throws VisADException, RemoteException {
     if (references != null) {
       // lock references for iterating through it
       synchronized (references) {
@@ -177,7 +195,7 @@ public class ThingImpl
           Object r = refs.nextElement();
           if (r instanceof ThingReferenceImpl) {
             // notify local ThingReferenceImpl
-            ((ThingReferenceImpl) r).incTick();
+            ((ThingReferenceImpl) r).incTick(ranges);
           }
           else { // r instanceof RemotePair
             // RemoteThingReference, so only incTick in
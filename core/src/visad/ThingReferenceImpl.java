@@ -55,6 +55,13 @@ public class ThingReferenceImpl extends Object implements ThingReference {
       ThingReferenceImpl is not Serializable, but mark as transient anyway */
   transient Vector ListenerVector = new Vector();
 
+  /** counts of ThingChangedEvents sent to listeners, of those
+      coalesced with an event still queued for the same listener,
+      and of those dropped because the listener had died */
+  private long sentCount = 0;
+  private long coalescedCount = 0;
+  private long droppedCount = 0;
+
   /**
    * Constructs from a name for the instance.
    *
@@ -118,6 +125,15 @@ public class ThingReferenceImpl extends Object implements ThingReference {
       share access to thing and ref */
   public synchronized long incTick()
          throws VisADException, RemoteException {
+    return incTick(null);
+  }
+
+  /** increment Tick for a change to only the samples in ranges
+      ({start0, end0, start1, end1, ...}, ends exclusive) of the
+      referenced Data, sending DataChangedEvent-s; null ranges
+      mean the whole Thing may have changed */
+  synchronized long incTick(int[] ranges)
+         throws VisADException, RemoteException {
 // if (getName() != null) DisplayImpl.printStack("incTick " + getName());
     Tick += 1;
     if (Tick == Long.MAX_VALUE) Tick = Long.MIN_VALUE + 1;
@@ -138,15 +154,18 @@ public class ThingReferenceImpl extends Object implements ThingReference {
         while (i < ListenerVector.size()) {
           ThingChangedLink listener =
             (ThingChangedLink) ListenerVector.elementAt(i);
-          ThingChangedEvent e =
-            new ThingChangedEvent(listener.getId(), Tick);
+          ThingChangedEvent e = (ranges == null) ?
+            new ThingChangedEvent(listener.getId(), Tick) :
+            new DataChangedEvent(listener.getId(), Tick, ranges);
           try {
-            listener.queueThingChangedEvent(e);
+            if (listener.queueThingChangedEvent(e)) coalescedCount++;
+            sentCount++;
             i++;
           }
           catch (ConnectException exc) {
             // CTR 26 May 2000 remote listener has died; remove it from list
             ListenerVector.remove(i);
+            droppedCount++;
           }
         }
 
@@ -155,6 +174,23 @@ public class ThingReferenceImpl extends Object implements ThingReference {
     return Tick;
   }
 
+  /** return the number of ThingChangedEvents sent to listeners */
+  public synchronized long getSentEventCount() {
+    return sentCount;
+  }
+
+  /** return the number of ThingChangedEvents that replaced an event
+      not yet acknowledged by its Action (and so were coalesced with it) */
+  public synchronized long getCoalescedEventCount() {
+    return coalescedCount;
+  }
+
+  /** return the number of ThingChangedEvents dropped because their
+      remote listener was disconnected */
+  public synchronized long getDroppedEventCount() {
+    return droppedCount;
+  }
+
   public ThingChangedEvent peekThingChanged(Action a)
          throws VisADException {
     if (!(a instanceof ActionImpl)) {
@@ -0,0 +1,470 @@
+//
+// UnaryKernel.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.util.ThreadManager;
+
+/**
+   UnaryKernel computes the range values of FlatField.unary: for each
+   component, the values are read from the range storage, converted to
+   rational units and operated on, a cache-sized chunk at a time, so
+   the new range is made in a single pass without an unpacked copy of
+   the old one.  Chunks are divided among threads.  Components packed
+   as byte indices into their range Set (or short indices, if there are
+   at least as many samples as possible indices) are done by applying
+   the operation once to each possible index, then looking the results
+   up for each sample.<P>
+
+   The results are the same as those of unpacking the values,
+   converting them with Unit.toThis and applying the operation to each,
+   in float or double as the range requires.<P>
+*/
+final class UnaryKernel {
+
+  /** number of samples per chunk */
+  private static final int CHUNK = 1 << 13;
+
+  private final FlatField field;
+
+  private final int op;
+
+  /** conversion of each component to rational units, or null */
+  private final UnitConverter[] converters;
+
+  /** whether angles of each component are in degrees */
+  private final boolean[] degrees;
+
+  private final int length;
+
+  private final Set[] sets;
+
+  /** storage array of each component */
+  private final Object[] ranges;
+
+  /** results of each possible index of each table component, or null */
+  private final float[][] tablesF;
+  private final double[][] tablesD;
+
+  private float[][] valuesF;
+  private double[][] valuesD;
+
+  private UnaryKernel(FlatField field, int op, UnitConverter[] converters,
+                      boolean[] degrees, boolean isDouble)
+          throws VisADException {
+    this.field = field;
+    this.op = op;
+    this.converters = converters;
+    this.degrees = degrees;
+    length = field.getLength();
+    sets = field.getRangeSets();
+    int dim = sets.length;
+    ranges = new Object[dim];
+    tablesF = new float[dim][];
+    tablesD = new double[dim][];
+    if (isDouble) {
+      valuesD = new double[dim][];
+    }
+    else {
+      valuesF = new float[dim][];
+    }
+    for (int j=0; j<dim; j++) {
+      ranges[j] = field.getPackedRange(j);
+      if (ranges[j] == null) {
+        throw new FieldException("FlatField.unary: range is missing");
+      }
+      if (isDouble) {
+        valuesD[j] = new double[length];
+      }
+      else {
+        valuesF[j] = new float[length];
+      }
+      int first;
+      int count;
+      if (ranges[j] instanceof byte[]) {
+        first = Byte.MIN_VALUE;
+        count = 1 << 8;
+      }
+      else if (ranges[j] instanceof short[] && length >= (1 << 16)) {
+        first = Short.MIN_VALUE;
+        count = 1 << 16;
+      }
+      else {
+        continue;
+      }
+      int offset = field.getPackedOffset(j);
+      int[] indices = new int[count];
+      for (int k=0; k<count; k++) indices[k] = first + k - offset;
+      float[] table = sets[j].indexToValue(indices)[0];
+      if (isDouble) {
+        tablesD[j] = Set.floatToDouble(new float[][] {table})[0];
+        compute(j, tablesD[j], 0, count);
+      }
+      else {
+        tablesF[j] = table;
+        compute(j, table, 0, count);
+      }
+    }
+  }
+
+  /**
+   * return the float range values of field.unary(op, ...), given the
+   * conversions to rational units and whether angles are in degrees
+   */
+  static float[][] applyFloat(FlatField field, int op,
+                              UnitConverter[] converters, boolean[] degrees)
+         throws VisADException {
+    UnaryKernel kernel = new UnaryKernel(field, op, converters, degrees, false);
+    kernel.run();
+    return kernel.valuesF;
+  }
+
+  /**
+   * return the double range values of field.unary(op, ...), given the
+   * conversions to rational units and whether angles are in degrees
+   */
+  static double[][] applyDouble(FlatField field, int op,
+                                UnitConverter[] converters,
+                                boolean[] degrees)
+         throws VisADException {
+    UnaryKernel kernel = new UnaryKernel(field, op, converters, degrees, true);
+    kernel.run();
+    return kernel.valuesD;
+  }
+
+  /** compute values first through last - 1 of component j */
+  private void chunk(int j, int first, int last) throws VisADException {
+    Object range = ranges[j];
+    if (valuesF != null) {
+      float[] out = valuesF[j];
+      if (tablesF[j] != null) {
+        float[] table = tablesF[j];
+        if (range instanceof byte[]) {
+          byte[] in = (byte[]) range;
+          for (int i=first; i<last; i++) out[i] = table[in[i] - Byte.MIN_VALUE];
+        }
+        else {
+          short[] in = (short[]) range;
+          for (int i=first; i<last; i++) {
+            out[i] = table[in[i] - Short.MIN_VALUE];
+          }
+        }
+        return;
+      }
+      if (range instanceof float[]) {
+        System.arraycopy((float[]) range, first, out, first, last - first);
+      }
+      else if (range instanceof double[]) {
+        double[] in = (double[]) range;
+        for (int i=first; i<last; i++) out[i] = (float) in[i];
+      }
+      else {
+        float[] in = unpack(j, first, last);
+        System.arraycopy(in, 0, out, first, last - first);
+      }
+      compute(j, out, first, last);
+    }
+    else {
+      double[] out = valuesD[j];
+      if (tablesD[j] != null) {
+        double[] table = tablesD[j];
+        if (range instanceof byte[]) {
+          byte[] in = (byte[]) range;
+          for (int i=first; i<last; i++) out[i] = table[in[i] - Byte.MIN_VALUE];
+        }
+        else {
+          short[] in = (short[]) range;
+          for (int i=first; i<last; i++) {
+            out[i] = table[in[i] - Short.MIN_VALUE];
+          }
+        }
+        return;
+      }
+      if (range instanceof double[]) {
+        System.arraycopy((double[]) range, first, out, first, last - first);
+      }
+      else if (range instanceof float[]) {
+        float[] in = (float[]) range;
+        for (int i=first; i<last; i++) out[i] = (double) in[i];
+      }
+      else {
+        float[] in = unpack(j, first, last);
+        for (int i=first; i<last; i++) out[i] = (double) in[i - first];
+      }
+      compute(j, out, first, last);
+    }
+  }
+
+  /** return values first through last - 1 of packed component j */
+  private float[] unpack(int j, int first, int last) throws VisADException {
+    Object range = ranges[j];
+    int offset = field.getPackedOffset(j);
+    int[] indices = new int[last - first];
+    if (range instanceof int[]) {
+      int[] in = (int[]) range;
+      for (int i=first; i<last; i++) indices[i - first] = in[i] - offset;
+    }
+    else if (range instanceof short[]) {
+      short[] in = (short[]) range;
+      for (int i=first; i<last; i++) indices[i - first] = in[i] - offset;
+    }
+    else {
+      byte[] in = (byte[]) range;
+      for (int i=first; i<last; i++) indices[i - first] = in[i] - offset;
+    }
+    return sets[j].indexToValue(indices)[0];
+  }
+
+  /** convert and operate on values first through last - 1 of component j */
+  private void compute(int j, float[] v, int first, int last) {
+    if (converters[j] != null) converters[j].convert(v, first, last);
+    boolean deg = degrees[j];
+    int i;
+    switch (op) {
+    case Data.ABS:
+      for (i=first; i<last; i++) v[i] = Math.abs(v[i]);
+      break;
+    case Data.ACOS:
+      for (i=first; i<last; i++) v[i] = (float) (Math.acos(v[i]));
+      break;
+    case Data.ACOS_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = (float) (Data.RADIANS_TO_DEGREES * Math.acos(v[i]));
+      }
+      break;
+    case Data.ASIN:
+      for (i=first; i<last; i++) v[i] = (float) (Math.asin(v[i]));
+      break;
+    case Data.ASIN_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = (float) (Data.RADIANS_TO_DEGREES * Math.asin(v[i]));
+      }
+      break;
+    case Data.ATAN:
+      for (i=first; i<last; i++) v[i] = (float) (Math.atan(v[i]));
+      break;
+    case Data.ATAN_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = (float) (Data.RADIANS_TO_DEGREES * Math.atan(v[i]));
+      }
+      break;
+    case Data.CEIL:
+      for (i=first; i<last; i++) v[i] = (float) (Math.ceil(v[i]));
+      break;
+    case Data.COS:
+    case Data.COS_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = (float) (Math.cos(Data.DEGREES_TO_RADIANS * v[i]));
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = (float) (Math.cos(v[i]));
+      }
+      break;
+    case Data.EXP:
+      for (i=first; i<last; i++) v[i] = (float) (Math.exp(v[i]));
+      break;
+    case Data.FLOOR:
+      for (i=first; i<last; i++) v[i] = (float) (Math.floor(v[i]));
+      break;
+    case Data.LOG:
+      for (i=first; i<last; i++) v[i] = (float) (Math.log(v[i]));
+      break;
+    case Data.RINT:
+      for (i=first; i<last; i++) v[i] = (float) (Math.rint(v[i]));
+      break;
+    case Data.ROUND:
+      for (i=first; i<last; i++) v[i] = Math.round(v[i]);
+      break;
+    case Data.SIN:
+    case Data.SIN_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = (float) (Math.sin(Data.DEGREES_TO_RADIANS * v[i]));
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = (float) (Math.sin(v[i]));
+      }
+      break;
+    case Data.SQRT:
+      for (i=first; i<last; i++) v[i] = (float) (Math.sqrt(v[i]));
+      break;
+    case Data.TAN:
+    case Data.TAN_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = (float) (Math.tan(Data.DEGREES_TO_RADIANS * v[i]));
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = (float) (Math.tan(v[i]));
+      }
+      break;
+    case Data.NEGATE:
+      for (i=first; i<last; i++) v[i] = -v[i];
+      break;
+    }
+  }
+
+  /** convert and operate on values first through last - 1 of component j */
+  private void compute(int j, double[] v, int first, int last) {
+    if (converters[j] != null) converters[j].convert(v, first, last);
+    boolean deg = degrees[j];
+    int i;
+    switch (op) {
+    case Data.ABS:
+      for (i=first; i<last; i++) v[i] = Math.abs(v[i]);
+      break;
+    case Data.ACOS:
+      for (i=first; i<last; i++) v[i] = Math.acos(v[i]);
+      break;
+    case Data.ACOS_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = Data.RADIANS_TO_DEGREES * Math.acos(v[i]);
+      }
+      break;
+    case Data.ASIN:
+      for (i=first; i<last; i++) v[i] = Math.asin(v[i]);
+      break;
+    case Data.ASIN_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = Data.RADIANS_TO_DEGREES * Math.asin(v[i]);
+      }
+      break;
+    case Data.ATAN:
+      for (i=first; i<last; i++) v[i] = Math.atan(v[i]);
+      break;
+    case Data.ATAN_DEGREES:
+      for (i=first; i<last; i++) {
+        v[i] = Data.RADIANS_TO_DEGREES * Math.atan(v[i]);
+      }
+      break;
+    case Data.CEIL:
+      for (i=first; i<last; i++) v[i] = Math.ceil(v[i]);
+      break;
+    case Data.COS:
+    case Data.COS_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = Math.cos(Data.DEGREES_TO_RADIANS * v[i]);
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = Math.cos(v[i]);
+      }
+      break;
+    case Data.EXP:
+      for (i=first; i<last; i++) v[i] = Math.exp(v[i]);
+      break;
+    case Data.FLOOR:
+      for (i=first; i<last; i++) v[i] = Math.floor(v[i]);
+      break;
+    case Data.LOG:
+      for (i=first; i<last; i++) v[i] = Math.log(v[i]);
+      break;
+    case Data.RINT:
+      for (i=first; i<last; i++) v[i] = Math.rint(v[i]);
+      break;
+    case Data.ROUND:
+      for (i=first; i<last; i++) v[i] = Math.round(v[i]);
+      break;
+    case Data.SIN:
+    case Data.SIN_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = Math.sin(Data.DEGREES_TO_RADIANS * v[i]);
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = Math.sin(v[i]);
+      }
+      break;
+    case Data.SQRT:
+      for (i=first; i<last; i++) v[i] = Math.sqrt(v[i]);
+      break;
+    case Data.TAN:
+    case Data.TAN_DEGREES:
+      if (deg) {
+        for (i=first; i<last; i++) {
+          v[i] = Math.tan(Data.DEGREES_TO_RADIANS * v[i]);
+        }
+      }
+      else {
+        for (i=first; i<last; i++) v[i] = Math.tan(v[i]);
+      }
+      break;
+    case Data.NEGATE:
+      for (i=first; i<last; i++) v[i] = -v[i];
+      break;
+    }
+  }
+
+  /**
+   * compute every component, in chunks claimed in turn by up to
+   * FlatField.PROP_UNARY_THREADS workers
+   */
+  private void run() throws VisADException {
+    final int dim = ranges.length;
+    final int nchunks = (length + CHUNK - 1) / CHUNK;
+    final int ntasks = dim * nchunks;
+    int threads = Integer.getInteger(FlatField.PROP_UNARY_THREADS,
+                    Runtime.getRuntime().availableProcessors()).intValue();
+    threads = Math.min(threads, nchunks);
+    if (threads <= 1) {
+      for (int t=0; t<ntasks; t++) task(t, nchunks);
+      return;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    ThreadManager manager = new ThreadManager("FlatField.unary");
+    for (int i=0; i<threads; i++) {
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          int t;
+          while ((t = next.getAndIncrement()) < ntasks) task(t, nchunks);
+        }
+      });
+    }
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("FlatField.unary: " + e.getMessage());
+    }
+  }
+
+  /** compute chunk t % nchunks of component t / nchunks */
+  private void task(int t, int nchunks) throws VisADException {
+    int k = t % nchunks;
+    int first = k * CHUNK;
+    chunk(t / nchunks, first, Math.min(first + CHUNK, length));
+  }
+
+}
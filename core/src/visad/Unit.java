@@ -884,7 +884,23 @@ public abstract class Unit implements Serializable {
      */
     public double toThis(final double value, final Unit that)
             throws UnitException {
-        return toThis(new double[] { value }, that, false)[0];
+        return getConverterFrom(that).convert(value);
+    }
+
+    /**
+     * Returns the converter of values from another unit to this unit. The
+     * converter is cached, so obtaining it again for the same units is cheap,
+     * and it converts arrays in a single pass.
+     * 
+     * @param that
+     *            The other unit.
+     * @return The converter of values in the other unit to this unit.
+     * @exception UnitException
+     *                The units are not convertible.
+     */
+    public UnitConverter getConverterFrom(final Unit that)
+            throws UnitException {
+        return UnitConverter.getInstance(that, this);
     }
 
     /**
@@ -976,7 +992,7 @@ public abstract class Unit implements Serializable {
      */
     public double toThat(final double value, final Unit that)
             throws UnitException {
-        return toThat(new double[] { value }, that, false)[0];
+        return that.getConverterFrom(this).convert(value);
     }
 
     /**
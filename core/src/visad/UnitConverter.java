@@ -0,0 +1,700 @@
+//
+// UnitConverter.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts numeric values from one unit to another. A converter is compiled
+ * once from the definitions of the two units: the chain of scalings, offsets
+ * and logarithms leading from each unit to its underlying derived unit is
+ * reduced to a short sequence of stages, with consecutive scalings and
+ * offsets composed into a single affine stage, which is dropped if it is
+ * the identity to within rounding. Converting an array then takes one pass
+ * over the values, in place unless a copy is requested.
+ * <p>
+ * Converters are immutable and are cached by (from, to) unit pair; obtain
+ * one with {@link Unit#getConverterFrom(Unit)} or {@link #getInstance(Unit,
+ * Unit)}. Intermediate values are computed in double precision.
+ * </p>
+ */
+public final class UnitConverter {
+    /**
+     * The maximum number of cached converters.
+     */
+    private static final int                       MAX_CACHED = 1024;
+
+    /**
+     * The number of float values converted per block.
+     */
+    private static final int                       BLOCK      = 1024;
+
+    /**
+     * The largest difference from 1 of the scale of a composed affine stage,
+     * with no offset, that is taken to be the identity: the rounding error
+     * of composing the definitions of two equivalent units (e.g. "mi" and
+     * "1609.344 m").
+     */
+    private static final double                    ONE_SLOP   = 4 * Math.ulp(1.0);
+
+    /**
+     * The cached converters, least recently used first.
+     */
+    private static final Map<Pair, UnitConverter> cache      = new Cache();
+
+    /**
+     * Stage kinds: y = scale * x + offset; y = 1 / x; y = exp(x * factor);
+     * y = log(x) / factor.
+     */
+    private static final int                       AFFINE     = 0;
+    private static final int                       RECIPROCAL = 1;
+    private static final int                       EXP        = 2;
+    private static final int                       LOG        = 3;
+
+    private final Unit                             from;
+    private final Unit                             to;
+
+    /**
+     * The kinds of the stages, applied in order.
+     */
+    private final int[]                            kinds;
+
+    /**
+     * The scale (or factor) and offset of each stage.
+     */
+    private final double[]                         scales;
+    private final double[]                         offsets;
+
+    /**
+     * Returns the converter from one unit to another.
+     * 
+     * @param from
+     *            The unit of the values to be converted.
+     * @param to
+     *            The unit to which to convert the values.
+     * @return The converter.
+     * @throws UnitException
+     *             if the units are not convertible.
+     * @throws NullPointerException
+     *             if either unit is <code>null</code>.
+     */
+    public static UnitConverter getInstance(final Unit from, final Unit to)
+            throws UnitException {
+        final Pair key = new Pair(from, to);
+        synchronized (cache) {
+            final UnitConverter converter = cache.get(key);
+            if (converter != null) {
+                return converter;
+            }
+        }
+        final UnitConverter converter = new UnitConverter(from, to);
+        synchronized (cache) {
+            cache.put(key, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Compiles the conversion from one unit to another.
+     */
+    private UnitConverter(final Unit from, final Unit to) throws UnitException {
+        this.from = from;
+        this.to = to;
+        final Builder builder = new Builder();
+        if (!(from.equals(to) || from instanceof PromiscuousUnit || to instanceof PromiscuousUnit)) {
+            // from "from" down to its derived unit ...
+            final Unit fromBottom = builder.down(from);
+            // ... then up from the derived unit of "to"
+            final Builder up = new Builder();
+            final Unit toBottom = up.down(to);
+            if (fromBottom instanceof PromiscuousUnit
+                    || toBottom instanceof PromiscuousUnit) {
+                // values in a promiscuous unit convert unchanged
+            }
+            else if (fromBottom instanceof DerivedUnit
+                    && toBottom instanceof DerivedUnit) {
+                final DerivedUnit fromDerived = (DerivedUnit) fromBottom;
+                final DerivedUnit toDerived = (DerivedUnit) toBottom;
+                if (!toDerived.sameDimensionality(fromDerived)) {
+                    if (toDerived.reciprocalDimensionality(fromDerived)) {
+                        builder.add(RECIPROCAL, 0, 0);
+                    }
+                    else {
+                        throw new UnitException("Attempt to convert from unit \""
+                                + from + "\" to unit \"" + to + "\"");
+                    }
+                }
+            }
+            else if (!fromBottom.equals(toBottom)) {
+                throw new UnitException("Attempt to convert from unit \""
+                        + from + "\" to unit \"" + to + "\"");
+            }
+            up.invertInto(builder);
+        }
+        kinds = builder.kinds();
+        scales = builder.scales();
+        offsets = builder.offsets();
+    }
+
+    /**
+     * Returns the unit of the values to be converted.
+     * 
+     * @return The unit of the values to be converted.
+     */
+    public Unit getFromUnit() {
+        return from;
+    }
+
+    /**
+     * Returns the unit to which values are converted.
+     * 
+     * @return The unit to which values are converted.
+     */
+    public Unit getToUnit() {
+        return to;
+    }
+
+    /**
+     * Indicates if this converter leaves values unchanged.
+     * 
+     * @return <code>true</code> if and only if values are unchanged.
+     */
+    public boolean isIdentity() {
+        return kinds.length == 0;
+    }
+
+    /**
+     * Returns the number of passes over the values made by this converter.
+     * 
+     * @return The number of stages; 0 for the identity.
+     */
+    public int getStageCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Indicates if this converter computes <code>scale * value + offset
+     * </code>.
+     * 
+     * @return <code>true</code> if and only if the conversion is affine
+     *         (including the identity).
+     */
+    public boolean isAffine() {
+        return kinds.length == 0 || (kinds.length == 1 && kinds[0] == AFFINE);
+    }
+
+    /**
+     * Returns the scale of an affine conversion.
+     * 
+     * @return The scale of the conversion, or <code>NaN</code> if it isn't
+     *         affine.
+     */
+    public double getScale() {
+        return kinds.length == 0
+                ? 1
+                : isAffine()
+                        ? scales[0]
+                        : Double.NaN;
+    }
+
+    /**
+     * Returns the offset of an affine conversion.
+     * 
+     * @return The offset of the conversion, or <code>NaN</code> if it isn't
+     *         affine.
+     */
+    public double getOffset() {
+        return kinds.length == 0
+                ? 0
+                : isAffine()
+                        ? offsets[0]
+                        : Double.NaN;
+    }
+
+    /**
+     * Converts a value.
+     * 
+     * @param value
+     *            The value in the "from" unit.
+     * @return The value in the "to" unit.
+     */
+    public double convert(double value) {
+        for (int k = 0; k < kinds.length; ++k) {
+            value = apply(k, value);
+        }
+        return value;
+    }
+
+    /**
+     * Converts values.
+     * 
+     * @param values
+     *            The values in the "from" unit.
+     * @param copy
+     *            if <code>false</code>, convert the values in place and
+     *            return <code>values</code>; else return a new array.
+     * @return The values in the "to" unit.
+     */
+    public double[] convert(final double[] values, final boolean copy) {
+        final double[] newValues = copy
+                ? new double[values.length]
+                : values;
+        final int n = values.length;
+        if (kinds.length == 0) {
+            if (copy) {
+                System.arraycopy(values, 0, newValues, 0, n);
+            }
+        }
+        else if (kinds.length == 1 && kinds[0] == AFFINE) {
+            final double scale = scales[0];
+            final double offset = offsets[0];
+            if (offset == 0) {
+                for (int i = 0; i < n; ++i) {
+                    newValues[i] = values[i] * scale;
+                }
+            }
+            else {
+                for (int i = 0; i < n; ++i) {
+                    newValues[i] = values[i] * scale + offset;
+                }
+            }
+        }
+        else {
+            for (int k = 0; k < kinds.length; ++k) {
+                apply(k, k == 0
+                        ? values
+                        : newValues, newValues, 0, n);
+            }
+        }
+        return newValues;
+    }
+
+    /**
+     * Converts values.
+     * 
+     * @param values
+     *            The values in the "from" unit.
+     * @param copy
+     *            if <code>false</code>, convert the values in place and
+     *            return <code>values</code>; else return a new array.
+     * @return The values in the "to" unit.
+     */
+    public float[] convert(final float[] values, final boolean copy) {
+        final float[] newValues = copy
+                ? new float[values.length]
+                : values;
+        final int n = values.length;
+        if (kinds.length == 0) {
+            if (copy) {
+                System.arraycopy(values, 0, newValues, 0, n);
+            }
+        }
+        else if (kinds.length == 1 && kinds[0] == AFFINE) {
+            final double scale = scales[0];
+            final double offset = offsets[0];
+            if (offset == 0) {
+                for (int i = 0; i < n; ++i) {
+                    newValues[i] = (float) (values[i] * scale);
+                }
+            }
+            else {
+                for (int i = 0; i < n; ++i) {
+                    newValues[i] = (float) (values[i] * scale + offset);
+                }
+            }
+        }
+        else {
+            /*
+             * Stage by stage over blocks of a double buffer: keeps the
+             * intermediate values in double precision and the loops tight.
+             */
+            final double[] buf = new double[Math.min(n, BLOCK)];
+            for (int start = 0; start < n; start += BLOCK) {
+                final int m = Math.min(BLOCK, n - start);
+                for (int i = 0; i < m; ++i) {
+                    buf[i] = values[start + i];
+                }
+                for (int k = 0; k < kinds.length; ++k) {
+                    apply(k, buf, buf, 0, m);
+                }
+                for (int i = 0; i < m; ++i) {
+                    newValues[start + i] = (float) buf[i];
+                }
+            }
+        }
+        return newValues;
+    }
+
+    /**
+     * Converts values in place, from index <code>from</code> up to but
+     * not including <code>to</code>, with the same results as
+     * {@link #convert(double[], boolean)}.
+     * 
+     * @param values
+     *            The values in the "from" unit.
+     * @param from
+     *            The index of the first value to convert.
+     * @param to
+     *            One more than the index of the last value to convert.
+     */
+    public void convert(final double[] values, final int from, final int to) {
+        if (kinds.length == 1 && kinds[0] == AFFINE && offsets[0] == 0) {
+            final double scale = scales[0];
+            for (int i = from; i < to; ++i) {
+                values[i] = values[i] * scale;
+            }
+        }
+        else {
+            for (int k = 0; k < kinds.length; ++k) {
+                apply(k, values, values, from, to);
+            }
+        }
+    }
+
+    /**
+     * Converts values in place, from index <code>from</code> up to but
+     * not including <code>to</code>, with the same results as
+     * {@link #convert(float[], boolean)}.
+     * 
+     * @param values
+     *            The values in the "from" unit.
+     * @param from
+     *            The index of the first value to convert.
+     * @param to
+     *            One more than the index of the last value to convert.
+     */
+    public void convert(final float[] values, final int from, final int to) {
+        if (kinds.length == 0) {
+            return;
+        }
+        if (kinds.length == 1 && kinds[0] == AFFINE) {
+            final double scale = scales[0];
+            final double offset = offsets[0];
+            if (offset == 0) {
+                for (int i = from; i < to; ++i) {
+                    values[i] = (float) (values[i] * scale);
+                }
+            }
+            else {
+                for (int i = from; i < to; ++i) {
+                    values[i] = (float) (values[i] * scale + offset);
+                }
+            }
+        }
+        else {
+            final double[] buf = new double[Math.min(to - from, BLOCK)];
+            for (int start = from; start < to; start += BLOCK) {
+                final int m = Math.min(BLOCK, to - start);
+                for (int i = 0; i < m; ++i) {
+                    buf[i] = values[start + i];
+                }
+                for (int k = 0; k < kinds.length; ++k) {
+                    apply(k, buf, buf, 0, m);
+                }
+                for (int i = 0; i < m; ++i) {
+                    values[start + i] = (float) buf[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies stage k to in[from..to) and stores the results in out.
+     */
+    private void apply(final int k, final double[] in, final double[] out,
+            final int from, final int to) {
+        final double scale = scales[k];
+        switch (kinds[k]) {
+        case AFFINE:
+            final double offset = offsets[k];
+            for (int i = from; i < to; ++i) {
+                out[i] = in[i] * scale + offset;
+            }
+            break;
+        case RECIPROCAL:
+            for (int i = from; i < to; ++i) {
+                out[i] = 1.0 / in[i];
+            }
+            break;
+        case EXP:
+            for (int i = from; i < to; ++i) {
+                out[i] = Math.exp(in[i] * scale);
+            }
+            break;
+        default:
+            for (int i = from; i < to; ++i) {
+                out[i] = Math.log(in[i]) / scale;
+            }
+        }
+    }
+
+    private double apply(final int k, final double value) {
+        switch (kinds[k]) {
+        case AFFINE:
+            return value * scales[k] + offsets[k];
+        case RECIPROCAL:
+            return 1.0 / value;
+        case EXP:
+            return Math.exp(value * scales[k]);
+        default:
+            return Math.log(value) / scales[k];
+        }
+    }
+
+    /**
+     * Returns a string representation of this converter.
+     * 
+     * @return A string representation of this converter.
+     */
+    @Override
+    public String toString() {
+        final StringBuffer buf = new StringBuffer("UnitConverter[\"");
+        buf.append(from).append("\" -> \"").append(to).append("\":");
+        for (int k = 0; k < kinds.length; ++k) {
+            buf.append(' ');
+            switch (kinds[k]) {
+            case AFFINE:
+                buf.append(scales[k]).append("*x+").append(offsets[k]);
+                break;
+            case RECIPROCAL:
+                buf.append("1/x");
+                break;
+            case EXP:
+                buf.append("exp(x*").append(scales[k]).append(')');
+                break;
+            default:
+                buf.append("log(x)/").append(scales[k]);
+            }
+        }
+        return buf.append(']').toString();
+    }
+
+    /**
+     * Accumulates stages, composing consecutive affine ones.
+     */
+    private static final class Builder {
+        private int[]    kinds   = new int[4];
+        private double[] scales  = new double[4];
+        private double[] offsets = new double[4];
+        private int      count   = 0;
+
+        /**
+         * Adds the conversion of values in a unit to the unit below it in its
+         * definition, repeatedly, and returns the bottom unit: a derived
+         * unit, a promiscuous unit or an unknown kind of unit.
+         */
+        Unit down(Unit unit) {
+            for (;;) {
+                if (unit instanceof ScaledUnit) {
+                    final ScaledUnit scaled = (ScaledUnit) unit;
+                    multiply(scaled.amount);
+                    unit = scaled.underUnit;
+                }
+                else if (unit instanceof OffsetUnit) {
+                    final OffsetUnit offset = (OffsetUnit) unit;
+                    add(AFFINE, 1, offset.offset);
+                    unit = offset.underUnit;
+                }
+                else if (unit instanceof LogarithmicUnit) {
+                    final LogarithmicUnit log = (LogarithmicUnit) unit;
+                    add(EXP, lnBase(log.base), 0);
+                    unit = log.reference;
+                }
+                else if (unit instanceof BaseUnit) {
+                    return ((BaseUnit) unit).derivedUnit;
+                }
+                else {
+                    return unit;
+                }
+            }
+        }
+
+        /**
+         * Adds the inverses of this builder's stages to another, in reverse
+         * order.
+         */
+        void invertInto(final Builder that) {
+            for (int k = count - 1; k >= 0; --k) {
+                switch (kinds[k]) {
+                case AFFINE:
+                    // x = (y - offset) / scale
+                    that.add(AFFINE, 1, -offsets[k]);
+                    that.divide(scales[k]);
+                    break;
+                case EXP:
+                    that.add(LOG, scales[k], 0);
+                    break;
+                default:
+                    that.add(kinds[k], scales[k], offsets[k]);
+                }
+            }
+        }
+
+        private void multiply(final double amount) {
+            if (count > 0 && kinds[count - 1] == AFFINE) {
+                scales[count - 1] *= amount;
+                offsets[count - 1] *= amount;
+            }
+            else {
+                add(AFFINE, amount, 0);
+            }
+        }
+
+        private void divide(final double amount) {
+            if (count > 0 && kinds[count - 1] == AFFINE) {
+                scales[count - 1] /= amount;
+                offsets[count - 1] /= amount;
+            }
+            else {
+                add(AFFINE, 1 / amount, 0);
+            }
+        }
+
+        void add(final int kind, final double scale, final double offset) {
+            if (kind == AFFINE && count > 0 && kinds[count - 1] == AFFINE) {
+                // y = s2 * (s1 * x + o1) + o2
+                offsets[count - 1] = scale * offsets[count - 1] + offset;
+                scales[count - 1] *= scale;
+                return;
+            }
+            if (count == kinds.length) {
+                final int[] k = new int[2 * count];
+                final double[] s = new double[2 * count];
+                final double[] o = new double[2 * count];
+                System.arraycopy(kinds, 0, k, 0, count);
+                System.arraycopy(scales, 0, s, 0, count);
+                System.arraycopy(offsets, 0, o, 0, count);
+                kinds = k;
+                scales = s;
+                offsets = o;
+            }
+            kinds[count] = kind;
+            scales[count] = scale;
+            offsets[count] = offset;
+            ++count;
+        }
+
+        /**
+         * Returns the kinds of the stages, dropping affine identities.
+         */
+        int[] kinds() {
+            int n = 0;
+            for (int k = 0; k < count; ++k) {
+                if (!isIdentity(k)) {
+                    ++n;
+                }
+            }
+            final int[] result = new int[n];
+            n = 0;
+            for (int k = 0; k < count; ++k) {
+                if (!isIdentity(k)) {
+                    result[n++] = kinds[k];
+                }
+            }
+            return result;
+        }
+
+        double[] scales() {
+            return select(scales);
+        }
+
+        double[] offsets() {
+            return select(offsets);
+        }
+
+        private double[] select(final double[] values) {
+            final int[] k = kinds();
+            final double[] result = new double[k.length];
+            int n = 0;
+            for (int i = 0; i < count; ++i) {
+                if (!isIdentity(i)) {
+                    result[n++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        private boolean isIdentity(final int k) {
+            return kinds[k] == AFFINE && offsets[k] == 0
+                    && Math.abs(scales[k] - 1) <= ONE_SLOP;
+        }
+
+        private static double lnBase(final double base) {
+            return base == Math.E
+                    ? 1
+                    : Math.log(base);
+        }
+    }
+
+    /**
+     * A map that drops its least recently used converter when full.
+     */
+    private static final class Cache extends LinkedHashMap<Pair, UnitConverter> {
+        private static final long serialVersionUID = 1L;
+
+        Cache() {
+            super(64, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<Pair, UnitConverter> eldest) {
+            return size() > MAX_CACHED;
+        }
+    }
+
+    /**
+     * A (from, to) unit pair, used as a cache key.
+     */
+    private static final class Pair {
+        private final Unit from;
+        private final Unit to;
+
+        Pair(final Unit from, final Unit to) {
+            if (from == null || to == null) {
+                throw new NullPointerException("Null unit");
+            }
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Pair)) {
+                return false;
+            }
+            final Pair that = (Pair) obj;
+            return from.equals(that.from) && to.equals(that.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return from.hashCode() * 31 + to.hashCode();
+        }
+    }
+}
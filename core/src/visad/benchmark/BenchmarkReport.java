@@ -0,0 +1,162 @@
+//
+// BenchmarkReport.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+   BenchmarkReport collects the named measurements of one benchmark
+   case and writes them as a single line of JSON, e.g.<P>
+
+   <PRE>
+   {"benchmark":"render.j2d","case":"image","transform_ms":41.2}
+   </PRE>
+
+   One line per case makes the output easy to append to a log and to
+   compare between runs with ordinary line-oriented tools.<P>
+*/
+public class BenchmarkReport {
+
+  private final List<String> keys = new ArrayList<String>();
+
+  private final List<String> values = new ArrayList<String>();
+
+  /** construct a report for case caseName of benchmark */
+  public BenchmarkReport(String benchmark, String caseName) {
+    put("benchmark", benchmark);
+    put("case", caseName);
+  }
+
+  /** add a String valued measurement */
+  public BenchmarkReport put(String key, String value) {
+    keys.add(key);
+    values.add(quote(value));
+    return this;
+  }
+
+  /** add an integer valued measurement */
+  public BenchmarkReport put(String key, long value) {
+    keys.add(key);
+    values.add(Long.toString(value));
+    return this;
+  }
+
+  /** add a floating point measurement; NaN and infinities become null */
+  public BenchmarkReport put(String key, double value) {
+    keys.add(key);
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      values.add("null");
+    }
+    else {
+      // three decimal places are plenty for times in milliseconds
+      values.add(Double.toString(Math.rint(value * 1000.0) / 1000.0));
+    }
+    return this;
+  }
+
+  /**
+   * add a floating point measurement without rounding, e.g. a numerical
+   * error; NaN and infinities become null
+   */
+  public BenchmarkReport putExact(String key, double value) {
+    keys.add(key);
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      values.add("null");
+    }
+    else {
+      values.add(Double.toString(value));
+    }
+    return this;
+  }
+
+  /** add a boolean measurement */
+  public BenchmarkReport put(String key, boolean value) {
+    keys.add(key);
+    values.add(value ? "true" : "false");
+    return this;
+  }
+
+  /** return this report as a single line of JSON */
+  public String toString() {
+    StringBuffer buf = new StringBuffer("{");
+    for (int i=0; i<keys.size(); i++) {
+      if (i > 0) buf.append(',');
+      buf.append(quote(keys.get(i)));
+      buf.append(':');
+      buf.append(values.get(i));
+    }
+    buf.append('}');
+    return buf.toString();
+  }
+
+  /** write this report to out as one line */
+  public void print(PrintStream out) {
+    out.println(toString());
+    out.flush();
+  }
+
+  /** return milliseconds elapsed since System.nanoTime() was start */
+  public static double millisSince(long start) {
+    return (System.nanoTime() - start) / 1.0e6;
+  }
+
+  /** return the median of times, which are sorted in place */
+  public static double median(double[] times) {
+    if (times == null || times.length == 0) return Double.NaN;
+    Arrays.sort(times);
+    int n = times.length;
+    return ((n & 1) == 1) ? times[n / 2] :
+                            0.5 * (times[n / 2 - 1] + times[n / 2]);
+  }
+
+  private static String quote(String s) {
+    if (s == null) return "null";
+    StringBuffer buf = new StringBuffer("\"");
+    for (int i=0; i<s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      }
+      else if (c < ' ') {
+        String hex = Integer.toHexString(c);
+        buf.append("\\u");
+        for (int j=hex.length(); j<4; j++) buf.append('0');
+        buf.append(hex);
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    buf.append('"');
+    return buf.toString();
+  }
+
+}
+
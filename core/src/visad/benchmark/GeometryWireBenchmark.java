@@ -0,0 +1,336 @@
+//
+// GeometryWireBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Vector;
+
+import visad.*;
+import visad.cluster.CompactSceneGraph;
+import visad.cluster.GeometryCodec;
+
+/**
+   GeometryWireBenchmark measures the cost of shipping scene graphs
+   from cluster nodes to the client (see visad.cluster.NodeRendererJ3D)
+   with default Java serialization and with each CompactSceneGraph
+   coding.  For each payload and coding it reports:<P>
+   <UL>
+   <LI>bytes - size of the serialized scene graph
+   <LI>encode_ms - median time to serialize the scene graph
+   <LI>decode_ms - median time to deserialize the scene graph
+   <LI>max_error_ppm - largest coordinate error after decoding, in
+       millionths of a display unit
+   </UL><P>
+   The payloads are isosurface (a VisADTriangleStripArray iso-surface
+   with normals and colors), indexed (the same iso-surface as a
+   VisADIndexedTriangleStripArray) and image (a textured triangle
+   strip mesh plus the tile's pixels, as ImageRendererJ3D builds).
+   Run it with:<P>
+   <PRE>
+   java visad.benchmark.GeometryWireBenchmark [-iterations n] [payload ...]
+   </PRE>
+   or 'ant benchmark -Dbenchmark.class=visad.benchmark.GeometryWireBenchmark'
+   from the core directory.<P>
+*/
+public class GeometryWireBenchmark {
+
+  /** benchmark name used in reports */
+  public static final String NAME = "wire.geometry";
+
+  /** names of all payloads */
+  public static final String[] PAYLOADS = {"isosurface", "indexed", "image"};
+
+  /** names of all codings; serial is default Java serialization */
+  public static final String[] CODINGS =
+    {"serial", "raw", "raw_deflate", "half_deflate", "quantized_deflate"};
+
+  /** grid points along each edge of the iso-surface payloads */
+  public static final int GRID_SIZE = 64;
+
+  /** pixels along each edge of the image payload */
+  public static final int TILE_SIZE = 256;
+
+  /** mesh vertices along each edge of the image payload */
+  public static final int MESH_SIZE = 64;
+
+  private final int iterations;
+
+  /** construct a benchmark timing iterations encodes and decodes per case */
+  public GeometryWireBenchmark(int iterations) {
+    this.iterations = (iterations < 1) ? 1 : iterations;
+  }
+
+  /** measure payload with every coding, printing a report for each */
+  public void run(String payload) throws VisADException, IOException {
+    VisADGroup scene = makePayload(payload);
+    for (int i=0; i<CODINGS.length; i++) {
+      run(payload, scene, CODINGS[i]).print(System.out);
+    }
+  }
+
+  /** measure scene sent with coding, and return the measurements */
+  public BenchmarkReport run(String payload, VisADGroup scene, String coding)
+         throws VisADException, IOException {
+    Serializable message = makeMessage(scene, coding);
+
+    // warm up, and keep the bytes for decoding
+    byte[] bytes = serialize(message);
+    deserialize(bytes);
+
+    double[] encode = new double[iterations];
+    double[] decode = new double[iterations];
+    VisADGroup decoded = null;
+    for (int i=0; i<iterations; i++) {
+      long start = System.nanoTime();
+      bytes = serialize(message);
+      encode[i] = BenchmarkReport.millisSince(start);
+
+      start = System.nanoTime();
+      Object object = deserialize(bytes);
+      decode[i] = BenchmarkReport.millisSince(start);
+      if (object instanceof CompactSceneGraph) {
+        object = ((CompactSceneGraph) object).getSceneGraph();
+      }
+      decoded = (VisADGroup) object;
+    }
+
+    BenchmarkReport report = new BenchmarkReport(NAME, payload + "." + coding);
+    report.put("iterations", iterations);
+    report.put("geometry_bytes", RenderBenchmarkJ2D.geometryBytes(scene));
+    report.put("bytes", bytes.length);
+    report.put("encode_ms", BenchmarkReport.median(encode));
+    report.put("decode_ms", BenchmarkReport.median(decode));
+    report.put("max_error_ppm", 1.0e6 * maxError(scene, decoded));
+    return report;
+  }
+
+  /** return scene wrapped as NodeRendererJ3D would send it with coding */
+  private static Serializable makeMessage(VisADGroup scene, String coding)
+          throws VisADException {
+    if (coding.equals("serial")) return scene;
+    if (coding.equals("raw")) {
+      return new CompactSceneGraph(scene, GeometryCodec.RAW, false);
+    }
+    if (coding.equals("raw_deflate")) {
+      return new CompactSceneGraph(scene, GeometryCodec.RAW, true);
+    }
+    if (coding.equals("half_deflate")) {
+      return new CompactSceneGraph(scene, GeometryCodec.HALF, true);
+    }
+    if (coding.equals("quantized_deflate")) {
+      return new CompactSceneGraph(scene, GeometryCodec.QUANTIZED, true);
+    }
+    throw new VisADException("GeometryWireBenchmark: unknown coding " +
+                             coding);
+  }
+
+  private static byte[] serialize(Serializable message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(message);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes) throws IOException {
+    ObjectInputStream in =
+      new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return in.readObject();
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException("GeometryWireBenchmark: " + e.getMessage());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /** build the scene graph of payload */
+  private static VisADGroup makePayload(String payload)
+          throws VisADException {
+    VisADAppearance appearance = new VisADAppearance();
+    if (payload.equals("isosurface")) {
+      appearance.array = makeIsoSurface(false);
+    }
+    else if (payload.equals("indexed")) {
+      appearance.array = makeIsoSurface(true);
+    }
+    else if (payload.equals("image")) {
+      makeImage(appearance);
+    }
+    else {
+      throw new VisADException("GeometryWireBenchmark: unknown payload " +
+                               payload);
+    }
+    VisADGroup group = new VisADGroup();
+    group.addChild(appearance);
+    return group;
+  }
+
+  /** an iso-surface through two blobs plus ripples, colored by position */
+  private static VisADGeometryArray makeIsoSurface(boolean indexed)
+          throws VisADException {
+    RealType x = RealType.getRealType("bench_x");
+    RealType y = RealType.getRealType("bench_y");
+    RealType z = RealType.getRealType("bench_z");
+    RealTupleType xyz = new RealTupleType(x, y, z);
+    int n = GRID_SIZE;
+    Linear3DSet set =
+      new Linear3DSet(xyz, -1.0, 1.0, n, -1.0, 1.0, n, -1.0, 1.0, n);
+    float[] values = new float[n * n * n];
+    byte[][] colors = new byte[3][n * n * n];
+    int k = 0;
+    for (int l=0; l<n; l++) {
+      float c = -1.0f + 2.0f * l / (n - 1);
+      for (int j=0; j<n; j++) {
+        float b = -1.0f + 2.0f * j / (n - 1);
+        for (int i=0; i<n; i++) {
+          float a = -1.0f + 2.0f * i / (n - 1);
+          float d1 = (a - 0.3f) * (a - 0.3f) + b * b + (c - 0.2f) * (c - 0.2f);
+          float d2 = (a + 0.4f) * (a + 0.4f) + b * b + (c + 0.3f) * (c + 0.3f);
+          values[k] = (float) (Math.exp(-4.0 * d1) + Math.exp(-6.0 * d2) +
+                               0.05 * Math.sin(10.0 * a) * Math.cos(8.0 * c));
+          colors[0][k] = (byte) (127.5f * (a + 1.0f));
+          colors[1][k] = (byte) (127.5f * (b + 1.0f));
+          colors[2][k] = (byte) (127.5f * (c + 1.0f));
+          k++;
+        }
+      }
+    }
+    return set.makeIsoSurface(0.5f, values, colors, indexed);
+  }
+
+  /**
+   * a tile as ImageRendererJ3D builds it for a curved surface: a
+   * textured triangle strip mesh plus the tile's pixels
+   */
+  private static void makeImage(VisADAppearance appearance) {
+    int m = MESH_SIZE;
+    VisADTriangleStripArray mesh = new VisADTriangleStripArray();
+    mesh.vertexCount = 2 * m * (m - 1);
+    mesh.coordinates = new float[3 * mesh.vertexCount];
+    mesh.normals = new float[3 * mesh.vertexCount];
+    mesh.texCoords = new float[2 * mesh.vertexCount];
+    mesh.stripVertexCounts = new int[m - 1];
+    int v = 0;
+    for (int j=0; j<m-1; j++) {
+      mesh.stripVertexCounts[j] = 2 * m;
+      for (int i=0; i<m; i++) {
+        for (int jj=j; jj<=j+1; jj++) {
+          float s = (float) i / (m - 1);
+          float t = (float) jj / (m - 1);
+          // a patch of a sphere
+          double lon = 0.5 * (s - 0.5);
+          double lat = 0.5 * (t - 0.5);
+          float cx = (float) (Math.cos(lat) * Math.sin(lon));
+          float cy = (float) Math.sin(lat);
+          float cz = (float) (Math.cos(lat) * Math.cos(lon));
+          mesh.coordinates[3 * v] = cx;
+          mesh.coordinates[3 * v + 1] = cy;
+          mesh.coordinates[3 * v + 2] = cz;
+          mesh.normals[3 * v] = cx;
+          mesh.normals[3 * v + 1] = cy;
+          mesh.normals[3 * v + 2] = cz;
+          mesh.texCoords[2 * v] = s;
+          mesh.texCoords[2 * v + 1] = t;
+          v++;
+        }
+      }
+    }
+    appearance.array = mesh;
+
+    int size = TILE_SIZE;
+    int[] pixels = new int[size * size];
+    for (int j=0; j<size; j++) {
+      for (int i=0; i<size; i++) {
+        double a = 6.0 * i / size;
+        double b = 6.0 * j / size;
+        int g = (int) (127.5 * (1.0 + Math.sin(a) * Math.cos(b)));
+        pixels[j * size + i] = 0xff000000 | (g << 16) | (g << 8) | (255 - g);
+      }
+    }
+    appearance.image_type = java.awt.image.BufferedImage.TYPE_INT_ARGB;
+    appearance.image_width = size;
+    appearance.image_height = size;
+    appearance.image_pixels = pixels;
+    appearance.texture_width = size;
+    appearance.texture_height = size;
+  }
+
+  /** largest absolute coordinate difference between the two scenes */
+  private static double maxError(VisADGroup scene, VisADGroup decoded) {
+    float[] a = ((VisADAppearance) scene.getChild(0)).array.coordinates;
+    float[] b = ((VisADAppearance) decoded.getChild(0)).array.coordinates;
+    double max = 0.0;
+    for (int i=0; i<a.length; i++) {
+      double d = Math.abs(a[i] - b[i]);
+      if (d > max) max = d;
+    }
+    return max;
+  }
+
+  public static void main(String[] args) {
+    int iterations = 5;
+    Vector payloads = new Vector();
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-iterations")) {
+          iterations = Integer.parseInt(args[++i]);
+        }
+        else {
+          payloads.addElement(args[i]);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println("usage: java visad.benchmark.GeometryWireBenchmark " +
+                         "[-iterations n] [payload ...]");
+      System.exit(1);
+    }
+    if (payloads.size() == 0) {
+      for (int i=0; i<PAYLOADS.length; i++) payloads.addElement(PAYLOADS[i]);
+    }
+
+    GeometryWireBenchmark benchmark = new GeometryWireBenchmark(iterations);
+    try {
+      for (int i=0; i<payloads.size(); i++) {
+        benchmark.run((String) payloads.elementAt(i));
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
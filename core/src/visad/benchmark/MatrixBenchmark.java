@@ -0,0 +1,219 @@
+//
+// MatrixBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.Vector;
+
+import visad.matrix.JamaMatrix;
+import visad.matrix.MatrixKernels;
+
+/**
+   MatrixBenchmark measures JamaMatrix multiplication and LU, QR and
+   Cholesky decompositions of square matrices.  For each case it
+   reports:<P>
+   <UL>
+   <LI>jama_ms - median time with MatrixKernels disabled, so the work
+       is done by JAMA
+   <LI>kernels_ms - median time with MatrixKernels
+   <LI>max_diff - largest difference between the results (the product,
+       U, R or L) of the two paths
+   </UL><P>
+   MatrixKernels are disabled by setting {@link
+   MatrixKernels#PROP_MIN_SIZE} above the matrix size, which older
+   builds ignore, so running with '-path jama' against an older build
+   gives the baseline to compare with.  Run it with:<P>
+   <PRE>
+   java visad.benchmark.MatrixBenchmark [-iterations n] [-size n]
+     [-path jama|kernels] [case ...]
+   </PRE>
+   or 'ant benchmark -Dbenchmark.class=visad.benchmark.MatrixBenchmark'
+   from the core directory.  The number of threads may be set with the
+   visad.matrix.threads system property.<P>
+*/
+public class MatrixBenchmark {
+
+  /** benchmark name used in reports */
+  public static final String NAME = "matrix.kernels";
+
+  /** names of all cases */
+  public static final String[] CASES = {"times", "lu", "qr", "chol"};
+
+  private final int iterations;
+
+  private final int size;
+
+  private final boolean jama, kernels;
+
+  /**
+   * construct a benchmark of size by size matrices, running each case
+   * iterations times along the given path (null for both)
+   */
+  public MatrixBenchmark(int iterations, int size, String path) {
+    this.iterations = (iterations < 1) ? 1 : iterations;
+    this.size = (size < 1) ? 1 : size;
+    jama = path == null || path.equals("jama");
+    kernels = path == null || path.equals("kernels");
+  }
+
+  /** run the case named name and print its report */
+  public BenchmarkReport run(String name) throws Exception {
+    JamaMatrix a = JamaMatrix.random(size, size);
+    JamaMatrix b = JamaMatrix.random(size, size);
+    if (name.equals("chol")) {
+      // make a symmetric positive definite
+      JamaMatrix diagonal = JamaMatrix.identity(size, size).times(size);
+      a = a.transpose().times(a).plus(diagonal);
+    }
+
+    BenchmarkReport report = new BenchmarkReport(NAME, name);
+    report.put("iterations", iterations);
+    report.put("size", size);
+    report.put("threads", Integer.getInteger(MatrixKernels.PROP_THREADS,
+                 Runtime.getRuntime().availableProcessors()).intValue());
+    String saved = System.getProperty(MatrixKernels.PROP_MIN_SIZE);
+    try {
+      JamaMatrix jamaResult = null;
+      JamaMatrix kernelsResult = null;
+      if (jama) {
+        System.setProperty(MatrixKernels.PROP_MIN_SIZE,
+                           Integer.toString(size + 1));
+        double[] times = new double[iterations];
+        jamaResult = time(name, a, b, times);
+        report.put("jama_ms", BenchmarkReport.median(times));
+      }
+      if (kernels) {
+        System.setProperty(MatrixKernels.PROP_MIN_SIZE, "1");
+        double[] times = new double[iterations];
+        kernelsResult = time(name, a, b, times);
+        report.put("kernels_ms", BenchmarkReport.median(times));
+      }
+      if (jamaResult != null && kernelsResult != null) {
+        report.putExact("max_diff",
+                        maxDifference(jamaResult, kernelsResult));
+      }
+    }
+    finally {
+      if (saved == null) {
+        System.getProperties().remove(MatrixKernels.PROP_MIN_SIZE);
+      }
+      else {
+        System.setProperty(MatrixKernels.PROP_MIN_SIZE, saved);
+      }
+    }
+    report.print(System.out);
+    return report;
+  }
+
+  /**
+   * run case name times.length times, after a warm up, recording the
+   * times; return the last result
+   */
+  private static JamaMatrix time(String name, JamaMatrix a, JamaMatrix b,
+                                 double[] times)
+          throws Exception {
+    JamaMatrix result = null;
+    for (int i=-1; i<times.length; i++) {
+      long start = System.nanoTime();
+      if (name.equals("times")) {
+        result = a.times(b);
+      }
+      else if (name.equals("lu")) {
+        result = a.lu().getU();
+      }
+      else if (name.equals("qr")) {
+        result = a.qr().getR();
+      }
+      else if (name.equals("chol")) {
+        result = a.chol().getL();
+      }
+      else {
+        throw new IllegalArgumentException("unknown case " + name);
+      }
+      // the first pass is a warm up
+      if (i >= 0) times[i] = BenchmarkReport.millisSince(start);
+    }
+    return result;
+  }
+
+  private static double maxDifference(JamaMatrix x, JamaMatrix y)
+          throws Exception {
+    // the range samples are floats, so compare the JAMA matrices
+    int rows = x.getRowDimension();
+    int cols = x.getColumnDimension();
+    double max = 0.0;
+    for (int i=0; i<rows; i++) {
+      for (int j=0; j<cols; j++) {
+        max = Math.max(max, Math.abs(x.get(i, j) - y.get(i, j)));
+      }
+    }
+    return max;
+  }
+
+  public static void main(String[] args) {
+    int iterations = 3;
+    int size = 1000;
+    String path = null;
+    Vector cases = new Vector();
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-iterations")) {
+          iterations = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-size")) {
+          size = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-path")) {
+          path = args[++i];
+        }
+        else {
+          cases.addElement(args[i]);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println("usage: java visad.benchmark.MatrixBenchmark " +
+                         "[-iterations n] [-size n] " +
+                         "[-path jama|kernels] [case ...]");
+      System.exit(1);
+    }
+    if (cases.size() == 0) {
+      for (int i=0; i<CASES.length; i++) cases.addElement(CASES[i]);
+    }
+
+    MatrixBenchmark benchmark = new MatrixBenchmark(iterations, size, path);
+    try {
+      for (int i=0; i<cases.size(); i++) {
+        benchmark.run((String) cases.elementAt(i));
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,502 @@
+//
+// RenderBenchmarkJ2D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.rmi.RemoteException;
+import java.util.Vector;
+
+import visad.*;
+import visad.bom.BarbRendererJ2D;
+import visad.java2d.DisplayImplJ2D;
+import visad.java2d.DisplayRendererJ2D;
+import visad.java2d.VisADCanvasJ2D;
+import visad.java2d.DefaultRendererJ2D;
+
+/**
+   RenderBenchmarkJ2D builds representative scenes on offscreen
+   DisplayImplJ2D displays, which need neither a screen nor a GPU, and
+   measures for each scene:<P>
+
+   <UL>
+   <LI>transform_ms - median time to transform the scene's Data into
+       a scene graph (from reDisplayAll() to TRANSFORM_DONE)
+   <LI>first_transform_ms - time of the first transform, including
+       class loading and JIT warm-up
+   <LI>frame_ms - median time to render the scene graph into the
+       offscreen image, without transforming
+   <LI>geometry_bytes - bytes held by the arrays and images of the
+       scene graph
+   </UL><P>
+
+   Each scene is reported as one line of JSON (see BenchmarkReport), so
+   changes to ShadowType, Contour2D, the barb and text shadow types or
+   VisADCanvasJ2D that make the display slower or fatter show up as a
+   diff between runs.  Run it with:<P>
+
+   <PRE>
+   java -Djava.awt.headless=true visad.benchmark.RenderBenchmarkJ2D
+        [-iterations n] [-size width height] [-tiles size] [scene ...]
+   </PRE>
+
+   where the scenes are image, contour, barbs and text (all by
+   default), and -tiles renders with VisADCanvasJ2D tiles of the given
+   size and reports, as diff_pixels, how many pixels of a tiled frame
+   differ from an untiled one (which should be none); or run 'ant benchmark' from the core directory.<P>
+*/
+public class RenderBenchmarkJ2D {
+
+  /** benchmark name used in reports */
+  public static final String NAME = "render.j2d";
+
+  /** names of all scenes */
+  public static final String[] SCENES = {"image", "contour", "barbs", "text"};
+
+  /** ms to wait for a transform before reporting the scene as failed */
+  public static final long TRANSFORM_TIMEOUT = 120000;
+
+  /** samples along each edge of the image scene */
+  public static final int IMAGE_SIZE = 1024;
+
+  /** samples along each edge of the filled contour scene */
+  public static final int CONTOUR_SIZE = 256;
+
+  /** barbs along each edge of the wind barb scene */
+  public static final int BARB_SIZE = 50;
+
+  /** number of labels in the text scene */
+  public static final int TEXT_COUNT = 4000;
+
+  private final int width, height;
+
+  private final int iterations;
+
+  private int tileSize = 0;
+
+  /**
+   * construct a benchmark rendering into width x height offscreen
+   * displays, and timing iterations transforms and frames per scene
+   */
+  public RenderBenchmarkJ2D(int width, int height, int iterations) {
+    this.width = width;
+    this.height = height;
+    this.iterations = (iterations < 1) ? 1 : iterations;
+  }
+
+  /** render with VisADCanvasJ2D tiles of size pixels; 0 to disable */
+  public void setTileSize(int size) {
+    tileSize = size;
+  }
+
+  /** build, transform and render scene, and return its measurements */
+  public BenchmarkReport run(String scene)
+         throws VisADException, RemoteException {
+    DisplayImplJ2D display =
+      new DisplayImplJ2D("benchmark_" + scene, width, height);
+    DisplayRendererJ2D renderer =
+      (DisplayRendererJ2D) display.getDisplayRenderer();
+    renderer.getCanvas().setTileSize(tileSize);
+    TransformListener listener = new TransformListener();
+    display.addDisplayListener(listener);
+    try {
+      listener.reset();
+      long start = System.nanoTime();
+      int count = makeScene(display, scene);
+      listener.await(scene);
+      double first = BenchmarkReport.millisSince(start);
+
+      // settle any follow-on transforms and frames before timing
+      display.getImage(true);
+
+      double[] transform = new double[iterations];
+      for (int i=0; i<iterations; i++) {
+        listener.reset();
+        start = System.nanoTime();
+        display.reDisplayAll();
+        listener.await(scene);
+        transform[i] = BenchmarkReport.millisSince(start);
+      }
+      display.getImage(true);
+
+      double[] frame = new double[iterations];
+      for (int i=0; i<iterations; i++) {
+        start = System.nanoTime();
+        renderer.getCanvas().scratchImages();
+        display.getImage();
+        frame[i] = BenchmarkReport.millisSince(start);
+      }
+
+      BenchmarkReport report = new BenchmarkReport(NAME, scene);
+      report.put("elements", count);
+      report.put("width", width);
+      report.put("height", height);
+      report.put("iterations", iterations);
+      report.put("tile_size", tileSize);
+      report.put("first_transform_ms", first);
+      report.put("transform_ms", BenchmarkReport.median(transform));
+      report.put("frame_ms", BenchmarkReport.median(frame));
+      if (tileSize > 0) {
+        // tiled frames must match untiled ones pixel for pixel
+        VisADCanvasJ2D canvas = renderer.getCanvas();
+        BufferedImage tiled = display.getImage();
+        canvas.setTileSize(0);
+        BufferedImage untiled = display.getImage();
+        canvas.setTileSize(tileSize);
+        report.put("diff_pixels", diffPixels(tiled, untiled));
+      }
+      report.put("geometry_bytes", geometryBytes(renderer.getRoot()));
+      return report;
+    }
+    finally {
+      display.removeDisplayListener(listener);
+      display.destroy();
+    }
+  }
+
+  /** return the number of pixels that differ between a and b */
+  private static int diffPixels(BufferedImage a, BufferedImage b) {
+    int w = Math.min(a.getWidth(), b.getWidth());
+    int h = Math.min(a.getHeight(), b.getHeight());
+    int diff = Math.abs(a.getWidth() * a.getHeight() -
+                        b.getWidth() * b.getHeight());
+    for (int y=0; y<h; y++) {
+      for (int x=0; x<w; x++) {
+        if (a.getRGB(x, y) != b.getRGB(x, y)) diff++;
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * add the maps and Data of scene to display, and return the number
+   * of data elements (pixels, grid points, barbs or labels) in it
+   */
+  private int makeScene(DisplayImplJ2D display, String scene)
+          throws VisADException, RemoteException {
+    if (scene.equals("image")) return makeImage(display);
+    if (scene.equals("contour")) return makeContour(display);
+    if (scene.equals("barbs")) return makeBarbs(display);
+    if (scene.equals("text")) return makeText(display);
+    throw new VisADException("RenderBenchmarkJ2D: unknown scene " + scene);
+  }
+
+  /** a smooth field of two Gaussian bumps plus ripples on a grid */
+  private static FlatField makeGrid(String name, int size)
+          throws VisADException, RemoteException {
+    RealType x = RealType.getRealType("bench_x");
+    RealType y = RealType.getRealType("bench_y");
+    RealType v = RealType.getRealType(name);
+    RealTupleType xy = new RealTupleType(x, y);
+    FunctionType type = new FunctionType(xy, v);
+    Linear2DSet set = new Linear2DSet(xy, -1.0, 1.0, size, -1.0, 1.0, size);
+    float[][] values = new float[1][size * size];
+    int k = 0;
+    for (int j=0; j<size; j++) {
+      float b = -1.0f + 2.0f * j / (size - 1);
+      for (int i=0; i<size; i++) {
+        float a = -1.0f + 2.0f * i / (size - 1);
+        float d1 = (a - 0.3f) * (a - 0.3f) + (b - 0.2f) * (b - 0.2f);
+        float d2 = (a + 0.4f) * (a + 0.4f) + (b + 0.3f) * (b + 0.3f);
+        values[0][k++] = (float) (Math.exp(-4.0 * d1) - 0.7 * Math.exp(-6.0 * d2) +
+                                  0.1 * Math.sin(12.0 * a) * Math.cos(9.0 * b));
+      }
+    }
+    FlatField field = new FlatField(type, set);
+    field.setSamples(values, false);
+    return field;
+  }
+
+  private static void addXYMaps(DisplayImplJ2D display, RealType x, RealType y)
+          throws VisADException, RemoteException {
+    // fixed ranges, so auto-scaling doesn't cause a second transform
+    ScalarMap xmap = new ScalarMap(x, Display.XAxis);
+    xmap.setRange(-1.0, 1.0);
+    display.addMap(xmap);
+    ScalarMap ymap = new ScalarMap(y, Display.YAxis);
+    ymap.setRange(-1.0, 1.0);
+    display.addMap(ymap);
+  }
+
+  private int makeImage(DisplayImplJ2D display)
+          throws VisADException, RemoteException {
+    FlatField image = makeGrid("bench_image", IMAGE_SIZE);
+    RealType[] xy = ((FunctionType) image.getType()).getDomain().getRealComponents();
+    addXYMaps(display, xy[0], xy[1]);
+    ScalarMap rgb = new ScalarMap(RealType.getRealType("bench_image"), Display.RGB);
+    rgb.setRange(-1.0, 1.0);
+    display.addMap(rgb);
+    DataReferenceImpl ref = new DataReferenceImpl("image");
+    ref.setData(image);
+    display.addReference(ref);
+    return IMAGE_SIZE * IMAGE_SIZE;
+  }
+
+  private int makeContour(DisplayImplJ2D display)
+          throws VisADException, RemoteException {
+    FlatField grid = makeGrid("bench_contour", CONTOUR_SIZE);
+    RealType[] xy = ((FunctionType) grid.getType()).getDomain().getRealComponents();
+    addXYMaps(display, xy[0], xy[1]);
+    RealType v = RealType.getRealType("bench_contour");
+    ScalarMap rgb = new ScalarMap(v, Display.RGB);
+    rgb.setRange(-1.0, 1.0);
+    display.addMap(rgb);
+    ScalarMap iso = new ScalarMap(v, Display.IsoContour);
+    display.addMap(iso);
+    ContourControl control = (ContourControl) iso.getControl();
+    control.setContourInterval(0.1f, -1.0f, 1.0f, 0.0f);
+    control.setContourFill(true);
+    DataReferenceImpl ref = new DataReferenceImpl("contour");
+    ref.setData(grid);
+    display.addReference(ref);
+    return CONTOUR_SIZE * CONTOUR_SIZE;
+  }
+
+  private int makeBarbs(DisplayImplJ2D display)
+          throws VisADException, RemoteException {
+    RealType lat = RealType.Latitude;
+    RealType lon = RealType.Longitude;
+    RealType flowx = RealType.getRealType("bench_flowx",
+                          CommonUnit.meterPerSecond);
+    RealType flowy = RealType.getRealType("bench_flowy",
+                          CommonUnit.meterPerSecond);
+    RealType index = RealType.getRealType("bench_index");
+    EarthVectorType flowxy = new EarthVectorType(flowx, flowy);
+    TupleType range = new TupleType(new MathType[] {lon, lat, flowxy});
+    FunctionType type = new FunctionType(index, range);
+
+    ScalarMap xmap = new ScalarMap(lon, Display.XAxis);
+    xmap.setRange(-20.0, 20.0);
+    display.addMap(xmap);
+    ScalarMap ymap = new ScalarMap(lat, Display.YAxis);
+    ymap.setRange(20.0, 60.0);
+    display.addMap(ymap);
+    ScalarMap flowx_map = new ScalarMap(flowx, Display.Flow1X);
+    flowx_map.setRange(-1.0, 1.0);
+    display.addMap(flowx_map);
+    ScalarMap flowy_map = new ScalarMap(flowy, Display.Flow1Y);
+    flowy_map.setRange(-1.0, 1.0);
+    display.addMap(flowy_map);
+    FlowControl flow_control = (FlowControl) flowy_map.getControl();
+    flow_control.setFlowScale(0.02f);
+
+    int n = BARB_SIZE * BARB_SIZE;
+    double[][] values = new double[4][n];
+    int m = 0;
+    for (int i=0; i<BARB_SIZE; i++) {
+      for (int j=0; j<BARB_SIZE; j++) {
+        double u = 2.0 * i / (BARB_SIZE - 1.0) - 1.0;
+        double v = 2.0 * j / (BARB_SIZE - 1.0) - 1.0;
+        values[0][m] = 20.0 * u;
+        values[1][m] = 20.0 * v + 40.0;
+        // speeds up to about 60 m/s exercise all pennant and barb shapes
+        values[2][m] = 40.0 * u;
+        values[3][m] = 40.0 * v;
+        m++;
+      }
+    }
+    FlatField field = new FlatField(type, new Integer1DSet(index, n));
+    field.setSamples(values);
+    DataReferenceImpl ref = new DataReferenceImpl("barbs");
+    ref.setData(field);
+    BarbRendererJ2D renderer = new BarbRendererJ2D();
+    renderer.setKnotsConvert(true);
+    display.addReferences(renderer, ref);
+    return n;
+  }
+
+  private int makeText(DisplayImplJ2D display)
+          throws VisADException, RemoteException {
+    RealType x = RealType.getRealType("bench_x");
+    RealType y = RealType.getRealType("bench_y");
+    RealType index = RealType.getRealType("bench_index");
+    TextType label = TextType.getTextType("bench_label");
+    TupleType range = new TupleType(new MathType[] {x, y, label});
+    FunctionType type = new FunctionType(index, range);
+    addXYMaps(display, x, y);
+    display.addMap(new ScalarMap(label, Display.Text));
+
+    // a fixed seed keeps the scene identical between runs
+    java.util.Random random = new java.util.Random(1234567L);
+    Data[] samples = new Data[TEXT_COUNT];
+    for (int i=0; i<TEXT_COUNT; i++) {
+      samples[i] = new Tuple(range, new Data[]
+        {new Real(x, 2.0 * random.nextDouble() - 1.0),
+         new Real(y, 2.0 * random.nextDouble() - 1.0),
+         new Text(label, "L" + i)}, false);
+    }
+    FieldImpl field = new FieldImpl(type, new Integer1DSet(index, TEXT_COUNT));
+    field.setSamples(samples, false);
+    DataReferenceImpl ref = new DataReferenceImpl("text");
+    ref.setData(field);
+    display.addReferences(new DefaultRendererJ2D(), ref);
+    return TEXT_COUNT;
+  }
+
+  /** return bytes held by geometry arrays and images under node */
+  public static long geometryBytes(VisADSceneGraphObject node) {
+    long bytes = 0;
+    if (node instanceof VisADGroup) {
+      Vector children = ((VisADGroup) node).getChildren();
+      for (int i=0; i<children.size(); i++) {
+        bytes += geometryBytes((VisADSceneGraphObject) children.elementAt(i));
+      }
+    }
+    else if (node instanceof VisADAppearance) {
+      VisADAppearance appearance = (VisADAppearance) node;
+      bytes += geometryBytes(appearance.array);
+      if (appearance.image_pixels != null) {
+        bytes += 4L * appearance.image_pixels.length;
+      }
+      else if (appearance.image != null) {
+        Image image = appearance.image;
+        bytes += 4L * image.getWidth(null) * image.getHeight(null);
+      }
+    }
+    else if (node instanceof VisADGeometryArray) {
+      bytes += geometryBytes((VisADGeometryArray) node);
+    }
+    return bytes;
+  }
+
+  private static long geometryBytes(VisADGeometryArray array) {
+    if (array == null) return 0;
+    long bytes = 0;
+    if (array.coordinates != null) bytes += 4L * array.coordinates.length;
+    if (array.normals != null) bytes += 4L * array.normals.length;
+    if (array.colors != null) bytes += array.colors.length;
+    if (array.texCoords != null) bytes += 4L * array.texCoords.length;
+    if (array instanceof VisADIndexedTriangleStripArray) {
+      VisADIndexedTriangleStripArray indexed =
+        (VisADIndexedTriangleStripArray) array;
+      if (indexed.indices != null) bytes += 4L * indexed.indices.length;
+      if (indexed.stripVertexCounts != null) {
+        bytes += 4L * indexed.stripVertexCounts.length;
+      }
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      int[] counts = ((VisADTriangleStripArray) array).stripVertexCounts;
+      if (counts != null) bytes += 4L * counts.length;
+    }
+    else if (array instanceof VisADLineStripArray) {
+      int[] counts = ((VisADLineStripArray) array).stripVertexCounts;
+      if (counts != null) bytes += 4L * counts.length;
+    }
+    return bytes;
+  }
+
+  /** waits for the next TRANSFORM_DONE event from a display */
+  private static class TransformListener implements DisplayListener {
+
+    private boolean done = false;
+
+    synchronized void reset() {
+      done = false;
+    }
+
+    /**
+     * wait for the event, for at most TRANSFORM_TIMEOUT ms; a transform
+     * that failed on the display's threads never sends one
+     */
+    synchronized void await(String scene) throws VisADException {
+      long end = System.currentTimeMillis() + TRANSFORM_TIMEOUT;
+      while (!done) {
+        long wait = end - System.currentTimeMillis();
+        if (wait <= 0) {
+          throw new VisADException("RenderBenchmarkJ2D: scene " + scene +
+                                   " not transformed within " +
+                                   TRANSFORM_TIMEOUT + " ms");
+        }
+        try {
+          wait(wait);
+        }
+        catch (InterruptedException e) {
+        }
+      }
+    }
+
+    public void displayChanged(DisplayEvent e) {
+      if (e.getId() == DisplayEvent.TRANSFORM_DONE) {
+        synchronized (this) {
+          done = true;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    int iterations = 5;
+    int width = 800;
+    int height = 800;
+    int tiles = 0;
+    Vector scenes = new Vector();
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-iterations")) {
+          iterations = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-tiles")) {
+          tiles = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-size")) {
+          width = Integer.parseInt(args[++i]);
+          height = Integer.parseInt(args[++i]);
+        }
+        else {
+          scenes.addElement(args[i]);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println("usage: java visad.benchmark.RenderBenchmarkJ2D " +
+                         "[-iterations n] [-size width height] " +
+                         "[-tiles size] [scene ...]");
+      System.exit(1);
+    }
+    if (scenes.size() == 0) {
+      for (int i=0; i<SCENES.length; i++) scenes.addElement(SCENES[i]);
+    }
+
+    RenderBenchmarkJ2D benchmark =
+      new RenderBenchmarkJ2D(width, height, iterations);
+    benchmark.setTileSize(tiles);
+    try {
+      for (int i=0; i<scenes.size(); i++) {
+        benchmark.run((String) scenes.elementAt(i)).print(System.out);
+      }
+    }
+    catch (Exception e) {
+      // the display threads would otherwise keep the JVM alive
+      e.printStackTrace();
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+}
+
@@ -0,0 +1,216 @@
+//
+// UnaryBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.Random;
+import java.util.Vector;
+
+import visad.Data;
+import visad.DoubleSet;
+import visad.FlatField;
+import visad.FloatSet;
+import visad.FunctionType;
+import visad.Integer1DSet;
+import visad.Linear1DSet;
+import visad.RealType;
+import visad.Set;
+import visad.Unit;
+import visad.data.units.Parser;
+
+/**
+   UnaryBenchmark measures FlatField.unary for each operator on a field
+   with one range component.  For each case it reports unary_ms, the
+   median time of one unary call, along with the number of samples,
+   the range storage and the number of threads.  The range storage
+   may be:<P>
+   <UL>
+   <LI>float - a FloatSet range
+   <LI>double - a DoubleSet range
+   <LI>byte - packed as byte indices into a 255 sample Linear1DSet
+   <LI>short - packed as short indices into a 65535 sample Linear1DSet
+   </UL><P>
+   Values are in percent, so each case includes their conversion to
+   dimensionless values (except with '-unit none').  Run against an older build
+   for the baseline to compare with.  Run it with:<P>
+   <PRE>
+   java visad.benchmark.UnaryBenchmark [-iterations n] [-size n]
+     [-storage float|double|byte|short] [-unit percent|none] [case ...]
+   </PRE>
+   or 'ant benchmark -Dbenchmark.class=visad.benchmark.UnaryBenchmark'
+   from the core directory.  The number of threads may be set with the
+   visad.flatfield.unary.threads system property.<P>
+*/
+public class UnaryBenchmark {
+
+  /** benchmark name used in reports */
+  public static final String NAME = "flatfield.unary";
+
+  /** names of all cases */
+  public static final String[] CASES = {
+    "abs", "acos", "acos_degrees", "asin", "asin_degrees", "atan",
+    "atan_degrees", "ceil", "cos", "cos_degrees", "exp", "floor", "log",
+    "rint", "round", "sin", "sin_degrees", "sqrt", "tan", "tan_degrees",
+    "negate", "nop"};
+
+  /** operator of each case */
+  private static final int[] OPS = {
+    Data.ABS, Data.ACOS, Data.ACOS_DEGREES, Data.ASIN, Data.ASIN_DEGREES,
+    Data.ATAN, Data.ATAN_DEGREES, Data.CEIL, Data.COS, Data.COS_DEGREES,
+    Data.EXP, Data.FLOOR, Data.LOG, Data.RINT, Data.ROUND, Data.SIN,
+    Data.SIN_DEGREES, Data.SQRT, Data.TAN, Data.TAN_DEGREES, Data.NEGATE,
+    Data.NOP};
+
+  private final int iterations;
+
+  private final int size;
+
+  private final String storage;
+
+  private final FlatField field;
+
+  /**
+   * construct a benchmark of a field of size samples with the given
+   * range storage, in percent if percent is true, running each case
+   * iterations times
+   */
+  public UnaryBenchmark(int iterations, int size, String storage,
+                        boolean percent)
+         throws Exception {
+    this.iterations = (iterations < 1) ? 1 : iterations;
+    this.size = (size < 1) ? 1 : size;
+    this.storage = storage;
+
+    Unit unit = percent ? Parser.parse("percent") : null;
+    RealType index = RealType.getRealType("unary_index");
+    RealType value = RealType.getRealType(percent ? "unary_percent" :
+                                          "unary_value", unit);
+    Set range;
+    if (storage.equals("float")) {
+      range = new FloatSet(value);
+    }
+    else if (storage.equals("double")) {
+      range = new DoubleSet(value);
+    }
+    else if (storage.equals("byte")) {
+      range = new Linear1DSet(value, -1.0, 1.0, 255);
+    }
+    else if (storage.equals("short")) {
+      range = new Linear1DSet(value, -1.0, 1.0, 65535);
+    }
+    else {
+      throw new IllegalArgumentException("unknown storage " + storage);
+    }
+    field = new FlatField(new FunctionType(index, value),
+                          new Integer1DSet(index, this.size), null, null,
+                          new Set[] {range}, new Unit[] {unit});
+    // values in [-1, 1] are in the domain of every operator but log and
+    // sqrt, which give NaN for the negative half
+    Random random = new Random(0);
+    double[][] values = new double[1][this.size];
+    for (int i=0; i<this.size; i++) {
+      values[0][i] = 2.0 * random.nextDouble() - 1.0;
+    }
+    field.setSamples(values, false);
+  }
+
+  /** run the case named name and print its report */
+  public BenchmarkReport run(String name) throws Exception {
+    int op = -1;
+    for (int i=0; i<CASES.length; i++) {
+      if (CASES[i].equals(name)) op = OPS[i];
+    }
+    if (op < 0) throw new IllegalArgumentException("unknown case " + name);
+
+    BenchmarkReport report = new BenchmarkReport(NAME, name);
+    report.put("iterations", iterations);
+    report.put("size", size);
+    report.put("storage", storage);
+    report.put("threads", Integer.getInteger(FlatField.PROP_UNARY_THREADS,
+                 Runtime.getRuntime().availableProcessors()).intValue());
+    double[] times = new double[iterations];
+    for (int i=-1; i<iterations; i++) {
+      long start = System.nanoTime();
+      field.unary(op, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+      // the first pass is a warm up
+      if (i >= 0) times[i] = BenchmarkReport.millisSince(start);
+    }
+    report.put("unary_ms", BenchmarkReport.median(times));
+    report.print(System.out);
+    return report;
+  }
+
+  public static void main(String[] args) {
+    int iterations = 5;
+    int size = 1000000;
+    String storage = "float";
+    boolean percent = true;
+    Vector cases = new Vector();
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-iterations")) {
+          iterations = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-size")) {
+          size = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-storage")) {
+          storage = args[++i];
+        }
+        else if (args[i].equals("-unit")) {
+          percent = !args[++i].equals("none");
+        }
+        else {
+          cases.addElement(args[i]);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println("usage: java visad.benchmark.UnaryBenchmark " +
+                         "[-iterations n] [-size n] " +
+                         "[-storage float|double|byte|short] " +
+                         "[-unit percent|none] [case ...]");
+      System.exit(1);
+    }
+    if (cases.size() == 0) {
+      for (int i=0; i<CASES.length; i++) cases.addElement(CASES[i]);
+    }
+
+    try {
+      UnaryBenchmark benchmark =
+        new UnaryBenchmark(iterations, size, storage, percent);
+      for (int i=0; i<cases.size(); i++) {
+        benchmark.run((String) cases.elementAt(i));
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
+
@@ -0,0 +1,193 @@
+//
+// UnitConversionBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.Vector;
+
+import visad.Unit;
+import visad.UnitConverter;
+import visad.data.units.Parser;
+
+/**
+   UnitConversionBenchmark measures the conversion of float and double
+   arrays between pairs of units.  For each case it reports:<P>
+   <UL>
+   <LI>to_this_float_ms, to_this_double_ms - median time of
+       Unit.toThis(values, that) (which copies the values), as used by
+       FlatField, CoordinateSystem and ScalarMap
+   <LI>converter_float_ms, converter_double_ms - median time to
+       convert the values in place with a UnitConverter obtained once
+   <LI>stages - number of stages of the compiled conversion
+   </UL><P>
+   The to_this cases only use Unit methods that predate UnitConverter,
+   so running with '-path to_this' against an older build gives the
+   baseline to compare with.  Run it with:<P>
+   <PRE>
+   java visad.benchmark.UnitConversionBenchmark [-iterations n]
+     [-values n] [-path to_this|converter] [case ...]
+   </PRE>
+   or 'ant benchmark -Dbenchmark.class=visad.benchmark.UnitConversionBenchmark'
+   from the core directory.<P>
+*/
+public class UnitConversionBenchmark {
+
+  /** benchmark name used in reports */
+  public static final String NAME = "units.convert";
+
+  /** names of all cases, as "from>to" unit specifications */
+  public static final String[] CASES = {
+    "km>m", "degF>K", "knot>m/s", "hPa>kg.m-1.s-2", "Hz>ms",
+    "lg(re 1 mW)>W", "days since 1970-01-01>seconds since 2000-01-01"
+  };
+
+  private final int iterations;
+
+  private final int length;
+
+  private final boolean toThis, converter;
+
+  /**
+   * construct a benchmark converting length values iterations times
+   * per case, along the given path (null for both)
+   */
+  public UnitConversionBenchmark(int iterations, int length, String path) {
+    this.iterations = (iterations < 1) ? 1 : iterations;
+    this.length = (length < 1) ? 1 : length;
+    toThis = path == null || path.equals("to_this");
+    converter = path == null || path.equals("converter");
+  }
+
+  /** run the case named spec and print its report */
+  public BenchmarkReport run(String spec) throws Exception {
+    int split = spec.indexOf('>');
+    Unit from = Parser.parse(spec.substring(0, split));
+    Unit to = Parser.parse(spec.substring(split + 1));
+
+    float[] floats = new float[length];
+    double[] doubles = new double[length];
+    for (int i=0; i<length; i++) {
+      // positive, so logarithmic units are defined
+      doubles[i] = 1.0 + (i % 1000) * 0.01;
+      floats[i] = (float) doubles[i];
+    }
+
+    BenchmarkReport report = new BenchmarkReport(NAME, spec);
+    report.put("iterations", iterations);
+    report.put("values", length);
+    if (toThis) {
+      double[] f = new double[iterations];
+      double[] d = new double[iterations];
+      // warm up
+      to.toThis(floats, from);
+      to.toThis(doubles, from);
+      for (int i=0; i<iterations; i++) {
+        long start = System.nanoTime();
+        to.toThis(floats, from);
+        f[i] = BenchmarkReport.millisSince(start);
+        start = System.nanoTime();
+        to.toThis(doubles, from);
+        d[i] = BenchmarkReport.millisSince(start);
+      }
+      report.put("to_this_float_ms", BenchmarkReport.median(f));
+      report.put("to_this_double_ms", BenchmarkReport.median(d));
+    }
+    if (converter) {
+      UnitConverter c = to.getConverterFrom(from);
+      // convert scratch copies in place, so values stay in range
+      float[] fs = new float[length];
+      double[] ds = new double[length];
+      double[] f = new double[iterations];
+      double[] d = new double[iterations];
+      for (int i=-1; i<iterations; i++) {
+        System.arraycopy(floats, 0, fs, 0, length);
+        System.arraycopy(doubles, 0, ds, 0, length);
+        long start = System.nanoTime();
+        c.convert(fs, false);
+        double tf = BenchmarkReport.millisSince(start);
+        start = System.nanoTime();
+        c.convert(ds, false);
+        double td = BenchmarkReport.millisSince(start);
+        // the first pass is a warm up
+        if (i >= 0) {
+          f[i] = tf;
+          d[i] = td;
+        }
+      }
+      report.put("converter_float_ms", BenchmarkReport.median(f));
+      report.put("converter_double_ms", BenchmarkReport.median(d));
+      report.put("affine", c.isAffine());
+      report.put("stages", c.getStageCount());
+    }
+    report.print(System.out);
+    return report;
+  }
+
+  public static void main(String[] args) {
+    int iterations = 20;
+    int length = 1000000;
+    String path = null;
+    Vector cases = new Vector();
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-iterations")) {
+          iterations = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-values")) {
+          length = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-path")) {
+          path = args[++i];
+        }
+        else {
+          cases.addElement(args[i]);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println("usage: java visad.benchmark.UnitConversionBenchmark " +
+                         "[-iterations n] [-values n] " +
+                         "[-path to_this|converter] [case ...]");
+      System.exit(1);
+    }
+    if (cases.size() == 0) {
+      for (int i=0; i<CASES.length; i++) cases.addElement(CASES[i]);
+    }
+
+    UnitConversionBenchmark benchmark =
+      new UnitConversionBenchmark(iterations, length, path);
+    try {
+      for (int i=0; i<cases.size(); i++) {
+        benchmark.run((String) cases.elementAt(i));
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,218 @@
+//
+// ImagePyramid.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.bom;
+
+import java.lang.ref.SoftReference;
+import java.rmi.RemoteException;
+
+import visad.CoordinateSystem;
+import visad.Field;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Gridded2DSet;
+import visad.GriddedSet;
+import visad.Linear1DSet;
+import visad.Linear2DSet;
+import visad.Set;
+import visad.SetException;
+import visad.Unit;
+import visad.VisADException;
+
+/**
+   ImagePyramid is a lazily built multi-resolution pyramid over an
+   image FlatField, i.e. one with a 2-D GriddedSet domain.  Level 0 is
+   the image itself; level n keeps every 2^n-th element and line of
+   the image, with a domain Set of the same MathType, CoordinateSystem
+   and Units, so it is navigated exactly like the original.  Each
+   level is built from the level below it on first use and cached
+   under a SoftReference, so it may be dropped when memory is short
+   and rebuilt when next requested.  A pyramid over a frame of an
+   image sequence holds level 0 the same way, and fetches it from the
+   sequence again when it has been dropped.<P>
+*/
+public class ImagePyramid {
+
+  /** smallest width or height of any level above level 0 */
+  public static final int MIN_LEVEL_SIZE = 64;
+
+  /** level 0, unless it is a frame of sequence */
+  private final FlatField image;
+
+  private final Field sequence;
+
+  private final int index;
+
+  private final int width, height;
+
+  private final int numLevels;
+
+  private final SoftReference<FlatField>[] levels;
+
+  /**
+   * construct an ImagePyramid over image, whose domain must be a
+   * 2-D GriddedSet
+   */
+  public ImagePyramid(FlatField image) throws VisADException {
+    this(image, null, 0);
+  }
+
+  /**
+   * construct an ImagePyramid over image, the sample at index of
+   * sequence, whose domain must be a 2-D GriddedSet; image is only
+   * softly reachable from the pyramid
+   */
+  public ImagePyramid(FlatField image, Field sequence, int index)
+         throws VisADException {
+    Set set = image.getDomainSet();
+    if (!(set instanceof GriddedSet) || set.getManifoldDimension() != 2 ||
+        set.getDimension() != 2) {
+      throw new SetException("ImagePyramid: image domain must be a " +
+                             "2-D GriddedSet");
+    }
+    this.sequence = sequence;
+    this.index = index;
+    int[] lengths = ((GriddedSet) set).getLengths();
+    width = lengths[0];
+    height = lengths[1];
+    int n = 1;
+    while ((width >> n) >= MIN_LEVEL_SIZE && (height >> n) >= MIN_LEVEL_SIZE) {
+      n++;
+    }
+    numLevels = n;
+    levels = new SoftReference[numLevels];
+    if (sequence == null) {
+      this.image = image;
+    }
+    else {
+      this.image = null;
+      levels[0] = new SoftReference<FlatField>(image);
+    }
+  }
+
+  /** return the image at level 0 */
+  public FlatField getImage() throws VisADException, RemoteException {
+    return getLevel(0);
+  }
+
+  /** return the number of levels, including level 0 */
+  public int getNumLevels() {
+    return numLevels;
+  }
+
+  /**
+   * return the coarsest level whose width and height are still at
+   * least pixelsWide and pixelsHigh; pass the number of screen pixels
+   * the image covers to get the level with about one texel per pixel
+   */
+  public int chooseLevel(double pixelsWide, double pixelsHigh) {
+    int level = 0;
+    while (level + 1 < numLevels &&
+           (width >> (level + 1)) >= pixelsWide &&
+           (height >> (level + 1)) >= pixelsHigh) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * return the image at level, building it (and any finer levels it
+   * is built from) if it is not cached
+   */
+  public FlatField getLevel(int level)
+         throws VisADException, RemoteException {
+    if (level < 0 || level >= numLevels) {
+      throw new VisADException("ImagePyramid.getLevel: bad level " + level);
+    }
+    if (level == 0 && image != null) return image;
+    synchronized (levels) {
+      FlatField field = (levels[level] == null) ? null : levels[level].get();
+      if (field == null) {
+        field = (level == 0) ? (FlatField) sequence.getSample(index) :
+                               halve(getLevel(level - 1));
+        levels[level] = new SoftReference<FlatField>(field);
+      }
+      return field;
+    }
+  }
+
+  /** return field with every second element and line */
+  private static FlatField halve(FlatField field)
+          throws VisADException, RemoteException {
+    GriddedSet set = (GriddedSet) field.getDomainSet();
+    int[] lengths = set.getLengths();
+    int nx = (lengths[0] + 1) / 2;
+    int ny = (lengths[1] + 1) / 2;
+
+    Set new_set;
+    if (set instanceof Linear2DSet) {
+      Linear1DSet x = ((Linear2DSet) set).getLinear1DComponent(0);
+      Linear1DSet y = ((Linear2DSet) set).getLinear1DComponent(1);
+      new_set = new Linear2DSet(set.getType(),
+                    x.getFirst(), x.getFirst() + 2 * (nx - 1) * x.getStep(), nx,
+                    y.getFirst(), y.getFirst() + 2 * (ny - 1) * y.getStep(), ny,
+                    set.getCoordinateSystem(), set.getSetUnits(), null);
+    }
+    else {
+      float[][] samples = set.getSamples(false);
+      new_set = new Gridded2DSet(set.getType(), halve(samples, lengths[0], nx, ny),
+                    nx, ny, set.getCoordinateSystem(), set.getSetUnits(),
+                    null, false);
+    }
+
+    FunctionType type = (FunctionType) field.getType();
+    CoordinateSystem range_coord_sys = type.getReal() ?
+      field.getRangeCoordinateSystem()[0] : null;
+    Unit[][] range_units = field.getRangeUnits();
+    Unit[] units = new Unit[range_units.length];
+    for (int i=0; i<units.length; i++) units[i] = range_units[i][0];
+
+    FlatField new_field = new FlatField(type, new_set, range_coord_sys,
+                                        field.getRangeSets(), units);
+    new_field.setSamples(halve(field.getFloats(false), lengths[0], nx, ny),
+                         false);
+    return new_field;
+  }
+
+  /** subsample rows of width values to nx by ny */
+  private static float[][] halve(float[][] values, int width, int nx, int ny) {
+    float[][] new_values = new float[values.length][nx * ny];
+    for (int k=0; k<values.length; k++) {
+      float[] v = values[k];
+      float[] nv = new_values[k];
+      for (int j=0; j<ny; j++) {
+        int base = 2 * j * width;
+        int new_base = j * nx;
+        for (int i=0; i<nx; i++) {
+          nv[new_base + i] = v[base + 2 * i];
+        }
+      }
+    }
+    return new_values;
+  }
+
+}
+
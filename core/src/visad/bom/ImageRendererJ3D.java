@@ -39,6 +39,8 @@ import javax.swing.JPanel;
 
 import visad.AnimationControl;
 import visad.BadMappingException;
+import visad.ControlEvent;
+import visad.ControlListener;
 import visad.CoordinateSystem;
 import visad.CachingCoordinateSystem;
 import visad.InverseLinearScaledCS;
@@ -46,6 +48,7 @@ import visad.Data;
 import visad.DataDisplayLink;
 import visad.DataReference;
 import visad.DataReferenceImpl;
+import visad.DataShadow;
 import visad.Display;
 import visad.DisplayException;
 import visad.DisplayImpl;
@@ -57,6 +60,7 @@ import visad.FlatField;
 import visad.FunctionType;
 import visad.Gridded1DDoubleSet;
 import visad.MathType;
+import visad.ProjectionControl;
 import visad.RealTupleType;
 import visad.RealType;
 import visad.ScalarMap;
@@ -71,6 +75,7 @@ import visad.VisADException;
 import visad.data.netcdf.Plain;
 import visad.java3d.DefaultRendererJ3D;
 import visad.java3d.DisplayImplJ3D;
+import visad.java3d.MouseBehaviorJ3D;
 import visad.java3d.ShadowTypeJ3D;
 import visad.java3d.VisADBranchGroup;
 import visad.java3d.VisADImageNode;
@@ -369,6 +374,20 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
 
   private boolean lastByRef = false;
 
+  // level of detail state; lodLevel is the pyramid level matching the
+  // current projection scale, lodChanged is set when it differs from
+  // the level last transformed
+  private boolean levelOfDetail = false;
+  private volatile int lodLevel = 0;
+  private volatile boolean lodChanged = false;
+  private ProjectionControl lodControl = null;
+  private ControlListener lodListener = null;
+  private Data lodSource = null;
+  private long lodSourceTick = 0;
+  private ImagePyramid[] lodPyramids = null;
+  private Data lodData = null;
+  private int lodDataLevel = 0;
+
 
   public static boolean isByRefUsable(DataDisplayLink link, ShadowType shadow) throws VisADException, RemoteException {
         ShadowFunctionOrSetType shadowType = (ShadowFunctionOrSetType) shadow.getAdaptedShadowType();
@@ -532,6 +551,197 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
     return setSetOnReUseFrames;
   }
 
+  /**
+   * Toggle level of detail rendering.  When on, each image is rendered
+   * from the level of an ImagePyramid (built lazily per image and
+   * cached) that has about one texel per screen pixel at the current
+   * ProjectionControl scale, and the image is re-rendered from a
+   * finer or coarser level as the display is zoomed.  The pixel
+   * coverage assumes the image spans the display box.
+   */
+  public void setLevelOfDetail(boolean lod) {
+    levelOfDetail = lod;
+    if (!lod) {
+      removeLevelOfDetailListener();
+      lodSource = null;
+      lodPyramids = null;
+      lodData = null;
+      if (lodLevel != 0) {
+        lodLevel = 0;
+        lodChanged = true;
+      }
+    }
+  }
+
+  public boolean getLevelOfDetail() {
+    return levelOfDetail;
+  }
+
+  /** return the ImagePyramid level currently rendered */
+  public int getLevelOfDetailLevel() {
+    return lodDataLevel;
+  }
+
+  /**
+   * force a re-transform when the level of detail has changed since
+   * the last transform
+   */
+  public DataShadow prepareAction(boolean go, boolean initialize,
+                                  DataShadow shadow)
+         throws VisADException, RemoteException {
+    return super.prepareAction(go || lodChanged, initialize, shadow);
+  }
+
+  /**
+   * return data with each image replaced by the level of its
+   * ImagePyramid selected by the last ProjectionControl change; for
+   * a sequence, the pyramid and level of each frame are only built
+   * when the transform asks for that frame.  The pyramids are rebuilt
+   * when data is replaced or its reference's tick changes, so samples
+   * changed in place are not drawn from stale levels
+   */
+  private Data getLevelOfDetailData(Data data, long tick)
+          throws VisADException, RemoteException {
+    lodChanged = false;
+    if (!levelOfDetail) return data;
+    addLevelOfDetailListener();
+
+    if (data != lodSource || tick != lodSourceTick) {
+      lodSource = data;
+      lodSourceTick = tick;
+      lodData = null;
+      int n = (data instanceof FlatField) ? 1 : ((Field) data).getLength();
+      lodPyramids = new ImagePyramid[n];
+      lodLevel = chooseLevel();
+    }
+    if (lodPyramids.length == 0) return data;
+
+    int level = lodLevel;
+    ImagePyramid first = getPyramid(data, lodPyramids, 0);
+    if (first != null) level = Math.min(level, first.getNumLevels() - 1);
+    if (level == 0) {
+      lodDataLevel = 0;
+      return data;
+    }
+    if (lodData == null || lodDataLevel != level) {
+      if (data instanceof FlatField) {
+        lodData = first.getLevel(level);
+      }
+      else {
+        lodData = new LevelOfDetailSequence((FieldImpl) data, lodPyramids,
+                                            level);
+      }
+      lodDataLevel = level;
+    }
+    return lodData;
+  }
+
+  /**
+   * return the ImagePyramid of frame i of data (an image or image
+   * sequence), building it on first use, or null if the frame is
+   * missing
+   */
+  private static ImagePyramid getPyramid(Data data, ImagePyramid[] pyramids,
+                                         int i)
+          throws VisADException, RemoteException {
+    synchronized (pyramids) {
+      if (pyramids[i] == null) {
+        if (data instanceof FlatField) {
+          pyramids[i] = new ImagePyramid((FlatField) data);
+        }
+        else {
+          Data frame = ((Field) data).getSample(i);
+          if (!(frame instanceof FlatField) || frame.isMissing()) return null;
+          pyramids[i] = new ImagePyramid((FlatField) frame, (Field) data, i);
+        }
+      }
+      return pyramids[i];
+    }
+  }
+
+  /**
+   * an image sequence whose frames are those of another sequence at
+   * one level of their ImagePyramids, each built when first asked for
+   */
+  private static class LevelOfDetailSequence extends FieldImpl {
+
+    private final FieldImpl sequence;
+    private final ImagePyramid[] pyramids;
+    private final int level;
+
+    LevelOfDetailSequence(FieldImpl sequence, ImagePyramid[] pyramids,
+                          int level) throws VisADException {
+      super((FunctionType) sequence.getType(), sequence.getDomainSet(), false);
+      this.sequence = sequence;
+      this.pyramids = pyramids;
+      this.level = level;
+    }
+
+    public boolean isMissing() {
+      return sequence.isMissing();
+    }
+
+    public Data getSample(int index, boolean metadataOnly)
+           throws VisADException, RemoteException {
+      if (index < 0 || index >= pyramids.length) {
+        return sequence.getSample(index, metadataOnly);
+      }
+      ImagePyramid pyramid = getPyramid(sequence, pyramids, index);
+      if (pyramid == null) return sequence.getSample(index, metadataOnly);
+      return pyramid.getLevel(Math.min(level, pyramid.getNumLevels() - 1));
+    }
+  }
+
+  /** return the pyramid level matching the current projection scale */
+  private int chooseLevel() throws VisADException, RemoteException {
+    DisplayImpl display = getDisplay();
+    Data data = lodSource;
+    ImagePyramid[] pyramids = lodPyramids;
+    if (display == null || data == null || pyramids == null ||
+        pyramids.length == 0) {
+      return 0;
+    }
+    java.awt.Component component = display.getComponent();
+    if (component == null || component.getWidth() <= 0) return 0;
+    ImagePyramid pyramid = getPyramid(data, pyramids, 0);
+    if (pyramid == null) return 0;
+    ProjectionControl control = display.getProjectionControl();
+    double[] rot = new double[3];
+    double[] scale = new double[1];
+    double[] trans = new double[3];
+    MouseBehaviorJ3D.unmake_matrix(rot, scale, trans, control.getMatrix());
+    // the display box spans about one canvas width at scale 1
+    double pixels = scale[0] * component.getWidth();
+    double aspect = scale[0] * component.getHeight();
+    return pyramid.chooseLevel(pixels, aspect);
+  }
+
+  private void addLevelOfDetailListener() {
+    if (lodListener != null || getDisplay() == null) return;
+    lodControl = getDisplay().getProjectionControl();
+    lodListener = new ControlListener() {
+      public void controlChanged(ControlEvent e)
+             throws VisADException, RemoteException {
+        int level = chooseLevel();
+        if (level != lodLevel) {
+          lodLevel = level;
+          lodChanged = true;
+          DisplayImpl display = getDisplay();
+          if (display != null) display.controlChanged();
+        }
+      }
+    };
+    lodControl.addControlListener(lodListener);
+  }
+
+  private void removeLevelOfDetailListener() {
+    if (lodListener != null) {
+      lodControl.removeControlListener(lodListener);
+      lodListener = null;
+      lodControl = null;
+    }
+  }
+
   // logic to allow ShadowImageFunctionTypeJ3D to 'mark' missing frames
   private VisADBranchGroup vbranch = null;
 
@@ -620,11 +830,13 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
       link.start_time = System.currentTimeMillis();
       link.time_flag = false;
       vbranch = null;
+      boolean lod_changed = lodChanged;
+      data = getLevelOfDetailData(data, link.getThingReference().getTick());
       // transform data into a depiction under branch
 	long t1 = System.currentTimeMillis();
       try {
 	if (type instanceof ShadowImageByRefFunctionTypeJ3D) { //GEOMETRY/COLORBYTE REUSE LOGIC Only for ByRef for Time being
-		if (checkAction()) { //This generally decides whether at all retransformation is required or not.
+		if (checkAction() || lod_changed) { //This generally decides whether at all retransformation is required or not.
 	        	type.doTransform(branch, data, valueArray,
                          	link.getDefaultValues(), this);
 		}
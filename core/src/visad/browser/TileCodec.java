@@ -0,0 +1,206 @@
+//
+// TileCodec.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.browser;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * Encodes and decodes display images as the tiles that changed since the
+ * previous image, for sending from a SocketSlaveDisplay to VisADApplet
+ * clients over slow links.  Like the rest of this package it uses only
+ * JDK 1.1 code.<P>
+ *
+ * An encoded frame is:<P>
+ * <PRE>
+ *   int FRAME_CODE
+ *   int width, height, tileSize, flags
+ *   int count, followed by count tile numbers (row major)
+ *   int length, followed by length bytes of deflated tile pixels
+ * </PRE>
+ * The pixels of each listed tile are its rows, with each pixel XORed
+ * with the same pixel of the previous frame (or with 0 in a key frame,
+ * which lists every tile), so unchanged parts of a tile become runs of
+ * zeroes that deflate compresses well.
+ */
+public class TileCodec {
+
+  /**
+   * Code, in place of an image width, that starts an encoded frame.
+   */
+  public static final int FRAME_CODE = -2;
+
+  /**
+   * Default width and height of a tile, in pixels.
+   */
+  public static final int DEFAULT_TILE_SIZE = 32;
+
+  /**
+   * Flag for a key frame, which does not depend on the previous frame.
+   */
+  public static final int KEY_FRAME = 1;
+
+  /**
+   * Returns the numbers of the tiles of current that differ from previous.
+   */
+  public static int[] changedTiles(int[] previous, int[] current,
+    int width, int height, int tileSize)
+  {
+    int nx = (width + tileSize - 1) / tileSize;
+    int ny = (height + tileSize - 1) / tileSize;
+    int[] tiles = new int[nx * ny];
+    int count = 0;
+    for (int ty=0; ty<ny; ty++) {
+      int y0 = ty * tileSize;
+      int y1 = Math.min(y0 + tileSize, height);
+      for (int tx=0; tx<nx; tx++) {
+        int x0 = tx * tileSize;
+        int x1 = Math.min(x0 + tileSize, width);
+        boolean changed = false;
+        for (int y=y0; y<y1 && !changed; y++) {
+          for (int i=y*width+x0; i<y*width+x1; i++) {
+            if (previous[i] != current[i]) {
+              changed = true;
+              break;
+            }
+          }
+        }
+        if (changed) tiles[count++] = ty * nx + tx;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(tiles, 0, result, 0, count);
+    return result;
+  }
+
+  /**
+   * Encodes current as a frame; if previous is null, or a different size,
+   * the result is a key frame.
+   */
+  public static byte[] encode(int[] previous, int[] current,
+    int width, int height, int tileSize) throws IOException
+  {
+    boolean key = (previous == null || previous.length != current.length);
+    int[] tiles;
+    if (key) {
+      int nx = (width + tileSize - 1) / tileSize;
+      int ny = (height + tileSize - 1) / tileSize;
+      tiles = new int[nx * ny];
+      for (int i=0; i<tiles.length; i++) tiles[i] = i;
+    }
+    else tiles = changedTiles(previous, current, width, height, tileSize);
+
+    // deflate the XORed pixels of the listed tiles
+    ByteArrayOutputStream zbytes = new ByteArrayOutputStream();
+    DeflaterOutputStream zout = new DeflaterOutputStream(zbytes);
+    int nx = (width + tileSize - 1) / tileSize;
+    byte[] row = new byte[4 * tileSize];
+    for (int t=0; t<tiles.length; t++) {
+      int x0 = (tiles[t] % nx) * tileSize;
+      int y0 = (tiles[t] / nx) * tileSize;
+      int x1 = Math.min(x0 + tileSize, width);
+      int y1 = Math.min(y0 + tileSize, height);
+      for (int y=y0; y<y1; y++) {
+        int k = 0;
+        for (int i=y*width+x0; i<y*width+x1; i++) {
+          int q = key ? current[i] : current[i] ^ previous[i];
+          row[k++] = (byte) (q >>> 24);
+          row[k++] = (byte) (q >>> 16);
+          row[k++] = (byte) (q >>> 8);
+          row[k++] = (byte) q;
+        }
+        zout.write(row, 0, k);
+      }
+    }
+    zout.finish();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(FRAME_CODE);
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeInt(tileSize);
+    out.writeInt(key ? KEY_FRAME : 0);
+    out.writeInt(tiles.length);
+    for (int t=0; t<tiles.length; t++) out.writeInt(tiles[t]);
+    out.writeInt(zbytes.size());
+    zbytes.writeTo(out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a frame from in, whose FRAME_CODE has already been read,
+   * and returns its pixels; previous holds the pixels of the previous
+   * frame, and is not modified.  The width and height of the frame are
+   * returned in size.
+   */
+  public static int[] decode(DataInputStream in, int[] previous, int[] size)
+    throws IOException
+  {
+    int width = in.readInt();
+    int height = in.readInt();
+    int tileSize = in.readInt();
+    int flags = in.readInt();
+    int count = in.readInt();
+    int[] tiles = new int[count];
+    for (int t=0; t<count; t++) tiles[t] = in.readInt();
+    int len = in.readInt();
+    byte[] zbytes = new byte[len];
+    in.readFully(zbytes);
+    size[0] = width;
+    size[1] = height;
+
+    boolean key = (flags & KEY_FRAME) != 0;
+    int[] pixels = new int[width * height];
+    if (!key) {
+      if (previous == null || previous.length != pixels.length) {
+        throw new IOException("TileCodec: no previous frame for delta");
+      }
+      System.arraycopy(previous, 0, pixels, 0, pixels.length);
+    }
+
+    DataInputStream zin = new DataInputStream(
+      new BufferedInputStream(
+      new InflaterInputStream(new ByteArrayInputStream(zbytes))));
+    int nx = (width + tileSize - 1) / tileSize;
+    for (int t=0; t<count; t++) {
+      int x0 = (tiles[t] % nx) * tileSize;
+      int y0 = (tiles[t] / nx) * tileSize;
+      int x1 = Math.min(x0 + tileSize, width);
+      int y1 = Math.min(y0 + tileSize, height);
+      for (int y=y0; y<y1; y++) {
+        for (int i=y*width+x0; i<y*width+x1; i++) {
+          int q = zin.readInt();
+          pixels[i] = key ? q : pixels[i] ^ q;
+        }
+      }
+    }
+    return pixels;
+  }
+
+}
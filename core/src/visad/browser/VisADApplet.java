@@ -74,6 +74,11 @@ public class VisADApplet extends Applet
    */
   public static final int MESSAGE = 2;
 
+  /**
+   * Code for requesting images as changed tiles (see TileCodec).
+   */
+  public static final int TILE_FRAMES = 3;
+
   /**
    * Whether the applet client is connected to a server.
    */
@@ -292,6 +297,28 @@ public class VisADApplet extends Applet
     }
   }
 
+  /**
+   * Pixels of the last image received as a TileCodec frame.
+   */
+  private int[] framePixels = null;
+
+  /**
+   * Asks the server to send images as changed tiles. Servers that
+   * predate TileCodec ignore the request and send whole images.
+   */
+  private void requestTileFrames() {
+    if (out != null) {
+      try {
+        out.writeInt(id);
+        out.writeInt(TILE_FRAMES);
+      }
+      catch (IOException exc) {
+        // problem communicating with server; it has probably disconnected
+        disconnect();
+      }
+    }
+  }
+
   /**
    * Requests a refresh from the server.
    */
@@ -451,6 +478,8 @@ public class VisADApplet extends Applet
       public void run() {
         try {
           // request a refresh so that the server sends the image
+          framePixels = null;
+          requestTileFrames();
           requestRefresh();
 
           // loop until the socket gets closed
@@ -458,7 +487,24 @@ public class VisADApplet extends Applet
             // read the latest display image
             int w = in.readInt();
             if (w == 0) continue;
-            if (w == -1) {
+            if (w == TileCodec.FRAME_CODE) {
+              // server is sending the changed tiles of the image
+              int[] size = new int[2];
+              framePixels = TileCodec.decode(in, framePixels, size);
+
+              // reconstruct the image locally
+              if (image != null) image.flush();
+              image = createImage(new MemoryImageSource(size[0], size[1],
+                framePixels, 0, size[0]));
+              MediaTracker tracker = new MediaTracker(myself);
+              tracker.addImage(image,0);
+              try { tracker.waitForAll(); }
+              catch (Exception tex) {;}
+
+              // redraw the applet's display canvas
+              canvas.paint(canvas.getGraphics());
+            }
+            else if (w == -1) {
               // server is sending a message
               int len = in.readInt();
               char[] c = new char[len];
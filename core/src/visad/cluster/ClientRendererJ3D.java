@@ -55,6 +55,18 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
   private RemoteClientAgentImpl focus_agent = null;
   private RemoteAgentContact[] contacts = null;
 
+  /** contacts for agents on replicas of partitions follow those
+      on the partitions in jvmTable (i.e., contacts) */
+  private RemoteAgentContact[] all_contacts = null;
+
+  private static final boolean DEBUG = false;
+
+  /** hands out partitions to agents in all_contacts */
+  private PartitionScheduler scheduler = null;
+
+  /** ms doTransform waits for stragglers once some partitions are in */
+  private long progressive_time = 250;
+
   private long time_out = 10000;
 
   private int[] resolutions = null;
@@ -67,6 +79,24 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
     time_out = to;
   }
 
+  /** set the time doTransform waits for the slowest nodes once it
+      has some partitions; partitions that arrive later are added to
+      the scene graph as they arrive; a time equal to the time out
+      waits for all partitions */
+  public void setProgressiveTime(long ms) {
+    progressive_time = ms;
+  }
+
+  public long getProgressiveTime() {
+    return progressive_time;
+  }
+
+  /** return the PartitionScheduler for the current cluster data,
+      for its latency measurements; may be null */
+  public PartitionScheduler getScheduler() {
+    return scheduler;
+  }
+
   public void setResolutions(int[] rs) {
     if (rs == null) return;
     int n = rs.length;
@@ -126,15 +156,40 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
         RemoteClientDataImpl rcdi = (RemoteClientDataImpl) data;
         focus_agent = new RemoteClientAgentImpl(null, -1, time_out);
         RemoteClusterData[] jvmTable = rcdi.getTable();
-        int nagents = jvmTable.length - 1;
+        RemoteClusterData[][] replicas = rcdi.getReplicaTable();
+        int nparts = jvmTable.length - 1;
+
+        // one agent per partition, then one per replica
+        Vector nodes = new Vector();
+        int[][] candidates = new int[nparts][];
+        for (int i=0; i<nparts; i++) nodes.addElement(jvmTable[i]);
+        for (int i=0; i<nparts; i++) {
+          int nreps = (replicas == null || i >= replicas.length ||
+                       replicas[i] == null) ? 0 : replicas[i].length;
+          candidates[i] = new int[1 + nreps];
+          candidates[i][0] = i;
+          for (int j=0; j<nreps; j++) {
+            candidates[i][1 + j] = nodes.size();
+            nodes.addElement(replicas[i][j]);
+          }
+        }
+
+        int nagents = nodes.size();
         agents = new RemoteClientAgentImpl[nagents];
-        contacts = new RemoteAgentContact[nagents];
+        all_contacts = new RemoteAgentContact[nagents];
+        String[] node_ids = new String[nagents];
         for (int i=0; i<nagents; i++) {
+          RemoteNodeData node = (RemoteNodeData) nodes.elementAt(i);
           agents[i] = new RemoteClientAgentImpl(focus_agent, i);
           DefaultNodeRendererAgent node_agent =
             new DefaultNodeRendererAgent(agents[i], display.getName(), cmaps);
-          contacts[i] = ((RemoteNodeData) jvmTable[i]).sendAgent(node_agent);
+          all_contacts[i] = node.sendAgent(node_agent);
+          node_ids[i] = node.getNodeId();
         }
+        contacts = new RemoteAgentContact[nparts];
+        System.arraycopy(all_contacts, 0, contacts, 0, nparts);
+        scheduler = new PartitionScheduler(candidates, node_ids);
+        focus_agent.setScheduler(scheduler);
       }
     }
 
@@ -150,7 +205,7 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
       message.addElement(map.getControl());
     }
     Serializable[] responses =
-      focus_agent.broadcastWithResponses(message, contacts); // PROXY
+      focus_agent.broadcastWithResponses(message, all_contacts); // PROXY
 // System.out.println("ClientRendererJ3D.prepareAction messages received");
 
 
@@ -193,17 +248,13 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
       }
     }
 
-    // responses are VisADGroups
-    Serializable[] responses =
-      focus_agent.broadcastWithResponses(messages, contacts);
-// System.out.println("ClientRendererJ3D.doTransform messages received");
-
     // responses are VisADGroups
     // need to:
     // 1. rebuild images and volumes
     // 2. convert from VisADGroups to BranchGroups
     //    GeometryArray = display.makeGeometry(VisADGeometryArray)
     // 3. add them as children of branch
+    // which PartitionAttacher does for each response as it arrives
 
     // link.clearData(); ????
 
@@ -213,17 +264,80 @@ public class ClientRendererJ3D extends DefaultRendererJ3D {
     branch.setCapability(Group.ALLOW_CHILDREN_WRITE);
     branch.setCapability(Group.ALLOW_CHILDREN_EXTEND);
 
-    n = responses.length;
-    for (int i=0; i<n; i++) {
-      if (responses[i] != null) {
-        VisADSceneGraphObject vsgo = (VisADSceneGraphObject) responses[i];
-        branch.addChild(convertSceneGraph(vsgo));
+    PartitionAttacher attacher = new PartitionAttacher(branch);
+    scheduler.start(messages, all_contacts, attacher);
+    // show what has arrived after progressive_time; the rest is
+    // attached to branch, which is then live, as it arrives
+    if (!scheduler.await(progressive_time, time_out) &&
+        scheduler.getReceived() == 0 && DEBUG) {
+      System.out.println("ClientRendererJ3D.doTransform time out");
+    }
+// System.out.println("ClientRendererJ3D.doTransform messages received");
+
+    synchronized (attacher) {
+      attacher.returned = true;
+      if (attacher.error >= 0) {
+        throw new ClusterException("error from node " + attacher.error);
+      }
+      if (branch.numChildren() == 0) {
+        ShadowTypeJ3D.ensureNotEmpty(branch, display);
       }
     }
-    if (n == 0) ShadowTypeJ3D.ensureNotEmpty(branch, display);
     return branch;
   }
 
+  /** converts responses to Java3D and adds them to a branch */
+  private class PartitionAttacher implements PartitionScheduler.Listener {
+
+    private final BranchGroup branch;
+
+    /** true once doTransform has returned branch */
+    boolean returned = false;
+
+    /** index of a partition that reported an error, or -1 */
+    int error = -1;
+
+    PartitionAttacher(BranchGroup b) {
+      branch = b;
+    }
+
+    public synchronized void partitionDone(int partition, int agent,
+                                           Serializable response) {
+      if (response instanceof CompactSceneGraph) {
+        response = ((CompactSceneGraph) response).getSceneGraph();
+      }
+      if (!(response instanceof VisADSceneGraphObject)) {
+        if ("error".equals(response)) {
+          if (returned) {
+            System.out.println("ClientRendererJ3D: error from node " +
+                               partition);
+          }
+          else {
+            error = partition;
+          }
+        }
+        return;
+      }
+      try {
+        Node node = convertSceneGraph((VisADSceneGraphObject) response);
+        // only BranchGroups may be added to a live scene graph
+        BranchGroup group;
+        if (node instanceof BranchGroup) {
+          group = (BranchGroup) node;
+        }
+        else {
+          group = new BranchGroup();
+          group.addChild(node);
+        }
+        group.setCapability(BranchGroup.ALLOW_DETACH);
+        branch.addChild(group);
+      }
+      catch (VisADException e) {
+        DisplayImpl.printStack("ex " + e);
+      }
+    }
+  }
+
   private boolean enable_spatial = true;
 
   public synchronized void setSpatialValues(float[][] spatial_values) {
@@ -0,0 +1,112 @@
+//
+// ClusterPartitioner.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import visad.*;
+
+/**
+   ClusterPartitioner splits images (FlatFields with Linear2DSet
+   domains) into partitions for cluster nodes.  The domain may be
+   split into more partitions than there are nodes, so that several
+   partitions live on each node and PartitionScheduler can balance
+   the load by moving partitions between nodes that hold replicas.<P>
+*/
+public class ClusterPartitioner extends Object {
+
+  private ClusterPartitioner() {
+  }
+
+  /** return a partition Set splitting domain_set into divide_x by
+      divide_y partitions, for setupClusterData */
+  public static Linear2DSet makePartitionSet(Linear2DSet domain_set,
+                                             int divide_x, int divide_y)
+         throws VisADException {
+    Linear1DSet x_set = domain_set.getX();
+    Linear1DSet y_set = domain_set.getY();
+    return new Linear2DSet(((SetType) domain_set.getType()).getDomain(),
+                           x_set.getFirst(), x_set.getLast(), divide_x,
+                           y_set.getFirst(), y_set.getLast(), divide_y,
+                           domain_set.getCoordinateSystem(),
+                           domain_set.getSetUnits(), null);
+  }
+
+  /** return the subsets of domain_set in each partition of ps, indexed
+      like ps; the samples of domain_set are assigned to partitions by
+      ps.valueToIndex(), just as RemoteClusterDataImpl.getClusterData()
+      assigns them */
+  public static Linear2DSet[] makeSubsets(Linear2DSet domain_set,
+                                          Linear2DSet ps)
+         throws VisADException {
+    int nparts = ps.getLength();
+    if (nparts == 1) return new Linear2DSet[] {domain_set};
+
+    RealTupleType domain_type = ((SetType) domain_set.getType()).getDomain();
+    int x_len = domain_set.getX().getLength();
+    int len = domain_set.getLength();
+    int[] indices = new int[len];
+    for (int i=0; i<len; i++) indices[i] = i;
+    float[][] values = domain_set.indexToValue(indices);
+    int[] ps_indices = ps.valueToIndex(values);
+    float[][] firsts = new float[2][nparts];
+    float[][] lasts = new float[2][nparts];
+    int[][] lows = new int[2][nparts];
+    int[][] his = new int[2][nparts];
+    for (int j=0; j<2; j++) {
+      for (int i=0; i<nparts; i++) {
+        firsts[j][i] = Float.MAX_VALUE;
+        lasts[j][i] = -Float.MAX_VALUE;
+        lows[j][i] = len + 1;
+        his[j][i] = -1;
+      }
+    }
+    for (int i=0; i<len; i++) {
+      int k = ps_indices[i];
+      if (k < 0) continue;
+      int[] index = {indices[i] % x_len, indices[i] / x_len};
+      for (int j=0; j<2; j++) {
+        if (values[j][i] < firsts[j][k]) firsts[j][k] = values[j][i];
+        if (values[j][i] > lasts[j][k]) lasts[j][k] = values[j][i];
+        if (index[j] < lows[j][k]) lows[j][k] = index[j];
+        if (index[j] > his[j][k]) his[j][k] = index[j];
+      }
+    }
+    Linear2DSet[] subsets = new Linear2DSet[nparts];
+    for (int k=0; k<nparts; k++) {
+      if (his[0][k] < 0 || his[1][k] < 0) {
+        throw new ClusterException("Set partition error");
+      }
+      subsets[k] =
+        new Linear2DSet(domain_type,
+                    firsts[0][k], lasts[0][k], (his[0][k] - lows[0][k] + 1),
+                    firsts[1][k], lasts[1][k], (his[1][k] - lows[1][k] + 1),
+                    domain_set.getCoordinateSystem(),
+                    domain_set.getSetUnits(), null);
+    }
+    return subsets;
+  }
+
+}
@@ -0,0 +1,273 @@
+//
+// CompactSceneGraph.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import visad.VisADGeometryArray;
+import visad.VisADSceneGraphObject;
+
+/**
+   CompactSceneGraph wraps a VisADSceneGraphObject for sending from a
+   cluster node to the client.  The scene graph is serialized as
+   usual, except that its VisADGeometryArrays are written with
+   GeometryCodec, and the whole is optionally deflated.  The default
+   coordinate mode and deflation are set by the visad.cluster.geometry
+   ("raw", "half" or "quantized") and visad.cluster.deflate system
+   properties.<P>
+
+   If a SharedMemoryStore is given, the client is on the same host
+   and the geometry arrays are passed through shared memory instead,
+   so only the structure of the scene graph is serialized.<P>
+*/
+public class CompactSceneGraph implements Externalizable {
+
+  /** system property with the default coordinate mode */
+  public static final String PROP_GEOMETRY = "visad.cluster.geometry";
+
+  /** system property with the default for deflating */
+  public static final String PROP_DEFLATE = "visad.cluster.deflate";
+
+  private static final String[] MODE_NAMES = {"raw", "half", "quantized"};
+
+  private VisADSceneGraphObject scene;
+
+  private int mode;
+
+  private boolean deflate;
+
+  /** store for geometry arrays, or null to write them to the stream */
+  private transient SharedMemoryStore store = null;
+
+  /** constructor for deserialization only */
+  public CompactSceneGraph() {
+  }
+
+  /** wrap scene with the default coordinate mode and deflation */
+  public CompactSceneGraph(VisADSceneGraphObject scene) {
+    this(scene, getDefaultMode(), getDefaultDeflate());
+  }
+
+  /**
+   * wrap scene with mode (GeometryCodec.RAW, HALF or QUANTIZED)
+   * coordinates, deflated if deflate is true
+   */
+  public CompactSceneGraph(VisADSceneGraphObject scene, int mode,
+                           boolean deflate) {
+    this.scene = scene;
+    this.mode = mode;
+    this.deflate = deflate;
+  }
+
+  /**
+   * wrap scene with its geometry arrays passed through store, or
+   * with the default coordinate mode and deflation if store is null
+   */
+  public CompactSceneGraph(VisADSceneGraphObject scene,
+                           SharedMemoryStore store) {
+    this(scene, GeometryCodec.RAW, false);
+    this.store = store;
+    if (store == null) {
+      mode = getDefaultMode();
+      deflate = getDefaultDeflate();
+    }
+  }
+
+  /** return the coordinate mode named by the visad.cluster.geometry property */
+  public static int getDefaultMode() {
+    String name = System.getProperty(PROP_GEOMETRY);
+    for (int i=0; i<MODE_NAMES.length; i++) {
+      if (MODE_NAMES[i].equalsIgnoreCase(name)) return i;
+    }
+    return GeometryCodec.RAW;
+  }
+
+  /** return the value of the visad.cluster.deflate property, default true */
+  public static boolean getDefaultDeflate() {
+    String value = System.getProperty(PROP_DEFLATE);
+    return (value == null) || Boolean.valueOf(value).booleanValue();
+  }
+
+  public VisADSceneGraphObject getSceneGraph() {
+    return scene;
+  }
+
+  public int getMode() {
+    return mode;
+  }
+
+  public boolean getDeflate() {
+    return deflate;
+  }
+
+  /** return the encoded form of this scene graph, as sent on the wire */
+  public byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputStream os = bytes;
+    Deflater deflater = null;
+    if (deflate) {
+      deflater = new Deflater(Deflater.BEST_SPEED);
+      os = new DeflaterOutputStream(bytes, deflater, 8192);
+    }
+    ObjectOutputStream oos = new GeometryOutputStream(os, mode, store);
+    oos.writeObject(scene);
+    oos.close();
+    if (deflater != null) deflater.end();
+    return bytes.toByteArray();
+  }
+
+  /** return the scene graph encoded by toBytes */
+  public static VisADSceneGraphObject fromBytes(byte[] bytes, boolean deflate)
+         throws IOException {
+    InputStream is = new ByteArrayInputStream(bytes);
+    if (deflate) is = new InflaterInputStream(is);
+    ObjectInputStream ois = new GeometryInputStream(is);
+    try {
+      return (VisADSceneGraphObject) ois.readObject();
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException("CompactSceneGraph.fromBytes: " + e.getMessage());
+    }
+    finally {
+      ois.close();
+    }
+  }
+
+  public void writeExternal(ObjectOutput out) throws IOException {
+    byte[] bytes = toBytes();
+    out.writeByte(mode);
+    out.writeBoolean(deflate);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public void readExternal(ObjectInput in) throws IOException {
+    mode = in.readByte();
+    deflate = in.readBoolean();
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    scene = fromBytes(bytes, deflate);
+  }
+
+  /** stand-in written in place of each VisADGeometryArray */
+  public static class EncodedArray implements Externalizable {
+
+    private VisADGeometryArray array;
+
+    private int mode;
+
+    private SharedMemoryStore store;
+
+    /** constructor for deserialization only */
+    public EncodedArray() {
+    }
+
+    EncodedArray(VisADGeometryArray array, int mode, SharedMemoryStore store) {
+      this.array = array;
+      this.mode = mode;
+      this.store = store;
+    }
+
+    VisADGeometryArray getArray() {
+      return array;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeBoolean(store != null);
+      if (store != null) {
+        GeometryCodec.writeShared(out, array, store);
+      }
+      else {
+        GeometryCodec.write(out, array, mode);
+      }
+    }
+
+    public void readExternal(ObjectInput in) throws IOException {
+      if (in.readBoolean()) {
+        SharedMemoryStore shared = SharedMemoryStore.getDefault();
+        if (shared == null) {
+          throw new IOException("CompactSceneGraph: no SharedMemoryStore" +
+                                " for shared geometry");
+        }
+        array = GeometryCodec.readShared(in, shared);
+      }
+      else {
+        array = GeometryCodec.read(in);
+      }
+    }
+  }
+
+  /** replaces VisADGeometryArrays by EncodedArrays */
+  private static class GeometryOutputStream extends ObjectOutputStream {
+
+    private final int mode;
+
+    private final SharedMemoryStore store;
+
+    GeometryOutputStream(OutputStream out, int mode, SharedMemoryStore store)
+           throws IOException {
+      super(out);
+      this.mode = mode;
+      this.store = store;
+      enableReplaceObject(true);
+    }
+
+    protected Object replaceObject(Object obj) {
+      if (GeometryCodec.canEncode(obj)) {
+        return new EncodedArray((VisADGeometryArray) obj, mode, store);
+      }
+      return obj;
+    }
+  }
+
+  /** resolves EncodedArrays to VisADGeometryArrays */
+  private static class GeometryInputStream extends ObjectInputStream {
+
+    GeometryInputStream(InputStream in) throws IOException {
+      super(in);
+      enableResolveObject(true);
+    }
+
+    protected Object resolveObject(Object obj) {
+      if (obj instanceof EncodedArray) return ((EncodedArray) obj).getArray();
+      return obj;
+    }
+  }
+
+}
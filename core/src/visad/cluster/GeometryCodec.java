@@ -0,0 +1,445 @@
+//
+// GeometryCodec.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import visad.VisADGeometryArray;
+import visad.VisADIndexedTriangleStripArray;
+import visad.VisADLineArray;
+import visad.VisADLineStripArray;
+import visad.VisADPointArray;
+import visad.VisADQuadArray;
+import visad.VisADTriangleArray;
+import visad.VisADTriangleStripArray;
+
+/**
+   GeometryCodec is a compact binary encoding of VisADGeometryArrays,
+   used by CompactSceneGraph to ship scene graphs from cluster nodes
+   to the client.  Coordinates and texture coordinates may be written
+   as raw floats (RAW), as IEEE half precision floats (HALF), or as
+   16 bit integers quantized over the range of each component
+   (QUANTIZED); in the lossy modes normals are written as bytes.
+   Colors, strip counts and indices are written as is.<P>
+
+   Between JVMs on the same host, writeShared and readShared instead
+   pass an array's vertex data through a SharedMemoryStore, so only a
+   few header fields and a handle are written to the stream.<P>
+
+   Only the geometry of an array is encoded; transform-time state
+   such as the longitude adjustment fields is not.  Subclasses other
+   than the standard VisAD arrays (e.g. ContourLabelGeometry) are not
+   handled; canEncode returns false for them.<P>
+*/
+public class GeometryCodec {
+
+  /** write coordinates as 32 bit floats */
+  public static final int RAW = 0;
+
+  /** write coordinates as 16 bit IEEE half precision floats */
+  public static final int HALF = 1;
+
+  /** write coordinates as 16 bit integers over each component's range */
+  public static final int QUANTIZED = 2;
+
+  /** quantized value marking a missing (NaN) component */
+  private static final int QUANTIZED_MISSING = 0xffff;
+
+  /** largest quantized value of a non-missing component */
+  private static final int QUANTIZED_MAX = 0xfffe;
+
+  /** array classes, indexed by their code on the wire */
+  private static final Class[] CLASSES = {
+    VisADPointArray.class, VisADLineArray.class, VisADLineStripArray.class,
+    VisADTriangleArray.class, VisADTriangleStripArray.class,
+    VisADIndexedTriangleStripArray.class, VisADQuadArray.class
+  };
+
+  private GeometryCodec() { }
+
+  /** return the wire code of array's class, or -1 */
+  private static int classCode(Object array) {
+    if (array == null) return -1;
+    for (int i=0; i<CLASSES.length; i++) {
+      if (array.getClass() == CLASSES[i]) return i;
+    }
+    return -1;
+  }
+
+  /** return true if array can be written by write */
+  public static boolean canEncode(Object array) {
+    return classCode(array) >= 0;
+  }
+
+  /** write array to out with coordinates in the given mode */
+  public static void write(DataOutput out, VisADGeometryArray array, int mode)
+         throws IOException {
+    int code = classCode(array);
+    if (code < 0) {
+      throw new IOException("GeometryCodec.write: can't encode " +
+                            (array == null ? null : array.getClass()));
+    }
+    if (mode != RAW && mode != HALF && mode != QUANTIZED) {
+      throw new IOException("GeometryCodec.write: bad mode " + mode);
+    }
+    out.writeByte(code);
+    out.writeByte(mode);
+    out.writeInt(array.vertexCount);
+    out.writeInt(array.vertexFormat);
+    writeFloats(out, array.coordinates, 3, mode);
+    writeNormals(out, array.normals, mode);
+    writeBytes(out, array.colors);
+    writeFloats(out, array.texCoords, 1, mode);
+
+    if (array instanceof VisADLineStripArray) {
+      writeInts(out, ((VisADLineStripArray) array).stripVertexCounts);
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      writeInts(out, ((VisADTriangleStripArray) array).stripVertexCounts);
+    }
+    else if (array instanceof VisADIndexedTriangleStripArray) {
+      VisADIndexedTriangleStripArray strips =
+        (VisADIndexedTriangleStripArray) array;
+      out.writeInt(strips.indexCount);
+      writeInts(out, strips.indices);
+      writeInts(out, strips.stripVertexCounts);
+    }
+  }
+
+  /** read an array written by write */
+  public static VisADGeometryArray read(DataInput in) throws IOException {
+    int code = in.readByte();
+    int mode = in.readByte();
+    if (code < 0 || code >= CLASSES.length) {
+      throw new IOException("GeometryCodec.read: bad array code " + code);
+    }
+    VisADGeometryArray array;
+    try {
+      array = (VisADGeometryArray) CLASSES[code].newInstance();
+    }
+    catch (Exception e) {
+      throw new IOException("GeometryCodec.read: " + e.getMessage());
+    }
+    array.vertexCount = in.readInt();
+    array.vertexFormat = in.readInt();
+    array.coordinates = readFloats(in, mode);
+    array.normals = readNormals(in, mode);
+    array.colors = readBytes(in);
+    array.texCoords = readFloats(in, mode);
+
+    if (array instanceof VisADLineStripArray) {
+      ((VisADLineStripArray) array).stripVertexCounts = readInts(in);
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      ((VisADTriangleStripArray) array).stripVertexCounts = readInts(in);
+    }
+    else if (array instanceof VisADIndexedTriangleStripArray) {
+      VisADIndexedTriangleStripArray strips =
+        (VisADIndexedTriangleStripArray) array;
+      strips.indexCount = in.readInt();
+      strips.indices = readInts(in);
+      strips.stripVertexCounts = readInts(in);
+    }
+    return array;
+  }
+
+  /**
+   * write array to out, with its vertex data passed through store,
+   * to be read by readShared in a JVM on the same host
+   */
+  public static void writeShared(DataOutput out, VisADGeometryArray array,
+                                 SharedMemoryStore store)
+         throws IOException {
+    int code = classCode(array);
+    if (code < 0) {
+      throw new IOException("GeometryCodec.writeShared: can't encode " +
+                            (array == null ? null : array.getClass()));
+    }
+    int[] counts = null;
+    int[] indices = null;
+    int index_count = 0;
+    if (array instanceof VisADLineStripArray) {
+      counts = ((VisADLineStripArray) array).stripVertexCounts;
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      counts = ((VisADTriangleStripArray) array).stripVertexCounts;
+    }
+    else if (array instanceof VisADIndexedTriangleStripArray) {
+      VisADIndexedTriangleStripArray strips =
+        (VisADIndexedTriangleStripArray) array;
+      counts = strips.stripVertexCounts;
+      indices = strips.indices;
+      index_count = strips.indexCount;
+    }
+    SharedMemoryStore.Handle handle = store.write(new Object[]
+      {array.coordinates, array.normals, array.colors, array.texCoords,
+       counts, indices});
+    out.writeByte(code);
+    out.writeInt(array.vertexCount);
+    out.writeInt(array.vertexFormat);
+    out.writeInt(index_count);
+    handle.write(out);
+  }
+
+  /** read an array written by writeShared, through store */
+  public static VisADGeometryArray readShared(DataInput in,
+                                              SharedMemoryStore store)
+         throws IOException {
+    int code = in.readByte();
+    if (code < 0 || code >= CLASSES.length) {
+      throw new IOException("GeometryCodec.readShared: bad array code " + code);
+    }
+    VisADGeometryArray array;
+    try {
+      array = (VisADGeometryArray) CLASSES[code].newInstance();
+    }
+    catch (Exception e) {
+      throw new IOException("GeometryCodec.readShared: " + e.getMessage());
+    }
+    array.vertexCount = in.readInt();
+    array.vertexFormat = in.readInt();
+    int index_count = in.readInt();
+    Object[] arrays = store.read(SharedMemoryStore.Handle.read(in));
+    array.coordinates = (float[]) arrays[0];
+    array.normals = (float[]) arrays[1];
+    array.colors = (byte[]) arrays[2];
+    array.texCoords = (float[]) arrays[3];
+
+    if (array instanceof VisADLineStripArray) {
+      ((VisADLineStripArray) array).stripVertexCounts = (int[]) arrays[4];
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      ((VisADTriangleStripArray) array).stripVertexCounts = (int[]) arrays[4];
+    }
+    else if (array instanceof VisADIndexedTriangleStripArray) {
+      VisADIndexedTriangleStripArray strips =
+        (VisADIndexedTriangleStripArray) array;
+      strips.indexCount = index_count;
+      strips.indices = (int[]) arrays[5];
+      strips.stripVertexCounts = (int[]) arrays[4];
+    }
+    return array;
+  }
+
+  /**
+   * write values in mode; QUANTIZED values are quantized over the
+   * range of each of stride interleaved components
+   */
+  private static void writeFloats(DataOutput out, float[] values, int stride,
+                                  int mode) throws IOException {
+    if (values == null) {
+      out.writeInt(-1);
+      return;
+    }
+    int n = values.length;
+    out.writeInt(n);
+    if (mode == RAW) {
+      for (int i=0; i<n; i++) out.writeFloat(values[i]);
+    }
+    else if (mode == HALF) {
+      for (int i=0; i<n; i++) out.writeShort(floatToHalf(values[i]));
+    }
+    else {
+      if (n % stride != 0) stride = 1;
+      out.writeByte(stride);
+      float[] low = new float[stride];
+      float[] scale = new float[stride];
+      for (int c=0; c<stride; c++) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i=c; i<n; i+=stride) {
+          float v = values[i];
+          if (v < min) min = v;
+          if (v > max) max = v;
+        }
+        if (min > max) {
+          // all missing
+          min = 0.0f;
+          max = 0.0f;
+        }
+        low[c] = min;
+        scale[c] = (max > min) ? (max - min) / QUANTIZED_MAX : 1.0f;
+        out.writeFloat(low[c]);
+        out.writeFloat(scale[c]);
+      }
+      for (int i=0; i<n; i++) {
+        float v = values[i];
+        int c = i % stride;
+        int q = (v == v) ? Math.round((v - low[c]) / scale[c])
+                         : QUANTIZED_MISSING;
+        if (q > QUANTIZED_MAX && q != QUANTIZED_MISSING) q = QUANTIZED_MAX;
+        out.writeShort(q);
+      }
+    }
+  }
+
+  private static float[] readFloats(DataInput in, int mode)
+          throws IOException {
+    int n = in.readInt();
+    if (n < 0) return null;
+    float[] values = new float[n];
+    if (mode == RAW) {
+      for (int i=0; i<n; i++) values[i] = in.readFloat();
+    }
+    else if (mode == HALF) {
+      for (int i=0; i<n; i++) values[i] = halfToFloat(in.readUnsignedShort());
+    }
+    else {
+      int stride = in.readByte();
+      float[] low = new float[stride];
+      float[] scale = new float[stride];
+      for (int c=0; c<stride; c++) {
+        low[c] = in.readFloat();
+        scale[c] = in.readFloat();
+      }
+      for (int i=0; i<n; i++) {
+        int q = in.readUnsignedShort();
+        int c = i % stride;
+        values[i] = (q == QUANTIZED_MISSING) ? Float.NaN
+                                             : low[c] + q * scale[c];
+      }
+    }
+    return values;
+  }
+
+  /** write normals, as bytes scaled by 127 in the lossy modes */
+  private static void writeNormals(DataOutput out, float[] normals, int mode)
+          throws IOException {
+    if (normals == null || mode == RAW) {
+      writeFloats(out, normals, 3, RAW);
+      return;
+    }
+    int n = normals.length;
+    out.writeInt(n);
+    byte[] bytes = new byte[n];
+    for (int i=0; i<n; i++) {
+      float v = normals[i];
+      if (v > 1.0f) v = 1.0f;
+      else if (v < -1.0f) v = -1.0f;
+      // missing normals become 0
+      bytes[i] = (v == v) ? (byte) Math.round(v * 127.0f) : 0;
+    }
+    out.write(bytes);
+  }
+
+  private static float[] readNormals(DataInput in, int mode)
+          throws IOException {
+    if (mode == RAW) return readFloats(in, RAW);
+    int n = in.readInt();
+    if (n < 0) return null;
+    byte[] bytes = new byte[n];
+    in.readFully(bytes);
+    float[] normals = new float[n];
+    for (int i=0; i<n; i++) normals[i] = bytes[i] / 127.0f;
+    return normals;
+  }
+
+  private static void writeBytes(DataOutput out, byte[] values)
+          throws IOException {
+    if (values == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(values.length);
+    out.write(values);
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    int n = in.readInt();
+    if (n < 0) return null;
+    byte[] values = new byte[n];
+    in.readFully(values);
+    return values;
+  }
+
+  private static void writeInts(DataOutput out, int[] values)
+          throws IOException {
+    if (values == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(values.length);
+    for (int i=0; i<values.length; i++) out.writeInt(values[i]);
+  }
+
+  private static int[] readInts(DataInput in) throws IOException {
+    int n = in.readInt();
+    if (n < 0) return null;
+    int[] values = new int[n];
+    for (int i=0; i<n; i++) values[i] = in.readInt();
+    return values;
+  }
+
+  /** return the IEEE half precision bits of f, rounded to nearest */
+  public static int floatToHalf(float f) {
+    int bits = Float.floatToRawIntBits(f);
+    int sign = (bits >>> 16) & 0x8000;
+    int exp = (bits >>> 23) & 0xff;
+    int mant = bits & 0x7fffff;
+    if (exp == 0xff) {
+      // infinity or NaN
+      return sign | 0x7c00 | (mant != 0 ? 0x200 : 0);
+    }
+    int e = exp - 127 + 15;
+    if (e >= 0x1f) {
+      // overflow to infinity
+      return sign | 0x7c00;
+    }
+    if (e <= 0) {
+      // subnormal half, or zero
+      if (e < -10) return sign;
+      mant |= 0x800000;
+      int shift = 14 - e;
+      int half = mant >> shift;
+      // round to nearest
+      if (((mant >> (shift - 1)) & 1) != 0) half++;
+      return sign | half;
+    }
+    int half = sign | (e << 10) | (mant >> 13);
+    // round to nearest; a carry into the exponent is still correct
+    if ((mant & 0x1000) != 0) half++;
+    return half;
+  }
+
+  /** return the float value of IEEE half precision bits */
+  public static float halfToFloat(int half) {
+    int sign = (half & 0x8000) << 16;
+    int exp = (half >>> 10) & 0x1f;
+    int mant = half & 0x3ff;
+    if (exp == 0x1f) {
+      return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+    }
+    if (exp == 0) {
+      float v = mant / 16777216.0f; // mant * 2^-24
+      return (sign != 0) ? -v : v;
+    }
+    return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (mant << 13));
+  }
+
+}
@@ -51,8 +51,16 @@ public abstract class NodeAgent extends Object
   /** message from client, if non-null */
   Serializable message = null;
 
+  /** PartitionScheduler run of the last message, or -1 if untagged */
+  private transient volatile long run = -1;
+
+  /** SharedMemoryStore host id of the client, or null */
+  private String clientHostId = null;
+
   public NodeAgent(RemoteClientAgent s) {
     source = s;
+    // constructed on the client, so this is the client's host id
+    clientHostId = SharedMemoryStore.getDefaultHostId();
   }
 
   // should only one NodeAgent of this class exist on a
@@ -61,6 +69,14 @@ public abstract class NodeAgent extends Object
     return true;
   }
 
+  /**
+   * return the SharedMemoryStore on this node that can hand data to
+   * the client, or null if the client is not on the same host
+   */
+  public SharedMemoryStore getSharedStore() {
+    return SharedMemoryStore.forPeer(clientHostId);
+  }
+
   public Object getObject() {
     return object;
   }
@@ -89,12 +105,35 @@ public abstract class NodeAgent extends Object
     Serializable me = message;
     message = null;
 // System.out.println("NodeAgent.getMessage " + me);
+    if (me instanceof PartitionScheduler.RunMessage) {
+      PartitionScheduler.RunMessage rm = (PartitionScheduler.RunMessage) me;
+      run = rm.run;
+      me = rm.message;
+    }
+    else {
+      run = -1;
+    }
     return me;
   }
 
+  /** return the PartitionScheduler run of the last message, or -1 */
+  public long getRun() {
+    return run;
+  }
+
+  /** send message to the client as the response to the last message */
   public void sendToClient(Serializable message) {
+    sendToClient(message, run);
+  }
+
+  /**
+   * send message to the client as the response to PartitionScheduler
+   * run, or untagged if run < 0
+   */
+  public void sendToClient(Serializable message, long run) {
     try {
-      source.sendToClient(message);
+      source.sendToClient((run < 0) ? message :
+                          new PartitionScheduler.RunMessage(run, message));
     }
     catch (RemoteException e) {
       System.out.println("unable to send: " + message);
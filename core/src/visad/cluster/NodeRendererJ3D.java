@@ -45,6 +45,9 @@ public class NodeRendererJ3D extends DefaultRendererJ3D {
 
   private boolean enable_transform = false;
 
+  /** PartitionScheduler run that enabled the transform */
+  private long transform_run = -1;
+
   private int resolution = 1;
 
   /** this constructor is need for NodeDisplayRendererJ3D.makeDefaultRenderer()
@@ -100,6 +103,7 @@ public class NodeRendererJ3D extends DefaultRendererJ3D {
   }
 
   public void enableTransform() {
+    if (agent != null) transform_run = agent.getRun();
     enable_transform = true;
   }
 
@@ -265,9 +269,12 @@ while (maps.hasMoreElements()) {
     }
     link.clearData();
 
-    // send VisADGroup scene graph in branch back to client
+    // send VisADGroup scene graph in branch back to client, with its
+    // geometry arrays in shared memory if the client is on this host,
+    // otherwise compactly encoded
     if (agent != null) {
-      agent.sendToClient(branch);
+      agent.sendToClient(new CompactSceneGraph(branch, agent.getSharedStore()),
+                         transform_run);
 System.out.println("scene graph sent to client");
     }
 
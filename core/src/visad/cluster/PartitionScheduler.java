@@ -0,0 +1,557 @@
+//
+// PartitionScheduler.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+   PartitionScheduler hands out the partitions of cluster data to
+   the node agents that render them, and balances the load across
+   node JVMs.  Each partition may be held by several agents (its
+   primary table entry plus any replicas), and many partitions may
+   live in one node JVM.<P>
+
+   The scheduler measures the latency of every agent (from sending it
+   a message to receiving its response) as an exponential moving
+   average, and at the start of each run assigns partitions, largest
+   first, to the candidate agent whose node has the least predicted
+   work.  It keeps at most getMaxPerNode() messages outstanding per
+   node; a node that runs out of work steals a queued partition from
+   the node with the largest predicted backlog, if it holds a replica
+   of that partition and is predicted to finish it sooner.<P>
+
+   An agent that cannot be contacted is skipped until
+   getRetryDelay() ms have passed, and then tried again at the start
+   of the next run, so nodes that restart or recover rejoin the
+   cluster.<P>
+
+   Responses are passed to the run's Listener as they arrive, so a
+   client can show partial results before the slowest node is done.
+   Each message is sent wrapped in a RunMessage carrying its run
+   number, which the node echoes in its response (see NodeAgent), so
+   responses that arrive after their run has been replaced by a newer
+   one are ignored.  RemoteClientAgentImpl routes RunMessage responses
+   to the scheduler.<P>
+*/
+public class PartitionScheduler {
+
+  /** called as each partition's response arrives */
+  public interface Listener {
+    void partitionDone(int partition, int agent, Serializable response);
+  }
+
+  /** a message or response tagged with the run it belongs to */
+  public static class RunMessage implements Serializable {
+    public final long run;
+    public final Serializable message;
+
+    public RunMessage(long run, Serializable message) {
+      this.run = run;
+      this.message = message;
+    }
+  }
+
+  private static final boolean DEBUG = false;
+
+  /** weight of the newest latency in the moving averages */
+  public static final double LATENCY_WEIGHT = 0.3;
+
+  /** default ms before an agent that could not be contacted is retried */
+  public static final long RETRY_DELAY = 30000;
+
+  /** candidates[p] are the agents holding partition p, primary first */
+  private final int[][] candidates;
+
+  /** node index of each agent */
+  private final int[] agentNode;
+
+  /** distinct node ids, indexed by node index */
+  private final String[] nodeIds;
+
+  /** partition rendered by each agent */
+  private final int[] agentPartition;
+
+  /** moving average latency of each agent in ms, NaN if unknown */
+  private final double[] latency;
+
+  /** true for agents that could not be contacted */
+  private final boolean[] dead;
+
+  /** time each dead agent failed, in ms */
+  private final long[] deadTime;
+
+  private int maxPerNode = 1;
+
+  private long retryDelay = RETRY_DELAY;
+
+  private long steals = 0;
+  private long runs = 0;
+
+  /* state of the current run */
+  private Serializable[] messages = null;
+  private RemoteAgentContact[] contacts = null;
+  private Listener listener = null;
+  private LinkedList[] queues; // queued partitions, per node
+  private int[] assigned; // agent assigned to each queued partition
+  private int[] busy; // partition in flight per agent, or -1
+  private long[] sendTime; // per agent
+  private int[] inFlight; // per node
+  private int remaining = 0;
+  private int received = 0;
+
+  /**
+   * construct a scheduler for candidates.length partitions, where
+   * candidates[p] lists the agents holding partition p (primary first)
+   * and nodeIds[a] identifies the node JVM of agent a (see
+   * RemoteNodeData.getNodeId())
+   */
+  public PartitionScheduler(int[][] candidates, String[] nodeIds)
+         throws ClusterException {
+    int nagents = nodeIds.length;
+    this.candidates = new int[candidates.length][];
+    agentPartition = new int[nagents];
+    Arrays.fill(agentPartition, -1);
+    for (int p=0; p<candidates.length; p++) {
+      if (candidates[p] == null || candidates[p].length == 0) {
+        throw new ClusterException("partition " + p + " has no agents");
+      }
+      this.candidates[p] = (int[]) candidates[p].clone();
+      for (int i=0; i<candidates[p].length; i++) {
+        int a = candidates[p][i];
+        if (a < 0 || a >= nagents || agentPartition[a] >= 0) {
+          throw new ClusterException("bad agent " + a + " for partition " + p);
+        }
+        agentPartition[a] = p;
+      }
+    }
+
+    Hashtable nodes = new Hashtable();
+    Vector ids = new Vector();
+    agentNode = new int[nagents];
+    for (int a=0; a<nagents; a++) {
+      String id = (nodeIds[a] == null) ? ("agent" + a) : nodeIds[a];
+      Integer node = (Integer) nodes.get(id);
+      if (node == null) {
+        node = new Integer(ids.size());
+        nodes.put(id, node);
+        ids.addElement(id);
+      }
+      agentNode[a] = node.intValue();
+    }
+    this.nodeIds = new String[ids.size()];
+    ids.copyInto(this.nodeIds);
+
+    latency = new double[nagents];
+    Arrays.fill(latency, Double.NaN);
+    dead = new boolean[nagents];
+    deadTime = new long[nagents];
+    busy = new int[nagents];
+    Arrays.fill(busy, -1);
+    sendTime = new long[nagents];
+    inFlight = new int[this.nodeIds.length];
+    queues = new LinkedList[this.nodeIds.length];
+    for (int n=0; n<queues.length; n++) queues[n] = new LinkedList();
+    assigned = new int[candidates.length];
+  }
+
+  /** set the most messages outstanding at once on any one node */
+  public synchronized void setMaxPerNode(int max) {
+    maxPerNode = (max < 1) ? 1 : max;
+  }
+
+  public synchronized int getMaxPerNode() {
+    return maxPerNode;
+  }
+
+  /**
+   * set the ms after which an agent that could not be contacted is
+   * tried again, at the start of the next run; 0 retries it every run
+   */
+  public synchronized void setRetryDelay(long delay) {
+    retryDelay = (delay < 0) ? 0 : delay;
+  }
+
+  public synchronized long getRetryDelay() {
+    return retryDelay;
+  }
+
+  /** return true if agent could not be contacted and is not yet retried */
+  public synchronized boolean isDead(int agent) {
+    return dead[agent];
+  }
+
+  public int getPartitionCount() {
+    return candidates.length;
+  }
+
+  public int getAgentCount() {
+    return agentNode.length;
+  }
+
+  /** return the distinct node ids, indexed by node index */
+  public String[] getNodeIds() {
+    return (String[]) nodeIds.clone();
+  }
+
+  /** return the node index of agent */
+  public int getNode(int agent) {
+    return agentNode[agent];
+  }
+
+  /** return the moving average latency of agent in ms, or NaN */
+  public synchronized double getLatency(int agent) {
+    return latency[agent];
+  }
+
+  /**
+   * return the mean of the latencies of the agents on each node, in
+   * ms, indexed by node index; NaN for nodes not yet measured
+   */
+  public synchronized double[] getNodeLatencies() {
+    double[] sums = new double[nodeIds.length];
+    int[] counts = new int[nodeIds.length];
+    for (int a=0; a<latency.length; a++) {
+      if (latency[a] == latency[a]) {
+        sums[agentNode[a]] += latency[a];
+        counts[agentNode[a]]++;
+      }
+    }
+    for (int n=0; n<sums.length; n++) {
+      sums[n] = (counts[n] == 0) ? Double.NaN : sums[n] / counts[n];
+    }
+    return sums;
+  }
+
+  /** return the number of partitions taken over by other nodes */
+  public synchronized long getSteals() {
+    return steals;
+  }
+
+  public synchronized long getRuns() {
+    return runs;
+  }
+
+  /**
+   * start a run: send messages[p] to an agent holding partition p,
+   * for every partition, through contacts (indexed by agent); returns
+   * without waiting for any responses
+   */
+  public void start(Serializable[] messages, RemoteAgentContact[] contacts,
+                    Listener listener) throws ClusterException {
+    if (messages.length != candidates.length &&
+        messages.length != 1) {
+      throw new ClusterException("need one message per partition");
+    }
+    if (contacts.length != agentNode.length) {
+      throw new ClusterException("need one contact per agent");
+    }
+    int[][] sends;
+    long run;
+    synchronized (this) {
+      this.messages = messages;
+      this.contacts = contacts;
+      this.listener = listener;
+      run = ++runs;
+      received = 0;
+      remaining = 0;
+      Arrays.fill(busy, -1);
+      Arrays.fill(inFlight, 0);
+      for (int n=0; n<queues.length; n++) queues[n].clear();
+
+      // retry agents that failed long enough ago
+      long now = System.currentTimeMillis();
+      for (int a=0; a<dead.length; a++) {
+        if (dead[a] && now - deadTime[a] >= retryDelay) dead[a] = false;
+      }
+
+      // assign partitions largest first to the least loaded node
+      int np = candidates.length;
+      Integer[] order = new Integer[np];
+      final double[] cost = new double[np];
+      for (int p=0; p<np; p++) {
+        order[p] = new Integer(p);
+        cost[p] = Double.MAX_VALUE;
+        for (int i=0; i<candidates[p].length; i++) {
+          double c = estimate(candidates[p][i]);
+          if (c < cost[p]) cost[p] = c;
+        }
+      }
+      Arrays.sort(order, new java.util.Comparator() {
+        public int compare(Object o1, Object o2) {
+          double c1 = cost[((Integer) o1).intValue()];
+          double c2 = cost[((Integer) o2).intValue()];
+          return (c1 > c2) ? -1 : ((c1 < c2) ? 1 : 0);
+        }
+      });
+      double[] load = new double[nodeIds.length];
+      for (int k=0; k<np; k++) {
+        int p = order[k].intValue();
+        int best = -1;
+        double best_finish = 0.0;
+        for (int i=0; i<candidates[p].length; i++) {
+          int a = candidates[p][i];
+          if (dead[a]) continue;
+          double finish = load[agentNode[a]] + estimate(a);
+          if (best < 0 || finish < best_finish) {
+            best = a;
+            best_finish = finish;
+          }
+        }
+        if (best < 0) continue; // no live agent, so skip partition
+        assigned[p] = best;
+        load[agentNode[best]] = best_finish;
+        queues[agentNode[best]].addLast(order[k]);
+        remaining++;
+      }
+      sends = dispatch();
+      notifyAll();
+    }
+    send(sends, run);
+  }
+
+  /** return true if the current run is waiting for a response from agent */
+  public synchronized boolean isWaiting(int agent) {
+    return 0 <= agent && agent < busy.length && busy[agent] >= 0;
+  }
+
+  /** return true if the current run has all its responses */
+  public synchronized boolean isDone() {
+    return remaining == 0;
+  }
+
+  /** return the number of responses received in the current run */
+  public synchronized int getReceived() {
+    return received;
+  }
+
+  /**
+   * pass the response of agent to run, which is ignored unless run
+   * is the current run
+   */
+  public void response(int agent, long run, Serializable message) {
+    int partition;
+    Listener l;
+    int[][] sends;
+    synchronized (this) {
+      if (run != runs || !isWaiting(agent)) {
+        if (DEBUG) {
+          System.out.println("PartitionScheduler: ignored response of " +
+                             "agent " + agent + " to run " + run);
+        }
+        return;
+      }
+      partition = busy[agent];
+      busy[agent] = -1;
+      double time = (System.nanoTime() - sendTime[agent]) / 1000000.0;
+      latency[agent] = (latency[agent] == latency[agent]) ?
+        (1.0 - LATENCY_WEIGHT) * latency[agent] + LATENCY_WEIGHT * time : time;
+      inFlight[agentNode[agent]]--;
+      l = listener;
+      sends = dispatch();
+    }
+    send(sends, run);
+    // count the response only once the listener has it, so await
+    // does not return before it is done
+    if (l != null) l.partitionDone(partition, agent, message);
+    synchronized (this) {
+      if (run == runs) {
+        remaining--;
+        received++;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * wait for the current run: return true when all responses have
+   * arrived, or false when timeout ms have passed, or when progressive
+   * ms have passed and at least one response has arrived
+   */
+  public synchronized boolean await(long progressive, long timeout) {
+    long start = System.currentTimeMillis();
+    while (remaining > 0) {
+      long time = System.currentTimeMillis() - start;
+      long wait = timeout - time;
+      if (received > 0) wait = Math.min(wait, progressive - time);
+      if (wait <= 0) return false;
+      try {
+        wait(wait);
+      }
+      catch (InterruptedException e) {
+      }
+    }
+    return true;
+  }
+
+  /** predicted latency of agent, in ms */
+  private double estimate(int agent) {
+    if (latency[agent] == latency[agent]) return latency[agent];
+    // use any other measurement of the same partition
+    int[] c = candidates[agentPartition[agent]];
+    for (int i=0; i<c.length; i++) {
+      if (latency[c[i]] == latency[c[i]]) return latency[c[i]];
+    }
+    return 1.0;
+  }
+
+  /**
+   * take partitions off the queues for nodes with room, stealing for
+   * nodes with empty queues; return {agent, partition} pairs to send
+   */
+  private int[][] dispatch() {
+    Vector sends = new Vector();
+    for (int n=0; n<queues.length; n++) {
+      while (inFlight[n] < maxPerNode) {
+        int p, a;
+        if (!queues[n].isEmpty()) {
+          p = ((Integer) queues[n].removeFirst()).intValue();
+          a = assigned[p];
+        }
+        else {
+          int[] stolen = steal(n);
+          if (stolen == null) break;
+          p = stolen[0];
+          a = stolen[1];
+          steals++;
+        }
+        busy[a] = p;
+        sendTime[a] = System.nanoTime();
+        inFlight[n]++;
+        sends.addElement(new int[] {a, p});
+      }
+    }
+    int[][] result = new int[sends.size()][];
+    sends.copyInto(result);
+    return result;
+  }
+
+  /**
+   * remove and return {partition, agent} of the queued partition that
+   * node thief should take over, or null
+   */
+  private int[] steal(int thief) {
+    // the victim is the node with the most predicted queued work
+    int victim = -1;
+    double most = 0.0;
+    for (int n=0; n<queues.length; n++) {
+      if (n == thief || queues[n].isEmpty()) continue;
+      double backlog = 0.0;
+      for (int i=0; i<queues[n].size(); i++) {
+        int p = ((Integer) queues[n].get(i)).intValue();
+        backlog += estimate(assigned[p]);
+      }
+      if (backlog > most) {
+        victim = n;
+        most = backlog;
+      }
+    }
+    if (victim < 0) return null;
+
+    // take from the tail of the victim's queue, which holds its
+    // smallest partitions, the last one the thief holds a replica of
+    LinkedList queue = queues[victim];
+    for (int i=queue.size()-1; i>=0; i--) {
+      int p = ((Integer) queue.get(i)).intValue();
+      int[] c = candidates[p];
+      for (int j=0; j<c.length; j++) {
+        int a = c[j];
+        if (agentNode[a] == thief && !dead[a] && busy[a] < 0 &&
+            estimate(a) < most) {
+          queue.remove(i);
+          assigned[p] = a;
+          return new int[] {p, a};
+        }
+      }
+    }
+    return null;
+  }
+
+  /** send the messages of run for {agent, partition} pairs */
+  private void send(int[][] sends, long run) {
+    for (int i=0; i<sends.length; i++) {
+      int a = sends[i][0];
+      int p = sends[i][1];
+      Serializable message = (messages.length == 1) ? messages[0] : messages[p];
+      try {
+        contacts[a].sendToNode(new RunMessage(run, message));
+      }
+      catch (RemoteException e) {
+        failed(a, p, run, e);
+      }
+    }
+  }
+
+  /** agent could not be contacted; give its partition to another */
+  private void failed(int agent, int partition, long run, RemoteException e) {
+    if (DEBUG) {
+      System.out.println("PartitionScheduler: agent " + agent + " failed " + e);
+    }
+    int[][] sends;
+    boolean lost = false;
+    Listener l;
+    synchronized (this) {
+      dead[agent] = true;
+      deadTime[agent] = System.currentTimeMillis();
+      if (run != runs) return; // a newer run has reset the state
+      l = listener;
+      busy[agent] = -1;
+      inFlight[agentNode[agent]]--;
+      int best = -1;
+      int[] c = candidates[partition];
+      for (int i=0; i<c.length; i++) {
+        if (!dead[c[i]] && (best < 0 || estimate(c[i]) < estimate(best))) {
+          best = c[i];
+        }
+      }
+      if (best >= 0) {
+        assigned[partition] = best;
+        queues[agentNode[best]].addFirst(new Integer(partition));
+      }
+      else {
+        // no one else holds it
+        lost = true;
+      }
+      sends = dispatch();
+    }
+    send(sends, run);
+    if (lost) {
+      if (l != null) l.partitionDone(partition, agent, null);
+      synchronized (this) {
+        if (run == runs) {
+          remaining--;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+}
@@ -48,6 +48,9 @@ public class RemoteClientAgentImpl extends UnicastRemoteObject
 
   private long time_out = 10000;
 
+  /** routes responses to runs of a PartitionScheduler, if non-null */
+  private PartitionScheduler scheduler = null;
+
   public RemoteClientAgentImpl(RemoteClientAgentImpl fa, int ind)
          throws RemoteException {
     this(fa, ind, 10000);
@@ -66,11 +69,27 @@ public class RemoteClientAgentImpl extends UnicastRemoteObject
     }
   }
 
+  /** route responses to scheduler's runs (PartitionScheduler.RunMessage)
+      to it; should be called only for focus_agent */
+  public void setScheduler(PartitionScheduler s) {
+    scheduler = s;
+  }
+
+  public PartitionScheduler getScheduler() {
+    return scheduler;
+  }
+
   // should be called only for focus_agent
   public void sendToClient(int ind, Serializable message)
          throws RemoteException {
 // System.out.println("RemoteClientAgentImpl.sendToClient " + ind + " " + message);
-    if (0 <= ind && ind < responses.length) {
+    if (message instanceof PartitionScheduler.RunMessage) {
+      PartitionScheduler.RunMessage rm = (PartitionScheduler.RunMessage) message;
+      PartitionScheduler s = scheduler;
+      if (s != null) s.response(ind, rm.run, rm.message);
+      return;
+    }
+    if (responses != null && 0 <= ind && ind < responses.length) {
       responses[ind] = message;
       boolean all = true;
       for (int i=0; i<responses.length; i++) {
@@ -94,6 +113,11 @@ public class RemoteClientAgentImpl extends UnicastRemoteObject
   public Serializable[] broadcastWithResponses(Serializable[] messages,
                                                RemoteAgentContact[] contacts)
          throws VisADException, RemoteException {
+    // let the last scheduled run finish, so nodes are not given new
+    // ScalarMaps while they are still transforming
+    PartitionScheduler s = scheduler;
+    if (s != null) s.await(time_out, time_out);
+
     int nagents = contacts.length;
     responses = new Serializable[nagents];
     not_all = true;
@@ -131,6 +131,11 @@ public class RemoteClientFieldImpl extends RemoteClientDataImpl
     return adaptedField.getSample(index);
   }
 
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    return ((FieldImpl) adaptedField).getSamples(start, count);
+  }
+
   public void setSample(RealTuple domain, Data range, boolean copy)
          throws VisADException, RemoteException {
     throw new ClusterException("no setSample() method");
@@ -191,6 +196,11 @@ public class RemoteClientFieldImpl extends RemoteClientDataImpl
     throw new ClusterException("no getFloats() method");
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    throw new ClusterException("no getFloats() method");
+  }
+
   public String[][] getStringValues()
          throws VisADException, RemoteException {
     throw new ClusterException("no getStringValues() method");
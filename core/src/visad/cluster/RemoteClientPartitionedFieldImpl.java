@@ -123,6 +123,11 @@ public class RemoteClientPartitionedFieldImpl extends RemoteClientDataImpl
     throw new ClusterException("no getSample() method");
   }
 
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    throw new ClusterException("no getSamples() method");
+  }
+
   public void setSample(RealTuple domain, Data range, boolean copy)
          throws VisADException, RemoteException {
     throw new ClusterException("no setSample() method");
@@ -183,6 +188,11 @@ public class RemoteClientPartitionedFieldImpl extends RemoteClientDataImpl
     throw new ClusterException("no getFloats() method");
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    throw new ClusterException("no getFloats() method");
+  }
+
   public String[][] getStringValues()
          throws VisADException, RemoteException {
     throw new ClusterException("no getStringValues() method");
@@ -211,6 +211,10 @@ public abstract class RemoteClusterDataImpl extends RemoteDataImpl
       entry is on client (for non-distributed data) */
   private RemoteClusterData[] jvmTable = null;
 
+  /** replicas[i] are other RemoteClusterData objects holding the same
+      partition as jvmTable[i], usually on other nodes; may be null */
+  private RemoteClusterData[][] replicaTable = null;
+
   /** used for testing equality */
   private RemoteClusterData me = null;
 
@@ -228,6 +232,24 @@ public abstract class RemoteClusterDataImpl extends RemoteDataImpl
     return jvmTable;
   }
 
+  RemoteClusterData[][] getReplicaTable() {
+    return replicaTable;
+  }
+
+  /** set replicas of the partitions in the table passed to
+      setupClusterData, so that a client can move work between nodes;
+      replicas[i] (which may be null) hold the same partition as
+      table[i] */
+  public void setReplicaTable(RemoteClusterData[][] replicas)
+         throws VisADException {
+    if (replicas != null && jvmTable != null &&
+        replicas.length > jvmTable.length - 1) {
+      throw new ClusterException("replicas.length (" + replicas.length +
+                                 ") must be < table.length");
+    }
+    replicaTable = replicas;
+  }
+
   /** return RemoteClusterData for JVM where data resides;
       may be RemoteClusterData for client for non-partitioned data;
       may be null for partitioned data outside partitoning */
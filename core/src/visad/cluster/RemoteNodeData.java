@@ -37,5 +37,8 @@ public interface RemoteNodeData extends RemoteClusterData {
   RemoteAgentContact sendAgent(NodeAgent agent)
          throws RemoteException;
 
+  /** return an id that is the same for all node data in one JVM */
+  String getNodeId() throws RemoteException;
+
 }
 
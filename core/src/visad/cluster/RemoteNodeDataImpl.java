@@ -38,9 +38,23 @@ public class RemoteNodeDataImpl extends RemoteClusterDataImpl
 
   Vector agents = new Vector();
 
+  /** id of this JVM, for telling node JVMs apart */
+  private static final String NODE_ID = makeNodeId();
+
   public RemoteNodeDataImpl() throws RemoteException {
   }
 
+  private static String makeNodeId() {
+    // the runtime name is usually "pid@host"
+    String name =
+      java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+    return name + "/" + System.currentTimeMillis();
+  }
+
+  public String getNodeId() throws RemoteException {
+    return NODE_ID;
+  }
+
   public RemoteAgentContact sendAgent(NodeAgent agent)
          throws RemoteException {
     synchronized (agents) {
@@ -145,6 +145,11 @@ public class RemoteNodeFieldImpl extends RemoteNodeDataImpl
     return adaptedField.getSample(index);
   }
 
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    return ((FieldImpl) adaptedField).getSamples(start, count);
+  }
+
   public void setSample(RealTuple domain, Data range, boolean copy)
          throws VisADException, RemoteException {
     throw new ClusterException("no setSample() method");
@@ -205,6 +210,11 @@ public class RemoteNodeFieldImpl extends RemoteNodeDataImpl
     return adaptedField.getFloats(copy);
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    return ((FieldImpl) adaptedField).getFloats(indices);
+  }
+
   public String[][] getStringValues()
          throws VisADException, RemoteException {
     return adaptedField.getStringValues();
@@ -151,6 +151,11 @@ public class RemoteNodePartitionedFieldImpl extends RemoteNodeDataImpl
     return adaptedField.getSample(index);
   }
 
+  public Data[] getSamples(int start, int count)
+         throws VisADException, RemoteException {
+    return adaptedField.getSamples(start, count);
+  }
+
   public void setSample(RealTuple domain, Data range, boolean copy)
          throws VisADException, RemoteException {
     adaptedField.setSample(domain, range, copy);
@@ -211,6 +216,11 @@ public class RemoteNodePartitionedFieldImpl extends RemoteNodeDataImpl
     return adaptedField.getFloats(copy);
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException, RemoteException {
+    return adaptedField.getFloats(indices);
+  }
+
   public String[][] getStringValues()
          throws VisADException, RemoteException {
     return adaptedField.getStringValues();
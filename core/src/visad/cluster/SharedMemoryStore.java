@@ -0,0 +1,464 @@
+//
+// SharedMemoryStore.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Random;
+
+/**
+   SharedMemoryStore hands primitive arrays between JVMs on the same
+   host through memory-mapped files in a shared directory, so that
+   only a small Handle has to be sent over RMI.  The writer maps a new
+   file and copies the arrays into it; the reader maps the file named
+   by the Handle, copies the arrays out and deletes the file.  No
+   serialization or socket I/O is involved for the arrays themselves.<P>
+
+   The default store uses the directory named by the
+   visad.cluster.sharedDir system property, and is disabled if the
+   property is not set.  Every JVM using a directory agrees on a host
+   id, kept in a file in that directory; a node only hands arrays to a
+   client through shared memory if the client reports the same host
+   id, and otherwise falls back to ordinary RMI.  The directory should
+   be on a local (ideally memory backed, e.g. /dev/shm) file system.<P>
+
+   Readers read a Handle while the RMI call carrying it is still in
+   progress, so a file is only left unread if that call fails.  Files
+   older than STALE_MILLIS are deleted by the next write in the
+   directory, and a store deletes its own remaining files when its JVM
+   shuts down.<P>
+*/
+public class SharedMemoryStore {
+
+  /** system property naming the shared directory */
+  public static final String PROP_SHARED_DIR = "visad.cluster.sharedDir";
+
+  /** suffix of the files holding handed off arrays */
+  private static final String SUFFIX = ".shm";
+
+  /** file holding the host id shared by all JVMs using a directory */
+  private static final String HOST_FILE = "host.id";
+
+  /** files older than this are assumed abandoned by a failed reader */
+  public static final long STALE_MILLIS = 10 * 60 * 1000L;
+
+  /** ms between sweeps for stale files */
+  private static final long SWEEP_MILLIS = 60 * 1000L;
+
+  private static final byte NULL = 0;
+  private static final byte FLOATS = 1;
+  private static final byte DOUBLES = 2;
+  private static final byte INTS = 3;
+  private static final byte BYTES = 4;
+
+  private static final Object defaultLock = new Object();
+  private static SharedMemoryStore defaultStore = null;
+  private static boolean defaultChecked = false;
+
+  private final File dir;
+
+  private final String hostId;
+
+  /** prefix unique to this store, for the names of its files */
+  private final String prefix;
+
+  private long serial = 0;
+
+  /** time of the last sweep for stale files */
+  private long lastSweep;
+
+  private long handoffs = 0;
+  private long bytesWritten = 0;
+  private long bytesRead = 0;
+
+  /** construct a store using directory dir, creating it if necessary */
+  public SharedMemoryStore(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("SharedMemoryStore: can't create " + dir);
+    }
+    this.dir = dir;
+    hostId = InetAddress.getLocalHost().getHostName() + ":" + readHostId(dir);
+    prefix = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE) + "-";
+    removeStale();
+    Runtime.getRuntime().addShutdownHook(new Thread("SharedMemoryStore") {
+      public void run() {
+        removeOwn();
+      }
+    });
+  }
+
+  /**
+   * return the store for the visad.cluster.sharedDir directory, or
+   * null if that property is not set or the directory is not usable
+   */
+  public static SharedMemoryStore getDefault() {
+    synchronized (defaultLock) {
+      if (!defaultChecked) {
+        defaultChecked = true;
+        String name = System.getProperty(PROP_SHARED_DIR);
+        if (name != null) {
+          try {
+            defaultStore = new SharedMemoryStore(new File(name));
+          }
+          catch (IOException e) {
+            System.out.println("SharedMemoryStore: " + e.getMessage());
+          }
+        }
+      }
+      return defaultStore;
+    }
+  }
+
+  /** return the host id of the default store, or null if there is none */
+  public static String getDefaultHostId() {
+    SharedMemoryStore store = getDefault();
+    return (store == null) ? null : store.getHostId();
+  }
+
+  /**
+   * return the default store if it can hand arrays to a JVM whose
+   * default store has host id peerHostId, otherwise null
+   */
+  public static SharedMemoryStore forPeer(String peerHostId) {
+    SharedMemoryStore store = getDefault();
+    if (store == null || !store.getHostId().equals(peerHostId)) return null;
+    return store;
+  }
+
+  /** return the host id shared by JVMs using this store's directory */
+  public String getHostId() {
+    return hostId;
+  }
+
+  public File getDirectory() {
+    return dir;
+  }
+
+  /** return the number of Handles written by this store */
+  public synchronized long getHandoffCount() {
+    return handoffs;
+  }
+
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public synchronized long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * write arrays, each a float[], double[], int[], byte[] or null,
+   * to a new shared file and return its Handle, which must be passed
+   * to read exactly once
+   */
+  public Handle write(Object[] arrays) throws IOException {
+    int n = arrays.length;
+    byte[] types = new byte[n];
+    int[] lengths = new int[n];
+    long size = 0;
+    for (int i=0; i<n; i++) {
+      Object a = arrays[i];
+      int width;
+      if (a == null) {
+        types[i] = NULL;
+        width = 0;
+      }
+      else if (a instanceof float[]) {
+        types[i] = FLOATS;
+        lengths[i] = ((float[]) a).length;
+        width = 4;
+      }
+      else if (a instanceof double[]) {
+        types[i] = DOUBLES;
+        lengths[i] = ((double[]) a).length;
+        width = 8;
+      }
+      else if (a instanceof int[]) {
+        types[i] = INTS;
+        lengths[i] = ((int[]) a).length;
+        width = 4;
+      }
+      else if (a instanceof byte[]) {
+        types[i] = BYTES;
+        lengths[i] = ((byte[]) a).length;
+        width = 1;
+      }
+      else {
+        throw new IOException("SharedMemoryStore.write: can't write " +
+                              a.getClass().getName());
+      }
+      size = align(size + (long) width * lengths[i]);
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("SharedMemoryStore.write: " + size +
+                            " bytes is too many for one file");
+    }
+
+    String name;
+    boolean sweep;
+    synchronized (this) {
+      name = prefix + (serial++) + SUFFIX;
+      long now = System.currentTimeMillis();
+      sweep = (now - lastSweep >= SWEEP_MILLIS);
+      if (sweep) lastSweep = now;
+    }
+    if (sweep) removeStale();
+    File file = new File(dir, name);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      raf.setLength(size);
+      if (size > 0) {
+        MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+        long offset = 0;
+        for (int i=0; i<n; i++) {
+          buffer.position((int) offset);
+          switch (types[i]) {
+            case FLOATS:
+              buffer.asFloatBuffer().put((float[]) arrays[i]);
+              offset += 4L * lengths[i];
+              break;
+            case DOUBLES:
+              buffer.asDoubleBuffer().put((double[]) arrays[i]);
+              offset += 8L * lengths[i];
+              break;
+            case INTS:
+              buffer.asIntBuffer().put((int[]) arrays[i]);
+              offset += 4L * lengths[i];
+              break;
+            case BYTES:
+              buffer.put((byte[]) arrays[i]);
+              offset += lengths[i];
+              break;
+          }
+          offset = align(offset);
+        }
+      }
+    }
+    catch (IOException e) {
+      raf.close();
+      file.delete();
+      throw e;
+    }
+    raf.close();
+    synchronized (this) {
+      handoffs++;
+      bytesWritten += size;
+    }
+    return new Handle(hostId, name, types, lengths);
+  }
+
+  /**
+   * return the arrays written to handle by a store on the same host,
+   * deleting its file
+   */
+  public Object[] read(Handle handle) throws IOException {
+    if (!hostId.equals(handle.hostId)) {
+      throw new IOException("SharedMemoryStore.read: handle from host " +
+                            handle.hostId + " not " + hostId);
+    }
+    if (handle.name.indexOf('/') >= 0 || handle.name.indexOf('\\') >= 0 ||
+        !handle.name.endsWith(SUFFIX)) {
+      throw new IOException("SharedMemoryStore.read: bad name " + handle.name);
+    }
+    File file = new File(dir, handle.name);
+    int n = handle.types.length;
+    Object[] arrays = new Object[n];
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    long size;
+    try {
+      size = raf.length();
+      ByteBuffer buffer = (size == 0) ? null :
+        raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer != null) buffer.order(ByteOrder.nativeOrder());
+      long offset = 0;
+      for (int i=0; i<n; i++) {
+        int length = handle.lengths[i];
+        if (handle.types[i] == NULL) continue;
+        buffer.position((int) offset);
+        switch (handle.types[i]) {
+          case FLOATS:
+            float[] f = new float[length];
+            buffer.asFloatBuffer().get(f);
+            arrays[i] = f;
+            offset += 4L * length;
+            break;
+          case DOUBLES:
+            double[] d = new double[length];
+            buffer.asDoubleBuffer().get(d);
+            arrays[i] = d;
+            offset += 8L * length;
+            break;
+          case INTS:
+            int[] k = new int[length];
+            buffer.asIntBuffer().get(k);
+            arrays[i] = k;
+            offset += 4L * length;
+            break;
+          case BYTES:
+            byte[] b = new byte[length];
+            buffer.get(b);
+            arrays[i] = b;
+            offset += length;
+            break;
+          default:
+            throw new IOException("SharedMemoryStore.read: bad type " +
+                                  handle.types[i]);
+        }
+        offset = align(offset);
+      }
+    }
+    finally {
+      raf.close();
+      file.delete();
+    }
+    synchronized (this) {
+      bytesRead += size;
+    }
+    return arrays;
+  }
+
+  /** round offset up to a multiple of 8, so every array is aligned */
+  private static long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  /** return the id in dir's host file, creating it if necessary */
+  private static String readHostId(File dir) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(new File(dir, HOST_FILE), "rw");
+    try {
+      // lock so JVMs starting together agree on one id
+      FileLock lock = raf.getChannel().lock();
+      try {
+        if (raf.length() == 0) {
+          raf.writeUTF(Long.toHexString(new Random().nextLong() &
+                                        Long.MAX_VALUE));
+        }
+        raf.seek(0);
+        return raf.readUTF();
+      }
+      finally {
+        lock.release();
+      }
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  /** delete files left behind by readers that never read them */
+  private void removeStale() {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    long limit = System.currentTimeMillis() - STALE_MILLIS;
+    for (int i=0; i<files.length; i++) {
+      if (files[i].getName().endsWith(SUFFIX) &&
+          files[i].lastModified() < limit) {
+        files[i].delete();
+      }
+    }
+  }
+
+  /** delete the unread files written by this store */
+  private void removeOwn() {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    for (int i=0; i<files.length; i++) {
+      String name = files[i].getName();
+      if (name.startsWith(prefix) && name.endsWith(SUFFIX)) {
+        files[i].delete();
+      }
+    }
+  }
+
+  /** names a file of arrays written by a SharedMemoryStore */
+  public static class Handle implements Serializable {
+
+    private final String hostId;
+
+    private final String name;
+
+    private final byte[] types;
+
+    private final int[] lengths;
+
+    Handle(String hostId, String name, byte[] types, int[] lengths) {
+      this.hostId = hostId;
+      this.name = name;
+      this.types = types;
+      this.lengths = lengths;
+    }
+
+    public String getHostId() {
+      return hostId;
+    }
+
+    /** write this Handle to out, for streams of primitive data */
+    void write(DataOutput out) throws IOException {
+      out.writeUTF(hostId);
+      out.writeUTF(name);
+      out.writeInt(types.length);
+      for (int i=0; i<types.length; i++) {
+        out.writeByte(types[i]);
+        out.writeInt(lengths[i]);
+      }
+    }
+
+    /** read a Handle written by write */
+    static Handle read(DataInput in) throws IOException {
+      String hostId = in.readUTF();
+      String name = in.readUTF();
+      int n = in.readInt();
+      byte[] types = new byte[n];
+      int[] lengths = new int[n];
+      for (int i=0; i<n; i++) {
+        types[i] = in.readByte();
+        lengths[i] = in.readInt();
+      }
+      return new Handle(hostId, name, types, lengths);
+    }
+
+    public String toString() {
+      return "SharedMemoryStore.Handle " + hostId + " " + name;
+    }
+  }
+
+}
+
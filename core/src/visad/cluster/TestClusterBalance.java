@@ -0,0 +1,314 @@
+//
+// TestClusterBalance.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.cluster;
+
+import visad.*;
+import visad.java3d.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.rmi.*;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.awt.event.*;
+import javax.swing.*;
+
+/**
+   TestClusterBalance is the class for testing load balancing in the
+   visad.cluster package, with several node JVMs on the local host.
+   The client starts an RMI registry and the node JVMs, and splits a
+   synthetic image into divide x divide partitions.  Partition p lives
+   on node (p % nodes), with a replica on node ((p + 1) % nodes); node
+   0 may be slowed by busy threads.  The client then contours the
+   image for a number of frames, printing the latency the
+   PartitionScheduler measures for each node and the number of
+   partitions it moved off slow nodes.<P>
+
+   Usage: java visad.cluster.TestClusterBalance [-nodes n] [-divide d]
+   [-busy b] [-frames f]<P>
+*/
+public class TestClusterBalance extends Object {
+
+  /** samples along each edge of the image */
+  private static final int SIZE = 512;
+
+  private static final String URL = "///TestClusterBalance";
+
+  public TestClusterBalance() {
+  }
+
+  public static void main(String[] args)
+         throws RemoteException, VisADException {
+
+    int nodes = 3;
+    int divide = 4;
+    int busy = 2;
+    int frames = 10;
+    int node = -1;
+    try {
+      for (int i=0; i<args.length; i++) {
+        if (args[i].equals("-nodes")) nodes = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-divide")) divide = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-busy")) busy = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-frames")) frames = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-node")) node = Integer.parseInt(args[++i]);
+        else throw new NumberFormatException(args[i]);
+      }
+    }
+    catch (RuntimeException e) {
+      System.out.println("usage: 'java visad.cluster.TestClusterBalance " +
+                         "[-nodes n] [-divide d] [-busy b] [-frames f]'");
+      return;
+    }
+
+    FlatField image = makeImage();
+    Linear2DSet domain_set = (Linear2DSet) image.getDomainSet();
+    Linear2DSet ps =
+      ClusterPartitioner.makePartitionSet(domain_set, divide, divide);
+    int nparts = ps.getLength();
+
+    if (node >= 0) {
+      runNode(node, nodes, busy, image, ps);
+      return;
+    }
+
+    // client: start the registry and the node JVMs
+    Registry registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+    final Process[] processes = new Process[nodes];
+    String java = System.getProperty("java.home") + File.separator + "bin" +
+                  File.separator + "java";
+    for (int k=0; k<nodes; k++) {
+      ProcessBuilder builder = new ProcessBuilder(new String[] {java,
+        "-cp", System.getProperty("java.class.path"),
+        "visad.cluster.TestClusterBalance", "-node", Integer.toString(k),
+        "-nodes", Integer.toString(nodes), "-divide", Integer.toString(divide),
+        "-busy", Integer.toString(busy)});
+      builder.redirectErrorStream(true);
+      try {
+        processes[k] = builder.start();
+      }
+      catch (IOException e) {
+        System.out.println("cannot start node " + k + " " + e);
+        System.exit(1);
+      }
+      echo("node " + k + ": ", processes[k]);
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      public void run() {
+        for (int k=0; k<processes.length; k++) processes[k].destroy();
+      }
+    });
+
+    // look up partitions and replicas as the nodes bind them
+    RemoteClusterData[] table = new RemoteClusterData[nparts + 1];
+    RemoteClusterData[][] replicas = new RemoteClusterData[nparts][];
+    for (int p=0; p<nparts; p++) {
+      table[p] = (RemoteClusterData) lookup(URL + p);
+      replicas[p] = (nodes > 1) ?
+        new RemoteClusterData[] {(RemoteClusterData) lookup(URL + p + "r")} :
+        new RemoteClusterData[0];
+    }
+
+    RemoteClientPartitionedFieldImpl client_image =
+      new RemoteClientPartitionedFieldImpl((FunctionType) image.getType(),
+                                           domain_set);
+    table[nparts] = client_image;
+    for (int i=0; i<table.length; i++) {
+      table[i].setupClusterData(ps, table);
+    }
+    for (int p=0; p<nparts; p++) {
+      for (int j=0; j<replicas[p].length; j++) {
+        replicas[p][j].setupClusterData(ps, table);
+      }
+    }
+    client_image.setReplicaTable(replicas);
+
+    DisplayImpl display =
+      new DisplayImplJ3D("main_display", new ClientDisplayRendererJ3D(100000));
+    FunctionType image_type = (FunctionType) image.getType();
+    RealTupleType domain_type = image_type.getDomain();
+    RealType element = (RealType) domain_type.getComponent(0);
+    RealType line = (RealType) domain_type.getComponent(1);
+    RealType radiance = (RealType) image_type.getRange();
+    display.addMap(new ScalarMap(line, Display.YAxis));
+    display.addMap(new ScalarMap(element, Display.XAxis));
+    ScalarMap contour_map = new ScalarMap(radiance, Display.IsoContour);
+    display.addMap(contour_map);
+
+    DataReferenceImpl ref = new DataReferenceImpl("image");
+    RemoteDataReferenceImpl remote_ref = new RemoteDataReferenceImpl(ref);
+    remote_ref.setData(client_image);
+    RemoteDisplayImpl remote_display = new RemoteDisplayImpl(display);
+    remote_display.addReference(remote_ref);
+
+    JFrame frame = new JFrame("test TestClusterBalance");
+    frame.addWindowListener(new WindowAdapter() {
+      public void windowClosing(WindowEvent e) {System.exit(0);}
+    });
+    JPanel panel = new JPanel();
+    panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+    frame.getContentPane().add(panel);
+    panel.add(display.getComponent());
+    frame.setSize(500, 500);
+    frame.setVisible(true);
+
+    // re-contour for each frame, and report what the scheduler measured
+    ContourControl control = (ContourControl) contour_map.getControl();
+    ClientRendererJ3D renderer =
+      (ClientRendererJ3D) display.getRendererVector().elementAt(0);
+    for (int f=0; f<frames; f++) {
+      control.setContourInterval(0.05f + 0.01f * (f % 5), -1.0f, 1.0f, 0.0f);
+      try {
+        Thread.sleep(3000);
+      }
+      catch (InterruptedException e) {
+      }
+      PartitionScheduler scheduler = renderer.getScheduler();
+      if (scheduler == null) continue;
+      String[] ids = scheduler.getNodeIds();
+      double[] latencies = scheduler.getNodeLatencies();
+      StringBuffer buf = new StringBuffer("frame " + f + ":");
+      for (int n=0; n<ids.length; n++) {
+        buf.append(" " + ids[n] + " " + Math.round(latencies[n]) + " ms");
+      }
+      buf.append(", steals " + scheduler.getSteals());
+      System.out.println(buf);
+    }
+    System.exit(0);
+  }
+
+  /** bind this node's partitions and replicas, then wait */
+  private static void runNode(int node, int nodes, int busy, FlatField image,
+                              Linear2DSet ps)
+          throws RemoteException, VisADException {
+    Linear2DSet[] subsets =
+      ClusterPartitioner.makeSubsets((Linear2DSet) image.getDomainSet(), ps);
+    for (int p=0; p<subsets.length; p++) {
+      boolean primary = (p % nodes) == node;
+      boolean replica = nodes > 1 && ((p + 1) % nodes) == node;
+      if (!primary && !replica) continue;
+      RemoteNodePartitionedFieldImpl field =
+        new RemoteNodePartitionedFieldImpl(
+          (FieldImpl) image.resample(subsets[p]));
+      try {
+        Naming.rebind(URL + p + (primary ? "" : "r"), field);
+      }
+      catch (Exception e) {
+        System.out.println("rebind " + p + " " + e);
+        System.exit(1);
+      }
+    }
+
+    // slow node 0 down, as if it were shared with other work
+    if (node == 0) {
+      for (int i=0; i<busy; i++) {
+        Thread spinner = new Thread() {
+          public void run() {
+            double x = 0.0;
+            while (true) x = Math.sin(x + 1.0);
+          }
+        };
+        spinner.setDaemon(true);
+        spinner.setPriority(Thread.MAX_PRIORITY);
+        spinner.start();
+      }
+    }
+
+    // just so node doesn't exit
+    while (true) {
+      try {
+        Thread.sleep(60000);
+      }
+      catch (InterruptedException e) {
+      }
+    }
+  }
+
+  /** look up url, waiting for a node to bind it */
+  private static Remote lookup(String url) throws VisADException {
+    for (int i=0; i<600; i++) {
+      try {
+        return Naming.lookup(url);
+      }
+      catch (NotBoundException e) {
+      }
+      catch (Exception e) {
+        throw new ClusterException("lookup " + url + " " + e);
+      }
+      try {
+        Thread.sleep(100);
+      }
+      catch (InterruptedException e) {
+      }
+    }
+    throw new ClusterException("lookup " + url + " timed out");
+  }
+
+  /** copy the output of process to System.out, prefixed */
+  private static void echo(final String prefix, final Process process) {
+    Thread thread = new Thread() {
+      public void run() {
+        try {
+          BufferedReader in = new BufferedReader(
+            new InputStreamReader(process.getInputStream()));
+          String s;
+          while ((s = in.readLine()) != null) System.out.println(prefix + s);
+        }
+        catch (IOException e) {
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** a smooth synthetic image, the same in every JVM */
+  private static FlatField makeImage()
+          throws VisADException, RemoteException {
+    RealType element = RealType.getRealType("ImageElement");
+    RealType line = RealType.getRealType("ImageLine");
+    RealType radiance = RealType.getRealType("ImageRadiance");
+    RealTupleType domain = new RealTupleType(element, line);
+    FunctionType type = new FunctionType(domain, radiance);
+    Linear2DSet set =
+      new Linear2DSet(domain, 0.0, SIZE - 1.0, SIZE, 0.0, SIZE - 1.0, SIZE);
+    float[][] values = new float[1][SIZE * SIZE];
+    for (int j=0; j<SIZE; j++) {
+      for (int i=0; i<SIZE; i++) {
+        double a = 8.0 * i / SIZE;
+        double b = 8.0 * j / SIZE;
+        values[0][j * SIZE + i] = (float) (Math.sin(a) * Math.cos(b));
+      }
+    }
+    FlatField image = new FlatField(type, set);
+    image.setSamples(values, false);
+    return image;
+  }
+
+}
@@ -65,8 +65,9 @@ MonitorEvent transmission happens in several steps.
    or more events, the forwarded event will be added to
    a queue which will be delivered as soon as the current
    events have been delivered.
- * To deliver one or more events, the MonitorSyncer sends a
-   "key" for each event to the remote DisplaySync.
+ * To deliver one or more events, the MonitorSyncer waits
+   a short batch window, then sends the "keys" of all the
+   events gathered to the remote DisplaySync in one call.
  * The remote DisplaySync gathers all the event keys,
    then uses them to request the actual events from the
    MonitorSyncer.
@@ -596,6 +597,22 @@ public class DisplayMonitorImpl
     return result;
   }
 
+  /**
+   * Returns the event delivery statistics for each listener.
+   *
+   * @return one {@link MonitorLag MonitorLag} per listener.
+   */
+  public MonitorLag[] getListenerLag()
+  {
+    synchronized (listeners) {
+      MonitorLag[] lag = new MonitorLag[listeners.size()];
+      for (int i = 0; i < lag.length; i++) {
+        lag[i] = ((MonitorSyncer )listeners.get(i)).getLag();
+      }
+      return lag;
+    }
+  }
+
   // WLH 12 April 2001
   public boolean isEmpty() {
     boolean result = true;
@@ -24,6 +24,7 @@ package visad.collab;
 
 import java.rmi.RemoteException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -207,6 +208,33 @@ public class DisplaySyncImpl
     }
   }
 
+  /**
+   * Start event callback for a batch of events.
+   */
+  public void eventsReady(RemoteEventProvider provider, Object[] keys)
+  {
+    synchronized (tableLock) {
+      HashMap table;
+      if (thisThread != null) {
+        if (diverted == null) {
+          diverted = new HashMap();
+        }
+        table = diverted;
+      } else {
+        table = current;
+      }
+
+      for (int i = 0; i < keys.length; i++) {
+        table.put(keys[i], provider);
+      }
+
+      if (thisThread == null && table.size() > 0) {
+        thisThread = new Thread(this);
+        thisThread.start();
+      }
+    }
+  }
+
   public String getName() { return Name; }
 
   public boolean isLocalClear()
@@ -406,37 +434,59 @@ public class DisplaySyncImpl
   {
     HashMap map = null;
 
+    // gather the keys for each provider, so each is asked only once
+    HashMap byProvider = new HashMap();
     Iterator iter = table.keySet().iterator();
     while (iter.hasNext()) {
       String key = (String )iter.next();
       RemoteEventProvider provider = (RemoteEventProvider )table.get(key);
       iter.remove();
 
-      MonitorEvent evt = requestOneEvent(key, provider);
-      if (evt != null) {
-        if (map == null) {
-          map = new HashMap();
+      ArrayList keys = (ArrayList )byProvider.get(provider);
+      if (keys == null) {
+        keys = new ArrayList();
+        byProvider.put(provider, keys);
+      }
+      keys.add(key);
+    }
+
+    iter = byProvider.keySet().iterator();
+    while (iter.hasNext()) {
+      RemoteEventProvider provider = (RemoteEventProvider )iter.next();
+      Object[] keys = ((ArrayList )byProvider.get(provider)).toArray();
+
+      MonitorEvent[] evts = requestEvents(keys, provider);
+      for (int i = 0; i < keys.length; i++) {
+        MonitorEvent evt = filterEvent(evts[i]);
+        if (evt != null) {
+          if (map == null) {
+            map = new HashMap();
+          }
+          map.put(keys[i], evt);
         }
-        map.put(key, evt);
       }
     }
 
     return map;
   }
 
-  private MonitorEvent requestOneEvent(String key,
+  private MonitorEvent[] requestEvents(Object[] keys,
                                        RemoteEventProvider provider)
     throws RemoteException
   {
-    // get the event
-    MonitorEvent evt;
     try {
-      evt = provider.getEvent(key);
+      if (keys.length == 1) {
+        return new MonitorEvent[] { provider.getEvent(keys[0]) };
+      }
+      return provider.getEvents(keys);
     } catch (RemoteVisADException rve) {
       rve.printStackTrace();
       throw new RemoteException(rve.getMessage());
     }
+  }
 
+  private MonitorEvent filterEvent(MonitorEvent evt)
+  {
     if (evt == null) {
       // if it's already been picked up, we're done
       return null;
@@ -40,4 +40,16 @@ public interface MonitorCallback
    */
   void eventReady(RemoteEventProvider provider, Object key)
     throws RemoteException, RemoteVisADException;
+
+  /**
+   * Alert the callback object that a batch of events is ready.
+   *
+   * @param provider Object from which the events should be fetched.
+   * @param keys Keys used to access the events, oldest first.
+   *
+   * @exception RemoteException If there was an RMI-related problem.
+   * @exception RemoteVisADException If there was an internal problem.
+   */
+  void eventsReady(RemoteEventProvider provider, Object[] keys)
+    throws RemoteException, RemoteVisADException;
 }
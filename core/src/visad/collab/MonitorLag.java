@@ -0,0 +1,120 @@
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+
+package visad.collab;
+
+import java.io.Serializable;
+
+/**
+ * <tt>MonitorLag</tt> is a snapshot of how well the events of a
+ * {@link DisplayMonitorImpl DisplayMonitorImpl} are keeping up with
+ * one remote listener.  Lags are measured from the time an event
+ * is first queued to the time the listener fetches it, in
+ * milliseconds.<P>
+ */
+public class MonitorLag
+  implements Serializable
+{
+  private final String name;
+  private final int id;
+  private final boolean dead;
+  private final int eventsWaiting;
+  private final long eventsQueued;
+  private final long eventsCoalesced;
+  private final long eventsDelivered;
+  private final long batchesSent;
+  private final long lastLag;
+  private final long maxLag;
+  private final double meanLag;
+
+  MonitorLag(String name, int id, boolean dead, int eventsWaiting,
+             long eventsQueued, long eventsCoalesced, long eventsDelivered,
+             long batchesSent, long lastLag, long maxLag, double meanLag)
+  {
+    this.name = name;
+    this.id = id;
+    this.dead = dead;
+    this.eventsWaiting = eventsWaiting;
+    this.eventsQueued = eventsQueued;
+    this.eventsCoalesced = eventsCoalesced;
+    this.eventsDelivered = eventsDelivered;
+    this.batchesSent = batchesSent;
+    this.lastLag = lastLag;
+    this.maxLag = maxLag;
+    this.meanLag = meanLag;
+  }
+
+  /** @return the name of the listener connection. */
+  public String getName() { return name; }
+
+  /** @return the unique listener identifier. */
+  public int getID() { return id; }
+
+  /** @return <tt>true</tt> if the listener could not be reached. */
+  public boolean isDead() { return dead; }
+
+  /** @return the number of events not yet fetched by the listener. */
+  public int getEventsWaiting() { return eventsWaiting; }
+
+  /** @return the number of events queued for the listener. */
+  public long getEventsQueued() { return eventsQueued; }
+
+  /** @return the number of events replaced by a newer event with the
+   *          same key before the listener fetched them. */
+  public long getEventsCoalesced() { return eventsCoalesced; }
+
+  /** @return the number of events fetched by the listener. */
+  public long getEventsDelivered() { return eventsDelivered; }
+
+  /** @return the number of batches of event keys sent. */
+  public long getBatchesSent() { return batchesSent; }
+
+  /** @return the lag of the most recently fetched event. */
+  public long getLastLag() { return lastLag; }
+
+  /** @return the largest lag of any fetched event. */
+  public long getMaxLag() { return maxLag; }
+
+  /** @return the mean lag of all fetched events. */
+  public double getMeanLag() { return meanLag; }
+
+  public String toString()
+  {
+    StringBuffer buf = new StringBuffer("MonitorLag[");
+    buf.append(name);
+    buf.append("=#");
+    buf.append(id);
+    if (dead) {
+      buf.append(",dead");
+    }
+    buf.append(",waiting=").append(eventsWaiting);
+    buf.append(",queued=").append(eventsQueued);
+    buf.append(",coalesced=").append(eventsCoalesced);
+    buf.append(",delivered=").append(eventsDelivered);
+    buf.append(",batches=").append(batchesSent);
+    buf.append(",lag=").append(lastLag);
+    buf.append('/').append(maxLag);
+    buf.append("ms]");
+    return buf.toString();
+  }
+}
@@ -24,41 +24,90 @@ package visad.collab;
 
 import java.rmi.RemoteException;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import visad.Control;
 import visad.RemoteDisplay;
 import visad.RemoteVisADException;
 
-import visad.util.ThreadPool;
-
+/**
+ * <tt>MonitorSyncer</tt> delivers the events of one
+ * {@link DisplayMonitorImpl DisplayMonitorImpl} to one remote listener.<P>
+ * Events are cached by key, so a newer event replaces an older one
+ * with the same key until the listener fetches it.  Keys are gathered
+ * for <tt>visad.collab.batchWindow</tt> milliseconds after the first
+ * new event, then sent to the listener in a single
+ * <tt>eventsReady()</tt> call.  Delivery runs on a scheduler shared
+ * by all <tt>MonitorSyncer</tt>s, which also handles retries, so no
+ * thread waits while a listener is unreachable.<P>
+ */
 class MonitorSyncer
   implements Runnable
 {
+  /** property holding the batch window in milliseconds */
+  public static final String PROP_BATCH_WINDOW = "visad.collab.batchWindow";
+
+  /** property holding the number of shared delivery threads */
+  public static final String PROP_SENDERS = "visad.collab.senders";
+
+  /** default batch window in milliseconds */
+  public static final long DEFAULT_BATCH_WINDOW = 20;
+
+  /** default number of shared delivery threads */
+  public static final int DEFAULT_SENDERS = 4;
+
+  /** milliseconds to wait before retrying a failed delivery */
+  private static final long RETRY_DELAY = 500;
+
+  /** failed deliveries in a row before a listener is declared dead */
+  private static final int MAX_ATTEMPTS = 5;
+
+  private static final long batchWindow =
+    Long.getLong(PROP_BATCH_WINDOW, DEFAULT_BATCH_WINDOW).longValue();
+
+  /**
+   * The delivery scheduler shared by all <tt>MonitorSyncer</tt>s and
+   * its lock.
+   */
+  private static ScheduledThreadPoolExecutor scheduler = null;
+  private static Object schedulerLock = new Object();
+
   private String Name;
 
   private boolean dead = false;
 
   private Object cacheLock = new Object();
-  private Thread thisThread = null;
 
-  private ArrayList current = new ArrayList();
-  private ArrayList diverted = null;
+  /** <tt>true</tt> while a delivery is scheduled or running */
+  private boolean scheduled = false;
+
+  /** keys not yet sent to the listener, oldest first */
+  private LinkedHashSet pending = new LinkedHashSet();
 
   private HashMap eventCache = null;
- 
+
+  /** time each cached event was first queued, for lag statistics */
+  private HashMap queueTimes = new HashMap();
+
   private RemoteDisplay rmtDpy;
   private MonitorCallback callback;
   private int id;
 
   private RemoteEventProvider provider;
 
-  /**
-   * The event callback thread pool and its lock.
-   */
-  private transient static ThreadPool callbackPool = null;
-  private static Object callbackPoolLock = new Object();
+  private int attempts = 0;
+
+  private long eventsQueued = 0;
+  private long eventsCoalesced = 0;
+  private long eventsDelivered = 0;
+  private long batchesSent = 0;
+  private long lastLag = 0;
+  private long maxLag = 0;
+  private long totalLag = 0;
 
   public MonitorSyncer(String name, MonitorCallback callback, int id)
     throws RemoteException
@@ -88,21 +137,46 @@ class MonitorSyncer
     this.provider = new RemoteEventProviderImpl(this);
   }
 
+  private static ScheduledThreadPoolExecutor getScheduler()
+  {
+    synchronized (schedulerLock) {
+      if (scheduler == null) {
+        int senders = Integer.getInteger(PROP_SENDERS,
+                                         DEFAULT_SENDERS).intValue();
+        scheduler = new ScheduledThreadPoolExecutor(Math.max(1, senders),
+          new ThreadFactory() {
+            private int count = 0;
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "MonitorSyncer-" + count++);
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      }
+      return scheduler;
+    }
+  }
+
   public void addEvent(MonitorEvent evt)
   {
     String key = evt.getKey();
     synchronized (cacheLock) {
       MonitorEvent oldEvt = (MonitorEvent )eventCache.put(key, evt);
 
-      if (thisThread != null) {
-        if (diverted == null) {
-          diverted = new ArrayList();
-        }
-        diverted.add(key);
+      eventsQueued++;
+      if (oldEvt != null) {
+        // the listener will only see the newest event for this key
+        eventsCoalesced++;
       } else {
-        current.add(key);
-        thisThread = new Thread(this);
-        thisThread.start();
+        queueTimes.put(key, new Long(System.currentTimeMillis()));
+      }
+
+      if (!dead) {
+        pending.add(key);
+        if (!scheduled) {
+          scheduled = true;
+          getScheduler().schedule(this, batchWindow, TimeUnit.MILLISECONDS);
+        }
       }
     }
   }
@@ -112,6 +186,16 @@ class MonitorSyncer
     MonitorEvent evt;
     synchronized (cacheLock) {
       evt = (MonitorEvent )eventCache.remove(key);
+      Long queued = (Long )queueTimes.remove(key);
+      if (evt != null && queued != null) {
+        long lag = System.currentTimeMillis() - queued.longValue();
+        lastLag = lag;
+        totalLag += lag;
+        if (lag > maxLag) {
+          maxLag = lag;
+        }
+        eventsDelivered++;
+      }
     }
 
     // mark message as coming from this connection, so we don't see it again
@@ -122,6 +206,15 @@ class MonitorSyncer
     return evt;
   }
 
+  public MonitorEvent[] getEvents(Object[] keys)
+  {
+    MonitorEvent[] evts = new MonitorEvent[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      evts[i] = getEvent(keys[i]);
+    }
+    return evts;
+  }
+
   /**
    * Get the unique identifier.
    *
@@ -133,18 +226,38 @@ class MonitorSyncer
 
   public String getName() { return Name; }
 
+  /**
+   * Get the delivery statistics for this listener.
+   *
+   * @return a snapshot of the statistics.
+   */
+  public MonitorLag getLag()
+  {
+    synchronized (cacheLock) {
+      return new MonitorLag(Name, id, dead, eventCache.size(), eventsQueued,
+                            eventsCoalesced, eventsDelivered, batchesSent,
+                            lastLag, maxLag,
+                            eventsDelivered == 0 ? 0.0 :
+                            (double )totalLag / (double )eventsDelivered);
+    }
+  }
+
   public boolean hasControlEventQueued(Control ctl)
   {
     if (ctl == null) {
       return false;
     }
 
-    return eventCache.containsKey(ControlMonitorEvent.getControlKey(ctl));
+    synchronized (cacheLock) {
+      return eventCache.containsKey(ControlMonitorEvent.getControlKey(ctl));
+    }
   }
 
   // WLH 12 April 2001
   public boolean isEmpty() {
-    return eventCache.isEmpty();
+    synchronized (cacheLock) {
+      return eventCache.isEmpty();
+    }
   }
 
   /**
@@ -167,54 +280,69 @@ class MonitorSyncer
     return this.rmtDpy.equals(rmtDpy);
   }
 
+  /**
+   * Sends one batch of keys, then reschedules itself if more keys
+   * arrived in the meantime or the listener could not be reached.
+   */
   public void run()
   {
-    boolean done = false;
-    try {
-
-      int attempts = 0;
-      while (!done) {
-        try {
-          sendEventKeys(current);
-          done = true;
-        } catch (RemoteException re) {
-          if (attempts++ < 5) {
-            // wait a bit, then try again to notify the remote Display
-            try { Thread.sleep(500); } catch (InterruptedException ie) { }
-          } else {
-            // if we failed to connect for 10 times, give up
-            dead = true;
-            break;
-          }
-        } catch (RemoteVisADException rve) {
-          rve.printStackTrace();
-          done = true;
-        }
-
-        if (done) {
-          synchronized (cacheLock) {
-            if (!undivertEvents()) {
-              break;
-            }
+    Object[] keys;
+    synchronized (cacheLock) {
+      if (pending.isEmpty()) {
+        scheduled = false;
+        return;
+      }
+      keys = pending.toArray();
+      pending.clear();
+    }
 
-            done = false;
+    long delay = batchWindow;
+    try {
+      sendEventKeys(keys);
+      synchronized (cacheLock) {
+        batchesSent++;
+        attempts = 0;
+      }
+    } catch (RemoteException re) {
+      synchronized (cacheLock) {
+        if (attempts++ < MAX_ATTEMPTS) {
+          // put the keys back in front of any newer ones and try again
+          LinkedHashSet retry = new LinkedHashSet();
+          for (int i = 0; i < keys.length; i++) {
+            retry.add(keys[i]);
           }
+          retry.addAll(pending);
+          pending = retry;
+          delay = RETRY_DELAY;
+        } else {
+          // if we failed to connect too many times, give up
+          dead = true;
+          pending.clear();
         }
       }
-    } finally {
-      // indicate that the thread has exited
-      synchronized (cacheLock) {
-        thisThread = null;
+    } catch (RemoteVisADException rve) {
+      rve.printStackTrace();
+    } catch (RuntimeException e) {
+      // don't let one bad listener kill a shared scheduler thread
+      e.printStackTrace();
+    }
+
+    synchronized (cacheLock) {
+      if (pending.isEmpty()) {
+        scheduled = false;
+      } else {
+        getScheduler().schedule(this, delay, TimeUnit.MILLISECONDS);
       }
     }
   }
 
-  private void sendEventKeys(ArrayList list)
+  private void sendEventKeys(Object[] keys)
     throws RemoteException, RemoteVisADException
   {
-    while (list.size() > 0) {
-      String key = (String )list.remove(0);
-      callback.eventReady(provider, key);
+    if (keys.length == 1) {
+      callback.eventReady(provider, keys[0]);
+    } else {
+      callback.eventsReady(provider, keys);
     }
   }
 
@@ -228,24 +356,6 @@ class MonitorSyncer
     return buf.toString();
   }
 
-  /**
-   * Returns <TT>true</TT> if there were diverted requests.
-   */
-  private boolean undivertEvents()
-  {
-    final boolean undivert;
-    synchronized (cacheLock) {
-      // if there are events queued, restore them to the main table
-      undivert = (diverted != null);
-      if (undivert) {
-        current = diverted;
-        diverted = null;
-      }
-    }
-
-    return undivert;
-  }
-
   /**
    * Used as key for ControlEvents in listener queue
    */
@@ -82,4 +82,23 @@ public class RemoteDisplaySyncImpl
 
     AdaptedSync.eventReady(provider, key);
   }
+
+  /**
+   * Notifies remote event consumer that a batch of events is ready.
+   *
+   * @param provider Object from which events should be fetched.
+   * @param keys Keys used to access events.
+   *
+   * @exception RemoteException If there was an RMI-related problem.
+   * @exception RemoteVisADException If there was an internal problem.
+   */
+  public void eventsReady(RemoteEventProvider provider, Object[] keys)
+    throws RemoteException, RemoteVisADException
+  {
+    if (AdaptedSync == null) {
+      throw new RemoteVisADException("AdaptedSync is null");
+    }
+
+    AdaptedSync.eventsReady(provider, keys);
+  }
 }
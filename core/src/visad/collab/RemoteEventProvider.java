@@ -32,4 +32,11 @@ public interface RemoteEventProvider
 {
   MonitorEvent getEvent(Object key)
     throws RemoteException, RemoteVisADException;
+
+  /**
+   * Returns the events for the specified keys in one call, with
+   * <tt>null</tt> for any event which has already been fetched.
+   */
+  MonitorEvent[] getEvents(Object[] keys)
+    throws RemoteException, RemoteVisADException;
 }
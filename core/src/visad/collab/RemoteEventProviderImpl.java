@@ -49,4 +49,14 @@ public class RemoteEventProviderImpl
 
     return syncer.getEvent(key);
   }
+
+  public MonitorEvent[] getEvents(Object[] keys)
+    throws RemoteException, RemoteVisADException
+  {
+    if (syncer == null) {
+      throw new RemoteVisADException("syncer is null");
+    }
+
+    return syncer.getEvents(keys);
+  }
 }
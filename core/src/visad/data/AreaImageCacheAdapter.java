@@ -190,6 +190,12 @@ public class AreaImageCacheAdapter extends SatelliteImage implements FlatFieldCa
     return fld.getFloats(copy);
   }
 
+  public float[][] getFloats(int[] indices) throws VisADException {
+    log.finest("getFloats");
+    FlatField fld = getAdaptedFlatField();
+    return fld.getFloats(indices);
+  }
+
   public Set getDomainSet() {
     log.finest("getDomainSet");
     Set domainSet = null;
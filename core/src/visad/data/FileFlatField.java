@@ -360,6 +360,17 @@ public class FileFlatField extends FlatField {
     return fld.getFloats(copy);
   }
 
+  public float[][] getFloats(int[] indices)
+         throws VisADException
+  {
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
+    }
+
+    return fld.getFloats(indices);
+  }
+
   public Set getDomainSet()
   {
     FlatField fld = getAdaptedFlatField();
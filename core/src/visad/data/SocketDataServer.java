@@ -28,17 +28,45 @@ package visad.data;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Vector;
 import visad.*;
 
 /**
  * A class for exporting data to a socket stream. Whenever the given
  * DataReference's data changes, it is sent across the socket to any clients
- * that are listening.
+ * that are listening.<P>
+ *
+ * Each update is serialized once, and the same bytes are written to
+ * every client through a non-blocking channel, so a slow client never
+ * delays the others or the data's producer.  Each client has a bounded
+ * queue of updates waiting to be sent; since every update carries the
+ * complete data, when the queue of a lagging client is full its oldest
+ * unsent updates are dropped in favor of the newest one.<P>
+ *
+ * The stream seen by a client is an ordinary object stream, as read by
+ * SocketDataSource: every update starts with a stream reset, so it can
+ * be decoded without reference to earlier updates.
  */
 public class SocketDataServer {
 
+  /**
+   * Default number of updates each client may have waiting to be sent.
+   */
+  public static final int DEFAULT_QUEUE_SIZE = 2;
+
+  /** object stream header, sent once to each new client */
+  private static final byte[] HEADER = {
+    (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8),
+    (byte) ObjectStreamConstants.STREAM_MAGIC,
+    (byte) (ObjectStreamConstants.STREAM_VERSION >> 8),
+    (byte) ObjectStreamConstants.STREAM_VERSION
+  };
+
   /**
    * The main socket for this SocketDataServer.
    */
@@ -51,6 +79,8 @@ public class SocketDataServer {
 
   /**
    * List of output streams for client sockets.
+   * @deprecated clients are now written through non-blocking channels,
+   *             and this list is always empty
    */
   protected Vector outs = new Vector();
 
@@ -67,35 +97,104 @@ public class SocketDataServer {
   /**
    * Whether the server is still active.
    */
-  protected boolean alive = true;
+  protected volatile boolean alive = true;
+
+  /** maximum number of updates waiting to be sent to a client */
+  private int queueSize;
+
+  private ServerSocketChannel serverChannel;
+
+  private Selector selector;
+
+  /** runs connect, the only thread that selects on selector */
+  private Thread connectThread;
+
+  /** connected clients, in the same order as sockets */
+  private Vector clients = new Vector();
+
+  /** most recent serialized update, sent to newly connected clients */
+  private byte[] current = null;
+
+  private long framesSent = 0;
+
+  private long framesDropped = 0;
+
+  /** a connected client and its queue of updates to send */
+  private static class Client {
+    SocketChannel channel;
+    SelectionKey key;
+    ByteBuffer header = ByteBuffer.wrap(HEADER);
+    LinkedList<ByteBuffer> queue = new LinkedList<ByteBuffer>();
+  }
 
   /**
-   * Code for monitoring incoming clients.
+   * Code for accepting incoming clients and writing queued updates;
+   * once killServer clears alive, it closes the sockets and selector.
    */
   private Runnable connect = new Runnable() {
     public void run() {
+      try {
+        serve();
+      }
+      finally {
+        shutDown();
+      }
+    }
+
+    private void serve() {
+      ByteBuffer discard = ByteBuffer.allocate(256);
       while (alive) {
         try {
-          // wait for a new socket to connect
-          Socket s = socket.accept();
+          selector.select();
           if (!alive) break;
+          Iterator keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            keys.remove();
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) {
+              accept();
+              continue;
+            }
+            Client client = (Client) key.attachment();
+            try {
+              if (key.isReadable()) {
+                // clients never send anything; end of stream means closed
+                discard.clear();
+                if (client.channel.read(discard) < 0) {
+                  throw new EOFException();
+                }
+              }
+              if (key.isValid() && key.isWritable()) write(client);
+            }
+            catch (IOException exc) {
+              // something wrong with this socket; kill it
+              synchronized (sockets) {
+                int i = clients.indexOf(client);
+                if (i >= 0) killSocket(i);
+              }
+            }
+          }
+
+          // only ask to write to clients with something to send
           synchronized (sockets) {
-            if (s != null) {
-              // add client to the list
-              sockets.add(s);
-
-              // add client's input and output streams to the list
-              ObjectOutputStream out =
-                new ObjectOutputStream(s.getOutputStream());
-              outs.add(out);
-
-              // send the current data to the client
-              Data data = SocketDataServer.this.ref.getData();
-              out.writeObject(data);
+            for (int i=0; i<clients.size(); i++) {
+              Client client = (Client) clients.elementAt(i);
+              if (client.key.isValid()) {
+                boolean pending;
+                synchronized (client) {
+                  pending = client.header.hasRemaining() ||
+                            !client.queue.isEmpty();
+                }
+                client.key.interestOps(pending ?
+                  SelectionKey.OP_READ | SelectionKey.OP_WRITE :
+                  SelectionKey.OP_READ);
+              }
             }
           }
         }
         catch (IOException exc) { }
+        catch (CancelledKeyException exc) { }
       }
     }
   };
@@ -107,23 +206,24 @@ public class SocketDataServer {
     public synchronized void doAction()
       throws VisADException, RemoteException
     {
-      // send new data to each client using its socket
+      // serialize the new data once, outside the sockets lock
+      byte[] frame;
+      try {
+        frame = serialize(SocketDataServer.this.ref.getData());
+      }
+      catch (IOException exc) {
+        throw new VisADException("SocketDataServer: " + exc.getMessage());
+      }
+
+      // queue it for each client; the socket thread does the writing
       synchronized (sockets) {
-        Data data = SocketDataServer.this.ref.getData();
-        int i = 0;
-        while (i < sockets.size()) {
-          Socket s = (Socket) sockets.elementAt(i);
-          ObjectOutputStream out = (ObjectOutputStream) outs.elementAt(i);
-          try {
-            out.writeObject(data);
-            i++;
-          }
-          catch (IOException exc) {
-            // something wrong with this socket; kill it
-            killSocket(i);
-          }
+        current = frame;
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        for (int i=0; i<clients.size(); i++) {
+          enqueue((Client) clients.elementAt(i), buffer.duplicate());
         }
       }
+      selector.wakeup();
     }
   };
 
@@ -133,14 +233,34 @@ public class SocketDataServer {
   public SocketDataServer(int port, DataReferenceImpl ref)
     throws VisADException, IOException
   {
+    this(port, ref, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * Construct a SocketDataServer with the given port and data reference,
+   * which keeps at most queueSize (at least 2) updates waiting to be
+   * sent to each client.
+   */
+  public SocketDataServer(int port, DataReferenceImpl ref, int queueSize)
+    throws VisADException, IOException
+  {
+    if (queueSize < 2) {
+      throw new VisADException("SocketDataServer: queueSize must be >= 2");
+    }
     this.port = port;
     this.ref = ref;
+    this.queueSize = queueSize;
 
-    // create a server socket at the given port
-    socket = new ServerSocket(port);
+    // create a non-blocking server socket at the given port
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    socket = serverChannel.socket();
+    socket.bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
-    // monitor incoming client socket connections
-    Thread connectThread = new Thread(connect);
+    // monitor incoming client socket connections and write to clients
+    connectThread = new Thread(connect, "SocketDataServer " + port);
     connectThread.start();
 
     // monitor data changes
@@ -148,34 +268,144 @@ public class SocketDataServer {
   }
 
   /**
-   * Shut down the given socket, and removes it from the socket vector.
+   * Serialize data as one update of an object stream: a stream reset
+   * followed by the object.
    */
-  private void killSocket(int i) {
-    ObjectOutputStream out = (ObjectOutputStream) outs.elementAt(i);
-    Socket s = (Socket) sockets.elementAt(i);
+  private static byte[] serialize(Data data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(data);
+    out.flush();
+    byte[] stream = bytes.toByteArray();
 
-    // shut down socket output stream
-    try {
-      out.close();
+    // replace the stream header with a reset
+    byte[] frame = new byte[stream.length - HEADER.length + 1];
+    frame[0] = ObjectStreamConstants.TC_RESET;
+    System.arraycopy(stream, HEADER.length, frame, 1,
+                     stream.length - HEADER.length);
+    return frame;
+  }
+
+  /** accept a new client and queue the current data for it */
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) return;
+    channel.configureBlocking(false);
+    Client client = new Client();
+    client.channel = channel;
+    synchronized (sockets) {
+      if (current == null) {
+        try {
+          current = serialize(ref.getData());
+        }
+        catch (IOException exc) {
+          channel.close();
+          return;
+        }
+      }
+      client.key = channel.register(selector,
+        SelectionKey.OP_READ | SelectionKey.OP_WRITE, client);
+      sockets.add(channel.socket());
+      clients.add(client);
+      enqueue(client, ByteBuffer.wrap(current));
     }
-    catch (IOException exc) { }
+  }
+
+  /**
+   * Add frame to the queue of client, dropping the oldest unsent frames
+   * if the queue is full.
+   */
+  private void enqueue(Client client, ByteBuffer frame) {
+    synchronized (client) {
+      // a partly written frame must be finished
+      int first = (!client.queue.isEmpty() &&
+                   client.queue.getFirst().position() > 0) ? 1 : 0;
+      while (client.queue.size() >= queueSize &&
+             client.queue.size() > first) {
+        client.queue.remove(first);
+        countFrame(false);
+      }
+      client.queue.addLast(frame);
+    }
+  }
+
+  /** write as much of the queue of client as its socket will take */
+  private void write(Client client) throws IOException {
+    synchronized (client) {
+      if (client.header.hasRemaining()) {
+        client.channel.write(client.header);
+        if (client.header.hasRemaining()) return;
+      }
+      while (!client.queue.isEmpty()) {
+        ByteBuffer frame = client.queue.getFirst();
+        client.channel.write(frame);
+        if (frame.hasRemaining()) return; // socket buffer is full
+        client.queue.removeFirst();
+        countFrame(true);
+      }
+    }
+  }
+
+  /**
+   * Shut down the given socket, and removes it from the socket vector.
+   */
+  private void killSocket(int i) {
+    Client client = (Client) clients.elementAt(i);
 
     // shut down socket itself
+    if (client.key != null) client.key.cancel();
     try {
-      s.close();
+      client.channel.close();
     }
     catch (IOException exc) { }
 
     // remove socket from socket vectors
     sockets.remove(i);
-    outs.remove(i);
+    clients.remove(i);
+  }
+
+  private synchronized void countFrame(boolean sent) {
+    if (sent) framesSent++;
+    else framesDropped++;
+  }
+
+  /** return the number of connected clients */
+  public int getClientCount() {
+    synchronized (sockets) {
+      return clients.size();
+    }
+  }
+
+  /** return the number of updates completely written to clients */
+  public synchronized long getFramesSent() {
+    return framesSent;
+  }
+
+  /**
+   * return the number of updates dropped because a client's queue
+   * was full
+   */
+  public synchronized long getFramesDropped() {
+    return framesDropped;
   }
 
   /** destroys this server and kills all associated threads */
   public void killServer() {
-    // set flag to cause server's threads to stop running
+    // set flag to cause server's threads to stop running; the
+    // selector thread closes everything when it sees it
     alive = false;
+    selector.wakeup();
+    if (Thread.currentThread() != connectThread) {
+      try {
+        connectThread.join(5000);
+      }
+      catch (InterruptedException exc) { }
+    }
+  }
 
+  /** close the client and server sockets and the selector; called by
+      the selector thread as it exits */
+  private void shutDown() {
     // shut down all client sockets
     synchronized (sockets) {
       while (sockets.size() > 0) killSocket(0);
@@ -183,10 +413,13 @@ public class SocketDataServer {
 
     // shut down server socket
     try {
-      socket.close();
+      serverChannel.close();
+    }
+    catch (IOException exc) { }
+    try {
+      selector.close();
     }
     catch (IOException exc) { }
   }
 
 }
-
@@ -218,6 +218,13 @@ public class LambertAzimuthalEqualArea extends CoordinateSystem {
      return t_tuples;
   }
 
+  /** return true: the projection parameters are set in the
+      constructor, and fromReference keeps its sine and cosine
+      scratch arrays in locals */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     if (cs instanceof LambertAzimuthalEqualArea) {
        LambertAzimuthalEqualArea that = (LambertAzimuthalEqualArea) cs;
@@ -208,6 +208,13 @@ public class LambertConformalConic extends CoordinateSystem
     return t_tuples;
   }
 
+  /** return true: rh and the other cone constants are computed in
+      the constructor, and toReference and fromReference only read
+      them */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return ( cs instanceof LambertConformalConic );
   }
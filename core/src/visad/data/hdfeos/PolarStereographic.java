@@ -277,6 +277,12 @@ public class PolarStereographic extends CoordinateSystem
     return t_tuples;
   }
 
+  /** return true: fac, mcs, tcs and the other parameters are set
+      in the constructor; rh and ts are locals of each conversion */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   public boolean equals(Object cs) {
     return (cs instanceof PolarStereographic);
   }
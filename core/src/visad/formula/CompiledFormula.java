@@ -0,0 +1,441 @@
+//
+// CompiledFormula.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.formula;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Stack;
+import visad.*;
+
+/** A formula compiled from postfix notation into an evaluation tree.
+    Variables and constants are resolved once, when the formula is
+    compiled, and each operator or function remembers which of its
+    overloaded Methods accept each combination of operand classes, so
+    re-evaluating the formula neither searches the overloads nor relies
+    on exceptions from inapplicable ones.  Overloads are still tried in
+    the order they were defined, and the first to return a non-null
+    answer wins.<P> */
+class CompiledFormula {
+
+  /** variable whose formula this is; collects evaluation errors */
+  private final FormulaVar owner;
+
+  /** root of the evaluation tree; null for an empty formula */
+  private final Node root;
+
+  /** number of overload lookups answered from a dispatch cache */
+  private long dispatchHits = 0;
+
+  /** number of overload lookups that had to examine every overload */
+  private long dispatchMisses = 0;
+
+  /** compile postfix, resolving variable names with fm */
+  CompiledFormula(Postfix postfix, FormulaManager fm, FormulaVar owner)
+    throws FormulaException
+  {
+    this.owner = owner;
+    if (postfix.tokens == null) {
+      root = null;
+      return;
+    }
+    Stack stack = new Stack();
+    for (int i=0; i<postfix.tokens.length; i++) {
+      String token = postfix.tokens[i];
+      String op = "\"" + token + "\"";
+      int code = postfix.codes[i];
+      if (code == Postfix.BINARY) {
+        Node[] args = pop(stack, 2);
+        stack.push(new Call("binary operator " + op,
+          "binary method for operator " + op,
+          matching(fm.bOps, fm.bMethods, token, false), args, true));
+      }
+      else if (code == Postfix.UNARY) {
+        Node[] args = pop(stack, 1);
+        stack.push(new Call("unary operator " + op,
+          "unary method for operator " + op,
+          matching(fm.uOps, fm.uMethods, token, false), args, true));
+      }
+      else if (code == Postfix.FUNC) {
+        if (fm.isFunction(token)) {
+          // defined function - token is the function name
+          Node count = pop(stack, 1)[0];
+          int num = -1;
+          if (count instanceof Constant) {
+            num = (int) ((Constant) count).value.getValue();
+          }
+          if (num < 0) {
+            throw new FormulaException("invalid function arg length");
+          }
+          Node[] args = pop(stack, num);
+          stack.push(new Call("function " + op, "method for function " + op,
+            matching(fm.funcs, fm.fMethods, token, true), args, true));
+        }
+        else {
+          // implicit function - token is a non-negative integer
+          int num = 0;
+          try {
+            num = Integer.parseInt(token) + 1;
+          }
+          catch (NumberFormatException exc) {
+            if (FormulaVar.DEBUG) exc.printStackTrace();
+          }
+          if (num <= 0) {
+            throw new FormulaException("invalid implicit arg length");
+          }
+          Node[] args = pop(stack, num);
+          stack.push(new Call("implicit function",
+            "method for implicit function", fm.iMethods, args, false));
+        }
+      }
+      else { // code == Postfix.OTHER or Postfix.FUNCCONST
+        Double d = null;
+        try {
+          d = Double.valueOf(token);
+        }
+        catch (NumberFormatException exc) { }
+        if (d == null) {
+          // token is a variable name
+          try {
+            stack.push(new Variable(fm.getVarByNameOrCreate(token)));
+          }
+          catch (VisADException exc) {
+            throw new FormulaException(op + " is an illegal variable name");
+          }
+        }
+        else if (code == Postfix.OTHER) {
+          // convert constant to Real object with "CONSTANT" RealType
+          stack.push(new Constant(
+            new Real(FormulaVar.CONSTANT, d.doubleValue())));
+        }
+        else {
+          // constant is a function counter
+          stack.push(new Constant(new Real(d.doubleValue())));
+        }
+      }
+    }
+    root = pop(stack, 1)[0];
+    if (!stack.empty()) {
+      throw new FormulaException("leftover objects on stack");
+    }
+  }
+
+  /** pop the top num nodes from stack, in the order they were pushed */
+  private static Node[] pop(Stack stack, int num) throws FormulaException {
+    if (stack.size() < num) throw new FormulaException("stack empty");
+    Node[] nodes = new Node[num];
+    for (int j=num-1; j>=0; j--) nodes[j] = (Node) stack.pop();
+    return nodes;
+  }
+
+  /** return the Methods defined for token, in order of definition */
+  private static Method[] matching(String[] names, Method[] methods,
+    String token, boolean ignoreCase)
+  {
+    int count = 0;
+    for (int j=0; j<names.length; j++) {
+      if (ignoreCase ? names[j].equalsIgnoreCase(token) :
+                       names[j].equals(token)) count++;
+    }
+    Method[] m = new Method[count];
+    count = 0;
+    for (int j=0; j<names.length; j++) {
+      if (ignoreCase ? names[j].equalsIgnoreCase(token) :
+                       names[j].equals(token)) m[count++] = methods[j];
+    }
+    return m;
+  }
+
+  /** evaluate the formula, returning its answer in local form */
+  Thing evaluate() {
+    if (root == null) return null;
+    Thing answer = evaluate(root.evaluate());
+    if (answer instanceof Data) {
+      try {
+        answer = ((Data) answer).local();
+        // remove "constant" tag if final answer is a constant
+        if (answer instanceof Real &&
+            ((Real) answer).getType() == FormulaVar.CONSTANT)
+        {
+          answer = new Real(((Real) answer).getValue());
+        }
+      }
+      catch (VisADException exc) {
+        owner.evalError("The answer could not be converted to local data");
+        answer = null;
+      }
+      catch (RemoteException exc) {
+        owner.evalError(
+          "The answer could not be converted to local data (remote)");
+        answer = null;
+      }
+    }
+    return answer;
+  }
+
+  /** return the number of overload lookups answered from a cache */
+  long getDispatchHits() {
+    return dispatchHits;
+  }
+
+  /** return the number of overload lookups that examined every overload */
+  long getDispatchMisses() {
+    return dispatchMisses;
+  }
+
+  /** return o, evaluating it if it is a FieldExpression */
+  private Thing evaluate(Object o) {
+    if (!(o instanceof FieldExpression)) return (Thing) o;
+    try {
+      return ((FieldExpression) o).evaluate();
+    }
+    catch (VisADException exc) {
+      if (FormulaVar.DEBUG) exc.printStackTrace();
+      owner.evalError("Could not evaluate expression", exc);
+    }
+    catch (RemoteException exc) {
+      if (FormulaVar.DEBUG) exc.printStackTrace();
+      owner.evalError("Could not evaluate expression (remote)", exc);
+    }
+    return null;
+  }
+
+  /** a node of the evaluation tree */
+  private abstract static class Node {
+    /** return a Thing, a FieldExpression not yet evaluated, or null */
+    abstract Object evaluate();
+  }
+
+  /** a numeric constant */
+  private static class Constant extends Node {
+    final Real value;
+
+    Constant(Real value) {
+      this.value = value;
+    }
+
+    Object evaluate() {
+      return value;
+    }
+  }
+
+  /** the value of another variable */
+  private class Variable extends Node {
+    final FormulaVar var;
+
+    Variable(FormulaVar var) {
+      this.var = var;
+    }
+
+    Object evaluate() {
+      ThingReference r = var.getReference();
+      Thing t = null;
+      if (r != null) {
+        try {
+          t = r.getThing();
+        }
+        catch (VisADException exc) {
+          if (FormulaVar.DEBUG) exc.printStackTrace();
+        }
+        catch (RemoteException exc) {
+          if (FormulaVar.DEBUG) exc.printStackTrace();
+        }
+      }
+      if (t == null) owner.evalError("Variable \"" + var.name + "\" has no value");
+      return t;
+    }
+  }
+
+  /** classes of a list of operands, used as a dispatch cache key */
+  private static class Signature {
+    final Class[] classes;
+    final int hash;
+
+    Signature(Object[] o) {
+      classes = new Class[o.length];
+      for (int i=0; i<o.length; i++) classes[i] = o[i].getClass();
+      hash = Arrays.hashCode(classes);
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Signature &&
+             Arrays.equals(classes, ((Signature) o).classes);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** an operator, defined function or implicit function application */
+  private class Call extends Node {
+    /** what is applied, for error messages; e.g. binary operator "+" */
+    final String what;
+
+    /** description of its Methods, for error messages */
+    final String desc;
+
+    /** overloaded Methods, in order of definition */
+    final Method[] methods;
+
+    final Node[] args;
+
+    /** Data operation of the first Method, if it may be fused, or -1 */
+    final int fuseOp;
+
+    /** maps operand Signatures to the Methods that accept them */
+    final HashMap cache = new HashMap();
+
+    Call(String what, String desc, Method[] methods, Node[] args,
+      boolean fusable)
+    {
+      this.what = what;
+      this.desc = desc;
+      this.methods = methods;
+      this.args = args;
+      int op = -1;
+      if (fusable && methods.length > 0) {
+        op = FieldExpression.getOperation(methods[0]);
+        if (args.length != (op < Data.ABS ? 2 : 1)) op = -1;
+      }
+      fuseOp = op;
+    }
+
+    Object evaluate() {
+      Object[] o = new Object[args.length];
+      boolean ok = true;
+      for (int i=0; i<args.length; i++) {
+        o[i] = args[i].evaluate();
+        if (o[i] == null) ok = false;
+      }
+      if (ok && fuseOp >= 0) {
+        FieldExpression lazy = fuse(o);
+        if (lazy != null) return lazy;
+      }
+      for (int i=0; ok && i<o.length; i++) {
+        if (o[i] instanceof FieldExpression) {
+          o[i] = CompiledFormula.this.evaluate(o[i]);
+          if (o[i] == null) ok = false;
+        }
+      }
+      if (ok) {
+        Method[] applicable = getApplicable(o);
+        if (applicable.length == 0) {
+          owner.evalError("No " + desc + " accepts the given arguments");
+        }
+        for (int j=0; j<applicable.length; j++) {
+          // support for overloaded operators and functions
+          Thing ans = invoke(applicable[j], o);
+          if (ans != null) return ans;
+        }
+      }
+      owner.evalError("Could not evaluate " + what);
+      return null;
+    }
+
+    /** return the Methods accepting o, in order of definition */
+    private Method[] getApplicable(Object[] o) {
+      Signature sig = new Signature(o);
+      Method[] applicable = (Method[]) cache.get(sig);
+      if (applicable != null) {
+        dispatchHits++;
+        return applicable;
+      }
+      dispatchMisses++;
+      int count = 0;
+      boolean[] fits = new boolean[methods.length];
+      for (int j=0; j<methods.length; j++) {
+        fits[j] = FormulaUtil.isApplicable(methods[j], o);
+        if (fits[j]) count++;
+      }
+      applicable = new Method[count];
+      count = 0;
+      for (int j=0; j<methods.length; j++) {
+        if (fits[j]) applicable[count++] = methods[j];
+      }
+      cache.put(sig, applicable);
+      return applicable;
+    }
+
+    /** invoke m on o, returning null if it fails */
+    private Thing invoke(Method m, Object[] o) {
+      try {
+        return (Thing) FormulaUtil.invokeMethod(m, o);
+      }
+      catch (IllegalAccessException exc) {
+        if (FormulaVar.DEBUG) exc.printStackTrace();
+        owner.evalError("Cannot access " + desc, exc);
+      } // no access
+      catch (IllegalArgumentException exc) {
+        if (FormulaVar.DEBUG) exc.printStackTrace();
+        owner.evalError("Invalid argument to " + desc, exc);
+      } // wrong type of method
+      catch (InvocationTargetException exc) {
+        Throwable t = exc.getTargetException();
+        if (FormulaVar.DEBUG) t.printStackTrace();
+        owner.evalError(Character.toUpperCase(desc.charAt(0)) +
+          desc.substring(1) + " threw an exception", t);
+      } // method threw exception
+      return null;
+    }
+
+    /**
+     * if the operands are FlatFields, Reals or FieldExpressions (at
+     * least one not a Real), return a FieldExpression applying fuseOp
+     * to them, so that chains of such operations are evaluated in one
+     * pass; otherwise return null
+     */
+    private FieldExpression fuse(Object[] o) {
+      boolean field = false;
+      for (int i=0; i<o.length; i++) {
+        if (o[i] instanceof FieldExpression || o[i] instanceof FlatField) {
+          field = true;
+        }
+        else if (!(o[i] instanceof Real)) return null;
+      }
+      if (!field) return null;
+      try {
+        if (fuseOp < Data.ABS) {
+          return FieldExpression.of(o[0]).binary(FieldExpression.of(o[1]),
+                                                 fuseOp);
+        }
+        return FieldExpression.of(o[0]).unary(fuseOp);
+      }
+      catch (VisADException exc) {
+        // let the Method report it
+        if (FormulaVar.DEBUG) exc.printStackTrace();
+      }
+      catch (RemoteException exc) {
+        if (FormulaVar.DEBUG) exc.printStackTrace();
+      }
+      return null;
+    }
+  }
+
+}
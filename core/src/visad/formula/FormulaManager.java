@@ -312,6 +312,36 @@ public class FormulaManager {
     return v.getFormula();
   }
 
+  /** get the number of times a variable's formula has been computed
+      since it was assigned */
+  public long getComputeCount(String name) throws FormulaException {
+    return getVarByName(name).getComputeCount();
+  }
+
+  /** get the total time spent computing a variable's formula since it
+      was assigned, in nanoseconds */
+  public long getComputeTime(String name) throws FormulaException {
+    return getVarByName(name).getComputeTime();
+  }
+
+  /** get the longest time spent on one computation of a variable's
+      formula, in nanoseconds */
+  public long getMaxComputeTime(String name) throws FormulaException {
+    return getVarByName(name).getMaxComputeTime();
+  }
+
+  /** get the number of times an operator or function in a variable's
+      formula found the Methods accepting its operands already resolved */
+  public long getDispatchHits(String name) throws FormulaException {
+    return getVarByName(name).getDispatchHits();
+  }
+
+  /** get the number of times an operator or function in a variable's
+      formula had to resolve the Methods accepting its operands */
+  public long getDispatchMisses(String name) throws FormulaException {
+    return getVarByName(name).getDispatchMisses();
+  }
+
   /** list of all variables in this FormulaManager object */
   private Vector Vars = new Vector();
 
@@ -530,6 +530,55 @@ public class FormulaUtil {
     return methods;
   }
 
+  /** return whether invokeMethod(m, o) can pass the arguments o to m,
+      i.e., whether the number and classes of o fit m's parameters.
+      Primitive parameters, and the array parameter of a non-static
+      method, are only checked when the method is invoked */
+  public static boolean isApplicable(Method m, Object[] o) {
+    Class[] c = m.getParameterTypes();
+    int len = c.length;
+    int num = (o == null) ? 0 : o.length;
+    int a = -1;
+    for (int i=0; i<len; i++) {
+      if (c[i].isArray()) a = i;
+    }
+    int first = 0;
+    if (!Modifier.isStatic(m.getModifiers())) {
+      if (num == 0 || !m.getDeclaringClass().isInstance(o[0])) return false;
+      first = 1;
+    }
+    int n = num - first;
+    if (n == 0) return len == 0;
+    if (a < 0) {
+      if (n != len) return false;
+      for (int i=0; i<len; i++) {
+        if (!fits(c[i], o[first + i])) return false;
+      }
+      return true;
+    }
+    if (n < len - 1) return false;
+    if (first > 0) return true;
+    // static method; some of the arguments are compressed into array form
+    int count = n - len + 1;
+    for (int i=0; i<a; i++) {
+      if (!fits(c[i], o[i])) return false;
+    }
+    Class component = c[a].getComponentType();
+    for (int i=a; i<a+count; i++) {
+      if (component.isPrimitive() || !fits(component, o[i])) return false;
+    }
+    for (int i=a+1; i<len; i++) {
+      if (!fits(c[i], o[i + count - 1])) return false;
+    }
+    return true;
+  }
+
+  /** return whether o may be passed as a parameter of type c */
+  private static boolean fits(Class c, Object o) {
+    if (c.isPrimitive()) return o != null;
+    return o == null || c.isInstance(o);
+  }
+
   /** attempt to invoke a Method with the given Object arguments, performing
       static method auto-detection and automatic array compression */
   public static Object invokeMethod(Method m, Object[] o)
@@ -50,8 +50,8 @@ public class FormulaVar extends ActionImpl {
   /** formula associated with this variable, if any */
   private String formula;
 
-  /** formula in postfix notation, if it has been converted */
-  private Postfix postfix;
+  /** formula compiled into an evaluation tree, if it has been compiled */
+  private CompiledFormula compiled;
 
   /** reference of this variable */
   private ThingReference tref;
@@ -65,6 +65,12 @@ public class FormulaVar extends ActionImpl {
   /** whether the formula is currently being computed */
   private boolean computing = false;
 
+  /** number of times the formula has been computed */
+  private long computeCount = 0;
+
+  /** total and longest time spent computing the formula, in nanoseconds */
+  private long computeTime = 0, maxComputeTime = 0;
+
   /** constructor without specified ThingReference */
   FormulaVar(String n, FormulaManager f) throws VisADException {
     this(n, f, null);
@@ -153,7 +159,7 @@ public class FormulaVar extends ActionImpl {
     synchronized (Lock) {
       clearDependencies();
       if (formula != null) {
-        if (postfix == null) {
+        if (compiled == null) {
           try {
             // compute postfix expression
             Object[] o = new Object[2];
@@ -177,7 +183,7 @@ public class FormulaVar extends ActionImpl {
               if (DEBUG) t.printStackTrace();
               evalError("Preparsing exception", t);
             }
-            postfix = new Postfix(pf, fm);
+            Postfix postfix = new Postfix(pf, fm);
             int len = (postfix.tokens == null ? 0 : postfix.tokens.length);
             for (int i=0; i<len; i++) {
               String token = postfix.tokens[i];
@@ -210,6 +216,7 @@ public class FormulaVar extends ActionImpl {
                 }
               }
             }
+            compiled = new CompiledFormula(postfix, fm, this);
           }
           catch (FormulaException exc) {
             evalError("Syntax error in formula", exc);
@@ -248,7 +255,10 @@ public class FormulaVar extends ActionImpl {
         if (DEBUG) exc.printStackTrace();
       }
     }
-    postfix = null;
+    compiled = null;
+    computeCount = 0;
+    computeTime = 0;
+    maxComputeTime = 0;
     computing = true;
     rebuildDependencies();
   }
@@ -321,7 +331,7 @@ public class FormulaVar extends ActionImpl {
   void setThing(Thing t) throws VisADException, RemoteException {
     synchronized (Lock) {
       formula = null;
-      postfix = null;
+      compiled = null;
       clearDependencies();
       if (t == null || t != tref.getThing()) tref.setThing(t);
     }
@@ -395,7 +405,7 @@ public class FormulaVar extends ActionImpl {
 
   /** add an error to the list of errors that have occurred during
       formula evaluation */
-  private void evalError(String s) {
+  void evalError(String s) {
     synchronized (errors) {
       errors.add(s);
     }
@@ -403,305 +413,70 @@ public class FormulaVar extends ActionImpl {
 
   /** add an error to the list of errors that have occurred during formula
       evaluation, appending the given exception's message if any */
-  private void evalError(String s, Throwable t) {
+  void evalError(String s, Throwable t) {
     String msg = (t == null ? null : t.getMessage());
     evalError(s + (msg == null ? "" : ": " + msg));
   }
 
-  /** recompute this variable */
-  public void doAction() {
+  /** return the number of times the formula has been computed */
+  long getComputeCount() {
     synchronized (Lock) {
-      try {
-        if (postfix != null) tref.setThing(compute(postfix));
-      }
-      catch (VisADException exc) {
-        evalError("Could not store final value in variable");
-      }
-      catch (RemoteException exc) {
-        evalError("Could not store final value in variable (remote)");
-      }
-      computing = false;
-      Lock.notifyAll();
+      return computeCount;
     }
   }
 
-  /** used by compute method for convenience */
-  private Thing popStack(Stack s) {
-    if (s.empty()) {
-      evalError("Syntax error in formula (stack empty)");
-      return null;
+  /** return the total time spent computing the formula, in nanoseconds */
+  long getComputeTime() {
+    synchronized (Lock) {
+      return computeTime;
     }
-    else return (Thing) s.pop();
   }
 
-  /** compute the solution to this variable's postfix formula */
-  private Thing compute(Postfix formula) {
-    if (formula.tokens == null) return null;
-    int len = formula.tokens.length;
-    Stack stack = new Stack();
-    for (int i=0; i<len; i++) {
-      String token = formula.tokens[i];
-      String op = "\"" + token + "\"";
-      int code = formula.codes[i];
-      if (code == Postfix.BINARY) {
-        Object[] o = new Object[2];
-        o[1] = popStack(stack);
-        o[0] = popStack(stack);
-        Thing ans = null;
-        if (o[0] != null && o[1] != null) {
-          for (int j=0; j<fm.bMethods.length; j++) {
-            // support for overloaded operators
-            if (ans == null && fm.bOps[j].equals(token)) {
-              try {
-                ans = (Thing) FormulaUtil.invokeMethod(fm.bMethods[j], o);
-              }
-              catch (IllegalAccessException exc) {
-                if (DEBUG) exc.printStackTrace();
-                evalError(
-                  "Cannot access binary method for operator " + op, exc);
-              } // no access
-              catch (IllegalArgumentException exc) {
-                if (DEBUG) exc.printStackTrace();
-                evalError(
-                  "Invalid argument to binary method for operator " + op, exc);
-              } // wrong type of method
-              catch (InvocationTargetException exc) {
-                Throwable t = exc.getTargetException();
-                if (DEBUG) t.printStackTrace();
-                evalError("Binary method for operator " + op +
-                  " threw an exception", t);
-              } // method threw exception
-            }
-          }
-        }
-        if (ans == null) {
-          evalError("Could not evaluate binary operator " + op);
-          stack.push(null);
-        }
-        else stack.push(ans);
-      }
-      else if (code == Postfix.UNARY) {
-        Object[] o = new Object[1];
-        o[0] = popStack(stack);
-        Thing ans = null;
-        if (o[0] != null) {
-          for (int j=0; j<fm.uMethods.length; j++) {
-            // support for overloaded operators
-            if (ans == null && fm.uOps[j].equals(token)) {
-              try {
-                ans = (Thing) FormulaUtil.invokeMethod(fm.uMethods[j], o);
-              }
-              catch (IllegalAccessException exc) {
-                if (DEBUG) exc.printStackTrace();
-                evalError(
-                  "Cannot access unary method for operator " + op, exc);
-              } // no access
-              catch (IllegalArgumentException exc) {
-                if (DEBUG) exc.printStackTrace();
-                evalError(
-                  "Invalid argument to unary method for operator " + op, exc);
-              } // wrong type of method
-              catch (InvocationTargetException exc) {
-                Throwable t = exc.getTargetException();
-                if (DEBUG) t.printStackTrace();
-                evalError("Unary method for operator " + op +
-                  " threw an exception", t);
-              } // method threw exception
-            }
-          }
-        }
-        if (ans == null) {
-          evalError("Could not evaluate unary operator " + op);
-          stack.push(null);
-        }
-        else stack.push(ans);
-      }
-      else if (code == Postfix.FUNC) {
-        Thing ans = null;
-        if (fm.isFunction(token)) {
-          // defined function - token is the function name
-          int num = -1;
-          try {
-            Real r = (Real) popStack(stack);
-            num = (int) r.getValue();
-          }
-          catch (ClassCastException exc) {
-            if (DEBUG) exc.printStackTrace();
-          }
-          if (num < 0) {
-            evalError("Syntax error in formula (invalid function arg length)");
-            num = 1;
-          }
-          Object[] o;
-          if (num > 0) o = new Object[num];
-          else o = null;
-          boolean eflag = false;
-          for (int j=num-1; j>=0; j--) {
-            o[j] = popStack(stack);
-            if (o[j] == null) eflag = true;
-          }
-          if (!eflag) {
-            for (int j=0; j<fm.funcs.length; j++) {
-              // support for overloaded defined functions
-              if (ans == null && fm.funcs[j].equalsIgnoreCase(token)) {
-                try {
-                  ans = (Thing) FormulaUtil.invokeMethod(fm.fMethods[j], o);
-                }
-                catch (IllegalAccessException exc) {
-                  if (DEBUG) exc.printStackTrace();
-                  evalError("Cannot access method for function " + op, exc);
-                } // no access
-                catch (IllegalArgumentException exc) {
-                  if (DEBUG) exc.printStackTrace();
-                  evalError(
-                    "Invalid argument to method for function " + op, exc);
-                } // wrong type of method
-                catch (InvocationTargetException exc) {
-                  Throwable t = exc.getTargetException();
-                  if (DEBUG) t.printStackTrace();
-                  evalError(
-                    "Method for function " + op + " threw an exception", t);
-                } // method threw exception
-              }
-            }
-          }
-          if (ans == null) {
-            evalError("Could not evaluate function " + op);
-            stack.push(null);
-          }
-          else stack.push(ans);
-        }
-        else {
-          // implicit function - token is a non-negative integer
-          int num = 0;
-          try {
-            num = Integer.parseInt(token) + 1;
-          }
-          catch (NumberFormatException exc) {
-            if (DEBUG) exc.printStackTrace();
-          }
-          if (num <= 0) {
-            evalError("Syntax error in formula (invalid implicit arg length)");
-            num = 1;
-          }
-          Object[] o = new Object[num];
-          boolean eflag = false;
-          for (int j=num-1; j>=0; j--) {
-            o[j] = popStack(stack);
-            if (o[j] == null) eflag = true;
-          }
-          if (!eflag) {
-            for (int j=0; j<fm.iMethods.length; j++) {
-              // support for overloaded implicit functions
-              if (ans == null) {
-                try {
-                  ans = (Thing) FormulaUtil.invokeMethod(fm.iMethods[j], o);
-                }
-                catch (IllegalAccessException exc) {
-                  if (DEBUG) exc.printStackTrace();
-                  evalError("Cannot access method for implicit function", exc);
-                } // no access
-                catch (IllegalArgumentException exc) {
-                  if (DEBUG) exc.printStackTrace();
-                  evalError(
-                    "Invalid argument to method for implicit function", exc);
-                } // wrong type of method
-                catch (InvocationTargetException exc) {
-                  Throwable t = exc.getTargetException();
-                  if (DEBUG) t.printStackTrace();
-                  evalError(
-                    "Method for implicit function threw an exception", t);
-                } // method threw exception
-              }
-            }
-          }
-          if (ans == null) {
-            evalError("Could not evaluate implicit function");
-            stack.push(null);
-          }
-          else stack.push(ans);
-        }
-      }
-      else { // code == Postfix.OTHER
-        Double d = null;
-        try {
-          d = Double.valueOf(token);
-        }
-        catch (NumberFormatException exc) { }
-        if (d == null) {
-          // token is a variable name
-          FormulaVar v = null;
-          try {
-            v = fm.getVarByNameOrCreate(token);
-          }
-          catch (FormulaException exc) {
-            evalError(op + " is an illegal variable name");
-            stack.push(null);
-          }
-          catch (VisADException exc) {
-            evalError("Internal error", exc);
-            stack.push(null);
-          }
-          if (v != null) {
-            ThingReference r = v.getReference();
-            Thing t = null;
-            if (r != null) {
-              try {
-                t = r.getThing();
-              }
-              catch (VisADException exc) {
-                if (DEBUG) exc.printStackTrace();
-              }
-              catch (RemoteException exc) {
-                if (DEBUG) exc.printStackTrace();
-              }
-            }
-            if (t == null) {
-              evalError("Variable " + op + " has no value");
-              stack.push(null);
-            }
-            else stack.push(t);
-          }
-        }
-        else {
-          // token is a constant
-          if (code == Postfix.OTHER) {
-            // convert constant to Real object with "CONSTANT" RealType
-            stack.push(new Real(CONSTANT, d.doubleValue()));
-          }
-          else {
-            // constant is a function counter
-            stack.push(new Real(d.doubleValue()));
-          }
-        }
-      }
+  /** return the longest time spent computing the formula, in nanoseconds */
+  long getMaxComputeTime() {
+    synchronized (Lock) {
+      return maxComputeTime;
     }
+  }
+
+  /** return the number of overload lookups answered from the compiled
+      formula's dispatch caches */
+  long getDispatchHits() {
+    synchronized (Lock) {
+      return (compiled == null) ? 0 : compiled.getDispatchHits();
+    }
+  }
 
-    // return the final answer
-    Thing answer = popStack(stack);
-    if (!stack.empty()) {
-      evalError("Syntax error in formula (leftover objects on stack)");
+  /** return the number of overload lookups that examined every overload */
+  long getDispatchMisses() {
+    synchronized (Lock) {
+      return (compiled == null) ? 0 : compiled.getDispatchMisses();
     }
-    // return answer in local form
-    if (answer instanceof Data) {
+  }
+
+  /** recompute this variable */
+  public void doAction() {
+    synchronized (Lock) {
       try {
-        answer = ((Data) answer).local();
-        // remove "constant" tag if final answer is a constant
-        if (answer instanceof Real && ((Real) answer).getType() == CONSTANT) {
-          answer = new Real(((Real) answer).getValue());
+        if (compiled != null) {
+          long start = System.nanoTime();
+          Thing answer = compiled.evaluate();
+          long time = System.nanoTime() - start;
+          computeCount++;
+          computeTime += time;
+          if (time > maxComputeTime) maxComputeTime = time;
+          tref.setThing(answer);
         }
       }
       catch (VisADException exc) {
-        evalError("The answer could not be converted to local data");
-        answer = null;
+        evalError("Could not store final value in variable");
       }
       catch (RemoteException exc) {
-        evalError("The answer could not be converted to local data (remote)");
-        answer = null;
+        evalError("Could not store final value in variable (remote)");
       }
+      computing = false;
+      Lock.notifyAll();
     }
-    return answer;
   }
 
 }
-
@@ -156,6 +156,17 @@ public class TrivialMapProjection extends MapProjection
         return refTuple;
     }
 
+    /**
+     * Check whether this projection may be used from several threads
+     * at once.
+     *
+     * @return  true, since the transforms return their arguments and
+     *          the default map area is fixed at construction
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /**
      * See if the object in question is equal to this CoordinateSystem.
      * The two objects are equal if they are the same object or if they
@@ -28,6 +28,7 @@ package visad.java2d;
 
 import visad.*;
 import visad.util.Delay;
+import visad.util.ThreadManager;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -52,6 +53,26 @@ import java.util.*;
 public class VisADCanvasJ2D extends JPanel
        implements Runnable {
 
+  /**
+   * Property name for the default tile size, in pixels, of tiled rendering.
+   * @see #setTileSize(int)
+   */
+  public static final String PROP_TILE_SIZE = "visad.java2d.tileSize";
+
+  /**
+   * Property name for the default number of threads used by tiled rendering.
+   * @see #setTileThreads(int)
+   */
+  public static final String PROP_TILE_THREADS = "visad.java2d.tileThreads";
+
+  /** default tile size; 0 (the default) disables tiled rendering */
+  private static final int TILE_SIZE =
+    Integer.getInteger(PROP_TILE_SIZE, 0).intValue();
+
+  /** default number of tile threads; 0 (the default) means one per processor */
+  private static final int TILE_THREADS =
+    Integer.getInteger(PROP_TILE_THREADS, 0).intValue();
+
   /** line patterns for use with BasicStroke */
   private float[][] LINE_PATTERN = {
     null, {8}, {1, 7}, {7, 4, 1, 4}
@@ -88,6 +109,10 @@ public class VisADCanvasJ2D extends JPanel
   // flag set if images not created
   boolean timeout = false;
 
+  // tiled rendering; see setTileSize()
+  private int tileSize = TILE_SIZE;
+  private int tileThreads = TILE_THREADS;
+
   public VisADCanvasJ2D(DisplayRendererJ2D renderer, Component c) {
     displayRenderer = renderer;
     display = (DisplayImplJ2D) renderer.getDisplay();
@@ -448,8 +473,13 @@ System.out.println("VisADCanvasJ2D.paint: current_image = " + current_image +
         }
         try {
           if (animate_control != null) animate_control.init();
-          render(g2, ggg, root, 0, null);
-          render(g2, ggg, root, 1, null);
+          if (tileSize > 0 && (w > tileSize || h > tileSize)) {
+            renderTiles(image, root, tsave, w, h);
+          }
+          else {
+            render(g2, ggg, root, 0, null, null);
+            render(g2, ggg, root, 1, null, null);
+          }
           // draw Animation string in upper right corner of screen
           String[] animation_string = displayRenderer.getAnimationString();
           if (animation_string[0] != null) {
@@ -561,15 +591,385 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
     return;
   }
 
+  /**
+   * set the size, in pixels, of the square tiles used to render images
+   * larger than one tile; each tile is rendered directly into the image
+   * by one of getTileThreads() threads, clipped to the tile and drawing
+   * only the parts of the scene graph whose bounds intersect it, so
+   * large offscreen images can use every processor;
+   * 0 (the default, unless set by the visad.java2d.tileSize property)
+   * renders the whole image in one pass
+   */
+  public void setTileSize(int size) {
+    tileSize = (size < 0) ? 0 : size;
+    scratchImages();
+  }
+
+  /** return the tile size, or 0 if tiled rendering is disabled */
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * set the number of threads used for tiled rendering;
+   * 0 (the default, unless set by the visad.java2d.tileThreads
+   * property) uses one thread per available processor
+   */
+  public void setTileThreads(int threads) {
+    tileThreads = (threads < 0) ? 0 : threads;
+  }
+
+  /** return the number of threads used for tiled rendering */
+  public int getTileThreads() {
+    return (tileThreads > 0) ? tileThreads :
+                               Runtime.getRuntime().availableProcessors();
+  }
+
+  /** number of vertices in the chunks large arrays are split into */
+  private static final int CHUNK_VERTICES = 256;
+
+  /**
+   * a chunk of a scene graph leaf, with its bounds in scene coordinates;
+   * appearance is null for a chunk that is the whole leaf
+   */
+  private static class TileChunk {
+    VisADAppearance appearance;
+    float xmin, ymin, xmax, ymax;
+  }
+
+  /** a chunk to render, with its clip and pixel bounds */
+  private static class TileItem {
+    VisADAppearance appearance;
+    Rectangle2D.Float clip;
+    Rectangle2D bounds;
+  }
+
+  // chunks of each leaf, built on first use; the last element of each
+  // array holds the leaf's geometry array, to detect replaced arrays.
+  // Values never reference their leaf, so that leaves dropped from the
+  // scene graph are also dropped from the cache
+  private final Map<VisADAppearance, Object[]> chunk_cache =
+    new WeakHashMap<VisADAppearance, Object[]>();
+
+  /**
+   * render scene into the w by h image in tiles, in parallel, using
+   * the scene to pixel transform tg; each tile is drawn directly into
+   * image with tg and clipped to the tile, so the result is the same,
+   * pixel for pixel, as rendering the whole image in one pass
+   */
+  private void renderTiles(final BufferedImage image, VisADGroup scene,
+                           final AffineTransform tg, final int w, final int h)
+          throws VisADException {
+    final Vector items = new Vector();
+    collect(scene, null, tg, items);
+
+    final int size = tileSize;
+    final int nx = (w + size - 1) / size;
+    final int ntiles = nx * ((h + size - 1) / size);
+    final int[] next = {0};
+    int nthreads = Math.min(getTileThreads(), ntiles);
+    ThreadManager manager = new ThreadManager("VisADCanvasJ2D.renderTiles");
+    for (int t=0; t<nthreads; t++) {
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          while (true) {
+            int k;
+            synchronized (next) {
+              k = next[0]++;
+            }
+            if (k >= ntiles) break;
+            int x0 = (k % nx) * size;
+            int y0 = (k / nx) * size;
+            renderTile(image, items, tg,
+                       new Rectangle(x0, y0, Math.min(size, w - x0),
+                                     Math.min(size, h - y0)));
+          }
+        }
+      });
+    }
+    try {
+      manager.runInParallel(nthreads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("VisADCanvasJ2D.renderTiles: " +
+                               e.getMessage());
+    }
+  }
+
+  /**
+   * render the items intersecting the tile rectangle, in pixels, into
+   * image; tiles do not overlap, so threads never draw the same pixels
+   */
+  private void renderTile(BufferedImage image, Vector items,
+                          AffineTransform tg, Rectangle tile)
+          throws VisADException {
+    Graphics2D ggg = image.createGraphics();
+    Graphics2D g2 = image.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                        RenderingHints.VALUE_RENDER_SPEED);
+    g2.setTransform(tg);
+    try {
+      int n = items.size();
+      for (int pass=0; pass<2; pass++) {
+        for (int i=0; i<n; i++) {
+          TileItem item = (TileItem) items.elementAt(i);
+          if (item.bounds.intersects(tile)) {
+            render(g2, ggg, item.appearance, pass, item.clip, tile);
+          }
+        }
+      }
+    }
+    finally {
+      g2.dispose();
+      ggg.dispose();
+    }
+  }
+
+  /**
+   * add the leaves of scene to items in the order render() draws
+   * them, with their bounds in pixels under the transform tg
+   */
+  private void collect(VisADSceneGraphObject scene, Rectangle2D.Float clip,
+                       AffineTransform tg, Vector items) {
+    if (scene == null) return;
+    if (scene instanceof VisADSwitch) {
+      collect(((VisADSwitch) scene).getSelectedChild(), clip, tg, items);
+    }
+    else if (scene instanceof VisADGroup) {
+      if (clip_rectangle != null &&
+          (scene.equals(direct) || scene.equals(non_direct))) {
+        clip = clip_rectangle;
+      }
+      Vector children = ((VisADGroup) scene).getChildren();
+      for (int i=children.size()-1; i>=0; i--) {
+        collect((VisADSceneGraphObject) children.elementAt(i), clip, tg, items);
+      }
+    }
+    else { // scene instanceof VisADAppearance
+      VisADAppearance appearance = (VisADAppearance) scene;
+      if (appearance.array == null || appearance.array.coordinates == null) {
+        return;
+      }
+      TileChunk[] chunks = getChunks(appearance);
+      // allow for line width, point size and rounding to pixels
+      double margin = Math.max(appearance.lineWidth, appearance.pointSize) + 2.0;
+      for (int i=0; i<chunks.length; i++) {
+        TileChunk chunk = chunks[i];
+        Rectangle2D bounds = tg.createTransformedShape(
+          new Rectangle2D.Float(chunk.xmin, chunk.ymin, chunk.xmax - chunk.xmin,
+                                chunk.ymax - chunk.ymin)).getBounds2D();
+        bounds.setRect(bounds.getX() - margin, bounds.getY() - margin,
+                       bounds.getWidth() + 2.0 * margin,
+                       bounds.getHeight() + 2.0 * margin);
+        TileItem item = new TileItem();
+        item.appearance = (chunk.appearance != null) ? chunk.appearance :
+                                                       appearance;
+        item.clip = clip;
+        item.bounds = bounds;
+        items.addElement(item);
+      }
+    }
+  }
+
+  /**
+   * return appearance split into chunks of about CHUNK_VERTICES
+   * vertices, in drawing order, so that each tile only draws the parts
+   * of a large array that it intersects; images, indexed arrays and
+   * small arrays are a single chunk, with a null appearance
+   */
+  private TileChunk[] getChunks(VisADAppearance appearance) {
+    VisADGeometryArray array = appearance.array;
+    synchronized (chunk_cache) {
+      Object[] cached = chunk_cache.get(appearance);
+      if (cached != null && cached[cached.length - 1] == array) {
+        TileChunk[] chunks = new TileChunk[cached.length - 1];
+        System.arraycopy(cached, 0, chunks, 0, chunks.length);
+        return chunks;
+      }
+    }
+
+    Vector chunks = new Vector();
+    int count = Math.min(array.vertexCount, array.coordinates.length / 3);
+    int per = 0;
+    if (appearance.image == null) {
+      if (array instanceof VisADPointArray) per = 1;
+      else if (array instanceof VisADLineArray) per = 2;
+      else if (array instanceof VisADTriangleArray) per = 3;
+      else if (array instanceof VisADQuadArray) per = 4;
+    }
+    int[] strips = null;
+    if (appearance.image == null) {
+      if (array instanceof VisADLineStripArray) {
+        strips = ((VisADLineStripArray) array).stripVertexCounts;
+      }
+      else if (array instanceof VisADTriangleStripArray) {
+        strips = ((VisADTriangleStripArray) array).stripVertexCounts;
+      }
+    }
+
+    if (per > 0 && count > CHUNK_VERTICES) {
+      int step = (CHUNK_VERTICES / per) * per;
+      for (int start=0; start<count; start+=step) {
+        int n = Math.min(step, count - start);
+        VisADGeometryArray sub;
+        if (per == 1) sub = new VisADPointArray();
+        else if (per == 2) sub = new VisADLineArray();
+        else if (per == 3) sub = new VisADTriangleArray();
+        else sub = new VisADQuadArray();
+        addChunk(chunks, appearance, sub, start, n);
+      }
+    }
+    else if (strips != null && count > CHUNK_VERTICES) {
+      // vertices shared by consecutive pieces of a split strip
+      int overlap = (array instanceof VisADLineStripArray) ? 1 : 2;
+      int base = 0; // first vertex of strip
+      int first = 0; // first strip of pending chunk
+      int start = 0; // first vertex of pending chunk
+      int n = 0; // vertices in pending chunk
+      for (int strip=0; strip<strips.length; strip++) {
+        int c = strips[strip];
+        if (n > 0 && n + c > CHUNK_VERTICES) {
+          addStripChunk(chunks, appearance, strips, first, strip, start, n);
+          n = 0;
+        }
+        if (c > CHUNK_VERTICES) {
+          // split a long strip into pieces that share overlap vertices
+          for (int pos=0; pos+overlap<c; pos+=CHUNK_VERTICES-overlap) {
+            int len = Math.min(CHUNK_VERTICES, c - pos);
+            addStripChunk(chunks, appearance, new int[] {len}, 0, 1,
+                          base + pos, len);
+          }
+        }
+        else {
+          if (n == 0) {
+            first = strip;
+            start = base;
+          }
+          n += c;
+        }
+        base += c;
+      }
+      if (n > 0) {
+        addStripChunk(chunks, appearance, strips, first, strips.length,
+                      start, n);
+      }
+    }
+    else {
+      TileChunk chunk = new TileChunk();
+      setBounds(chunk, array.coordinates, count);
+      chunks.addElement(chunk);
+    }
+
+    // drop chunks with no drawable vertices
+    Vector drawable = new Vector();
+    for (int i=0; i<chunks.size(); i++) {
+      TileChunk chunk = (TileChunk) chunks.elementAt(i);
+      if (chunk.xmin <= chunk.xmax && chunk.ymin <= chunk.ymax) {
+        drawable.addElement(chunk);
+      }
+    }
+    TileChunk[] result = new TileChunk[drawable.size()];
+    drawable.copyInto(result);
+    Object[] cached = new Object[result.length + 1];
+    System.arraycopy(result, 0, cached, 0, result.length);
+    cached[result.length] = array;
+    synchronized (chunk_cache) {
+      chunk_cache.put(appearance, cached);
+    }
+    return result;
+  }
+
+  /**
+   * add a chunk of n vertices of appearance, starting at vertex start,
+   * using sub for its geometry
+   */
+  private static void addChunk(Vector chunks, VisADAppearance appearance,
+                               VisADGeometryArray sub, int start, int n) {
+    VisADGeometryArray array = appearance.array;
+    sub.vertexCount = n;
+    sub.coordinates = new float[3 * n];
+    System.arraycopy(array.coordinates, 3 * start, sub.coordinates, 0, 3 * n);
+    if (array.colors != null) {
+      int jinc = (array.colors.length == array.coordinates.length) ? 3 : 4;
+      sub.colors = new byte[jinc * n];
+      System.arraycopy(array.colors, jinc * start, sub.colors, 0, jinc * n);
+    }
+
+    VisADAppearance part = new VisADAppearance();
+    part.array = sub;
+    part.color_flag = appearance.color_flag;
+    part.red = appearance.red;
+    part.green = appearance.green;
+    part.blue = appearance.blue;
+    part.alpha = appearance.alpha;
+    part.lineWidth = appearance.lineWidth;
+    part.pointSize = appearance.pointSize;
+    part.lineStyle = appearance.lineStyle;
+
+    TileChunk chunk = new TileChunk();
+    chunk.appearance = part;
+    setBounds(chunk, sub.coordinates, n);
+    chunks.addElement(chunk);
+  }
+
+  /**
+   * add a chunk of the strips from first to last (exclusive) of
+   * stripVertexCounts, which are n vertices starting at vertex start
+   */
+  private static void addStripChunk(Vector chunks, VisADAppearance appearance,
+                                    int[] stripVertexCounts, int first,
+                                    int last, int start, int n) {
+    int[] counts = new int[last - first];
+    System.arraycopy(stripVertexCounts, first, counts, 0, counts.length);
+    if (appearance.array instanceof VisADLineStripArray) {
+      VisADLineStripArray sub = new VisADLineStripArray();
+      sub.stripVertexCounts = counts;
+      addChunk(chunks, appearance, sub, start, n);
+    }
+    else {
+      VisADTriangleStripArray sub = new VisADTriangleStripArray();
+      sub.stripVertexCounts = counts;
+      addChunk(chunks, appearance, sub, start, n);
+    }
+  }
+
+  /** set the bounds of chunk to those of the first count coordinates */
+  private static void setBounds(TileChunk chunk, float[] coordinates,
+                                int count) {
+    float xmin = Float.POSITIVE_INFINITY;
+    float ymin = Float.POSITIVE_INFINITY;
+    float xmax = Float.NEGATIVE_INFINITY;
+    float ymax = Float.NEGATIVE_INFINITY;
+    for (int i=0; i<3*count; i+=3) {
+      float x = coordinates[i];
+      float y = coordinates[i+1];
+      // NaN coordinates are not drawn
+      if (x == x && y == y) {
+        if (x < xmin) xmin = x;
+        if (x > xmax) xmax = x;
+        if (y < ymin) ymin = y;
+        if (y > ymax) ymax = y;
+      }
+    }
+    chunk.xmin = xmin;
+    chunk.ymin = ymin;
+    chunk.xmax = xmax;
+    chunk.ymax = ymax;
+  }
+
+  /**
+   * render scene for pass, clipped to clip in scene coordinates and,
+   * unless it is null, to the tile rectangle in pixels
+   */
   private void render(Graphics2D g2, Graphics ggg,
                       VisADSceneGraphObject scene, int pass,
-                      Rectangle2D.Float clip)
+                      Rectangle2D.Float clip, Rectangle tile)
           throws VisADException {
     if (scene == null) return;
     if (scene instanceof VisADSwitch) {
       VisADSceneGraphObject child =
         ((VisADSwitch) scene).getSelectedChild();
-      if (child != null) render(g2, ggg, child, pass, clip);
+      if (child != null) render(g2, ggg, child, pass, clip, tile);
     }
     else if (scene instanceof VisADGroup) {
       if (clip_rectangle != null &&
@@ -580,11 +980,21 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
       for (int i=children.size()-1; i>=0; i--) {
         VisADSceneGraphObject child =
           (VisADSceneGraphObject) children.elementAt(i);
-        if (child != null) render(g2, ggg, child, pass, clip);
+        if (child != null) render(g2, ggg, child, pass, clip, tile);
       }
     }
     else { // scene instanceof VisADAppearance
-      g2.setClip(clip);
+      if (tile == null) {
+        g2.setClip(clip);
+      }
+      else {
+        // set the tile in pixels, then intersect it with clip
+        AffineTransform t = g2.getTransform();
+        g2.setTransform(new AffineTransform());
+        g2.setClip(tile);
+        g2.setTransform(t);
+        if (clip != null) g2.clip(clip);
+      }
       VisADAppearance appearance = (VisADAppearance) scene;
       VisADGeometryArray array = appearance.array;
       if (array == null) return;
@@ -706,7 +1116,7 @@ System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
 */
           if (array instanceof VisADPointArray) {
             if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
+              drawAppearance(ggg, appearance, tg, clip, tile);
             }
             else {
               g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -745,7 +1155,7 @@ System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
           }
           else if (array instanceof VisADLineArray) {
             if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
+              drawAppearance(ggg, appearance, tg, clip, tile);
             }
             else {
               g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -1119,6 +1529,17 @@ System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
    */
   public static void drawAppearance(Graphics graphics, VisADAppearance appearance,
                                     AffineTransform t, Rectangle2D.Float clip) {
+    drawAppearance(graphics, appearance, t, clip, null);
+  }
+
+  /**
+   * as drawAppearance(graphics, appearance, t, clip), but also clipped
+   * to the tile rectangle in pixels unless it is null
+   */
+  private static void drawAppearance(Graphics graphics,
+                                     VisADAppearance appearance,
+                                     AffineTransform t,
+                                     Rectangle2D.Float clip, Rectangle tile) {
     VisADGeometryArray array = appearance.array;
     if (array == null) return;
     byte[] colors = array.colors;
@@ -1146,10 +1567,8 @@ System.out.println("drawAppearance: color = " + appearance.red + " " +
     float[] newcoords = new float[2 * count];
     t.transform(oldcoords, 0, newcoords, 0, count);
 
-    if (clip == null) {
-      graphics.setClip(null);
-    }
-    else {
+    graphics.setClip(tile);
+    if (clip != null) {
       // transform clip
       float x = (float) clip.getX();
       float y = (float) clip.getY();
@@ -1165,7 +1584,13 @@ System.out.println("drawAppearance: color = " + appearance.red + " " +
       path.lineTo(newclip[4], newclip[5]);
       path.lineTo(newclip[6], newclip[7]);
       path.closePath();
-      graphics.setClip(path);
+      if (tile == null) {
+        graphics.setClip(path);
+      }
+      else {
+        // tiles are rendered by renderTile() with a Graphics2D
+        ((Graphics2D) graphics).clip(path);
+      }
     }
 
     if (array instanceof VisADPointArray) {
@@ -185,6 +185,22 @@ public class DisplayImplJ3D extends DisplayImpl {
     //System.err.println("TEXTURE_NPOT:"+TEXTURE_NPOT);
   }
 
+  /**
+   * Property name for enabling indexed iso-surface geometry.
+   * @see #INDEXED_ISOSURFACES
+   */
+  public static final String PROP_INDEXED_ISOSURFACES = "visad.java3d.indexedIsoSurfaces";
+
+  /**
+   * Indicates whether iso-surfaces are built as IndexedTriangleStripArrays,
+   * which store each (shared) vertex, normal and color once, rather than
+   * once per triangle strip entry.
+   */
+  public static final boolean INDEXED_ISOSURFACES;
+  static {
+    INDEXED_ISOSURFACES = Boolean.parseBoolean(System.getProperty(PROP_INDEXED_ISOSURFACES, "true"));
+  }
+
   /** this is used for APPLETFRAME */
   private DisplayAppletJ3D applet = null;
 
@@ -1256,6 +1256,10 @@ System.out.println("Texture.BASE_LEVEL_LINEAR = " + Texture.BASE_LEVEL_LINEAR);
     return false;
   }
 
+  public boolean wantIndexedIsoSurface() {
+    return DisplayImplJ3D.INDEXED_ISOSURFACES;
+  }
+
 
   /** render accumulated Vector of value_array-s to
       and add to group; then clear AccumulationVector */
@@ -150,6 +150,13 @@ public class AlbersCoordinateSystem extends visad.CoordinateSystem {
 
   }
 
+  /** return true, as the projection constants (n, C, rho0, ...) are
+  * computed once in the constructor and only read afterwards
+  */
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   /** determine if the Coordinate System in question is an AlbersCoordinateSystem
   *
   */
@@ -27,17 +27,29 @@ MA 02111-1307, USA
 package visad.math;
 
 import visad.*;
+import visad.util.ThreadManager;
 
 import java.rmi.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  FFT is the VisAD class for Fourier Transforms, using
- the Fast Fourier Transform when the domain length is
- a power of two.<p>
+ the Fast Fourier Transform for any domain length: a mixed
+ radix FFT when the length has no prime factors other than 2,
+ 3 and 5, and Bluestein's algorithm otherwise.  Multi-dimensional
+ transforms are divided among threads, whose number is set by
+ the visad.fft.threads system property (default: the number of
+ processors).<p>
 */
 
 public class FFT {
 
+  /** system property with the number of threads for 2-D and 3-D transforms */
+  public static final String PROP_THREADS = "visad.fft.threads";
+
+  /** minimum number of samples for which a transform uses several threads */
+  private static final int PARALLEL_THRESHOLD = 1 << 15;
+
   /** 
    * for use by SpreadSheet only - ordinary applications
    * should use other method signatures;
@@ -85,9 +97,9 @@ public class FFT {
   }
 
   /**
-   * return Fourier Transform of field, use FFT if domain dimension(s)
-   * are powers of 2
-   * @param field Field with domain dimension = 1 (1-D FT) or 2 (2-D FT)
+   * return Fourier Transform of field
+   * @param field Field with domain dimension = 1 (1-D FT), 2 (2-D FT)
+   *              or 3 (3-D FT)
    *              and 1 (real part) or 2 (real & imaginary) range RealTypes
    * @param forward true for forward and false for backward
    * @return Fourier transform of field
@@ -100,9 +112,9 @@ public class FFT {
   }
 
   /**
-   * return Fourier Transform of field, use FFT if domain dimension(s)
-   * are powers of 2
-   * @param field Field with domain dimension = 1 (1-D FT) or 2 (2-D FT)
+   * return Fourier Transform of field
+   * @param field Field with domain dimension = 1 (1-D FT), 2 (2-D FT)
+   *              or 3 (3-D FT)
    *              and 1 (real part) or 2 (real & imaginary) range RealTypes
    * @param forward true for forward and false for backward
    * @param ftype use for return Field (may be null)
@@ -137,7 +149,7 @@ public class FFT {
     else {
       throw new FieldException("bad range type " + rtype);
     }
-    if (ddim != 1 && ddim != 2) {
+    if (ddim < 1 || ddim > 3) {
       throw new FieldException("bad domain dimension " + dtype);
     }
     if (rdim != 1 && rdim != 2) {
@@ -267,9 +279,13 @@ public class FFT {
       if (ddim == 1) {
         values = FT1D(values, forward);
       }
-      else { // ddim == 2
+      else if (ddim == 2) {
         values = FT2D(field_lens[0], field_lens[1], values, forward);
       }
+      else { // ddim == 3
+        values = FT3D(field_lens[0], field_lens[1], field_lens[2], values,
+                      forward);
+      }
       new_field.setSamples(values, false);
     }
     else { // !use_double
@@ -284,9 +300,13 @@ public class FFT {
       if (ddim == 1) {
         values = FT1D(values, forward);
       }
-      else { // ddim == 2
+      else if (ddim == 2) {
         values = FT2D(field_lens[0], field_lens[1], values, forward);
       }
+      else { // ddim == 3
+        values = FT3D(field_lens[0], field_lens[1], field_lens[2], values,
+                      forward);
+      }
       new_field.setSamples(values, false);
     }
     return new_field;
@@ -294,8 +314,7 @@ public class FFT {
 
 
   /**
-   * compute 2-D Fourier transform, calling 1-D FT twice
-   * use FFT if rows and cols are powers of 2
+   * compute 2-D Fourier transform, calling 1-D FT along each dimension
    * @param rows first dimension for 2-D
    * @param cols second dimension for 2-D
    * @param x array for take Fourier transform of, dimensioned
@@ -309,48 +328,11 @@ public class FFT {
                                 boolean forward)
          throws VisADException {
     if (x == null) return null;
-    if (x.length != 2 || x[0].length != x[1].length) {
-      throw new FieldException("bad x lengths");
-    }
-    int n = x[0].length;
-    if (rows * cols != n) {
-      throw new FieldException(rows + " * " + cols + " must equal " + n);
-    }
-    float[][] y = new float[2][n];
-    float[][] z = new float[2][rows];
-    for (int c=0; c<cols; c++) {
-      int i = c * rows;
-      for (int r=0; r<rows; r++) {
-        z[0][r] = x[0][i + r];
-        z[1][r] = x[1][i + r];
-      }
-      z = FT1D(z, forward);
-      for (int r=0; r<rows; r++) {
-        y[0][i + r] = z[0][r];
-        y[1][i + r] = z[1][r];
-      }
-    }
-
-    float[][] u = new float[2][n];
-    float[][] v = new float[2][cols];
-    for (int r=0; r<rows; r++) {
-      int i = r;
-      for (int c=0; c<cols; c++) {
-        v[0][c] = y[0][i + c * rows];
-        v[1][c] = y[1][i + c * rows];
-      }
-      v = FT1D(v, forward);
-      for (int c=0; c<cols; c++) {
-        u[0][i + c * rows] = v[0][c];
-        u[1][i + c * rows] = v[1][c];
-      }
-    }
-    return u;
+    return toFloats(FTND(new int[] {rows, cols}, toDoubles(x), forward));
   }
 
   /**
-   * compute 2-D Fourier transform, calling 1-D FT twice
-   * use FFT if rows and cols are powers of 2
+   * compute 2-D Fourier transform, calling 1-D FT along each dimension
    * @param rows first dimension for 2-D
    * @param cols second dimension for 2-D
    * @param x array for take Fourier transform of, dimensioned
@@ -364,48 +346,49 @@ public class FFT {
                                 boolean forward)
          throws VisADException {
     if (x == null) return null;
-    if (x.length != 2 || x[0].length != x[1].length) {
-      throw new FieldException("bad x lengths");
-    }
-    int n = x[0].length;
-    if (rows * cols != n) {
-      throw new FieldException(rows + " * " + cols + " must equal " + n);
-    }
-    double[][] y = new double[2][n];
-    double[][] z = new double[2][rows];
-    for (int c=0; c<cols; c++) {
-      int i = c * rows;
-      for (int r=0; r<rows; r++) {
-        z[0][r] = x[0][i + r];
-        z[1][r] = x[1][i + r];
-      }
-      z = FT1D(z, forward);
-      for (int r=0; r<rows; r++) {
-        y[0][i + r] = z[0][r];
-        y[1][i + r] = z[1][r];
-      }
-    }
+    return FTND(new int[] {rows, cols}, copy(x), forward);
+  }
 
-    double[][] u = new double[2][n];
-    double[][] v = new double[2][cols];
-    for (int r=0; r<rows; r++) {
-      int i = r;
-      for (int c=0; c<cols; c++) {
-        v[0][c] = y[0][i + c * rows];
-        v[1][c] = y[1][i + c * rows];
-      }
-      v = FT1D(v, forward);
-      for (int c=0; c<cols; c++) {
-        u[0][i + c * rows] = v[0][c];
-        u[1][i + c * rows] = v[1][c];
-      }
-    }
-    return u;
+  /**
+   * compute 3-D Fourier transform, calling 1-D FT along each dimension
+   * @param n0 first dimension for 3-D
+   * @param n1 second dimension for 3-D
+   * @param n2 third dimension for 3-D
+   * @param x array for take Fourier transform of, dimensioned
+   *          [2][length] where length = n0 * n1 * n2, and the
+   *          first index (2) is over real & imaginary parts
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static float[][] FT3D(int n0, int n1, int n2, float[][] x,
+                                boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    return toFloats(FTND(new int[] {n0, n1, n2}, toDoubles(x), forward));
+  }
+
+  /**
+   * compute 3-D Fourier transform, calling 1-D FT along each dimension
+   * @param n0 first dimension for 3-D
+   * @param n1 second dimension for 3-D
+   * @param n2 third dimension for 3-D
+   * @param x array for take Fourier transform of, dimensioned
+   *          [2][length] where length = n0 * n1 * n2, and the
+   *          first index (2) is over real & imaginary parts
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static double[][] FT3D(int n0, int n1, int n2, double[][] x,
+                                boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    return FTND(new int[] {n0, n1, n2}, copy(x), forward);
   }
 
   /**
    * compute 1-D Fourier transform
-   * use FFT if length (2nd dimension of x) is a power of 2
    * @param x array for take Fourier transform of, dimensioned
    *          [2][length], the first index (2) is over real &
    *          imaginary parts
@@ -416,46 +399,7 @@ public class FFT {
   public static float[][] FT1D(float[][] x, boolean forward)
          throws VisADException {
     if (x == null) return null;
-    if (x.length != 2 || x[0].length != x[1].length) {
-      throw new FieldException("bad x lengths");
-    }
-    int n = x[0].length;
-    int n2 = 1;
-    boolean fft = true;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        fft = false;
-      }
-    }
-    if (fft) return FFT1D(x, forward);
-
-    float[][] temp = new float[2][n];
-    float angle = (float) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n; i++) {
-      temp[0][i] = (float) Math.cos(i * angle);
-      temp[1][i] = (float) Math.sin(i * angle);
-    }
-    float[][] y = new float[2][n];
-    for (int i=0; i<n; i++) {
-      float re = 0.0f;
-      float im = 0.0f;
-      for (int j=0; j<n; j++) {
-        int m = (i * j) % n;
-        re += x[0][j] * temp[0][m] - x[1][j] * temp[1][m];
-        im += x[0][j] * temp[1][m] + x[1][j] * temp[0][m];
-      }
-      y[0][i] = re;
-      y[1][i] = im;
-    }
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n;
-      }
-    }
-    return y;
+    return toFloats(FT1D(toDoubles(x), forward));
   }
 
   /**
@@ -471,85 +415,12 @@ public class FFT {
   public static float[][] FFT1D(float[][] x, boolean forward)
          throws VisADException {
     if (x == null) return null;
-    if (x.length != 2 || x[0].length != x[1].length) {
-      throw new FieldException("bad x lengths");
-    }
-    int n = x[0].length;
-    int n2 = 1;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        throw new FieldException("x length must be power of 2");
-      }
-    }
-    n2 = n/2;
-    float[][] temp = new float[2][n2];
-    float angle = (float) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n2; i++) { 
-      temp[0][i] = (float) Math.cos(i * angle);
-      temp[1][i] = (float) Math.sin(i * angle);
-    }
-    float[][] y = FFT1D(x, temp);
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n; 
-      }
-    }
-    return y; 
-  }
-
-  /** inner function for 1-D Fast Fourier Transform */
-  private static float[][] FFT1D(float[][] x, float[][] temp) {
-    int n = x[0].length;
-    int n2 = n/2;
-    int k=0;
-    int butterfly;
-    int buttered=0; 
-    if (n==1) {
-      float[][] z1 = {{x[0][0]}, {x[1][0]}};
-      return z1;
-    }
-
-    butterfly= (temp[0].length/n2);
-
-    float[][] z = new float[2][n2];
-    float[][] w = new float[2][n2];
-
-    for (k=0; k<n/2; k++) {  
-      int k2 = 2*k;
-      z[0][k] = x[0][k2];
-      z[1][k] = x[1][k2];
-      w[0][k] = x[0][k2 + 1];
-      w[1][k] = x[1][k2 + 1];
-    }
-
-    z = FFT1D(z, temp);
-    w = FFT1D(w, temp);
-
-    float[][] y = new float[2][n];
-    for (k=0; k<n2;k++) {
-      y[0][k] = z[0][k];
-      y[1][k] = z[1][k];
-
-      float re = w[0][k] * temp[0][buttered] - w[1][k] * temp[1][buttered];
-      float im = w[0][k] * temp[1][buttered] + w[1][k] * temp[0][buttered];
-      w[0][k] = re;
-      w[1][k] = im;
-
-      y[0][k] += w[0][k];
-      y[1][k] += w[1][k];
-      y[0][k + n2] = z[0][k] - w[0][k];
-      y[1][k + n2] = z[1][k] - w[1][k];
-      buttered += butterfly;
-    }
-    return y;
+    checkPowerOfTwo(x.length == 2 ? x[0].length : 0);
+    return FT1D(x, forward);
   }
 
   /**
    * compute 1-D Fourier transform
-   * use FFT if length (2nd dimension of x) is a power of 2
    * @param x array for take Fourier transform of, dimensioned
    *          [2][length], the first index (2) is over real &
    *          imaginary parts
@@ -560,46 +431,8 @@ public class FFT {
   public static double[][] FT1D(double[][] x, boolean forward)
          throws VisADException {
     if (x == null) return null;
-    if (x.length != 2 || x[0].length != x[1].length) {
-      throw new FieldException("bad x lengths");
-    }
-    int n = x[0].length;
-    int n2 = 1;
-    boolean fft = true;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        fft = false;
-      }
-    }
-    if (fft) return FFT1D(x, forward);
-
-    double[][] temp = new double[2][n];
-    double angle = -2.0 * Math.PI / n;
-    if (!forward) angle = -angle;
-    for (int i=0; i<n; i++) {
-      temp[0][i] = Math.cos(i * angle);
-      temp[1][i] = Math.sin(i * angle);
-    }
-    double[][] y = new double[2][n];
-    for (int i=0; i<n; i++) {
-      double re = 0.0;
-      double im = 0.0;
-      for (int j=0; j<n; j++) {
-        int m = (i * j) % n;
-        re += x[0][j] * temp[0][m] - x[1][j] * temp[1][m];
-        im += x[0][j] * temp[1][m] + x[1][j] * temp[0][m];
-      }
-      y[0][i] = re;
-      y[1][i] = im;
-    }
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n;
-      }
-    }
-    return y;
+    return FTND(new int[] {x.length == 2 ? x[0].length : 0}, copy(x),
+                forward);
   }
 
   /**
@@ -615,78 +448,158 @@ public class FFT {
   public static double[][] FFT1D(double[][] x, boolean forward)
          throws VisADException {
     if (x == null) return null;
+    checkPowerOfTwo(x.length == 2 ? x[0].length : 0);
+    return FT1D(x, forward);
+  }
+
+  private static void checkPowerOfTwo(int n) throws VisADException {
+    if (n > 0 && (n & (n - 1)) != 0) {
+      throw new FieldException("x length must be power of 2");
+    }
+  }
+
+  /**
+   * transform x in place along each dimension of the grid with the
+   * given lengths, the first varying fastest, and return it
+   */
+  private static double[][] FTND(int[] lengths, double[][] x,
+                                 boolean forward)
+          throws VisADException {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
     int n = x[0].length;
-    int n2 = 1;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        throw new FieldException("x length must be power of 2");
-      }
+    int product = 1;
+    for (int i=0; i<lengths.length; i++) product *= lengths[i];
+    if (product != n) {
+      String s = "" + lengths[0];
+      for (int i=1; i<lengths.length; i++) s = s + " * " + lengths[i];
+      throw new FieldException(s + " must equal " + n);
+    }
+    if (n == 0) return x;
+    boolean real = true;
+    double[] im = x[1];
+    for (int i=0; i<n && real; i++) {
+      if (im[i] != 0.0) real = false;
+    }
+    int stride = 1;
+    for (int d=0; d<lengths.length; d++) {
+      if (lengths[d] > 1) {
+        // only the first transformed dimension sees real input
+        transformAxis(x[0], x[1], lengths[d], stride, forward, real);
+        real = false;
+      }
+      stride *= lengths[d];
+    }
+    return x;
+  }
+
+  /**
+   * transform, in place, all lines of len values stride apart in re and
+   * im, dividing the lines among threads; if real, im is all zero and
+   * lines are transformed in pairs as one complex line each
+   */
+  private static void transformAxis(final double[] re, final double[] im,
+                                    final int len, final int stride,
+                                    final boolean forward, final boolean real)
+          throws VisADException {
+    final FFTPlan plan = FFTPlan.get(len);
+    final int nlines = re.length / len;
+    int threads = 1;
+    if (re.length >= PARALLEL_THRESHOLD) {
+      threads = Integer.getInteger(PROP_THREADS,
+                  Runtime.getRuntime().availableProcessors()).intValue();
+    }
+    // an even number of lines per chunk, so real lines pair up
+    int c = (nlines + 4 * threads - 1) / (4 * threads);
+    final int chunk = c + (c & 1);
+    final int nchunks = (nlines + chunk - 1) / chunk;
+    threads = Math.max(1, Math.min(threads, nchunks));
+
+    final AtomicInteger next = new AtomicInteger();
+    ThreadManager manager = new ThreadManager("FFT");
+    for (int t=0; t<threads; t++) {
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() {
+          double[] ar = new double[len], ai = new double[len];
+          double[] br = real ? new double[len] : null;
+          double[] bi = real ? new double[len] : null;
+          double[] cr = real ? new double[len] : null;
+          double[] ci = real ? new double[len] : null;
+          int k;
+          while ((k = next.getAndIncrement()) < nchunks) {
+            int end = Math.min((k + 1) * chunk, nlines);
+            for (int line=k*chunk; line<end; ) {
+              int start = (line % stride) + (line / stride) * stride * len;
+              if (real && line + 1 < end) {
+                int start2 = ((line + 1) % stride) +
+                             ((line + 1) / stride) * stride * len;
+                for (int i=0, j=start, j2=start2; i<len;
+                     i++, j+=stride, j2+=stride) {
+                  ar[i] = re[j];
+                  ai[i] = re[j2];
+                }
+                plan.transformPair(ar, ai, br, bi, cr, ci, forward);
+                store(br, bi, re, im, start, stride);
+                store(cr, ci, re, im, start2, stride);
+                line += 2;
+              }
+              else {
+                for (int i=0, j=start; i<len; i++, j+=stride) {
+                  ar[i] = re[j];
+                  ai[i] = im[j];
+                }
+                if (real) plan.transformReal(ar, ar, ai, forward);
+                else plan.transform(ar, ai, forward);
+                store(ar, ai, re, im, start, stride);
+                line++;
+              }
+            }
+          }
+        }
+      });
     }
-    n2 = n/2;
-    double[][] temp = new double[2][n2];
-    double angle = (double) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n2; i++) {
-      temp[0][i] = (double) Math.cos(i * angle);
-      temp[1][i] = (double) Math.sin(i * angle);
-    }
-    double[][] y = FFT1D(x, temp);
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n; 
-      }
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (java.rmi.RemoteException e) {
+      throw new VisADException("FFT: " + e.getMessage());
     }
-    return y; 
   }
 
-  /** inner function for 1-D Fast Fourier Transform */
-  private static double[][] FFT1D(double[][] x, double[][] temp) {
-    int n = x[0].length;
-    int n2 = n/2;
-    int k=0;
-    int butterfly;
-    int buttered=0; 
-    if (n==1) {
-      double[][] z1 = {{x[0][0]}, {x[1][0]}};
-      return z1;
-    }
-
-    butterfly= (temp[0].length/n2);
-
-    double[][] z = new double[2][n2];
-    double[][] w = new double[2][n2];
-
-    for (k=0; k<n2; k++) {
-      int k2 = 2 * k;
-      z[0][k] = x[0][k2];
-      z[1][k] = x[1][k2];
-      w[0][k] = x[0][k2 + 1];
-      w[1][k] = x[1][k2 + 1];
-    }
-
-    z = FFT1D(z, temp);
-    w = FFT1D(w, temp);
-
-    double[][] y = new double[2][n];
-    for (k=0; k<n2;k++) {
-      y[0][k] = z[0][k];
-      y[1][k] = z[1][k];
-
-      double re = w[0][k] * temp[0][buttered] - w[1][k] * temp[1][buttered];
-      double im = w[0][k] * temp[1][buttered] + w[1][k] * temp[0][buttered];
-      w[0][k] = re;
-      w[1][k] = im;
-
-      y[0][k] += w[0][k];
-      y[1][k] += w[1][k];
-      y[0][k + n2] = z[0][k] - w[0][k];
-      y[1][k + n2] = z[1][k] - w[1][k];
-      buttered += butterfly;
+  /** copy a line of len values into re and im, stride apart from start */
+  private static void store(double[] lr, double[] li, double[] re,
+                            double[] im, int start, int stride) {
+    for (int i=0, j=start; i<lr.length; i++, j+=stride) {
+      re[j] = lr[i];
+      im[j] = li[i];
+    }
+  }
+
+  private static double[][] copy(double[][] x) {
+    double[][] y = new double[x.length][];
+    for (int i=0; i<x.length; i++) y[i] = (double[]) x[i].clone();
+    return y;
+  }
+
+  private static double[][] toDoubles(float[][] x) {
+    double[][] y = new double[x.length][];
+    for (int i=0; i<x.length; i++) {
+      float[] xi = x[i];
+      double[] yi = new double[xi.length];
+      for (int j=0; j<xi.length; j++) yi[j] = xi[j];
+      y[i] = yi;
+    }
+    return y;
+  }
+
+  private static float[][] toFloats(double[][] x) {
+    float[][] y = new float[x.length][];
+    for (int i=0; i<x.length; i++) {
+      double[] xi = x[i];
+      float[] yi = new float[xi.length];
+      for (int j=0; j<xi.length; j++) yi[j] = (float) xi[j];
+      y[i] = yi;
     }
     return y;
   }
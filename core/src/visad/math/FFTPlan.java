@@ -0,0 +1,432 @@
+//
+// FFTPlan.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.math;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+   FFTPlan computes discrete Fourier transforms of one length.  Lengths
+   whose only prime factors are 2, 3 and 5 are transformed by a
+   self-sorting mixed-radix (Stockham) FFT; any other length is
+   transformed by Bluestein's algorithm, as a convolution computed with
+   a power of two FFT.  Either way the cost is O(n log n).<P>
+
+   A plan holds the twiddle factors for its length, and plans are
+   cached by length, so repeated transforms of one length (e.g., the
+   rows of an image) compute them only once.  Plans are immutable and
+   may be used by several threads at once.<P>
+*/
+class FFTPlan {
+
+  /** maximum number of plans kept in the cache */
+  private static final int MAX_PLANS = 64;
+
+  /** cached plans, least recently used first */
+  private static final Map<Integer, FFTPlan> plans =
+    new LinkedHashMap<Integer, FFTPlan>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Integer, FFTPlan> e) {
+        return size() > MAX_PLANS;
+      }
+    };
+
+  /** transform length */
+  final int n;
+
+  /** radices of the Stockham stages, or null to use Bluestein */
+  private final int[] radices;
+
+  /** real and imaginary parts of exp(-2 pi i k / n), k < n */
+  private final double[] wr, wi;
+
+  /** Bluestein chirp exp(-pi i k^2 / n), k < n */
+  private final double[] chirpRe, chirpIm;
+
+  /** Fourier transform of the conjugate chirp, zero padded */
+  private final double[] filterRe, filterIm;
+
+  /** plan for the Bluestein convolution */
+  private final FFTPlan conv;
+
+  /** plan for half the length, used for real input */
+  private FFTPlan half;
+
+  /** return the plan for length n, from the cache if possible */
+  static FFTPlan get(int n) {
+    Integer key = Integer.valueOf(n);
+    synchronized (plans) {
+      FFTPlan plan = plans.get(key);
+      if (plan != null) return plan;
+    }
+    FFTPlan plan = new FFTPlan(n);
+    synchronized (plans) {
+      plans.put(key, plan);
+    }
+    return plan;
+  }
+
+  private FFTPlan(int n) {
+    if (n < 1) throw new IllegalArgumentException("FFT length " + n);
+    this.n = n;
+    wr = new double[n];
+    wi = new double[n];
+    for (int k=0; k<n; k++) {
+      double angle = 2.0 * Math.PI * k / n;
+      wr[k] = Math.cos(angle);
+      wi[k] = -Math.sin(angle);
+    }
+
+    int[] r = new int[32];
+    int count = 0;
+    int rest = n;
+    while (rest % 4 == 0) { r[count++] = 4; rest /= 4; }
+    while (rest % 2 == 0) { r[count++] = 2; rest /= 2; }
+    while (rest % 3 == 0) { r[count++] = 3; rest /= 3; }
+    while (rest % 5 == 0) { r[count++] = 5; rest /= 5; }
+
+    if (rest == 1) {
+      radices = new int[count];
+      System.arraycopy(r, 0, radices, 0, count);
+      chirpRe = chirpIm = filterRe = filterIm = null;
+      conv = null;
+    }
+    else {
+      radices = null;
+      int m = 1;
+      while (m < 2 * n - 1) m *= 2;
+      conv = get(m);
+      chirpRe = new double[n];
+      chirpIm = new double[n];
+      long n2 = 2L * n;
+      for (int k=0; k<n; k++) {
+        // reduce k^2 mod 2n exactly to keep the angle accurate
+        long kk = ((long) k * k) % n2;
+        double angle = Math.PI * kk / n;
+        chirpRe[k] = Math.cos(angle);
+        chirpIm[k] = -Math.sin(angle);
+      }
+      filterRe = new double[m];
+      filterIm = new double[m];
+      filterRe[0] = chirpRe[0];
+      filterIm[0] = -chirpIm[0];
+      for (int k=1; k<n; k++) {
+        filterRe[k] = filterRe[m - k] = chirpRe[k];
+        filterIm[k] = filterIm[m - k] = -chirpIm[k];
+      }
+      conv.forward(filterRe, filterIm);
+    }
+  }
+
+  /**
+   * transform re and im in place; the backward transform is scaled
+   * by 1 / n, so that it inverts the forward transform
+   */
+  void transform(double[] re, double[] im, boolean forward) {
+    if (forward) {
+      forward(re, im);
+      return;
+    }
+    // the inverse transform is the conjugate of the forward transform
+    // of the conjugate
+    for (int k=0; k<n; k++) im[k] = -im[k];
+    forward(re, im);
+    double scale = 1.0 / n;
+    for (int k=0; k<n; k++) {
+      re[k] *= scale;
+      im[k] = -im[k] * scale;
+    }
+  }
+
+  /**
+   * transform the real values x into re and im, which receive the
+   * whole (Hermitian symmetric) spectrum; x may be re
+   */
+  void transformReal(double[] x, double[] re, double[] im, boolean forward) {
+    if ((n & 1) != 0 || n < 4) {
+      if (x != re) System.arraycopy(x, 0, re, 0, n);
+      for (int k=0; k<n; k++) im[k] = 0.0;
+      transform(re, im, forward);
+      return;
+    }
+    // pack even and odd values into one complex sequence of half length
+    int h = n / 2;
+    FFTPlan hp;
+    synchronized (this) {
+      if (half == null) half = get(h);
+      hp = half;
+    }
+    double[] zr = new double[h];
+    double[] zi = new double[h];
+    for (int k=0; k<h; k++) {
+      zr[k] = x[2 * k];
+      zi[k] = x[2 * k + 1];
+    }
+    hp.forward(zr, zi);
+    for (int k=0; k<h; k++) {
+      int j = (k == 0) ? 0 : h - k;
+      // even part E = (Z[k] + conj(Z[h-k])) / 2
+      double er = 0.5 * (zr[k] + zr[j]);
+      double ei = 0.5 * (zi[k] - zi[j]);
+      // odd part O = (Z[k] - conj(Z[h-k])) / 2i
+      double or = 0.5 * (zi[k] + zi[j]);
+      double oi = -0.5 * (zr[k] - zr[j]);
+      double tr = wr[k] * or - wi[k] * oi;
+      double ti = wr[k] * oi + wi[k] * or;
+      re[k] = er + tr;
+      im[k] = ei + ti;
+      re[k + h] = er - tr;
+      im[k + h] = ei - ti;
+    }
+    if (!forward) {
+      // the inverse transform of real values is the scaled conjugate
+      double scale = 1.0 / n;
+      for (int k=0; k<n; k++) {
+        re[k] *= scale;
+        im[k] = -im[k] * scale;
+      }
+    }
+  }
+
+  /**
+   * forward transform two real sequences at once: on entry re and im
+   * hold them, on exit re1/im1 and re2/im2 hold their spectra
+   */
+  void transformPair(double[] re, double[] im, double[] re1, double[] im1,
+                     double[] re2, double[] im2, boolean forward) {
+    forward(re, im);
+    for (int k=0; k<n; k++) {
+      int j = (k == 0) ? 0 : n - k;
+      double ar = re[k], ai = im[k];
+      double cr = re[j], ci = im[j];
+      re1[k] = 0.5 * (ar + cr);
+      im1[k] = 0.5 * (ai - ci);
+      re2[k] = 0.5 * (ai + ci);
+      im2[k] = -0.5 * (ar - cr);
+    }
+    if (!forward) {
+      double scale = 1.0 / n;
+      for (int k=0; k<n; k++) {
+        re1[k] *= scale;
+        im1[k] = -im1[k] * scale;
+        re2[k] *= scale;
+        im2[k] = -im2[k] * scale;
+      }
+    }
+  }
+
+  /** unscaled forward transform of re and im, in place */
+  private void forward(double[] re, double[] im) {
+    if (radices == null) {
+      bluestein(re, im);
+      return;
+    }
+    double[] xr = re, xi = im;
+    double[] yr = new double[n], yi = new double[n];
+    int s = 1;
+    int len = n;
+    for (int i=0; i<radices.length; i++) {
+      int r = radices[i];
+      int m = len / r;
+      switch (r) {
+        case 2: radix2(xr, xi, yr, yi, m, s); break;
+        case 3: radix3(xr, xi, yr, yi, m, s); break;
+        case 4: radix4(xr, xi, yr, yi, m, s); break;
+        default: radix5(xr, xi, yr, yi, m, s); break;
+      }
+      double[] t = xr; xr = yr; yr = t;
+      t = xi; xi = yi; yi = t;
+      len = m;
+      s *= r;
+    }
+    if (xr != re) {
+      System.arraycopy(xr, 0, re, 0, n);
+      System.arraycopy(xi, 0, im, 0, n);
+    }
+  }
+
+  /*
+   * Each Stockham stage splits the s interleaved sequences of length
+   * r * m in x into r * s interleaved sequences of length m in y:
+   *
+   *   y[q + s*(r*p + u)] = W(r*m)^(p*u) * sum_t x[q + s*(p + t*m)] * W(r)^(t*u)
+   *
+   * for p < m, q < s and u < r, where W(L) = exp(-2 pi i / L) and
+   * W(r*m)^(p*u) = wr/wi[p*u*s].
+   */
+
+  private void radix2(double[] xr, double[] xi, double[] yr, double[] yi,
+                      int m, int s) {
+    int sm = s * m;
+    for (int p=0; p<m; p++) {
+      double w1r = wr[p * s], w1i = wi[p * s];
+      for (int q=0; q<s; q++) {
+        int i0 = q + s * p;
+        int o = q + 2 * s * p;
+        double ar = xr[i0], ai = xi[i0];
+        double br = xr[i0 + sm], bi = xi[i0 + sm];
+        yr[o] = ar + br;
+        yi[o] = ai + bi;
+        double dr = ar - br, di = ai - bi;
+        yr[o + s] = dr * w1r - di * w1i;
+        yi[o + s] = dr * w1i + di * w1r;
+      }
+    }
+  }
+
+  private void radix3(double[] xr, double[] xi, double[] yr, double[] yi,
+                      int m, int s) {
+    final double h = Math.sqrt(3.0) / 2.0;
+    int sm = s * m;
+    for (int p=0; p<m; p++) {
+      int e = p * s;
+      double w1r = wr[e], w1i = wi[e];
+      double w2r = wr[2 * e], w2i = wi[2 * e];
+      for (int q=0; q<s; q++) {
+        int i0 = q + s * p;
+        int o = q + 3 * s * p;
+        double a0r = xr[i0], a0i = xi[i0];
+        double a1r = xr[i0 + sm], a1i = xi[i0 + sm];
+        double a2r = xr[i0 + 2 * sm], a2i = xi[i0 + 2 * sm];
+        double tr = a1r + a2r, ti = a1i + a2i;
+        double mr = a0r - 0.5 * tr, mi = a0i - 0.5 * ti;
+        double dr = h * (a1r - a2r), di = h * (a1i - a2i);
+        yr[o] = a0r + tr;
+        yi[o] = a0i + ti;
+        double u1r = mr + di, u1i = mi - dr;
+        double u2r = mr - di, u2i = mi + dr;
+        yr[o + s] = u1r * w1r - u1i * w1i;
+        yi[o + s] = u1r * w1i + u1i * w1r;
+        yr[o + 2 * s] = u2r * w2r - u2i * w2i;
+        yi[o + 2 * s] = u2r * w2i + u2i * w2r;
+      }
+    }
+  }
+
+  private void radix4(double[] xr, double[] xi, double[] yr, double[] yi,
+                      int m, int s) {
+    int sm = s * m;
+    for (int p=0; p<m; p++) {
+      int e = p * s;
+      double w1r = wr[e], w1i = wi[e];
+      double w2r = wr[2 * e], w2i = wi[2 * e];
+      double w3r = wr[3 * e], w3i = wi[3 * e];
+      for (int q=0; q<s; q++) {
+        int i0 = q + s * p;
+        int o = q + 4 * s * p;
+        double a0r = xr[i0], a0i = xi[i0];
+        double a1r = xr[i0 + sm], a1i = xi[i0 + sm];
+        double a2r = xr[i0 + 2 * sm], a2i = xi[i0 + 2 * sm];
+        double a3r = xr[i0 + 3 * sm], a3i = xi[i0 + 3 * sm];
+        double b0r = a0r + a2r, b0i = a0i + a2i;
+        double b1r = a0r - a2r, b1i = a0i - a2i;
+        double b2r = a1r + a3r, b2i = a1i + a3i;
+        double b3r = a1r - a3r, b3i = a1i - a3i;
+        yr[o] = b0r + b2r;
+        yi[o] = b0i + b2i;
+        double u1r = b1r + b3i, u1i = b1i - b3r;
+        double u2r = b0r - b2r, u2i = b0i - b2i;
+        double u3r = b1r - b3i, u3i = b1i + b3r;
+        yr[o + s] = u1r * w1r - u1i * w1i;
+        yi[o + s] = u1r * w1i + u1i * w1r;
+        yr[o + 2 * s] = u2r * w2r - u2i * w2i;
+        yi[o + 2 * s] = u2r * w2i + u2i * w2r;
+        yr[o + 3 * s] = u3r * w3r - u3i * w3i;
+        yi[o + 3 * s] = u3r * w3i + u3i * w3r;
+      }
+    }
+  }
+
+  private void radix5(double[] xr, double[] xi, double[] yr, double[] yi,
+                      int m, int s) {
+    final double c1 = Math.cos(2.0 * Math.PI / 5.0);
+    final double c2 = Math.cos(4.0 * Math.PI / 5.0);
+    final double s1 = Math.sin(2.0 * Math.PI / 5.0);
+    final double s2 = Math.sin(4.0 * Math.PI / 5.0);
+    int sm = s * m;
+    for (int p=0; p<m; p++) {
+      int e = p * s;
+      double w1r = wr[e], w1i = wi[e];
+      double w2r = wr[2 * e], w2i = wi[2 * e];
+      double w3r = wr[3 * e], w3i = wi[3 * e];
+      double w4r = wr[4 * e], w4i = wi[4 * e];
+      for (int q=0; q<s; q++) {
+        int i0 = q + s * p;
+        int o = q + 5 * s * p;
+        double a0r = xr[i0], a0i = xi[i0];
+        double a1r = xr[i0 + sm], a1i = xi[i0 + sm];
+        double a2r = xr[i0 + 2 * sm], a2i = xi[i0 + 2 * sm];
+        double a3r = xr[i0 + 3 * sm], a3i = xi[i0 + 3 * sm];
+        double a4r = xr[i0 + 4 * sm], a4i = xi[i0 + 4 * sm];
+        double b1r = a1r + a4r, b1i = a1i + a4i;
+        double b2r = a2r + a3r, b2i = a2i + a3i;
+        double d1r = a1r - a4r, d1i = a1i - a4i;
+        double d2r = a2r - a3r, d2i = a2i - a3i;
+        yr[o] = a0r + b1r + b2r;
+        yi[o] = a0i + b1i + b2i;
+        double t1r = a0r + c1 * b1r + c2 * b2r, t1i = a0i + c1 * b1i + c2 * b2i;
+        double t2r = a0r + c2 * b1r + c1 * b2r, t2i = a0i + c2 * b1i + c1 * b2i;
+        double v1r = s1 * d1r + s2 * d2r, v1i = s1 * d1i + s2 * d2i;
+        double v2r = s2 * d1r - s1 * d2r, v2i = s2 * d1i - s1 * d2i;
+        double u1r = t1r + v1i, u1i = t1i - v1r;
+        double u4r = t1r - v1i, u4i = t1i + v1r;
+        double u2r = t2r + v2i, u2i = t2i - v2r;
+        double u3r = t2r - v2i, u3i = t2i + v2r;
+        yr[o + s] = u1r * w1r - u1i * w1i;
+        yi[o + s] = u1r * w1i + u1i * w1r;
+        yr[o + 2 * s] = u2r * w2r - u2i * w2i;
+        yi[o + 2 * s] = u2r * w2i + u2i * w2r;
+        yr[o + 3 * s] = u3r * w3r - u3i * w3i;
+        yi[o + 3 * s] = u3r * w3i + u3i * w3r;
+        yr[o + 4 * s] = u4r * w4r - u4i * w4i;
+        yi[o + 4 * s] = u4r * w4i + u4i * w4r;
+      }
+    }
+  }
+
+  /** unscaled forward transform by Bluestein's algorithm, in place */
+  private void bluestein(double[] re, double[] im) {
+    int m = conv.n;
+    double[] ar = new double[m];
+    double[] ai = new double[m];
+    for (int k=0; k<n; k++) {
+      ar[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+      ai[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+    }
+    conv.forward(ar, ai);
+    for (int k=0; k<m; k++) {
+      double tr = ar[k] * filterRe[k] - ai[k] * filterIm[k];
+      ai[k] = ar[k] * filterIm[k] + ai[k] * filterRe[k];
+      ar[k] = tr;
+    }
+    conv.transform(ar, ai, false);
+    for (int k=0; k<n; k++) {
+      re[k] = ar[k] * chirpRe[k] - ai[k] * chirpIm[k];
+      im[k] = ar[k] * chirpIm[k] + ai[k] * chirpRe[k];
+    }
+  }
+
+}
@@ -0,0 +1,298 @@
+//
+// QuantileDigest.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.math;
+
+/**
+   QuantileDigest estimates quantiles of a stream of values in bounded
+   memory.  It is a merging t-digest: values are buffered, and the
+   buffer is sorted and merged into a list of weighted centroids whose
+   size is limited by the compression, with small centroids near the
+   tails so that extreme quantiles stay accurate.  Digests of separate
+   parts of a data set may be merged into a digest of the whole.<P>
+
+   A QuantileDigest is not thread-safe; give each thread its own and
+   merge them.<P>
+*/
+public class QuantileDigest implements java.io.Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** default compression; about 2 * compression centroids are kept */
+  public static final double DEFAULT_COMPRESSION = 100.0;
+
+  private final double compression;
+
+  /** centroid means, in increasing order, and weights */
+  private double[] means;
+  private double[] weights;
+  private int centroids = 0;
+
+  /** space for the next centroids, swapped with means and weights */
+  private transient double[] spareMeans;
+  private transient double[] spareWeights;
+
+  /** values and weights not yet merged into the centroids */
+  private double[] bufferMeans;
+  private double[] bufferWeights;
+  private int buffered = 0;
+
+  /** true if all buffered weights are 1 */
+  private boolean unitWeights = true;
+
+  private double totalWeight = 0.0;
+
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /** construct a QuantileDigest with the default compression */
+  public QuantileDigest() {
+    this(DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * construct a QuantileDigest; larger compression gives more accurate
+   * quantiles using more memory
+   */
+  public QuantileDigest(double compression) {
+    if (!(compression >= 10.0)) compression = 10.0;
+    this.compression = compression;
+    means = new double[0];
+    weights = new double[0];
+    int bsize = (int) Math.ceil(10 * compression);
+    bufferMeans = new double[bsize];
+    bufferWeights = new double[bsize];
+  }
+
+  /** return the compression of this QuantileDigest */
+  public double getCompression() {
+    return compression;
+  }
+
+  /** add value; NaN is ignored */
+  public void add(double value) {
+    add(value, 1.0);
+  }
+
+  /** add value with weight; NaN values and non-positive weights are ignored */
+  public void add(double value, double weight) {
+    if (value != value || !(weight > 0.0)) return;
+    if (buffered == bufferMeans.length) compress();
+    bufferMeans[buffered] = value;
+    bufferWeights[buffered] = weight;
+    if (weight != 1.0) unitWeights = false;
+    buffered++;
+    totalWeight += weight;
+    if (value < min) min = value;
+    if (value > max) max = value;
+  }
+
+  /** merge the values added to digest into this */
+  public void merge(QuantileDigest digest) {
+    if (digest == this) {
+      throw new IllegalArgumentException("cannot merge a digest into itself");
+    }
+    for (int i=0; i<digest.centroids; i++) {
+      add(digest.means[i], digest.weights[i]);
+    }
+    for (int i=0; i<digest.buffered; i++) {
+      add(digest.bufferMeans[i], digest.bufferWeights[i]);
+    }
+  }
+
+  /** return the total weight of the values added */
+  public double getWeight() {
+    return totalWeight;
+  }
+
+  /** return the number of centroids, after merging buffered values */
+  public int getCentroidCount() {
+    compress();
+    return centroids;
+  }
+
+  /**
+   * return an estimate of the q-th quantile (0 <= q <= 1) of the
+   * values added, or NaN if there are none
+   */
+  public double quantile(double q) {
+    if (!(q >= 0.0 && q <= 1.0)) {
+      throw new IllegalArgumentException("quantile must be in [0, 1]: " + q);
+    }
+    compress();
+    if (centroids == 0) return Double.NaN;
+    if (centroids == 1) return means[0];
+    double index = q * totalWeight;
+    if (index <= 0.0) return min;
+    if (index >= totalWeight) return max;
+
+    // the first and last centroids' halves interpolate from min and max
+    double w0 = weights[0] / 2.0;
+    if (index < w0) {
+      return min + (means[0] - min) * (index / w0);
+    }
+    double cumulative = w0;
+    for (int i=0; i<centroids-1; i++) {
+      double step = (weights[i] + weights[i + 1]) / 2.0;
+      if (index < cumulative + step) {
+        double f = (index - cumulative) / step;
+        return means[i] + (means[i + 1] - means[i]) * f;
+      }
+      cumulative += step;
+    }
+    double wn = weights[centroids - 1] / 2.0;
+    double f = (index - cumulative) / wn;
+    return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(f, 1.0);
+  }
+
+  /** merge the buffered values into the centroids */
+  private void compress() {
+    if (buffered == 0) return;
+    if (unitWeights) {
+      java.util.Arrays.sort(bufferMeans, 0, buffered);
+    }
+    else {
+      sort(bufferMeans, bufferWeights, 0, buffered - 1);
+    }
+    int size = centroids + buffered;
+    if (spareMeans == null || spareMeans.length < size) {
+      spareMeans = new double[Math.max(size, means.length)];
+      spareWeights = new double[spareMeans.length];
+    }
+
+    // walk the centroids and the sorted buffer in order of mean, and
+    // greedily combine neighbours while the combined centroid spans at
+    // most one unit of k(q) = compression / (2 pi) * asin(2q - 1), i.e.
+    // while the cumulative weight stays within the limit q(k(left) + 1)
+    int count = 0;
+    int i = 0, j = 0;
+    double cm = 0.0, cw = 0.0;
+    double left = 0.0;
+    double limit = totalWeight * limit(0.0);
+    while (i < centroids || j < buffered) {
+      double m, w;
+      if (j == buffered || (i < centroids && means[i] <= bufferMeans[j])) {
+        m = means[i];
+        w = weights[i];
+        i++;
+      }
+      else {
+        m = bufferMeans[j];
+        w = unitWeights ? 1.0 : bufferWeights[j];
+        j++;
+      }
+      double proposed = cw + w;
+      if (cw == 0.0 || left + proposed <= limit) {
+        cm += (m - cm) * w / proposed;
+        cw = proposed;
+      }
+      else {
+        spareMeans[count] = cm;
+        spareWeights[count] = cw;
+        count++;
+        left += cw;
+        limit = totalWeight * limit(left / totalWeight);
+        cm = m;
+        cw = w;
+      }
+    }
+    spareMeans[count] = cm;
+    spareWeights[count] = cw;
+    count++;
+
+    double[] t = means;
+    means = spareMeans;
+    spareMeans = t;
+    t = weights;
+    weights = spareWeights;
+    spareWeights = t;
+    centroids = count;
+    buffered = 0;
+    unitWeights = true;
+  }
+
+  /** return the q at which k(q) is one more than k(left) */
+  private double limit(double left) {
+    if (left > 1.0) left = 1.0;
+    double k = compression / (2.0 * Math.PI) * Math.asin(2.0 * left - 1.0) + 1.0;
+    if (k >= compression / 4.0) return 1.0;
+    return (Math.sin(k * 2.0 * Math.PI / compression) + 1.0) / 2.0;
+  }
+
+  /** sort m[lo..hi] in increasing order, permuting w with it */
+  private static void sort(double[] m, double[] w, int lo, int hi) {
+    while (hi - lo > 16) {
+      int mid = (lo + hi) >>> 1;
+      // median of three pivot
+      if (m[mid] < m[lo]) swap(m, w, mid, lo);
+      if (m[hi] < m[lo]) swap(m, w, hi, lo);
+      if (m[hi] < m[mid]) swap(m, w, hi, mid);
+      double pivot = m[mid];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (m[i] < pivot) i++;
+        while (m[j] > pivot) j--;
+        if (i <= j) {
+          swap(m, w, i, j);
+          i++;
+          j--;
+        }
+      }
+      // recurse into the smaller part, loop on the larger
+      if (j - lo < hi - i) {
+        sort(m, w, lo, j);
+        lo = i;
+      }
+      else {
+        sort(m, w, i, hi);
+        hi = j;
+      }
+    }
+    for (int i=lo+1; i<=hi; i++) {
+      double mi = m[i], wi = w[i];
+      int j = i - 1;
+      while (j >= lo && m[j] > mi) {
+        m[j + 1] = m[j];
+        w[j + 1] = w[j];
+        j--;
+      }
+      m[j + 1] = mi;
+      w[j + 1] = wi;
+    }
+  }
+
+  private static void swap(double[] m, double[] w, int i, int j) {
+    double t = m[i]; m[i] = m[j]; m[j] = t;
+    t = w[i]; w[i] = w[j]; w[j] = t;
+  }
+
+  public String toString() {
+    compress();
+    return "QuantileDigest: weight " + totalWeight + " in " + centroids +
+           " centroids, median " + quantile(0.5);
+  }
+
+}
@@ -0,0 +1,362 @@
+//
+// Statistics.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.math;
+
+import visad.VisADException;
+
+/**
+   Statistics accumulates the count, minimum, maximum, mean and
+   variance of a stream of values in one pass, together with
+   approximate quantiles (a {@link QuantileDigest}) and, optionally, a
+   histogram over fixed bins.  NaN values are counted as missing.<P>
+
+   Statistics of separate parts of a data set may be merged into the
+   Statistics of the whole, so parts can be processed on different
+   threads or at different times; see visad.FieldStatistics.  Moments
+   are merged with the pairwise formulas of Chan, Golub and LeVeque, so
+   the variance does not suffer from cancellation.<P>
+
+   A Statistics is not thread-safe; give each thread its own and merge
+   them.<P>
+*/
+public class Statistics implements java.io.Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private long count = 0;
+  private long missing = 0;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private double mean = 0.0;
+  /** sum of squared deviations from mean */
+  private double m2 = 0.0;
+
+  /** quantile estimates, or null */
+  private final QuantileDigest digest;
+
+  /** histogram bins, or null */
+  private final double low, high;
+  private final long[] bins;
+  private long below = 0, above = 0;
+
+  /** construct Statistics, with quantiles but without a histogram */
+  public Statistics() {
+    this(true);
+  }
+
+  /**
+   * construct Statistics without a histogram; quantiles cost much more
+   * time than the other statistics, so they may be left out
+   */
+  public Statistics(boolean quantiles) {
+    this(Double.NaN, Double.NaN, 0,
+         quantiles ? new QuantileDigest() : null);
+  }
+
+  /**
+   * construct Statistics, with quantiles and a histogram of nbins
+   * equal bins between low and high
+   */
+  public Statistics(double low, double high, int nbins)
+         throws VisADException {
+    this(low, high, nbins, true);
+  }
+
+  /**
+   * construct Statistics with a histogram of nbins equal bins between
+   * low and high, and with quantiles if quantiles is true
+   */
+  public Statistics(double low, double high, int nbins, boolean quantiles)
+         throws VisADException {
+    this(low, high, nbins, quantiles ? new QuantileDigest() : null);
+    if (!(low < high) || nbins < 1) {
+      throw new VisADException("Statistics: bad histogram bins " + low +
+                               " to " + high + " in " + nbins);
+    }
+  }
+
+  private Statistics(double low, double high, int nbins,
+                     QuantileDigest digest) {
+    this.low = low;
+    this.high = high;
+    bins = (nbins > 0) ? new long[nbins] : null;
+    this.digest = digest;
+  }
+
+  /**
+   * return new, empty Statistics with the same histogram bins and
+   * quantile compression as this
+   */
+  public Statistics newInstance() {
+    return new Statistics(low, high, (bins == null) ? 0 : bins.length,
+      (digest == null) ? null : new QuantileDigest(digest.getCompression()));
+  }
+
+  /** add value */
+  public void add(double value) {
+    add(value, 1);
+  }
+
+  /** add weight copies of value */
+  public void add(double value, long weight) {
+    if (weight <= 0) return;
+    if (value != value) {
+      missing += weight;
+      return;
+    }
+    merge(weight, value, 0.0);
+    if (value < min) min = value;
+    if (value > max) max = value;
+    if (digest != null) digest.add(value, (double) weight);
+    if (bins != null) bin(value, weight);
+  }
+
+  /** add values[from] through values[to - 1] */
+  public void add(float[] values, int from, int to) {
+    // one pass for the chunk's count, sum, extremes, bins and quantiles,
+    // while the chunk is in cache a second for its squared deviations,
+    // then merge the chunk's moments
+    long n = 0;
+    double sum = 0.0;
+    double lo = min, hi = max;
+    for (int i=from; i<to; i++) {
+      float v = values[i];
+      if (v != v) continue;
+      n++;
+      sum += v;
+      if (v < lo) lo = v;
+      if (v > hi) hi = v;
+      if (digest != null) digest.add(v);
+      if (bins != null) bin(v, 1);
+    }
+    missing += (to - from) - n;
+    if (n == 0) return;
+    double chunkMean = sum / n;
+    double dev = 0.0;
+    for (int i=from; i<to; i++) {
+      float v = values[i];
+      if (v != v) continue;
+      double d = v - chunkMean;
+      dev += d * d;
+    }
+    merge(n, chunkMean, dev);
+    min = lo;
+    max = hi;
+  }
+
+  /** add values[from] through values[to - 1] */
+  public void add(double[] values, int from, int to) {
+    long n = 0;
+    double sum = 0.0;
+    double lo = min, hi = max;
+    for (int i=from; i<to; i++) {
+      double v = values[i];
+      if (v != v) continue;
+      n++;
+      sum += v;
+      if (v < lo) lo = v;
+      if (v > hi) hi = v;
+      if (digest != null) digest.add(v);
+      if (bins != null) bin(v, 1);
+    }
+    missing += (to - from) - n;
+    if (n == 0) return;
+    double chunkMean = sum / n;
+    double dev = 0.0;
+    for (int i=from; i<to; i++) {
+      double v = values[i];
+      if (v != v) continue;
+      double d = v - chunkMean;
+      dev += d * d;
+    }
+    merge(n, chunkMean, dev);
+    min = lo;
+    max = hi;
+  }
+
+  /** add all values */
+  public void add(float[] values) {
+    add(values, 0, values.length);
+  }
+
+  /** add all values */
+  public void add(double[] values) {
+    add(values, 0, values.length);
+  }
+
+  /** add n missing values */
+  public void addMissing(long n) {
+    missing += n;
+  }
+
+  /**
+   * merge the values added to statistics into this; statistics must
+   * have the same histogram bins as this
+   */
+  public void merge(Statistics statistics) throws VisADException {
+    if (statistics == this) {
+      throw new VisADException("Statistics.merge: cannot merge into itself");
+    }
+    if ((digest == null) != (statistics.digest == null)) {
+      throw new VisADException("Statistics.merge: only one has quantiles");
+    }
+    if ((bins == null) != (statistics.bins == null) ||
+        (bins != null && (bins.length != statistics.bins.length ||
+                          low != statistics.low || high != statistics.high))) {
+      throw new VisADException("Statistics.merge: histogram bins differ");
+    }
+    missing += statistics.missing;
+    if (statistics.count == 0) return;
+    merge(statistics.count, statistics.mean, statistics.m2);
+    if (statistics.min < min) min = statistics.min;
+    if (statistics.max > max) max = statistics.max;
+    if (digest != null) digest.merge(statistics.digest);
+    if (bins != null) {
+      for (int i=0; i<bins.length; i++) bins[i] += statistics.bins[i];
+      below += statistics.below;
+      above += statistics.above;
+    }
+  }
+
+  /** merge n values with mean b_mean and squared deviations b_m2 */
+  private void merge(long n, double b_mean, double b_m2) {
+    long total = count + n;
+    double delta = b_mean - mean;
+    mean += delta * n / total;
+    m2 += b_m2 + delta * delta * ((double) count * n / total);
+    count = total;
+  }
+
+  private void bin(double v, long weight) {
+    if (v < low) {
+      below += weight;
+    }
+    else if (v > high) {
+      above += weight;
+    }
+    else {
+      int b = (int) ((v - low) / (high - low) * bins.length);
+      // high itself falls in the last bin
+      if (b >= bins.length) b = bins.length - 1;
+      bins[b] += weight;
+    }
+  }
+
+  /** return the number of non-missing values */
+  public long getCount() {
+    return count;
+  }
+
+  /** return the number of missing (NaN) values */
+  public long getMissingCount() {
+    return missing;
+  }
+
+  /** return the least value, or NaN if there are none */
+  public double getMin() {
+    return (count == 0) ? Double.NaN : min;
+  }
+
+  /** return the greatest value, or NaN if there are none */
+  public double getMax() {
+    return (count == 0) ? Double.NaN : max;
+  }
+
+  /** return the sum of the values */
+  public double getSum() {
+    return mean * count;
+  }
+
+  /** return the mean of the values, or NaN if there are none */
+  public double getMean() {
+    return (count == 0) ? Double.NaN : mean;
+  }
+
+  /**
+   * return the (population) variance of the values, or NaN if there
+   * are none
+   */
+  public double getVariance() {
+    return (count == 0) ? Double.NaN : m2 / count;
+  }
+
+  /** return the (population) standard deviation of the values */
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
+
+  /**
+   * return an estimate of the q-th quantile, for 0 <= q <= 1, or NaN
+   * if these Statistics have no quantiles
+   */
+  public double getQuantile(double q) {
+    return (digest == null) ? Double.NaN : digest.quantile(q);
+  }
+
+  /** return an estimate of the median, or NaN if there are no quantiles */
+  public double getMedian() {
+    return getQuantile(0.5);
+  }
+
+  /** return the QuantileDigest of the values, or null */
+  public QuantileDigest getQuantileDigest() {
+    return digest;
+  }
+
+  /** return the histogram counts, or null if there are no bins */
+  public long[] getHistogram() {
+    return (bins == null) ? null : (long[]) bins.clone();
+  }
+
+  /** return the lower limit of the histogram bins */
+  public double getHistogramLow() {
+    return low;
+  }
+
+  /** return the upper limit of the histogram bins */
+  public double getHistogramHigh() {
+    return high;
+  }
+
+  /** return the number of values below the histogram bins */
+  public long getUnderflowCount() {
+    return below;
+  }
+
+  /** return the number of values above the histogram bins */
+  public long getOverflowCount() {
+    return above;
+  }
+
+  public String toString() {
+    return "Statistics: count " + count + " (missing " + missing +
+           "), min " + getMin() + ", max " + getMax() + ", mean " +
+           getMean() + ", std dev " + getStandardDeviation() +
+           ", median " + getMedian();
+  }
+
+}
@@ -90,6 +90,16 @@ public class JamaCholeskyDecomposition extends Tuple {
   /** associated JAMA CholeskyDecomposition object */
   private Object cd;
 
+  /**
+   * JAMA Matrix decomposed by MatrixKernels, whose JAMA
+   * CholeskyDecomposition is only computed if asked for
+   */
+  private Object source;
+
+  /** L in row-major order, if computed by MatrixKernels or needed */
+  private double[] l;
+  private int dim;
+
   /** useful methods from Jama.CholeskyDecomposition class */
   private static final Method[] methods =
     constructMethods();
@@ -143,7 +153,25 @@ public class JamaCholeskyDecomposition extends Tuple {
          throws VisADException, RemoteException, IllegalAccessException,
                 InstantiationException, InvocationTargetException {
     super(makeDatums(c), copy);
-    cd = ((JamaMatrix) getComponent(0)).getStash();
+    JamaMatrix jl = (JamaMatrix) getComponent(0);
+    cd = jl.getStash();
+    dim = jl.getRowDimension();
+  }
+
+  /**
+   * Construct a new JamaCholeskyDecomposition of the symmetric positive
+   * definite n by n matrix from its factor l computed by
+   * MatrixKernels.cholesky.
+   */
+  JamaCholeskyDecomposition(JamaMatrix matrix, double[] l, int n)
+         throws VisADException, RemoteException, IllegalAccessException,
+                InstantiationException, InvocationTargetException {
+    super(new Data[] {new JamaMatrix(JamaMatrix.newMatrix(l, n, n),
+                        choleskyLType, null, null, null, null, null)},
+          false);
+    source = matrix.getMatrix();
+    this.l = l;
+    dim = n;
   }
 
   private static Data[] makeDatums(Object c)
@@ -162,9 +190,19 @@ public class JamaCholeskyDecomposition extends Tuple {
   // New methods
 
   /**
-   * Return the associated JAMA CholeskyDecomposition object.
+   * Return the associated JAMA CholeskyDecomposition object.  If the
+   * decomposition was computed by MatrixKernels, JAMA's is computed
+   * now.
    */
-  public Object getCholeskyDecomposition() {
+  public synchronized Object getCholeskyDecomposition() {
+    if (cd == null && source != null) {
+      try {
+        cd = matrixCholeskyDecomposition.newInstance(new Object[] {source});
+      }
+      catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
     return cd;
   }
 
@@ -189,6 +227,8 @@ public class JamaCholeskyDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    // MatrixKernels only decomposes symmetric positive definite matrices
+    if (source != null) return true;
     boolean spd = ((Boolean)
       isSPD.invoke(cd, new Object[] {})).booleanValue();
     return spd;
@@ -206,8 +246,27 @@ public class JamaCholeskyDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
-    Object m = solve.invoke(cd, new Object[] {B.getMatrix()});
-    return new JamaMatrix(m);
+    // solve with MatrixKernels, as some versions of JAMA do the forward
+    // substitution wrongly
+    if (B.getRowDimension() != dim) {
+      throw new InvocationTargetException(
+        new IllegalArgumentException("Matrix row dimensions must agree."));
+    }
+    if (!isSPD()) {
+      throw new InvocationTargetException(
+        new RuntimeException("Matrix is not symmetric positive definite."));
+    }
+    double[] factor;
+    synchronized (this) {
+      if (l == null) {
+        Object lm = getL.invoke(cd, new Object[] {});
+        l = JamaMatrix.toRowMajor(lm);
+      }
+      factor = l;
+    }
+    int nx = B.getColumnDimension();
+    double[] x = MatrixKernels.choleskySolve(factor, dim, B.getRowMajor(), nx);
+    return new JamaMatrix(JamaMatrix.newMatrix(x, dim, nx));
   }
 
 }
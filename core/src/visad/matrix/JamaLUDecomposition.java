@@ -132,6 +132,18 @@ public class JamaLUDecomposition extends Tuple {
   /** associated JAMA LUDecomposition object */
   private Object lud;
 
+  /**
+   * JAMA Matrix decomposed by MatrixKernels, whose JAMA LUDecomposition
+   * is only computed if asked for
+   */
+  private Object source;
+
+  /** decomposition computed by MatrixKernels, or null */
+  private double[] lu;
+  private int rows, cols;
+  private int[] piv;
+  private int pivsign;
+
   /** useful methods from Jama.LUDecomposition class */
   private static final Method[] methods =
     constructMethods();
@@ -196,6 +208,23 @@ public class JamaLUDecomposition extends Tuple {
     lud = ((JamaMatrix) getComponent(0)).getStash();
   }
 
+  /**
+   * Construct a new JamaLUDecomposition of matrix (m by n, m >= n) from
+   * its LU decomposition a and pivots computed by MatrixKernels.lu.
+   */
+  JamaLUDecomposition(JamaMatrix matrix, double[] a, int m, int n,
+                      int[] piv, int pivsign)
+         throws VisADException, RemoteException, IllegalAccessException,
+                InstantiationException, InvocationTargetException {
+    super(makeDatums(a, m, n, piv), false);
+    source = matrix.getMatrix();
+    lu = a;
+    rows = m;
+    cols = n;
+    this.piv = piv;
+    this.pivsign = pivsign;
+  }
+
   private static Data[] makeDatums(Object lu)
           throws VisADException, RemoteException, IllegalAccessException,
                  InstantiationException, InvocationTargetException {
@@ -216,13 +245,50 @@ public class JamaLUDecomposition extends Tuple {
     return new Data[] {jl, ju, pf};
   }
 
+  private static Data[] makeDatums(double[] a, int m, int n, int[] piv)
+          throws VisADException, RemoteException, IllegalAccessException,
+                 InstantiationException, InvocationTargetException {
+    double[] l = new double[m * n];
+    for (int i=0; i<m; i++) {
+      for (int j=0; j<n && j<=i; j++) {
+        l[i * n + j] = (i == j) ? 1.0 : a[i * n + j];
+      }
+    }
+    JamaMatrix jl = new JamaMatrix(JamaMatrix.newMatrix(l, m, n), LULType,
+                                   null, null, null, null, null);
+
+    double[] u = new double[n * n];
+    for (int i=0; i<n; i++) {
+      System.arraycopy(a, i * n + i, u, i * n + i, n - i);
+    }
+    JamaMatrix ju = new JamaMatrix(JamaMatrix.newMatrix(u, n, n), LUUType,
+                                   null, null, null, null, null);
+
+    double[] pivot = new double[m];
+    for (int i=0; i<m; i++) pivot[i] = piv[i];
+    FlatField pf = new FlatField(pivotType, new Integer1DSet(m));
+    pf.setSamples(new double[][] {pivot});
+
+    return new Data[] {jl, ju, pf};
+  }
+
 
   // New methods
 
   /**
-   * Return the associated JAMA LUDecomposition object.
+   * Return the associated JAMA LUDecomposition object.  If the
+   * decomposition was computed by MatrixKernels, JAMA's is computed
+   * now.
    */
-  public Object getLUDecomposition() {
+  public synchronized Object getLUDecomposition() {
+    if (lud == null && source != null) {
+      try {
+        lud = matrixLUDecomposition.newInstance(new Object[] {source});
+      }
+      catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
     return lud;
   }
 
@@ -259,6 +325,15 @@ public class JamaLUDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (lu != null) {
+      if (rows != cols) {
+        throw new InvocationTargetException(
+          new IllegalArgumentException("Matrix must be square."));
+      }
+      double d = pivsign;
+      for (int j=0; j<cols; j++) d *= lu[j * cols + j];
+      return d;
+    }
     double val = ((Double) det.invoke(lud, new Object[] {})).doubleValue();
     return val;
   }
@@ -280,6 +355,7 @@ public class JamaLUDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (piv != null) return (int[]) piv.clone();
     int[] p = (int[]) getPivot.invoke(lud, new Object[] {});
     return p;
   }
@@ -291,6 +367,7 @@ public class JamaLUDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (lu != null) return nonsingular();
     boolean ns =
       ((Boolean) isNonsingular.invoke(lud, new Object[] {})).booleanValue();
     return ns;
@@ -308,9 +385,31 @@ public class JamaLUDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (lu != null) {
+      if (B.getRowDimension() != rows) {
+        throw new InvocationTargetException(
+          new IllegalArgumentException("Matrix row dimensions must agree."));
+      }
+      if (!nonsingular()) {
+        throw new InvocationTargetException(
+          new RuntimeException("Matrix is singular."));
+      }
+      int nx = B.getColumnDimension();
+      double[] x =
+        MatrixKernels.luSolve(lu, rows, cols, piv, B.getRowMajor(), nx);
+      return new JamaMatrix(JamaMatrix.newMatrix(x, rows, nx));
+    }
     Object m = solve.invoke(lud, new Object[] {B.getMatrix()});
     return new JamaMatrix(m);
   }
 
+  /** return true if U, computed by MatrixKernels, has no zero pivots */
+  private boolean nonsingular() {
+    for (int j=0; j<cols; j++) {
+      if (lu[j * cols + j] == 0.0) return false;
+    }
+    return true;
+  }
+
 }
 
@@ -53,6 +53,9 @@ import visad.VisADException;
 /**
  * JamaMatrix is a VisAD wrapper for JAMA matrices. This class requires the
  * <a href="http://math.nist.gov/javanumerics/jama/">JAMA package</a>.
+ * Products and LU, QR and Cholesky decompositions of large matrices are
+ * computed by the cache-blocked, multi-threaded {@link MatrixKernels}
+ * rather than by JAMA.
  */
 public class JamaMatrix extends FlatField {
 
@@ -617,6 +620,46 @@ public class JamaMatrix extends FlatField {
     setMatrix(doubleMatrix.newInstance(new Object[] {entries}));
   }
 
+  /**
+   * Return a copy of this matrix's entries in row-major order, as used
+   * by MatrixKernels.
+   */
+  double[] getRowMajor()
+         throws IllegalAccessException, InvocationTargetException {
+    return toRowMajor(matrix);
+  }
+
+  /**
+   * Return a copy of the entries of the given JAMA Matrix in row-major
+   * order.
+   */
+  static double[] toRowMajor(Object matrix)
+         throws IllegalAccessException, InvocationTargetException {
+    double[][] entries =
+      (double[][]) getArray.invoke(matrix, new Object[] {});
+    int rows = entries.length;
+    int cols = (rows == 0) ? 0 : entries[0].length;
+    double[] a = new double[rows * cols];
+    for (int i=0; i<rows; i++) {
+      System.arraycopy(entries[i], 0, a, i * cols, cols);
+    }
+    return a;
+  }
+
+  /**
+   * Return a new JAMA Matrix with the rows-by-cols entries in a, in
+   * row-major order.
+   */
+  static Object newMatrix(double[] a, int rows, int cols)
+         throws IllegalAccessException, InstantiationException,
+                InvocationTargetException {
+    double[][] entries = new double[rows][cols];
+    for (int i=0; i<rows; i++) {
+      System.arraycopy(a, i * cols, entries[i], 0, cols);
+    }
+    return doubleMatrix.newInstance(new Object[] {entries});
+  }
+
 
   // Method wrappers for JAMA Matrix functionality
 
@@ -1157,8 +1200,17 @@ public class JamaMatrix extends FlatField {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
-    Object m = times2.invoke(matrix, new Object[] {B.getMatrix()});
-    return new JamaMatrix(m);
+    int m = getRowDimension();
+    int k = getColumnDimension();
+    int n = B.getColumnDimension();
+    if (B.getRowDimension() == k &&
+        MatrixKernels.isWorthwhile(Math.min(m, k), n)) {
+      double[] c = MatrixKernels.multiply(getRowMajor(), B.getRowMajor(),
+                                          m, k, n);
+      return new JamaMatrix(newMatrix(c, m, n));
+    }
+    Object p = times2.invoke(matrix, new Object[] {B.getMatrix()});
+    return new JamaMatrix(p);
   }
 
   /**
@@ -1402,6 +1454,14 @@ public class JamaMatrix extends FlatField {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    int n = getRowDimension();
+    if (getColumnDimension() == n && MatrixKernels.isWorthwhile(n, n)) {
+      double[] l = getRowMajor();
+      // JAMA gives the partial factor of other matrices
+      if (MatrixKernels.cholesky(l, n)) {
+        return new JamaCholeskyDecomposition(this, l, n);
+      }
+    }
     Object c = chol.invoke(matrix, new Object[] {});
     return new JamaCholeskyDecomposition(c, false);
   }
@@ -1424,6 +1484,14 @@ public class JamaMatrix extends FlatField {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    int m = getRowDimension();
+    int n = getColumnDimension();
+    if (m >= n && MatrixKernels.isWorthwhile(m, n)) {
+      double[] a = getRowMajor();
+      int[] piv = new int[m];
+      int pivsign = MatrixKernels.lu(a, m, n, piv);
+      return new JamaLUDecomposition(this, a, m, n, piv, pivsign);
+    }
     Object l = lu.invoke(matrix, new Object[] {});
     return new JamaLUDecomposition(l, false);
   }
@@ -1435,6 +1503,14 @@ public class JamaMatrix extends FlatField {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    int m = getRowDimension();
+    int n = getColumnDimension();
+    if (m >= n && MatrixKernels.isWorthwhile(m, n)) {
+      double[] a = getRowMajor();
+      double[] rdiag = new double[n];
+      MatrixKernels.qr(a, m, n, rdiag);
+      return new JamaQRDecomposition(this, a, rdiag, m, n);
+    }
     Object q = qr.invoke(matrix, new Object[] {});
     return new JamaQRDecomposition(q, false);
   }
@@ -136,6 +136,17 @@ public class JamaQRDecomposition extends Tuple {
   /** associated JAMA QRDecomposition object */
   private Object qrd;
 
+  /**
+   * JAMA Matrix decomposed by MatrixKernels, whose JAMA QRDecomposition
+   * is only computed if asked for
+   */
+  private Object source;
+
+  /** decomposition computed by MatrixKernels, or null */
+  private double[] qr;
+  private double[] rdiag;
+  private int rows, cols;
+
   /** useful methods from Jama.QRDecomposition class */
   private static final Method[] methods =
     constructMethods();
@@ -196,6 +207,22 @@ public class JamaQRDecomposition extends Tuple {
     qrd = ((JamaMatrix) getComponent(0)).getStash();
   }
 
+  /**
+   * Construct a new JamaQRDecomposition of matrix (m by n, m >= n) from
+   * its QR decomposition a and rdiag computed by MatrixKernels.qr.
+   */
+  JamaQRDecomposition(JamaMatrix matrix, double[] a, double[] rdiag,
+                      int m, int n)
+         throws VisADException, RemoteException, IllegalAccessException,
+                InstantiationException, InvocationTargetException {
+    super(makeDatums(a, rdiag, m, n), false);
+    source = matrix.getMatrix();
+    qr = a;
+    this.rdiag = rdiag;
+    rows = m;
+    cols = n;
+  }
+
   private static Data[] makeDatums(Object qr)
           throws VisADException, RemoteException, IllegalAccessException,
                  InstantiationException, InvocationTargetException {
@@ -211,13 +238,41 @@ public class JamaQRDecomposition extends Tuple {
     return new Data[] {jq, jr};
   }
 
+  private static Data[] makeDatums(double[] a, double[] rdiag, int m, int n)
+          throws VisADException, RemoteException, IllegalAccessException,
+                 InstantiationException, InvocationTargetException {
+    double[] q = MatrixKernels.qrQ(a, m, n);
+    JamaMatrix jq = new JamaMatrix(JamaMatrix.newMatrix(q, m, n), QRQType,
+                                   null, null, null, null, null);
+
+    double[] r = new double[n * n];
+    for (int i=0; i<n; i++) {
+      r[i * n + i] = rdiag[i];
+      System.arraycopy(a, i * n + i + 1, r, i * n + i + 1, n - i - 1);
+    }
+    JamaMatrix jr = new JamaMatrix(JamaMatrix.newMatrix(r, n, n), QRQType,
+                                   null, null, null, null, null);
+
+    return new Data[] {jq, jr};
+  }
+
 
   // New methods
 
   /**
-   * Return the associated JAMA QRDecomposition object.
+   * Return the associated JAMA QRDecomposition object.  If the
+   * decomposition was computed by MatrixKernels, JAMA's is computed
+   * now.
    */
-  public Object getQRDecomposition() {
+  public synchronized Object getQRDecomposition() {
+    if (qrd == null && source != null) {
+      try {
+        qrd = matrixQRDecomposition.newInstance(new Object[] {source});
+      }
+      catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
     return qrd;
   }
 
@@ -254,6 +309,15 @@ public class JamaQRDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (qr != null) {
+      double[] h = new double[rows * cols];
+      for (int i=0; i<rows; i++) {
+        int last = Math.min(i, cols - 1);
+        System.arraycopy(qr, i * cols, h, i * cols, last + 1);
+      }
+      return new JamaMatrix(JamaMatrix.newMatrix(h, rows, cols), QRHType,
+                            null, null, null, null, null);
+    }
     Object m = getH.invoke(qrd, new Object[] {});
     return new JamaMatrix(m, QRHType, null, null, null, null, null);
   }
@@ -265,6 +329,7 @@ public class JamaQRDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (qr != null) return fullRank();
     boolean fr =
       ((Boolean) isFullRank.invoke(qrd, new Object[] {})).booleanValue();
     return fr;
@@ -282,9 +347,31 @@ public class JamaQRDecomposition extends Tuple {
       throw new VisADException("you need to install Jama from " +
                                "http://math.nist.gov/javanumerics/jama/");
     }
+    if (qr != null) {
+      if (B.getRowDimension() != rows) {
+        throw new InvocationTargetException(
+          new IllegalArgumentException("Matrix row dimensions must agree."));
+      }
+      if (!fullRank()) {
+        throw new InvocationTargetException(
+          new RuntimeException("Matrix is rank deficient."));
+      }
+      int nx = B.getColumnDimension();
+      double[] x =
+        MatrixKernels.qrSolve(qr, rdiag, rows, cols, B.getRowMajor(), nx);
+      return new JamaMatrix(JamaMatrix.newMatrix(x, cols, nx));
+    }
     Object m = solve.invoke(qrd, new Object[] {B.getMatrix()});
     return new JamaMatrix(m);
   }
 
+  /** return true if R, computed by MatrixKernels, has no zero diagonal */
+  private boolean fullRank() {
+    for (int j=0; j<cols; j++) {
+      if (rdiag[j] == 0.0) return false;
+    }
+    return true;
+  }
+
 }
 
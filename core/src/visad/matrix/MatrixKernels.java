@@ -0,0 +1,734 @@
+//
+// MatrixKernels.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.matrix;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.VisADException;
+import visad.util.ThreadManager;
+
+/**
+   MatrixKernels implements matrix multiplication and the LU, QR and
+   Cholesky decompositions on dense matrices stored as a single
+   row-major double array (element (i, j) of an m-by-n matrix at
+   index i * n + j), as in the range samples of a JamaMatrix.<P>
+
+   The kernels work on tiles and panels small enough to stay in cache,
+   and divide the tiles of large problems among threads; {@link
+   JamaMatrix} uses them in place of the JAMA classes for matrices of at
+   least {@link #PROP_MIN_SIZE} rows and columns.  The results agree
+   with JAMA's: multiplication adds the products in the same order, so
+   its results are identical, and the decompositions use the same
+   pivoting and Householder conventions, so they differ only by
+   rounding.<P>
+*/
+public final class MatrixKernels {
+
+  /** system property giving the maximum number of threads */
+  public static final String PROP_THREADS = "visad.matrix.threads";
+
+  /**
+   * system property giving the smallest number of rows and columns of
+   * a JamaMatrix whose products and decompositions use these kernels
+   */
+  public static final String PROP_MIN_SIZE = "visad.matrix.kernels.minsize";
+
+  /** default for {@link #PROP_MIN_SIZE} */
+  public static final int DEFAULT_MIN_SIZE = 64;
+
+  /** width of the panels factored at a time */
+  private static final int NB = 64;
+
+  /** rows, inner products and columns per multiplication tile */
+  private static final int TILE_ROWS = 64;
+  private static final int TILE_INNER = 512;
+  private static final int TILE_COLUMNS = 128;
+
+  /** columns per tile when applying block reflectors */
+  private static final int REFLECT_COLUMNS = 128;
+
+  /** smallest number of flops worth dividing among threads */
+  private static final long PARALLEL_FLOPS = 1L << 22;
+
+  private MatrixKernels() {
+  }
+
+  /**
+   * return true if a JamaMatrix with rows rows and cols columns should
+   * use these kernels
+   */
+  public static boolean isWorthwhile(int rows, int cols) {
+    int min = Integer.getInteger(PROP_MIN_SIZE, DEFAULT_MIN_SIZE).intValue();
+    return Math.min(rows, cols) >= min;
+  }
+
+  /**
+   * return the m-by-n product of the m-by-k matrix a and the k-by-n
+   * matrix b
+   */
+  public static double[] multiply(final double[] a, final double[] b,
+                                  final int m, final int k, final int n)
+         throws VisADException {
+    check(a, m, k);
+    check(b, k, n);
+    // columns of b, contiguous
+    final double[] bt = new double[n * k];
+    for (int p=0; p<k; p++) {
+      int bp = p * n;
+      for (int j=0; j<n; j++) bt[j * k + p] = b[bp + j];
+    }
+    final double[] c = new double[m * n];
+    run(tiles(m, TILE_ROWS), (long) m * k * n, new Tiler() {
+      public void tile(int t) {
+        int i0 = t * TILE_ROWS;
+        int i1 = Math.min(i0 + TILE_ROWS, m);
+        for (int p0=0; p0<k; p0+=TILE_INNER) {
+          int p1 = Math.min(p0 + TILE_INNER, k);
+          for (int j0=0; j0<n; j0+=TILE_COLUMNS) {
+            int j1 = Math.min(j0 + TILE_COLUMNS, n);
+            multiplyTile(a, k, bt, k, 0, c, n, i0, i1, p0, p1, j0, j1);
+          }
+        }
+      }
+    });
+    return c;
+  }
+
+  /**
+   * for rows i0 to i1 - 1 and columns j0 to j1 - 1 of c, add to c(i, j)
+   * the products a(i, p) * bt(j, p) for p from p0 to p1 - 1, where
+   * a(i, p) = a[i * lda + p], bt(j, p) = bt[j * ldb + boff + p] and
+   * c(i, j) = c[i * ldc + j]; each element of c accumulates its
+   * products in order of p, as in JAMA, so the results are the same
+   */
+  private static void multiplyTile(double[] a, int lda, double[] bt,
+                                   int ldb, int boff, double[] c, int ldc,
+                                   int i0, int i1, int p0, int p1,
+                                   int j0, int j1) {
+    int i = i0;
+    // four by four blocks of c, held in registers
+    for (; i+3<i1; i+=4) {
+      int a0 = i * lda;
+      int a1 = a0 + lda;
+      int a2 = a1 + lda;
+      int a3 = a2 + lda;
+      int c0 = i * ldc;
+      int c1 = c0 + ldc;
+      int c2 = c1 + ldc;
+      int c3 = c2 + ldc;
+      int j = j0;
+      for (; j+3<j1; j+=4) {
+        int b0 = j * ldb + boff;
+        int b1 = b0 + ldb;
+        int b2 = b1 + ldb;
+        int b3 = b2 + ldb;
+        double s00 = c[c0 + j], s01 = c[c0 + j + 1],
+               s02 = c[c0 + j + 2], s03 = c[c0 + j + 3];
+        double s10 = c[c1 + j], s11 = c[c1 + j + 1],
+               s12 = c[c1 + j + 2], s13 = c[c1 + j + 3];
+        double s20 = c[c2 + j], s21 = c[c2 + j + 1],
+               s22 = c[c2 + j + 2], s23 = c[c2 + j + 3];
+        double s30 = c[c3 + j], s31 = c[c3 + j + 1],
+               s32 = c[c3 + j + 2], s33 = c[c3 + j + 3];
+        for (int p=p0; p<p1; p++) {
+          double x0 = a[a0 + p], x1 = a[a1 + p],
+                 x2 = a[a2 + p], x3 = a[a3 + p];
+          double y0 = bt[b0 + p], y1 = bt[b1 + p],
+                 y2 = bt[b2 + p], y3 = bt[b3 + p];
+          s00 += x0 * y0; s01 += x0 * y1; s02 += x0 * y2; s03 += x0 * y3;
+          s10 += x1 * y0; s11 += x1 * y1; s12 += x1 * y2; s13 += x1 * y3;
+          s20 += x2 * y0; s21 += x2 * y1; s22 += x2 * y2; s23 += x2 * y3;
+          s30 += x3 * y0; s31 += x3 * y1; s32 += x3 * y2; s33 += x3 * y3;
+        }
+        c[c0 + j] = s00; c[c0 + j + 1] = s01;
+        c[c0 + j + 2] = s02; c[c0 + j + 3] = s03;
+        c[c1 + j] = s10; c[c1 + j + 1] = s11;
+        c[c1 + j + 2] = s12; c[c1 + j + 3] = s13;
+        c[c2 + j] = s20; c[c2 + j + 1] = s21;
+        c[c2 + j + 2] = s22; c[c2 + j + 3] = s23;
+        c[c3 + j] = s30; c[c3 + j + 1] = s31;
+        c[c3 + j + 2] = s32; c[c3 + j + 3] = s33;
+      }
+      for (; j<j1; j++) {
+        for (int r=0; r<4; r++) {
+          dot(a, lda, bt, ldb, boff, c, ldc, i + r, p0, p1, j);
+        }
+      }
+    }
+    for (; i<i1; i++) {
+      for (int j=j0; j<j1; j++) {
+        dot(a, lda, bt, ldb, boff, c, ldc, i, p0, p1, j);
+      }
+    }
+  }
+
+  /** add to c(i, j) the products a(i, p) * bt(j, p), as in multiplyTile */
+  private static void dot(double[] a, int lda, double[] bt, int ldb,
+                          int boff, double[] c, int ldc, int i,
+                          int p0, int p1, int j) {
+    int ai = i * lda;
+    int bj = j * ldb + boff;
+    double s = c[i * ldc + j];
+    for (int p=p0; p<p1; p++) s += a[ai + p] * bt[bj + p];
+    c[i * ldc + j] = s;
+  }
+
+  // LU
+
+  /**
+   * replace the m-by-n matrix a, m >= n, by its LU decomposition with
+   * partial pivoting: L (unit lower triangular) below the diagonal and U
+   * on and above it; piv (of length m) receives the row permutation
+   * @return the sign of the permutation
+   */
+  public static int lu(final double[] a, final int m, final int n,
+                       int[] piv)
+         throws VisADException {
+    check(a, m, n);
+    if (m < n || piv.length != m) {
+      throw new VisADException("MatrixKernels.lu: bad dimensions");
+    }
+    for (int i=0; i<m; i++) piv[i] = i;
+    int pivsign = 1;
+    // the negated rows of U right of each panel, as columns
+    final double[] ut = new double[n * NB];
+    for (int j0=0; j0<n; j0+=NB) {
+      final int j1 = Math.min(j0 + NB, n);
+
+      // factor the panel of columns j0 to j1 - 1, swapping whole rows
+      for (int j=j0; j<j1; j++) {
+        int p = j;
+        double max = Math.abs(a[j * n + j]);
+        for (int i=j+1; i<m; i++) {
+          double v = Math.abs(a[i * n + j]);
+          if (v > max) {
+            max = v;
+            p = i;
+          }
+        }
+        if (p != j) {
+          swapRows(a, n, p, j);
+          int t = piv[p];
+          piv[p] = piv[j];
+          piv[j] = t;
+          pivsign = -pivsign;
+        }
+        int jj = j * n;
+        double d = a[jj + j];
+        if (d != 0.0) {
+          for (int i=j+1; i<m; i++) a[i * n + j] /= d;
+        }
+        for (int i=j+1; i<m; i++) {
+          int ii = i * n;
+          double l = a[ii + j];
+          for (int c=j+1; c<j1; c++) a[ii + c] -= l * a[jj + c];
+        }
+      }
+      if (j1 == n) break;
+
+      // rows j0 to j1 - 1 of U, right of the panel
+      final int top = j0;
+      final int bottom = j1;
+      run(tiles(n - j1, TILE_COLUMNS), (long) NB * NB * (n - j1),
+          new Tiler() {
+        public void tile(int t) {
+          int c0 = bottom + t * TILE_COLUMNS;
+          int c1 = Math.min(c0 + TILE_COLUMNS, n);
+          for (int i=top+1; i<bottom; i++) {
+            int ii = i * n;
+            for (int p=top; p<i; p++) {
+              double l = a[ii + p];
+              int pp = p * n;
+              for (int c=c0; c<c1; c++) a[ii + c] -= l * a[pp + c];
+            }
+          }
+        }
+      });
+
+      // the trailing matrix less the product of the panel's L and U
+      for (int p=top; p<bottom; p++) {
+        int pp = p * n;
+        for (int c=bottom; c<n; c++) ut[c * NB + p - top] = -a[pp + c];
+      }
+      run(tiles(m - j1, TILE_ROWS), 2L * NB * (m - j1) * (n - j1),
+          new Tiler() {
+        public void tile(int t) {
+          int i0 = bottom + t * TILE_ROWS;
+          int i1 = Math.min(i0 + TILE_ROWS, m);
+          for (int c0=bottom; c0<n; c0+=TILE_COLUMNS) {
+            int c1 = Math.min(c0 + TILE_COLUMNS, n);
+            multiplyTile(a, n, ut, NB, -top, a, n, i0, i1, top, bottom,
+                         c0, c1);
+          }
+        }
+      });
+    }
+    return pivsign;
+  }
+
+  /**
+   * solve A * X = B given the LU decomposition lu and pivots piv of the
+   * m-by-n matrix A (as computed by {@link #lu}), and the m-by-nx
+   * matrix b; as in JAMA, the result has m rows, the first n of which
+   * are X
+   */
+  public static double[] luSolve(double[] lu, int m, int n, int[] piv,
+                                 double[] b, int nx) {
+    double[] x = new double[m * nx];
+    for (int i=0; i<m; i++) {
+      System.arraycopy(b, piv[i] * nx, x, i * nx, nx);
+    }
+    // solve L * Y = B(piv, :)
+    for (int k=0; k<n; k++) {
+      int kk = k * nx;
+      for (int i=k+1; i<n; i++) {
+        double l = lu[i * n + k];
+        int ii = i * nx;
+        for (int j=0; j<nx; j++) x[ii + j] -= x[kk + j] * l;
+      }
+    }
+    // solve U * X = Y
+    for (int k=n-1; k>=0; k--) {
+      int kk = k * nx;
+      double d = lu[k * n + k];
+      for (int j=0; j<nx; j++) x[kk + j] /= d;
+      for (int i=0; i<k; i++) {
+        double u = lu[i * n + k];
+        int ii = i * nx;
+        for (int j=0; j<nx; j++) x[ii + j] -= x[kk + j] * u;
+      }
+    }
+    return x;
+  }
+
+  // QR
+
+  /**
+   * replace the m-by-n matrix a, m >= n, by its Householder QR
+   * decomposition in the form used by JAMA: the Householder vectors on
+   * and below the diagonal and R above it, with the diagonal of R in
+   * rdiag (of length n)
+   */
+  public static void qr(final double[] a, final int m, final int n,
+                        double[] rdiag)
+         throws VisADException {
+    check(a, m, n);
+    if (m < n || rdiag.length != n) {
+      throw new VisADException("MatrixKernels.qr: bad dimensions");
+    }
+    double[] w = new double[NB];
+    for (int k0=0; k0<n; k0+=NB) {
+      int k1 = Math.min(k0 + NB, n);
+
+      // factor the panel of columns k0 to k1 - 1
+      for (int k=k0; k<k1; k++) {
+        double nrm = 0.0;
+        for (int i=k; i<m; i++) nrm = hypot(nrm, a[i * n + k]);
+        if (nrm != 0.0) {
+          int kk = k * n + k;
+          if (a[kk] < 0.0) nrm = -nrm;
+          for (int i=k; i<m; i++) a[i * n + k] /= nrm;
+          a[kk] += 1.0;
+
+          // apply the reflector to the rest of the panel, a row at a time
+          int width = k1 - k - 1;
+          for (int j=0; j<width; j++) w[j] = 0.0;
+          for (int i=k; i<m; i++) {
+            int ii = i * n;
+            double v = a[ii + k];
+            for (int j=0; j<width; j++) w[j] += v * a[ii + k + 1 + j];
+          }
+          double vkk = a[kk];
+          for (int j=0; j<width; j++) w[j] = -w[j] / vkk;
+          for (int i=k; i<m; i++) {
+            int ii = i * n;
+            double v = a[ii + k];
+            for (int j=0; j<width; j++) a[ii + k + 1 + j] += w[j] * v;
+          }
+        }
+        rdiag[k] = -nrm;
+      }
+
+      // apply the panel's reflectors to the columns right of it
+      if (k1 < n) {
+        reflect(a, m, n, k0, k1, triangle(a, m, n, k0, k1), true,
+                a, n, k1);
+      }
+    }
+  }
+
+  /**
+   * return the m-by-n orthogonal factor Q of the QR decomposition qr
+   * (as computed by {@link #qr}) of an m-by-n matrix
+   */
+  public static double[] qrQ(double[] qr, int m, int n)
+         throws VisADException {
+    double[] q = new double[m * n];
+    for (int i=0; i<n; i++) q[i * n + i] = 1.0;
+    int last = ((n - 1) / NB) * NB;
+    for (int k0=last; k0>=0; k0-=NB) {
+      int k1 = Math.min(k0 + NB, n);
+      reflect(qr, m, n, k0, k1, triangle(qr, m, n, k0, k1), false,
+              q, n, k0);
+    }
+    return q;
+  }
+
+  /**
+   * return the n-by-nx least squares solution X of A * X = B given the
+   * QR decomposition qr and rdiag (as computed by {@link #qr}) of the
+   * m-by-n matrix A, and the m-by-nx matrix b
+   */
+  public static double[] qrSolve(double[] qr, double[] rdiag, int m, int n,
+                                 double[] b, int nx)
+         throws VisADException {
+    double[] x = new double[m * nx];
+    System.arraycopy(b, 0, x, 0, m * nx);
+    // compute Q' * B
+    for (int k0=0; k0<n; k0+=NB) {
+      int k1 = Math.min(k0 + NB, n);
+      reflect(qr, m, n, k0, k1, triangle(qr, m, n, k0, k1), true, x, nx, 0);
+    }
+    // solve R * X = Q' * B
+    for (int k=n-1; k>=0; k--) {
+      int kk = k * nx;
+      for (int j=0; j<nx; j++) x[kk + j] /= rdiag[k];
+      for (int i=0; i<k; i++) {
+        double r = qr[i * n + k];
+        int ii = i * nx;
+        for (int j=0; j<nx; j++) x[ii + j] -= x[kk + j] * r;
+      }
+    }
+    double[] result = new double[n * nx];
+    System.arraycopy(x, 0, result, 0, n * nx);
+    return result;
+  }
+
+  /**
+   * return the upper triangular T (nb-by-nb, nb = k1 - k0) such that
+   * the product of the reflectors k0 to k1 - 1 of qr is I - V * T * V',
+   * where column j of V is reflector k0 + j
+   */
+  private static double[] triangle(double[] qr, int m, int n,
+                                   int k0, int k1) {
+    int nb = k1 - k0;
+    // g[p * nb + q] = v_p' * v_q, for p < q
+    double[] g = new double[nb * nb];
+    for (int i=k0; i<m; i++) {
+      int ii = i * n + k0;
+      int last = Math.min(i - k0, nb - 1);
+      for (int p=0; p<last; p++) {
+        double v = qr[ii + p];
+        int pp = p * nb;
+        for (int q=p+1; q<=last; q++) g[pp + q] += v * qr[ii + q];
+      }
+    }
+    // H = I - tau v v', with tau = 1 / v_k(k) (or 0 for no reflection)
+    double[] t = new double[nb * nb];
+    for (int j=0; j<nb; j++) {
+      double vjj = qr[(k0 + j) * n + k0 + j];
+      double tau = (vjj == 0.0) ? 0.0 : 1.0 / vjj;
+      t[j * nb + j] = tau;
+      for (int i=0; i<j; i++) {
+        double s = 0.0;
+        for (int p=i; p<j; p++) s += t[i * nb + p] * g[p * nb + j];
+        t[i * nb + j] = -tau * s;
+      }
+    }
+    return t;
+  }
+
+  /**
+   * apply the block reflector I - V * T * V' of reflectors k0 to k1 - 1
+   * of qr (or its transpose, I - V * T' * V', the reflectors in order
+   * k0 first, if transpose) to rows k0 to m - 1 and columns c0 to xn - 1
+   * of the m-by-xn matrix x
+   */
+  private static void reflect(final double[] qr, final int m, final int n,
+                              final int k0, final int k1, final double[] t,
+                              final boolean transpose, final double[] x,
+                              final int xn, final int c0)
+          throws VisADException {
+    final int nb = k1 - k0;
+    run(tiles(xn - c0, REFLECT_COLUMNS), 4L * nb * (m - k0) * (xn - c0),
+        new Tiler() {
+      public void tile(int tile) {
+        int j0 = c0 + tile * REFLECT_COLUMNS;
+        int j1 = Math.min(j0 + REFLECT_COLUMNS, xn);
+        int width = j1 - j0;
+        // w = V' * X
+        double[] w = new double[nb * width];
+        for (int i=k0; i<m; i++) {
+          int vi = i * n + k0;
+          int xi = i * xn + j0;
+          int last = Math.min(i - k0, nb - 1);
+          for (int p=0; p<=last; p++) {
+            double v = qr[vi + p];
+            int wp = p * width;
+            for (int j=0; j<width; j++) w[wp + j] += v * x[xi + j];
+          }
+        }
+        // w = T' * w or T * w, in place
+        if (transpose) {
+          for (int p=nb-1; p>=0; p--) {
+            int wp = p * width;
+            double tpp = t[p * nb + p];
+            for (int j=0; j<width; j++) w[wp + j] *= tpp;
+            for (int q=0; q<p; q++) {
+              double tqp = t[q * nb + p];
+              int wq = q * width;
+              for (int j=0; j<width; j++) w[wp + j] += tqp * w[wq + j];
+            }
+          }
+        }
+        else {
+          for (int p=0; p<nb; p++) {
+            int wp = p * width;
+            double tpp = t[p * nb + p];
+            for (int j=0; j<width; j++) w[wp + j] *= tpp;
+            for (int q=p+1; q<nb; q++) {
+              double tpq = t[p * nb + q];
+              int wq = q * width;
+              for (int j=0; j<width; j++) w[wp + j] += tpq * w[wq + j];
+            }
+          }
+        }
+        // X = X - V * w
+        for (int i=k0; i<m; i++) {
+          int vi = i * n + k0;
+          int xi = i * xn + j0;
+          int last = Math.min(i - k0, nb - 1);
+          for (int p=0; p<=last; p++) {
+            double v = qr[vi + p];
+            int wp = p * width;
+            for (int j=0; j<width; j++) x[xi + j] -= v * w[wp + j];
+          }
+        }
+      }
+    });
+  }
+
+  // Cholesky
+
+  /**
+   * replace the lower triangle of the n-by-n matrix a by its Cholesky
+   * factor L, such that A = L * L', and zero its upper triangle
+   * @return false (leaving a partly factored) if a is not symmetric
+   *         positive definite
+   */
+  public static boolean cholesky(final double[] a, final int n)
+         throws VisADException {
+    check(a, n, n);
+    for (int i=0; i<n; i++) {
+      for (int j=0; j<i; j++) {
+        if (a[i * n + j] != a[j * n + i]) return false;
+      }
+    }
+    // the negated rows of each panel
+    final double[] lt = new double[n * NB];
+    for (int k0=0; k0<n; k0+=NB) {
+      final int top = k0;
+      final int bottom = Math.min(k0 + NB, n);
+
+      // factor the diagonal block
+      for (int j=top; j<bottom; j++) {
+        int jj = j * n;
+        for (int c=top; c<=j; c++) {
+          int cc = c * n;
+          double s = a[jj + c];
+          for (int p=top; p<c; p++) s -= a[jj + p] * a[cc + p];
+          if (c < j) {
+            a[jj + c] = s / a[cc + c];
+          }
+          else {
+            if (!(s > 0.0)) return false;
+            a[jj + j] = Math.sqrt(s);
+          }
+        }
+      }
+      if (bottom == n) break;
+
+      // the panel below it
+      run(tiles(n - bottom, TILE_ROWS), (long) NB * NB * (n - bottom),
+          new Tiler() {
+        public void tile(int t) {
+          int i0 = bottom + t * TILE_ROWS;
+          int i1 = Math.min(i0 + TILE_ROWS, n);
+          for (int i=i0; i<i1; i++) {
+            int ii = i * n;
+            for (int c=top; c<bottom; c++) {
+              int cc = c * n;
+              double s = a[ii + c];
+              for (int p=top; p<c; p++) s -= a[ii + p] * a[cc + p];
+              a[ii + c] = s / a[cc + c];
+            }
+          }
+        }
+      });
+
+      // the lower triangle of the trailing matrix less the panel's
+      // contribution
+      for (int j=bottom; j<n; j++) {
+        int jj = j * n;
+        for (int p=top; p<bottom; p++) lt[j * NB + p - top] = -a[jj + p];
+      }
+      final int ntiles = tiles(n - bottom, TILE_ROWS);
+      run(ntiles, (long) NB * (n - bottom) * (n - bottom), new Tiler() {
+        public void tile(int t) {
+          // the last tiles have the longest rows, so start with them
+          int i0 = bottom + (ntiles - 1 - t) * TILE_ROWS;
+          int i1 = Math.min(i0 + TILE_ROWS, n);
+          for (int j0=bottom; j0<i0; j0+=TILE_COLUMNS) {
+            int j1 = Math.min(j0 + TILE_COLUMNS, i0);
+            multiplyTile(a, n, lt, NB, -top, a, n, i0, i1, top, bottom,
+                         j0, j1);
+          }
+          for (int i=i0; i<i1; i++) {
+            for (int j=i0; j<=i; j++) {
+              dot(a, n, lt, NB, -top, a, n, i, top, bottom, j);
+            }
+          }
+        }
+      });
+    }
+    for (int i=0; i<n; i++) {
+      for (int j=i+1; j<n; j++) a[i * n + j] = 0.0;
+    }
+    return true;
+  }
+
+  /**
+   * solve A * X = B given the Cholesky factor l of the n-by-n matrix A
+   * (as computed by {@link #cholesky}) and the n-by-nx matrix b
+   */
+  public static double[] choleskySolve(double[] l, int n, double[] b,
+                                       int nx) {
+    double[] x = new double[n * nx];
+    System.arraycopy(b, 0, x, 0, n * nx);
+    // solve L * Y = B
+    for (int k=0; k<n; k++) {
+      int kk = k * nx;
+      for (int i=0; i<k; i++) {
+        double lki = l[k * n + i];
+        int ii = i * nx;
+        for (int j=0; j<nx; j++) x[kk + j] -= x[ii + j] * lki;
+      }
+      double d = l[k * n + k];
+      for (int j=0; j<nx; j++) x[kk + j] /= d;
+    }
+    // solve L' * X = Y
+    for (int k=n-1; k>=0; k--) {
+      int kk = k * nx;
+      for (int i=k+1; i<n; i++) {
+        double lik = l[i * n + k];
+        int ii = i * nx;
+        for (int j=0; j<nx; j++) x[kk + j] -= x[ii + j] * lik;
+      }
+      double d = l[k * n + k];
+      for (int j=0; j<nx; j++) x[kk + j] /= d;
+    }
+    return x;
+  }
+
+  // helpers
+
+  /** sqrt(a^2 + b^2) without under or overflow, as in JAMA */
+  private static double hypot(double a, double b) {
+    double r;
+    if (Math.abs(a) > Math.abs(b)) {
+      r = b / a;
+      r = Math.abs(a) * Math.sqrt(1 + r * r);
+    }
+    else if (b != 0) {
+      r = a / b;
+      r = Math.abs(b) * Math.sqrt(1 + r * r);
+    }
+    else {
+      r = 0.0;
+    }
+    return r;
+  }
+
+  private static void swapRows(double[] a, int n, int p, int q) {
+    int pp = p * n;
+    int qq = q * n;
+    for (int c=0; c<n; c++) {
+      double t = a[pp + c];
+      a[pp + c] = a[qq + c];
+      a[qq + c] = t;
+    }
+  }
+
+  private static void check(double[] a, int m, int n) throws VisADException {
+    if (a == null || m < 0 || n < 0 || a.length != m * n) {
+      throw new VisADException("MatrixKernels: array is not " + m + " by " +
+                               n);
+    }
+  }
+
+  private static int tiles(int n, int size) {
+    return (n + size - 1) / size;
+  }
+
+  /** one of a number of independent tiles of work */
+  private interface Tiler {
+    void tile(int t);
+  }
+
+  /**
+   * run ntiles tiles, with flops the approximate amount of arithmetic,
+   * on workers that claim tiles in turn
+   */
+  private static void run(final int ntiles, long flops, final Tiler tiler)
+          throws VisADException {
+    int threads = Integer.getInteger(PROP_THREADS,
+                    Runtime.getRuntime().availableProcessors()).intValue();
+    threads = Math.min(threads, ntiles);
+    if (threads <= 1 || flops < PARALLEL_FLOPS) {
+      for (int t=0; t<ntiles; t++) tiler.tile(t);
+      return;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    ThreadManager manager = new ThreadManager("MatrixKernels");
+    for (int i=0; i<threads; i++) {
+      manager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() {
+          int t;
+          while ((t = next.getAndIncrement()) < ntiles) tiler.tile(t);
+        }
+      });
+    }
+    try {
+      manager.runInParallel(threads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("MatrixKernels: " + e.getMessage());
+    }
+  }
+
+}
@@ -1316,6 +1316,40 @@ public static void plot(final String name, final float[][] data)
     return new Real(data1).atan2Degrees(data2);
   }
 
+  /**
+   * Return a lazily evaluated expression for {@code data}; arithmetic
+   * on it (e.g. {@code (lazy(a) - b) * c + d}) builds a larger
+   * expression rather than computing intermediate Fields, and
+   * {@link #evaluate(FieldExpression)} then computes the whole
+   * expression in one pass where possible.
+   *
+   * @param   data            VisAD data object
+   *
+   * @return expression whose value is {@code data}.
+   *
+   * @throws  VisADException  invalid data
+   * @throws  RemoteException unable to access remote data
+   */
+  public static FieldExpression lazy(Data data)
+         throws VisADException, RemoteException {
+    return FieldExpression.of(data);
+  }
+
+  /**
+   * Compute the value of an expression built from {@link #lazy(Data)}.
+   *
+   * @param   expression      expression to compute
+   *
+   * @return value of {@code expression}.
+   *
+   * @throws  VisADException  invalid data
+   * @throws  RemoteException unable to access remote data
+   */
+  public static Data evaluate(FieldExpression expression)
+         throws VisADException, RemoteException {
+    return expression.evaluate();
+  }
+
   /**
    * return forward Fourier transform of {@code field}, which should have
    * either a 1-D or 2-D gridded domain; uses FFT when domain size
@@ -1350,6 +1384,65 @@ public static void plot(final String name, final float[][] data)
     return FFT.fourierTransform(field, false);
   }
 
+  /**
+   * return the partial derivatives of field with respect to each
+   * component of its domain, all computed in one pass when the domain
+   * is gridded; returns a Tuple of Fields, one per domain component,
+   * or a single Field for a 1-D domain
+   *
+   * @param   field           VisAD Field data object
+   *
+   * @return partial derivatives of {@code field}
+   *
+   * @throws  VisADException  invalid data
+   * @throws  RemoteException unable to access remote field
+   */
+  public static Data derivative(Field field)
+         throws VisADException, RemoteException {
+    return field.derivative(Data.NO_ERRORS);
+  }
+
+  /**
+   * return the partial derivatives of field with respect to the given
+   * components of its domain, or of its domain's reference (e.g. for
+   * derivatives in Latitude and Longitude of a field on a projected
+   * grid), all computed in one pass when the domain is gridded;
+   * returns a Tuple of Fields, one per partial, or a single Field
+   *
+   * @param   field           VisAD Field data object
+   * @param   partials        RealTypes of the partials
+   *
+   * @return partial derivatives of {@code field}
+   *
+   * @throws  VisADException  invalid data
+   * @throws  RemoteException unable to access remote field
+   */
+  public static Data derivative(Field field, RealType[] partials)
+         throws VisADException, RemoteException {
+    return field.derivative(null, partials, null, Data.NO_ERRORS);
+  }
+
+  /**
+   * return the partial derivative of field with respect to the named
+   * component of its domain or of its domain's reference
+   *
+   * @param   field           VisAD Field data object
+   * @param   partial         name of the RealType of the partial
+   *
+   * @return partial derivative of {@code field}
+   *
+   * @throws  VisADException  invalid data
+   * @throws  RemoteException unable to access remote field
+   */
+  public static Data derivative(Field field, String partial)
+         throws VisADException, RemoteException {
+    RealType type = RealType.getRealTypeByName(partial);
+    if (type == null) {
+      throw new VisADException("derivative: no RealType named " + partial);
+    }
+    return field.derivative(type, Data.NO_ERRORS);
+  }
+
   /**
    * return matrix multiply of data1 * data2, which should have
    * either 1-D or 2-D gridded domains
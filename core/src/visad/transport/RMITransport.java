@@ -0,0 +1,133 @@
+//
+// RMITransport.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.ExportException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+   RMITransport serves objects through Java RMI, binding them in an
+   RMI registry on its port; the registry is created if none is
+   running there.  Objects that are not already exported (e.g. not
+   UnicastRemoteObjects) are exported when bound.<P>
+*/
+public class RMITransport implements Transport {
+
+  private final int port;
+
+  private Registry registry = null;
+
+  /** true if this Transport created registry */
+  private boolean created = false;
+
+  /** construct a Transport for the registry on the default port */
+  public RMITransport() {
+    this(Registry.REGISTRY_PORT);
+  }
+
+  /** construct a Transport for the registry on port */
+  public RMITransport(int port) {
+    this.port = port;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  private synchronized Registry getRegistry() throws RemoteException {
+    if (registry == null) {
+      try {
+        registry = LocateRegistry.createRegistry(port);
+        created = true;
+      }
+      catch (ExportException e) {
+        // a registry is already running on port
+        registry = LocateRegistry.getRegistry(port);
+      }
+    }
+    return registry;
+  }
+
+  public void bind(String name, Remote obj) throws RemoteException {
+    try {
+      RemoteObject.toStub(obj);
+    }
+    catch (NoSuchObjectException e) {
+      UnicastRemoteObject.exportObject(obj, 0);
+    }
+    getRegistry().rebind(name, obj);
+  }
+
+  public void unbind(String name) throws RemoteException {
+    try {
+      getRegistry().unbind(name);
+    }
+    catch (NotBoundException e) {
+    }
+  }
+
+  public Remote lookup(String url) throws RemoteException, NotBoundException {
+    Object[] parts = TransportFactory.parseURL(url, Registry.REGISTRY_PORT);
+    Registry reg = LocateRegistry.getRegistry((String) parts[0],
+                                              ((Integer) parts[1]).intValue());
+    return reg.lookup((String) parts[2]);
+  }
+
+  public String getURL(String name) throws RemoteException {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    }
+    catch (UnknownHostException e) {
+      host = "localhost";
+    }
+    return "//" + host + ":" + port + "/" + name;
+  }
+
+  public synchronized void shutdown() {
+    if (created && registry != null) {
+      try {
+        UnicastRemoteObject.unexportObject(registry, true);
+      }
+      catch (NoSuchObjectException e) {
+      }
+    }
+    registry = null;
+    created = false;
+  }
+
+}
+
@@ -0,0 +1,670 @@
+//
+// SocketConnection.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.MarshalException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+   SocketConnection is one end of a SocketTransport connection.
+   Calls in both directions are multiplexed over its socket as
+   length-prefixed frames, each tagged with a call id so that any
+   number of calls may be outstanding at once and results may
+   arrive in any order.  Each end keeps a table of the objects it
+   has passed by reference, and a proxy for each object the other
+   end has passed to it; both tables last as long as the
+   connection.<P>
+*/
+class SocketConnection {
+
+  static final byte CALL = 1;
+  static final byte LOOKUP = 2;
+  static final byte RESULT = 3;
+  static final byte ERROR = 4;
+
+  private static final int INITIAL_BUFFER = 16 * 1024;
+
+  private final SocketTransport transport;
+
+  private final SocketChannel channel;
+
+  private final String name;
+
+  SelectionKey key = null;
+
+  private ByteBuffer readBuf = ByteBuffer.allocate(INITIAL_BUFFER);
+
+  private final Object writeLock = new Object();
+
+  /** frames not yet written, guarded by writeLock */
+  private final LinkedList<ByteBuffer> outQueue = new LinkedList<ByteBuffer>();
+
+  private volatile boolean closed = false;
+
+  private int nextCallId = 0;
+
+  /** calls waiting for results, by call id */
+  private final Map<Integer, PendingCall> pending =
+    new HashMap<Integer, PendingCall>();
+
+  /** objects passed by reference from this end */
+  private final Map<Integer, Object> exports = new HashMap<Integer, Object>();
+  private final Map<Object, Integer> exportIds =
+    new IdentityHashMap<Object, Integer>();
+  private int nextExportId = 1;
+
+  /** proxies for objects passed by reference from the other end */
+  private final Map<Integer, Object> proxies = new HashMap<Integer, Object>();
+
+  SocketConnection(SocketTransport transport, SocketChannel channel) {
+    this.transport = transport;
+    this.channel = channel;
+    this.name = String.valueOf(channel.socket().getRemoteSocketAddress());
+  }
+
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  public String toString() {
+    return "SocketConnection[" + name + "]";
+  }
+
+  /* ---------------- references ---------------- */
+
+  /** return the token that passes obj by reference */
+  synchronized WireCodec.RemoteToken toToken(Remote obj) {
+    if (Proxy.isProxyClass(obj.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(obj);
+      if (handler instanceof Stub && ((Stub) handler).conn == this) {
+        // an object of the other end, going home
+        return new WireCodec.RemoteToken(false, ((Stub) handler).id, null);
+      }
+    }
+    Integer id = exportIds.get(obj);
+    if (id == null) {
+      id = new Integer(nextExportId++);
+      exportIds.put(obj, id);
+      exports.put(id, obj);
+    }
+    return new WireCodec.RemoteToken(true, id.intValue(),
+                                     remoteInterfaces(obj.getClass()));
+  }
+
+  /** return the object a token received from the other end stands for */
+  synchronized Object fromToken(WireCodec.RemoteToken token)
+         throws IOException {
+    Integer id = new Integer(token.id);
+    if (!token.mine) {
+      Object obj = exports.get(id);
+      if (obj == null) {
+        throw new NoSuchObjectException("no object " + token.id +
+                                        " exported to " + name);
+      }
+      return obj;
+    }
+    Object proxy = proxies.get(id);
+    if (proxy == null) {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader == null) loader = getClass().getClassLoader();
+      Class[] interfaces = new Class[token.interfaces.length];
+      try {
+        for (int i=0; i<interfaces.length; i++) {
+          interfaces[i] = Class.forName(token.interfaces[i], false, loader);
+        }
+      }
+      catch (ClassNotFoundException e) {
+        throw new UnmarshalException("unknown Remote interface", e);
+      }
+      proxy = Proxy.newProxyInstance(loader, interfaces,
+                                     new Stub(this, token.id));
+      proxies.put(id, proxy);
+    }
+    return proxy;
+  }
+
+  private static final Map<Class, String[]> interfaceCache =
+    new HashMap<Class, String[]>();
+
+  /** return the names of all Remote interfaces of c */
+  static String[] remoteInterfaces(Class c) {
+    synchronized (interfaceCache) {
+      String[] names = interfaceCache.get(c);
+      if (names == null) {
+        List<String> list = new ArrayList<String>();
+        for (Class k=c; k!=null; k=k.getSuperclass()) {
+          Class[] interfaces = k.getInterfaces();
+          for (int i=0; i<interfaces.length; i++) {
+            if (Remote.class.isAssignableFrom(interfaces[i]) &&
+                !list.contains(interfaces[i].getName())) {
+              list.add(interfaces[i].getName());
+            }
+          }
+        }
+        names = list.toArray(new String[list.size()]);
+        interfaceCache.put(c, names);
+      }
+      return names;
+    }
+  }
+
+  private static final Map<Class, Map<Long, Method>> methodCache =
+    new HashMap<Class, Map<Long, Method>>();
+
+  /** return the method of a Remote interface of c with hash */
+  static Method findMethod(Class c, long hash) {
+    Map<Long, Method> methods;
+    synchronized (methodCache) {
+      methods = methodCache.get(c);
+      if (methods == null) {
+        methods = new HashMap<Long, Method>();
+        for (Class k=c; k!=null; k=k.getSuperclass()) {
+          Class[] interfaces = k.getInterfaces();
+          for (int i=0; i<interfaces.length; i++) {
+            if (!Remote.class.isAssignableFrom(interfaces[i])) continue;
+            Method[] ms = interfaces[i].getMethods();
+            for (int j=0; j<ms.length; j++) {
+              methods.put(new Long(WireCodec.methodHash(ms[j])), ms[j]);
+            }
+          }
+        }
+        methodCache.put(c, methods);
+      }
+    }
+    return methods.get(new Long(hash));
+  }
+
+  /* ---------------- outgoing calls ---------------- */
+
+  /** start a call of method on object id with args */
+  PendingCall call(int id, Method method, Object[] args)
+         throws RemoteException {
+    PendingCall call = newCall(method);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(CALL);
+      out.writeInt(call.callId);
+      out.writeInt(id);
+      out.writeLong(WireCodec.methodHash(method));
+      int n = (args == null) ? 0 : args.length;
+      out.writeByte(n);
+      for (int i=0; i<n; i++) WireCodec.write(out, args[i], this);
+      out.flush();
+      send(bytes);
+    }
+    catch (IOException e) {
+      forget(call);
+      if (e instanceof RemoteException) throw (RemoteException) e;
+      throw new MarshalException("error marshalling arguments", e);
+    }
+    transport.callSent();
+    return call;
+  }
+
+  /** look up the object bound under name at the other end */
+  Remote lookup(String boundName) throws RemoteException, NotBoundException {
+    PendingCall call = newCall(null);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(LOOKUP);
+      out.writeInt(call.callId);
+      out.writeUTF(boundName);
+      out.flush();
+      send(bytes);
+    }
+    catch (IOException e) {
+      forget(call);
+      if (e instanceof RemoteException) throw (RemoteException) e;
+      throw new MarshalException("error sending lookup", e);
+    }
+    try {
+      return (Remote) call.get();
+    }
+    catch (ExecutionException e) {
+      Throwable t = e.getCause();
+      if (t instanceof NotBoundException) throw (NotBoundException) t;
+      if (t instanceof RemoteException) throw (RemoteException) t;
+      throw new RemoteException("lookup failed", t);
+    }
+    catch (InterruptedException e) {
+      throw new RemoteException("lookup interrupted", e);
+    }
+  }
+
+  private PendingCall newCall(Method method) throws RemoteException {
+    synchronized (pending) {
+      if (closed) throw new ConnectException("connection to " + name +
+                                             " is closed");
+      PendingCall call = new PendingCall(nextCallId++, method);
+      pending.put(new Integer(call.callId), call);
+      return call;
+    }
+  }
+
+  private void forget(PendingCall call) {
+    synchronized (pending) {
+      pending.remove(new Integer(call.callId));
+    }
+  }
+
+  /* ---------------- framing ---------------- */
+
+  /** queue the frame in bytes for writing */
+  private void send(ByteArrayOutputStream bytes) throws IOException {
+    if (bytes.size() > transport.getMaxFrameSize()) {
+      throw new IOException("frame of " + bytes.size() + " bytes to " + name +
+                            " is over the limit of " +
+                            transport.getMaxFrameSize());
+    }
+    ByteBuffer frame = ByteBuffer.allocate(4 + bytes.size());
+    frame.putInt(bytes.size());
+    frame.put(bytes.toByteArray());
+    frame.flip();
+    transport.bytesSent(frame.remaining());
+    synchronized (writeLock) {
+      if (closed) throw new ConnectException("connection to " + name +
+                                             " is closed");
+      if (outQueue.isEmpty()) {
+        channel.write(frame);
+        if (!frame.hasRemaining()) return;
+      }
+      // the socket is full, so let the selector finish the write
+      outQueue.add(frame);
+      if (outQueue.size() == 1) transport.wantWrite(this);
+    }
+  }
+
+  /** write queued frames; called by the selector thread */
+  void writeReady() throws IOException {
+    synchronized (writeLock) {
+      while (!outQueue.isEmpty()) {
+        ByteBuffer frame = outQueue.getFirst();
+        channel.write(frame);
+        if (frame.hasRemaining()) return;
+        outQueue.removeFirst();
+      }
+      if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+  /** return true if frames are waiting to be written */
+  boolean hasQueuedWrites() {
+    synchronized (writeLock) {
+      return !outQueue.isEmpty();
+    }
+  }
+
+  /** read available bytes and handle complete frames; called by the
+      selector thread */
+  void readReady() throws IOException {
+    int n = channel.read(readBuf);
+    if (n < 0) throw new EOFException("connection closed by " + name);
+    transport.bytesReceived(n);
+    readBuf.flip();
+    int need = 0;
+    while (readBuf.remaining() >= 4) {
+      int length = readBuf.getInt(readBuf.position());
+      if (length < 1 || length > transport.getMaxFrameSize()) {
+        throw new IOException("bad frame length " + length + " from " + name);
+      }
+      if (readBuf.remaining() < 4 + length) {
+        need = 4 + length;
+        break;
+      }
+      readBuf.getInt();
+      byte[] frame = new byte[length];
+      readBuf.get(frame);
+      received(frame);
+    }
+    readBuf.compact();
+    if (need > readBuf.capacity()) {
+      ByteBuffer bigger = ByteBuffer.allocate(Math.max(need,
+                                                       2 * readBuf.capacity()));
+      readBuf.flip();
+      bigger.put(readBuf);
+      readBuf = bigger;
+    }
+  }
+
+  private void received(final byte[] frame) throws IOException {
+    byte kind = frame[0];
+    if (kind == CALL || kind == LOOKUP) {
+      transport.execute(new Runnable() {
+        public void run() {
+          serve(frame);
+        }
+      });
+    }
+    else if (kind == RESULT || kind == ERROR) {
+      int callId = ByteBuffer.wrap(frame, 1, 4).getInt();
+      PendingCall call;
+      synchronized (pending) {
+        call = pending.remove(new Integer(callId));
+      }
+      // the caller decodes the frame, off the selector thread
+      if (call != null) call.complete(frame);
+    }
+    else {
+      throw new IOException("bad frame kind " + kind + " from " + name);
+    }
+  }
+
+  /* ---------------- incoming calls ---------------- */
+
+  /** execute the call or lookup in frame and send its result */
+  private void serve(byte[] frame) {
+    int callId = -1;
+    Object result = null;
+    Throwable error = null;
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+      byte kind = in.readByte();
+      callId = in.readInt();
+      if (kind == LOOKUP) {
+        String boundName = in.readUTF();
+        result = transport.getBound(boundName);
+        if (result == null) error = new NotBoundException(boundName);
+      }
+      else {
+        int id = in.readInt();
+        long hash = in.readLong();
+        Object[] args = new Object[in.readUnsignedByte()];
+        for (int i=0; i<args.length; i++) args[i] = WireCodec.read(in, this);
+        Object target;
+        synchronized (this) {
+          target = exports.get(new Integer(id));
+        }
+        transport.callReceived();
+        if (target == null) {
+          error = new NoSuchObjectException("no object " + id +
+                                            " exported to " + name);
+        }
+        else {
+          Method method = findMethod(target.getClass(), hash);
+          if (method == null) {
+            error = new UnmarshalException("unrecognized method hash for " +
+                                           target.getClass().getName());
+          }
+          else {
+            result = method.invoke(target, args);
+          }
+        }
+      }
+    }
+    catch (InvocationTargetException e) {
+      error = e.getTargetException();
+    }
+    catch (ClassNotFoundException e) {
+      error = new UnmarshalException("error unmarshalling arguments", e);
+    }
+    catch (IOException e) {
+      error = new UnmarshalException("error unmarshalling arguments", e);
+    }
+    catch (Throwable t) {
+      error = t;
+    }
+    if (callId < 0 || closed) return;
+
+    try {
+      reply(callId, result, error);
+    }
+    catch (IOException e) {
+      try {
+        // the result or exception would not serialize
+        reply(callId, null, new MarshalException("error marshalling " +
+                                                 "return", e));
+      }
+      catch (IOException e2) {
+        close(e2);
+      }
+    }
+  }
+
+  private void reply(int callId, Object result, Throwable error)
+          throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(error == null ? RESULT : ERROR);
+    out.writeInt(callId);
+    WireCodec.write(out, error == null ? result : error, this);
+    out.flush();
+    send(bytes);
+  }
+
+  /* ---------------- shutdown ---------------- */
+
+  /** close the connection, failing all outstanding calls with cause */
+  void close(Throwable cause) {
+    List<PendingCall> failed;
+    synchronized (pending) {
+      if (closed) return;
+      closed = true;
+      failed = new ArrayList<PendingCall>(pending.values());
+      pending.clear();
+    }
+    try {
+      if (key != null) key.cancel();
+      channel.close();
+    }
+    catch (IOException e) {
+    }
+    ConnectException e = new ConnectException("connection to " + name +
+                                              " closed", toException(cause));
+    for (Iterator<PendingCall> it=failed.iterator(); it.hasNext(); ) {
+      it.next().fail(e);
+    }
+    synchronized (this) {
+      exports.clear();
+      exportIds.clear();
+      proxies.clear();
+    }
+    transport.closed(this);
+  }
+
+  private static Exception toException(Throwable t) {
+    if (t == null || t instanceof Exception) return (Exception) t;
+    return new Exception(t.toString());
+  }
+
+  /* ---------------- helpers ---------------- */
+
+  /** the result of a call, which completes when its frame arrives */
+  class PendingCall implements Future<Object> {
+    final int callId;
+    private final Method method;
+    private byte[] frame = null;
+    private Throwable failure = null;
+    private boolean done = false;
+    private boolean decoded = false;
+    private Object value = null;
+    private Throwable error = null;
+
+    PendingCall(int callId, Method method) {
+      this.callId = callId;
+      this.method = method;
+    }
+
+    synchronized void complete(byte[] frame) {
+      this.frame = frame;
+      done = true;
+      notifyAll();
+    }
+
+    synchronized void fail(Throwable t) {
+      failure = t;
+      done = true;
+      notifyAll();
+    }
+
+    public boolean cancel(boolean mayInterrupt) {
+      return false;
+    }
+
+    public boolean isCancelled() {
+      return false;
+    }
+
+    public synchronized boolean isDone() {
+      return done;
+    }
+
+    public Object get() throws InterruptedException, ExecutionException {
+      synchronized (this) {
+        while (!done) wait();
+      }
+      return value();
+    }
+
+    public Object get(long timeout, TimeUnit unit)
+           throws InterruptedException, ExecutionException, TimeoutException {
+      long end = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (this) {
+        while (!done) {
+          long left = end - System.nanoTime();
+          if (left <= 0) throw new TimeoutException();
+          TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+      }
+      return value();
+    }
+
+    private synchronized Object value() throws ExecutionException {
+      if (failure != null) throw new ExecutionException(failure);
+      if (!decoded) {
+        decoded = true;
+        try {
+          DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(frame));
+          byte kind = in.readByte();
+          in.readInt();
+          Object v = WireCodec.read(in, SocketConnection.this);
+          if (kind == ERROR) {
+            error = (v instanceof Throwable) ? (Throwable) v :
+              new RemoteException("bad exception from " + name);
+          }
+          else {
+            value = v;
+          }
+        }
+        catch (ClassNotFoundException e) {
+          error = new UnmarshalException("error unmarshalling return", e);
+        }
+        catch (IOException e) {
+          error = new UnmarshalException("error unmarshalling return", e);
+        }
+        frame = null;
+      }
+      if (error != null) throw new ExecutionException(error);
+      return value;
+    }
+
+    /** return the result as a synchronous call of method would */
+    Object getResult() throws Throwable {
+      try {
+        return get();
+      }
+      catch (InterruptedException e) {
+        throw new RemoteException("call interrupted", e);
+      }
+      catch (ExecutionException e) {
+        Throwable t = e.getCause();
+        if (t instanceof RuntimeException || t instanceof Error) throw t;
+        Class[] declared = method.getExceptionTypes();
+        for (int i=0; i<declared.length; i++) {
+          if (declared[i].isInstance(t)) throw t;
+        }
+        throw new RemoteException("undeclared exception", t);
+      }
+    }
+  }
+
+  /** handler of the proxy for an object of the other end */
+  static class Stub implements InvocationHandler {
+    final SocketConnection conn;
+    final int id;
+
+    Stub(SocketConnection conn, int id) {
+      this.conn = conn;
+      this.id = id;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args)
+           throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        String name = method.getName();
+        if (name.equals("equals")) {
+          return Boolean.valueOf(proxy == args[0]);
+        }
+        if (name.equals("hashCode")) {
+          return new Integer(System.identityHashCode(proxy));
+        }
+        if (name.equals("toString")) {
+          return "Proxy[" + conn.name + "#" + id + "]";
+        }
+        return method.invoke(this, args);
+      }
+      return conn.call(id, method, args).getResult();
+    }
+  }
+
+}
+
@@ -0,0 +1,452 @@
+//
+// SocketTransport.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   SocketTransport serves and calls Remote objects over plain TCP
+   sockets instead of RMI.  All calls between two JVMs, in both
+   directions, share one connection, so callbacks (e.g. the
+   RemoteActions a CellImpl passes to a RemoteDataReference) need no
+   extra sockets.  Calls carry ids, so a caller may have any number
+   of them outstanding; invokeAsync() returns a Future instead of
+   waiting, which pipelines calls over the connection.  One
+   selector thread does all socket I/O for a SocketTransport, and
+   incoming calls run on a shared pool of threads.  Values are
+   encoded by WireCodec.<P>
+
+   A SocketTransport constructed with a port listens there for
+   connections (port 0 picks a free port); one constructed with
+   no port only makes calls.  Objects passed by reference stay
+   reachable for as long as the connection they were passed over
+   stays open.<P>
+
+   Frames longer than getMaxFrameSize() bytes are refused: a sender
+   fails the call, and a receiver closes the connection rather than
+   allocate a buffer for whatever length the peer claims.<P>
+*/
+public class SocketTransport implements Transport, Runnable {
+
+  /** default port of SocketTransport servers */
+  public static final int DEFAULT_PORT = 1100;
+
+  /** property giving the largest frame accepted, in bytes */
+  public static final String PROP_MAX_FRAME = "visad.transport.maxFrame";
+
+  /** default largest frame accepted, in bytes */
+  public static final int DEFAULT_MAX_FRAME = 64 * 1024 * 1024;
+
+  private final Selector selector;
+
+  private final ServerSocketChannel server;
+
+  private final Thread ioThread;
+
+  private volatile boolean running = true;
+
+  private volatile int maxFrame =
+    Integer.getInteger(PROP_MAX_FRAME, DEFAULT_MAX_FRAME).intValue();
+
+  /** objects bound by name */
+  private final Map<String, Remote> bound = new HashMap<String, Remote>();
+
+  /** outgoing connections, by "host:port" */
+  private final Map<String, SocketConnection> outgoing =
+    new HashMap<String, SocketConnection>();
+
+  /** all open connections */
+  private final List<SocketConnection> connections =
+    new ArrayList<SocketConnection>();
+
+  /** connections waiting to be registered or to write */
+  private final LinkedList<SocketConnection> toRegister =
+    new LinkedList<SocketConnection>();
+  private final LinkedList<SocketConnection> toWrite =
+    new LinkedList<SocketConnection>();
+
+  private final AtomicLong callsSent = new AtomicLong();
+  private final AtomicLong callsReceived = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+
+  /** runs incoming calls for all SocketTransports */
+  private static ExecutorService executor = null;
+
+  /** construct a SocketTransport which only makes calls */
+  public SocketTransport() throws RemoteException {
+    this(null, -1);
+  }
+
+  /** construct a SocketTransport listening on port (0 for any free
+      port) of all local addresses */
+  public SocketTransport(int port) throws RemoteException {
+    this(null, port);
+  }
+
+  /** construct a SocketTransport listening on port of address host,
+      e.g. "localhost" to accept only local connections */
+  public SocketTransport(String host, int port) throws RemoteException {
+    try {
+      selector = Selector.open();
+      if (port >= 0) {
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        InetSocketAddress address = (host == null) ?
+          new InetSocketAddress(port) : new InetSocketAddress(host, port);
+        server.socket().bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+      }
+      else {
+        server = null;
+      }
+    }
+    catch (IOException e) {
+      throw new RemoteException("SocketTransport: cannot listen on port " +
+                                port, e);
+    }
+    ioThread = new Thread(this, "SocketTransport-IO-" +
+                          (server == null ? "client" : "" + getPort()));
+    ioThread.setDaemon(true);
+    ioThread.start();
+  }
+
+  /** return the port on which this listens, or -1 if it does not */
+  public int getPort() {
+    return (server == null) ? -1 : server.socket().getLocalPort();
+  }
+
+  public void bind(String name, Remote obj) throws RemoteException {
+    if (server == null) {
+      throw new RemoteException("SocketTransport.bind: not listening");
+    }
+    synchronized (bound) {
+      bound.put(name, obj);
+    }
+  }
+
+  public void unbind(String name) {
+    synchronized (bound) {
+      bound.remove(name);
+    }
+  }
+
+  Remote getBound(String name) {
+    synchronized (bound) {
+      return bound.get(name);
+    }
+  }
+
+  public Remote lookup(String url) throws RemoteException, NotBoundException {
+    Object[] parts = TransportFactory.parseURL(url, DEFAULT_PORT);
+    String host = (parts[0] == null) ? "localhost" : (String) parts[0];
+    int port = ((Integer) parts[1]).intValue();
+    return getConnection(host, port).lookup((String) parts[2]);
+  }
+
+  public String getURL(String name) {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    }
+    catch (UnknownHostException e) {
+      host = "localhost";
+    }
+    return TransportFactory.SOCKET_SCHEME + "//" + host + ":" + getPort() +
+           "/" + name;
+  }
+
+  /** return the connection to host:port, opening it if necessary */
+  private SocketConnection getConnection(String host, int port)
+          throws RemoteException {
+    String key = host + ":" + port;
+    synchronized (outgoing) {
+      SocketConnection conn = outgoing.get(key);
+      if (conn != null && !conn.isClosed()) return conn;
+      if (!running) throw new ConnectException("SocketTransport is shut down");
+      try {
+        SocketChannel channel =
+          SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        conn = new SocketConnection(this, channel);
+      }
+      catch (IOException e) {
+        throw new ConnectException("SocketTransport: cannot connect to " +
+                                   key, e);
+      }
+      outgoing.put(key, conn);
+      register(conn);
+      return conn;
+    }
+  }
+
+  private void register(SocketConnection conn) {
+    synchronized (connections) {
+      connections.add(conn);
+    }
+    synchronized (toRegister) {
+      toRegister.add(conn);
+    }
+    selector.wakeup();
+  }
+
+  /** ask the selector thread to finish writing conn's queued frames */
+  void wantWrite(SocketConnection conn) {
+    synchronized (toWrite) {
+      toWrite.add(conn);
+    }
+    selector.wakeup();
+  }
+
+  /** forget conn, which has closed */
+  void closed(SocketConnection conn) {
+    synchronized (connections) {
+      connections.remove(conn);
+    }
+    synchronized (outgoing) {
+      for (Iterator<SocketConnection> it=outgoing.values().iterator();
+           it.hasNext(); ) {
+        if (it.next() == conn) it.remove();
+      }
+    }
+  }
+
+  /** the selector loop, which does all socket I/O */
+  public void run() {
+    while (running) {
+      try {
+        selector.select();
+      }
+      catch (IOException e) {
+        break;
+      }
+      if (!running) break;
+
+      synchronized (toRegister) {
+        while (!toRegister.isEmpty()) {
+          SocketConnection conn = toRegister.removeFirst();
+          try {
+            conn.key = conn.getChannel().register(selector,
+                                                  SelectionKey.OP_READ, conn);
+          }
+          catch (IOException e) {
+            conn.close(e);
+          }
+        }
+      }
+      synchronized (toWrite) {
+        while (!toWrite.isEmpty()) {
+          SocketConnection conn = toWrite.removeFirst();
+          if (conn.key != null && conn.key.isValid() &&
+              conn.hasQueuedWrites()) {
+            conn.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          }
+          else if (conn.key == null && !conn.isClosed()) {
+            // not registered yet, so try again next time around
+            toWrite.add(conn);
+            break;
+          }
+        }
+      }
+
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if (!key.isValid()) continue;
+        if (key.isAcceptable()) {
+          accept();
+          continue;
+        }
+        SocketConnection conn = (SocketConnection) key.attachment();
+        try {
+          if (key.isReadable()) conn.readReady();
+          if (key.isValid() && key.isWritable()) conn.writeReady();
+        }
+        catch (IOException e) {
+          conn.close(e);
+        }
+        catch (RuntimeException e) {
+          conn.close(e);
+        }
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      SocketChannel channel = server.accept();
+      if (channel == null) return;
+      channel.socket().setTcpNoDelay(true);
+      channel.configureBlocking(false);
+      SocketConnection conn = new SocketConnection(this, channel);
+      synchronized (connections) {
+        connections.add(conn);
+      }
+      conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+    }
+    catch (IOException e) {
+      // the client gave up; keep serving the others
+    }
+  }
+
+  /** run an incoming call */
+  void execute(Runnable call) {
+    ExecutorService pool;
+    synchronized (SocketTransport.class) {
+      if (executor == null) {
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+          private int count = 0;
+          public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SocketTransport-Call-" + count++);
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      }
+      pool = executor;
+    }
+    pool.execute(call);
+  }
+
+  public void shutdown() {
+    running = false;
+    selector.wakeup();
+    List<SocketConnection> all;
+    synchronized (connections) {
+      all = new ArrayList<SocketConnection>(connections);
+    }
+    for (int i=0; i<all.size(); i++) {
+      all.get(i).close(null);
+    }
+    try {
+      if (server != null) server.close();
+      ioThread.join(1000);
+      selector.close();
+    }
+    catch (IOException e) {
+    }
+    catch (InterruptedException e) {
+    }
+  }
+
+  /**
+   * start a call of method on proxy, an object returned by a
+   * SocketTransport, and return its Future result without waiting;
+   * calls started this way are pipelined over the connection
+   */
+  public static Future<Object> invokeAsync(Remote proxy, Method method,
+                                           Object[] args)
+         throws RemoteException {
+    SocketConnection.Stub stub = null;
+    if (Proxy.isProxyClass(proxy.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+      if (handler instanceof SocketConnection.Stub) {
+        stub = (SocketConnection.Stub) handler;
+      }
+    }
+    if (stub == null) {
+      throw new RemoteException("SocketTransport.invokeAsync: " + proxy +
+                                " is not from a SocketTransport");
+    }
+    return stub.conn.call(stub.id, method, args);
+  }
+
+  /** set the largest frame, in bytes, sent or accepted */
+  public void setMaxFrameSize(int max) {
+    maxFrame = max;
+  }
+
+  public int getMaxFrameSize() {
+    return maxFrame;
+  }
+
+  /** return the number of calls this has made */
+  public long getCallsSent() {
+    return callsSent.get();
+  }
+
+  /** return the number of calls this has served */
+  public long getCallsReceived() {
+    return callsReceived.get();
+  }
+
+  /** return the number of bytes written to all connections */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /** return the number of bytes read from all connections */
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  void callSent() {
+    callsSent.incrementAndGet();
+  }
+
+  void callReceived() {
+    callsReceived.incrementAndGet();
+  }
+
+  void bytesSent(long n) {
+    bytesSent.addAndGet(n);
+  }
+
+  void bytesReceived(long n) {
+    bytesReceived.addAndGet(n);
+  }
+
+}
+
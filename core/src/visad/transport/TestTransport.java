@@ -0,0 +1,255 @@
+//
+// TestTransport.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.io.DataOutputStream;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.util.concurrent.Future;
+
+import visad.CellImpl;
+import visad.DataReferenceImpl;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Integer1DSet;
+import visad.RealType;
+import visad.RemoteCellImpl;
+import visad.RemoteDataReference;
+import visad.RemoteDataReferenceImpl;
+import visad.RemoteField;
+import visad.RemoteServer;
+import visad.RemoteServerImpl;
+import visad.VisADException;
+
+/**
+   TestTransport is the class for testing the visad.transport package.
+   With no arguments it serves a RemoteServerImpl and calls it over
+   localhost with SocketTransport, checking results and callbacks and
+   timing calls; with the argument 'rmi' it then does the same with
+   RMITransport.  'java visad.transport.TestTransport server port'
+   serves the same objects on SocketTransport port, and
+   'java visad.transport.TestTransport client host port' runs the
+   tests against such a server.<P>
+*/
+public class TestTransport extends Object {
+
+  private static final String NAME = "TestTransport";
+
+  private static final int LENGTH = 10000;
+
+  private static final int CALLS = 2000;
+
+  private static int failures = 0;
+
+  private DataReferenceImpl ref;
+
+  private RemoteServerImpl server;
+
+  public TestTransport() throws VisADException, RemoteException {
+    ref = new DataReferenceImpl("field");
+    ref.setData(makeField(0.0f));
+    RemoteDataReferenceImpl rref = new RemoteDataReferenceImpl(ref);
+    server = new RemoteServerImpl(new RemoteDataReferenceImpl[] {rref});
+  }
+
+  private static FlatField makeField(float offset)
+          throws VisADException, RemoteException {
+    RealType x = RealType.getRealType("transport_x");
+    RealType v = RealType.getRealType("transport_v");
+    FlatField field =
+      new FlatField(new FunctionType(x, v), new Integer1DSet(x, LENGTH));
+    float[][] values = new float[1][LENGTH];
+    for (int i=0; i<LENGTH; i++) values[0][i] = i + offset;
+    field.setSamples(values, false);
+    return field;
+  }
+
+  private static void check(boolean ok, String what) {
+    if (!ok) {
+      failures++;
+      System.out.println("  FAILED: " + what);
+    }
+  }
+
+  /** run the tests against the RemoteServer at url */
+  private void runClient(String label, Transport transport, String url)
+          throws Exception {
+    System.out.println(label + ": " + url);
+    RemoteServer rs = (RemoteServer) transport.lookup(url);
+    RemoteDataReference rref = rs.getDataReference(0);
+    check(rref != null, "getDataReference");
+    check("field".equals(rref.getName()), "getName");
+
+    // a FieldImpl comes back as a RemoteField, by reference
+    RemoteField field = (RemoteField) rref.getData();
+    check(field.getLength() == LENGTH, "getLength");
+    float[][] values = field.getFloats(false);
+    check(values[0][LENGTH - 1] == LENGTH - 1, "getFloats");
+    float[][] some = field.getFloats(new int[] {3, 5, LENGTH});
+    check(some[0][1] == 5.0f && Float.isNaN(some[0][2]), "getFloats(int[])");
+
+    // callbacks go from server to client
+    final int[] changes = {0};
+    CellImpl cell = new CellImpl() {
+      public void doAction() {
+        synchronized (changes) {
+          changes[0]++;
+          changes.notifyAll();
+        }
+      }
+    };
+    RemoteCellImpl rcell = new RemoteCellImpl(cell);
+    rcell.addReference(rref);
+    waitFor(changes, 1);
+    if (ref != null) {
+      ref.setData(makeField(1.0f));
+      waitFor(changes, 2);
+      check(changes[0] >= 2, "callback after setData");
+    }
+    rcell.removeAllReferences();
+
+    long start = System.nanoTime();
+    for (int i=0; i<CALLS; i++) rref.getName();
+    double sync = (System.nanoTime() - start) / 1.0e3 / CALLS;
+    System.out.println("  synchronous getName(): " + round(sync) +
+                       " us per call");
+
+    if (transport instanceof SocketTransport) {
+      Method getName = RemoteDataReference.class.getMethod("getName",
+                                                           new Class[0]);
+      Future[] futures = new Future[CALLS];
+      start = System.nanoTime();
+      for (int i=0; i<CALLS; i++) {
+        futures[i] = SocketTransport.invokeAsync(rref, getName, null);
+      }
+      boolean all = true;
+      for (int i=0; i<CALLS; i++) all &= "field".equals(futures[i].get());
+      double async = (System.nanoTime() - start) / 1.0e3 / CALLS;
+      check(all, "invokeAsync results");
+      System.out.println("  pipelined getName(): " + round(async) +
+                         " us per call");
+      SocketTransport st = (SocketTransport) transport;
+      System.out.println("  calls sent " + st.getCallsSent() +
+                         ", bytes sent " + st.getBytesSent() +
+                         ", bytes received " + st.getBytesReceived());
+    }
+
+    start = System.nanoTime();
+    for (int i=0; i<20; i++) field.getFloats(false);
+    System.out.println("  getFloats() of " + LENGTH + " samples: " +
+                       round((System.nanoTime() - start) / 1.0e6 / 20) +
+                       " ms per call");
+  }
+
+  private static void waitFor(int[] changes, int count)
+          throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    synchronized (changes) {
+      while (changes[0] < count && System.currentTimeMillis() < end) {
+        changes.wait(100);
+      }
+    }
+  }
+
+  /** check that server drops a peer claiming a frame over its limit */
+  private static void checkFrameLimit(SocketTransport server)
+          throws Exception {
+    Socket socket = new Socket("localhost", server.getPort());
+    socket.setSoTimeout(5000);
+    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+    out.writeInt(Integer.MAX_VALUE);
+    out.flush();
+    int b;
+    try {
+      b = socket.getInputStream().read();
+    }
+    catch (java.io.IOException e) {
+      b = -1; // reset by the server
+    }
+    check(b == -1, "connection with oversized frame not closed");
+    socket.close();
+  }
+
+  private static double round(double d) {
+    return Math.rint(d * 10.0) / 10.0;
+  }
+
+  private static int freePort() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    return port;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length >= 2 && args[0].equals("server")) {
+      TestTransport test = new TestTransport();
+      SocketTransport transport =
+        new SocketTransport(Integer.parseInt(args[1]));
+      transport.bind(NAME, test.server);
+      System.out.println("serving " + transport.getURL(NAME));
+      while (true) Thread.sleep(60000);
+    }
+    if (args.length >= 3 && args[0].equals("client")) {
+      TestTransport test = new TestTransport();
+      // the server's DataReference is not ours to change
+      test.ref = null;
+      SocketTransport client = new SocketTransport();
+      test.runClient("socket", client, TransportFactory.SOCKET_SCHEME + "//" +
+                     args[1] + ":" + args[2] + "/" + NAME);
+      client.shutdown();
+    }
+    else {
+      TestTransport test = new TestTransport();
+
+      SocketTransport server = new SocketTransport("localhost", 0);
+      server.bind(NAME, test.server);
+      SocketTransport client = new SocketTransport();
+      test.runClient("socket", client, TransportFactory.SOCKET_SCHEME +
+                     "//localhost:" + server.getPort() + "/" + NAME);
+      client.shutdown();
+      checkFrameLimit(server);
+      server.shutdown();
+
+      if (args.length >= 1 && args[0].equals("rmi")) {
+        // for comparison; needs the rmic stubs of the build
+        RMITransport rmi = new RMITransport(freePort());
+        rmi.bind(NAME, test.server);
+        test.runClient("rmi", rmi, "//localhost:" + rmi.getPort() + "/" +
+                       NAME);
+        rmi.shutdown();
+      }
+    }
+    System.out.println(failures == 0 ? "TestTransport: OK" :
+                       "TestTransport: " + failures + " failures");
+    System.exit(failures == 0 ? 0 : 1);
+  }
+
+}
+
@@ -0,0 +1,63 @@
+//
+// Transport.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+   Transport is the layer that makes VisAD's Remote objects
+   (RemoteServerImpl, RemoteDataReferenceImpl, RemoteDisplayImpl,
+   cluster agents, ...) reachable from other JVMs.  RMITransport
+   uses Java RMI and an RMI registry; SocketTransport multiplexes
+   all calls between two JVMs over one socket.  Either can serve
+   any object that implements a Remote interface, and clients see
+   objects of the same Remote interfaces whichever is used.<P>
+
+   URLs have the form "//host:port/name", optionally preceded by a
+   scheme ("rmi:" or "visad:").<P>
+*/
+public interface Transport {
+
+  /** make obj available to other JVMs under name */
+  void bind(String name, Remote obj) throws RemoteException;
+
+  /** withdraw the object bound under name */
+  void unbind(String name) throws RemoteException;
+
+  /** return the object bound at url, which may be in another JVM */
+  Remote lookup(String url) throws RemoteException, NotBoundException;
+
+  /** return the URL at which other JVMs can look up name */
+  String getURL(String name) throws RemoteException;
+
+  /** stop serving objects and close all connections */
+  void shutdown();
+
+}
+
@@ -0,0 +1,128 @@
+//
+// TransportFactory.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.net.MalformedURLException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+   TransportFactory creates Transports by name, and looks up
+   objects by URL with the Transport their scheme calls for.<P>
+*/
+public class TransportFactory {
+
+  /** property naming the default Transport, "rmi" or "socket" */
+  public static final String PROP_TRANSPORT = "visad.transport";
+
+  public static final String RMI = "rmi";
+  public static final String SOCKET = "socket";
+
+  /** URL scheme of SocketTransport */
+  public static final String SOCKET_SCHEME = "visad:";
+
+  /** Transport used by lookup() for "visad:" URLs */
+  private static SocketTransport client = null;
+
+  private TransportFactory() {
+  }
+
+  /** create a Transport of the kind named by visad.transport, serving
+      objects on port */
+  public static Transport createTransport(int port) throws RemoteException {
+    return createTransport(System.getProperty(PROP_TRANSPORT, RMI), port);
+  }
+
+  /** create a Transport of kind ("rmi" or "socket") serving objects
+      on port */
+  public static Transport createTransport(String kind, int port)
+         throws RemoteException {
+    if (RMI.equalsIgnoreCase(kind)) {
+      return new RMITransport(port);
+    }
+    if (SOCKET.equalsIgnoreCase(kind)) {
+      return new SocketTransport(port);
+    }
+    throw new RemoteException("TransportFactory: unknown transport " + kind);
+  }
+
+  /** return the object bound at url, using SocketTransport for
+      "visad:" URLs and RMI for all others */
+  public static Remote lookup(String url)
+         throws RemoteException, NotBoundException {
+    if (url.startsWith(SOCKET_SCHEME)) {
+      SocketTransport transport;
+      synchronized (TransportFactory.class) {
+        if (client == null) client = new SocketTransport();
+        transport = client;
+      }
+      return transport.lookup(url);
+    }
+    return new RMITransport().lookup(url);
+  }
+
+  /**
+   * return {host, port, name} from url of the form
+   * [scheme:]//host[:port]/name; host is null if url has none
+   */
+  static Object[] parseURL(String url, int defaultPort)
+         throws RemoteException {
+    String s = url;
+    int colon = s.indexOf(':');
+    int slashes = s.indexOf("//");
+    if (colon >= 0 && slashes > colon) s = s.substring(colon + 1);
+    if (!s.startsWith("//")) {
+      throw new RemoteException("Bad URL " + url,
+                                new MalformedURLException(url));
+    }
+    s = s.substring(2);
+    int slash = s.indexOf('/');
+    if (slash < 0) {
+      throw new RemoteException("No name in URL " + url,
+                                new MalformedURLException(url));
+    }
+    String name = s.substring(slash + 1);
+    String host = s.substring(0, slash);
+    int port = defaultPort;
+    int c = host.lastIndexOf(':');
+    if (c >= 0) {
+      try {
+        port = Integer.parseInt(host.substring(c + 1));
+      }
+      catch (NumberFormatException e) {
+        throw new RemoteException("Bad port in URL " + url,
+                                  new MalformedURLException(url));
+      }
+      host = host.substring(0, c);
+    }
+    if (host.length() == 0) host = null;
+    return new Object[] {host, new Integer(port), name};
+  }
+
+}
+
@@ -0,0 +1,389 @@
+//
+// WireCodec.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2014 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.rmi.Remote;
+
+/**
+   WireCodec writes the values passed to and returned from calls on
+   a SocketTransport.  null, primitives, Strings and the primitive
+   arrays VisAD moves in bulk (byte[], int[], float[], double[],
+   float[][] and double[][]) have compact tagged encodings; Remote
+   objects are passed by reference; everything else is passed by
+   Java serialization, with any Remote objects inside it also
+   passed by reference.<P>
+*/
+class WireCodec {
+
+  static final byte NULL = 0;
+  static final byte TRUE = 1;
+  static final byte FALSE = 2;
+  static final byte BYTE = 3;
+  static final byte SHORT = 4;
+  static final byte CHAR = 5;
+  static final byte INT = 6;
+  static final byte LONG = 7;
+  static final byte FLOAT = 8;
+  static final byte DOUBLE = 9;
+  static final byte STRING = 10;
+  static final byte BYTES = 11;
+  static final byte INTS = 12;
+  static final byte FLOATS = 13;
+  static final byte DOUBLES = 14;
+  static final byte FLOATS2 = 15;
+  static final byte DOUBLES2 = 16;
+  /** reference to an object exported by the writer */
+  static final byte REF_MINE = 17;
+  /** reference to an object exported by the reader */
+  static final byte REF_YOURS = 18;
+  static final byte OBJECT = 19;
+
+  private WireCodec() {
+  }
+
+  /** write value to out, exporting any Remote objects on conn */
+  static void write(DataOutputStream out, Object value, SocketConnection conn)
+         throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    }
+    else if (value instanceof Remote) {
+      RemoteToken token = conn.toToken((Remote) value);
+      if (token.mine) {
+        out.writeByte(REF_MINE);
+        out.writeInt(token.id);
+        out.writeShort(token.interfaces.length);
+        for (int i=0; i<token.interfaces.length; i++) {
+          out.writeUTF(token.interfaces[i]);
+        }
+      }
+      else {
+        out.writeByte(REF_YOURS);
+        out.writeInt(token.id);
+      }
+    }
+    else if (value instanceof Boolean) {
+      out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+    }
+    else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt(((Integer) value).intValue());
+    }
+    else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong(((Long) value).longValue());
+    }
+    else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat(((Float) value).floatValue());
+    }
+    else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(((Double) value).doubleValue());
+    }
+    else if (value instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte(((Byte) value).byteValue());
+    }
+    else if (value instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort(((Short) value).shortValue());
+    }
+    else if (value instanceof Character) {
+      out.writeByte(CHAR);
+      out.writeChar(((Character) value).charValue());
+    }
+    else if (value instanceof String) {
+      byte[] bytes = ((String) value).getBytes("UTF-8");
+      out.writeByte(STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+    else if (value instanceof byte[]) {
+      byte[] bytes = (byte[]) value;
+      out.writeByte(BYTES);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+    else if (value instanceof int[]) {
+      out.writeByte(INTS);
+      writeInts(out, (int[]) value);
+    }
+    else if (value instanceof float[]) {
+      out.writeByte(FLOATS);
+      writeFloats(out, (float[]) value);
+    }
+    else if (value instanceof double[]) {
+      out.writeByte(DOUBLES);
+      writeDoubles(out, (double[]) value);
+    }
+    else if (value instanceof float[][] && !hasNull((Object[]) value)) {
+      float[][] values = (float[][]) value;
+      out.writeByte(FLOATS2);
+      out.writeInt(values.length);
+      for (int i=0; i<values.length; i++) writeFloats(out, values[i]);
+    }
+    else if (value instanceof double[][] && !hasNull((Object[]) value)) {
+      double[][] values = (double[][]) value;
+      out.writeByte(DOUBLES2);
+      out.writeInt(values.length);
+      for (int i=0; i<values.length; i++) writeDoubles(out, values[i]);
+    }
+    else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new TokenOutputStream(bytes, conn);
+      oos.writeObject(value);
+      oos.close();
+      out.writeByte(OBJECT);
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    }
+  }
+
+  /** read a value written by write() at the other end of conn */
+  static Object read(DataInputStream in, SocketConnection conn)
+         throws IOException, ClassNotFoundException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case BYTE:
+        return new Byte(in.readByte());
+      case SHORT:
+        return new Short(in.readShort());
+      case CHAR:
+        return new Character(in.readChar());
+      case INT:
+        return new Integer(in.readInt());
+      case LONG:
+        return new Long(in.readLong());
+      case FLOAT:
+        return new Float(in.readFloat());
+      case DOUBLE:
+        return new Double(in.readDouble());
+      case STRING: {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+      }
+      case BYTES: {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+      }
+      case INTS:
+        return readInts(in);
+      case FLOATS:
+        return readFloats(in);
+      case DOUBLES:
+        return readDoubles(in);
+      case FLOATS2: {
+        float[][] values = new float[in.readInt()][];
+        for (int i=0; i<values.length; i++) values[i] = readFloats(in);
+        return values;
+      }
+      case DOUBLES2: {
+        double[][] values = new double[in.readInt()][];
+        for (int i=0; i<values.length; i++) values[i] = readDoubles(in);
+        return values;
+      }
+      case REF_MINE: {
+        int id = in.readInt();
+        String[] interfaces = new String[in.readUnsignedShort()];
+        for (int i=0; i<interfaces.length; i++) interfaces[i] = in.readUTF();
+        return conn.fromToken(new RemoteToken(true, id, interfaces));
+      }
+      case REF_YOURS:
+        return conn.fromToken(new RemoteToken(false, in.readInt(), null));
+      case OBJECT: {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ObjectInputStream ois =
+          new TokenInputStream(new ByteArrayInputStream(bytes), conn);
+        Object value = ois.readObject();
+        ois.close();
+        return value;
+      }
+      default:
+        throw new IOException("WireCodec: bad tag " + tag);
+    }
+  }
+
+  private static boolean hasNull(Object[] values) {
+    for (int i=0; i<values.length; i++) {
+      if (values[i] == null) return true;
+    }
+    return false;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values)
+          throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(4 * values.length);
+    buf.asIntBuffer().put(values);
+    out.writeInt(values.length);
+    out.write(buf.array());
+  }
+
+  private static void writeFloats(DataOutputStream out, float[] values)
+          throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(4 * values.length);
+    buf.asFloatBuffer().put(values);
+    out.writeInt(values.length);
+    out.write(buf.array());
+  }
+
+  private static void writeDoubles(DataOutputStream out, double[] values)
+          throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(8 * values.length);
+    buf.asDoubleBuffer().put(values);
+    out.writeInt(values.length);
+    out.write(buf.array());
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    byte[] bytes = new byte[4 * values.length];
+    in.readFully(bytes);
+    ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+    return values;
+  }
+
+  private static float[] readFloats(DataInputStream in) throws IOException {
+    float[] values = new float[in.readInt()];
+    byte[] bytes = new byte[4 * values.length];
+    in.readFully(bytes);
+    ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+    return values;
+  }
+
+  private static double[] readDoubles(DataInputStream in) throws IOException {
+    double[] values = new double[in.readInt()];
+    byte[] bytes = new byte[8 * values.length];
+    in.readFully(bytes);
+    ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+    return values;
+  }
+
+  /**
+   * return a 64-bit hash of the name and parameter types of method,
+   * which identifies it in calls
+   */
+  static long methodHash(Method method) {
+    StringBuffer sig = new StringBuffer(method.getName());
+    sig.append('(');
+    Class[] params = method.getParameterTypes();
+    for (int i=0; i<params.length; i++) {
+      if (i > 0) sig.append(',');
+      sig.append(params[i].getName());
+    }
+    sig.append(')');
+    // 64-bit FNV-1a
+    long hash = 0xcbf29ce484222325L;
+    for (int i=0; i<sig.length(); i++) {
+      hash ^= sig.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /** stands in for a Remote object inside serialized values */
+  static class RemoteToken implements Serializable {
+    /** true if id is in the writer's export table */
+    final boolean mine;
+    final int id;
+    /** names of the Remote interfaces of the object, if mine */
+    final String[] interfaces;
+
+    RemoteToken(boolean mine, int id, String[] interfaces) {
+      this.mine = mine;
+      this.id = id;
+      this.interfaces = interfaces;
+    }
+  }
+
+  private static class TokenOutputStream extends ObjectOutputStream {
+    private final SocketConnection conn;
+
+    TokenOutputStream(ByteArrayOutputStream out, SocketConnection conn)
+            throws IOException {
+      super(out);
+      this.conn = conn;
+      enableReplaceObject(true);
+    }
+
+    protected Object replaceObject(Object obj) throws IOException {
+      if (obj instanceof Remote) return conn.toToken((Remote) obj);
+      return obj;
+    }
+  }
+
+  private static class TokenInputStream extends ObjectInputStream {
+    private final SocketConnection conn;
+
+    TokenInputStream(ByteArrayInputStream in, SocketConnection conn)
+            throws IOException {
+      super(in);
+      this.conn = conn;
+      enableResolveObject(true);
+    }
+
+    protected Object resolveObject(Object obj) throws IOException {
+      if (obj instanceof RemoteToken) return conn.fromToken((RemoteToken) obj);
+      return obj;
+    }
+
+    protected Class resolveClass(ObjectStreamClass desc)
+              throws IOException, ClassNotFoundException {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader != null) {
+        try {
+          return Class.forName(desc.getName(), false, loader);
+        }
+        catch (ClassNotFoundException e) {
+        }
+      }
+      return super.resolveClass(desc);
+    }
+  }
+
+}
+